@@ -0,0 +1,174 @@
+package org.opensha.oaf.comcat;
+
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.opensha.sha.earthquake.observedEarthquake.ObsEqkRupture;
+import org.opensha.commons.data.comcat.ComcatVisitor;
+
+import org.opensha.oaf.oetas.OEBenchSequences;
+import org.opensha.oaf.oetas.OECatalogParams;
+import org.opensha.oaf.oetas.OERandomGenerator;
+import org.opensha.oaf.oetas.OERupture;
+import org.opensha.oaf.util.SimpleUtils;
+import org.opensha.oaf.util.SphLatLon;
+import org.opensha.oaf.util.SphRegionCircle;
+import org.opensha.oaf.util.SphRegionWorld;
+
+import gov.usgs.earthquake.event.JsonEvent;
+
+
+// Benchmark for ComcatLocalCatalog.visitEventList.
+//
+// A synthetic local catalog is built once, holding a fixed aftershock sequence
+// (generated by OEBenchSequences) placed around a mainshock epicenter, plus a
+// world-wide background of random events.  The benchmarks time a regional
+// search around the mainshock, and a world-wide search over a short window.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComcatLocalCatalogBench {
+
+	// Number of world-wide background events.
+
+	@Param({"200000"})
+	public int background_count;
+
+	// Mainshock epicenter and time.
+
+	private static final double MAIN_LAT = 35.77;
+	private static final double MAIN_LON = -117.60;
+	private static final long MAIN_TIME = 1562383193040L;		// 2019-07-06T03:19:53.040Z
+
+	// Radius of the aftershock zone and the search region, in km.
+
+	private static final double SEQ_RADIUS_KM = 50.0;
+	private static final double SEARCH_RADIUS_KM = 100.0;
+
+	// The catalog.
+
+	private ComcatLocalCatalog local_catalog;
+
+	// Search regions.
+
+	private SphRegionCircle circle_region;
+	private SphRegionWorld world_region;
+
+	// Visitor that counts the events.
+
+	private int visit_count;
+	private ComcatVisitor visitor;
+
+
+
+
+	@Setup(Level.Trial)
+	public void setup () {
+		OERandomGenerator rangen = new OERandomGenerator (OEBenchSequences.BENCH_SEED);
+		StringBuilder sb = new StringBuilder();
+		int n_event = 0;
+
+		// The aftershock sequence, with epicenters scattered around the mainshock
+
+		OECatalogParams cat_params = OEBenchSequences.make_cat_params (0.9);
+		List<OERupture> rup_list = OEBenchSequences.make_rup_list (cat_params, OEBenchSequences.BENCH_MAG_MAIN, OEBenchSequences.BENCH_SEED);
+
+		final double km_per_deg = 111.19;
+		for (OERupture rup : rup_list) {
+			double lat = MAIN_LAT + rangen.uniform_sample (-SEQ_RADIUS_KM, SEQ_RADIUS_KM) / km_per_deg;
+			double lon = MAIN_LON + rangen.uniform_sample (-SEQ_RADIUS_KM, SEQ_RADIUS_KM) / (km_per_deg * Math.cos (Math.toRadians (MAIN_LAT)));
+			long time = MAIN_TIME + Math.round (rup.t_day * SimpleUtils.DAY_MILLIS_D);
+			append_entry (sb, n_event++, time, rup.rup_mag, lat, lon, rangen.uniform_sample (0.0, 15.0));
+		}
+
+		// The world-wide background, over the year following the mainshock
+
+		for (int i = 0; i < background_count; ++i) {
+			double lat = Math.toDegrees (Math.asin (rangen.uniform_sample (-1.0, 1.0)));
+			double lon = rangen.uniform_sample (-180.0, 180.0);
+			long time = MAIN_TIME + Math.round (rangen.uniform_sample (0.0, 365.0) * SimpleUtils.DAY_MILLIS_D);
+			double mag = rangen.gr_sample (1.0, 2.5, 8.0);
+			append_entry (sb, n_event++, time, mag, lat, lon, rangen.uniform_sample (0.0, 100.0));
+		}
+
+		// Load the catalog
+
+		local_catalog = new ComcatLocalCatalog();
+		try (
+			Scanner scanner = new Scanner (sb.toString());
+		){
+			local_catalog.load_catalog (0, scanner);
+		}
+
+		// Search regions
+
+		circle_region = new SphRegionCircle (new SphLatLon (MAIN_LAT, MAIN_LON), SEARCH_RADIUS_KM);
+		world_region = new SphRegionWorld();
+
+		// Visitor
+
+		visitor = new ComcatVisitor() {
+			@Override
+			public int visit (ObsEqkRupture rup, JsonEvent geojson) {
+				++visit_count;
+				return 0;
+			}
+		};
+	}
+
+
+
+
+	// Append a catalog line in the format read by ComcatLocalCatalogEntry.parse_line.
+
+	private static void append_entry (StringBuilder sb, int n_event, long time, double mag, double lat, double lon, double depth) {
+		String code = "bench" + n_event;
+		sb.append ("bm " + code + " " + time + " " + mag + " " + lat + " " + lon + " " + depth + " 1 bm" + code + " Synthetic+event\n");
+		return;
+	}
+
+
+
+
+	// Search the region around the mainshock, for the year after the mainshock.
+
+	@Benchmark
+	public int visit_region () {
+		visit_count = 0;
+		local_catalog.visitEventList (visitor, null, MAIN_TIME, MAIN_TIME + 365L * SimpleUtils.DAY_MILLIS,
+			-100.0, 1000.0, circle_region, false, false, 3.0, null, false);
+		return visit_count;
+	}
+
+
+
+
+	// Search the whole world, for the week after the mainshock.
+
+	@Benchmark
+	public int visit_world () {
+		visit_count = 0;
+		local_catalog.visitEventList (visitor, null, MAIN_TIME, MAIN_TIME + 7L * SimpleUtils.DAY_MILLIS,
+			-100.0, 1000.0, world_region, false, false, 4.0, null, false);
+		return visit_count;
+	}
+
+}
@@ -0,0 +1,92 @@
+package org.opensha.oaf.oetas;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+// Benchmark for scanning catalogs into OEAccumRateTimeMag.
+//
+// A fixed ensemble of catalogs is generated once.  Each invocation runs a complete
+// accumulation over the ensemble: begin_accumulation, then a scan of every catalog,
+// then end_accumulation (which totals the partial accumulators and cumulates).
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OEAccumRateTimeMagBench {
+
+	// Number of catalogs in the ensemble.
+
+	@Param({"200"})
+	public int num_cats;
+
+	// Branch ratio.
+
+	@Param({"0.9"})
+	public double n;
+
+	// Rate accumulation method, the default is the simulation default (433).
+
+	@Param({"433"})
+	public int rate_acc_meth;
+
+	// The catalogs.
+
+	private OECatalogStorage[] catalogs;
+
+	// Catalog parameters.
+
+	private OECatalogParams cat_params;
+
+
+
+
+	@Setup(Level.Trial)
+	public void setup () {
+		cat_params = OEBenchSequences.make_cat_params (n);
+		catalogs = OEBenchSequences.make_catalogs (cat_params, OEBenchSequences.BENCH_MAG_MAIN, num_cats);
+	}
+
+
+
+
+	// Accumulate the ensemble; returns the accumulator so the work is not eliminated.
+
+	@Benchmark
+	public OEAccumRateTimeMag scan_ensemble () {
+		OEAccumRateTimeMag time_mag_accum = new OEAccumRateTimeMag();
+		time_mag_accum.typical_test_setup (rate_acc_meth, cat_params.tbegin);
+		time_mag_accum.set_upfill_sec_reduce (OEConstants.def_sim_accum_param_1());
+
+		time_mag_accum.begin_accumulation (num_cats);
+
+		OECatalogScanner cat_scanner = new OECatalogScanner();
+		cat_scanner.setup (time_mag_accum);
+
+		OERandomGenerator rangen = new OERandomGenerator (OEBenchSequences.BENCH_SEED);
+		for (OECatalogStorage cat_storage : catalogs) {
+			cat_scanner.open();
+			cat_scanner.scan (cat_storage, rangen);
+			cat_scanner.close();
+		}
+
+		time_mag_accum.end_accumulation();
+		return time_mag_accum;
+	}
+
+}
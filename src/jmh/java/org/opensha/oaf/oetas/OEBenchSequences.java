@@ -0,0 +1,84 @@
+package org.opensha.oaf.oetas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+// Fixed synthetic aftershock sequences for the benchmarks.
+//
+// Every sequence is generated from a fixed seed, so repeated benchmark runs
+// operate on identical catalogs, and results can be compared across builds.
+
+public class OEBenchSequences {
+
+	// Seed for the first catalog; catalog i uses BENCH_SEED + i.
+
+	public static final long BENCH_SEED = 20240611L;
+
+	// Typical ETAS parameters, used unless a benchmark overrides them.
+
+	public static final double BENCH_P = 1.08;
+	public static final double BENCH_C = 0.01;
+	public static final double BENCH_B = 1.0;
+	public static final double BENCH_ALPHA = 1.0;
+
+	// Default mainshock magnitude.
+
+	public static final double BENCH_MAG_MAIN = 7.0;
+
+
+
+
+	// Make catalog parameters with typical values and the given branch ratio.
+	// Times run from 1 to 366 days after the mainshock, magnitudes from 3.0 to 9.5.
+
+	public static OECatalogParams make_cat_params (double n) {
+		OECatalogParams cat_params = (new OECatalogParams()).set_to_typical (
+			0.0,							// a, set below
+			BENCH_P,						// p
+			BENCH_C,						// c
+			BENCH_B,						// b
+			BENCH_ALPHA,					// alpha
+			100,							// gen_size_target
+			OEConstants.DEF_MAX_GEN_COUNT	// gen_count_max
+		);
+		cat_params.a = OEStatsCalc.calc_inv_branch_ratio (n, cat_params);
+		return cat_params;
+	}
+
+
+
+
+	// Generate a single catalog, seeded with a mainshock at time 0, from the given seed.
+
+	public static OECatalogStorage make_catalog (OECatalogParams cat_params, double mag_main, long seed) {
+		return OECatalogGenerator.gen_simple_catalog (cat_params, mag_main, new OERandomGenerator (seed));
+	}
+
+
+
+
+	// Generate an ensemble of catalogs, with catalog i generated from seed BENCH_SEED + i.
+
+	public static OECatalogStorage[] make_catalogs (OECatalogParams cat_params, double mag_main, int num_cats) {
+		OECatalogStorage[] catalogs = new OECatalogStorage[num_cats];
+		for (int i = 0; i < num_cats; ++i) {
+			catalogs[i] = make_catalog (cat_params, mag_main, BENCH_SEED + i);
+		}
+		return catalogs;
+	}
+
+
+
+
+	// Generate a catalog and return its ruptures, including the mainshock.
+	// The ordering of the ruptures is unspecified.
+
+	public static List<OERupture> make_rup_list (OECatalogParams cat_params, double mag_main, long seed) {
+		OECatalogStorage cat_storage = make_catalog (cat_params, mag_main, seed);
+		ArrayList<OERupture> rup_list = new ArrayList<OERupture>();
+		cat_storage.dump_to_collection (rup_list, true, false);
+		return rup_list;
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.opensha.oaf.oetas;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.opensha.oaf.oetas.OERupture.RUPPAR_SEED;
+
+
+// Benchmark for OECatalogGenerator.calc_next_gen.
+//
+// Each invocation generates one complete catalog from a fixed seed, re-using the
+// storage and generator objects as the simulator does, so the time is dominated
+// by the successive calls to calc_next_gen.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OECatalogGeneratorBench {
+
+	// Branch ratio.
+
+	@Param({"0.5", "0.9"})
+	public double n;
+
+	// Mainshock magnitude.
+
+	@Param({"6.0", "7.0"})
+	public double mag_main;
+
+	// Catalog parameters.
+
+	private OECatalogParams cat_params;
+
+	// Generation info for the seed generation.
+
+	private OEGenerationInfo seed_gen_info;
+
+	// Mainshock rupture.
+
+	private OERupture mainshock_rup;
+
+	// Storage and generator, re-used for each catalog.
+
+	private OECatalogStorage cat_storage;
+	private OECatalogGenerator cat_generator;
+
+
+
+
+	@Setup(Level.Trial)
+	public void setup () {
+		cat_params = OEBenchSequences.make_cat_params (n);
+
+		seed_gen_info = (new OEGenerationInfo()).set (
+			cat_params.mref,	// gen_mag_min
+			cat_params.msup		// gen_mag_max
+		);
+
+		double k_prod = OEStatsCalc.calc_k_corr (
+			mag_main,			// m0
+			cat_params,			// cat_params
+			seed_gen_info		// gen_info
+		);
+
+		mainshock_rup = new OERupture();
+		mainshock_rup.set (
+			0.0,			// t_day
+			mag_main,		// rup_mag
+			k_prod,			// k_prod
+			RUPPAR_SEED,	// rup_parent
+			0.0,			// x_km
+			0.0				// y_km
+		);
+
+		cat_storage = new OECatalogStorage();
+		cat_generator = new OECatalogGenerator();
+	}
+
+
+
+
+	// Generate one catalog; returns its size so the work is not eliminated.
+
+	@Benchmark
+	public int generate_catalog () {
+		cat_storage.begin_catalog (cat_params);
+		cat_storage.begin_generation (seed_gen_info);
+		cat_storage.add_rup (mainshock_rup);
+		cat_storage.end_generation();
+
+		cat_generator.setup (new OERandomGenerator (OEBenchSequences.BENCH_SEED), cat_storage, false);
+		cat_generator.calc_all_gen();
+		cat_generator.forget();
+
+		return cat_storage.size();
+	}
+
+}
@@ -0,0 +1,87 @@
+package org.opensha.oaf.oetas;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+// Benchmark for the OERandomGenerator samplers used in catalog generation.
+//
+// Each benchmark draws one sample, from a generator with a fixed seed, using
+// parameter values typical of a simulation.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OERandomGeneratorBench {
+
+	// The generator.
+
+	private OERandomGenerator rangen;
+
+	// Cumulative distribution for cumulative_sample.
+
+	private double[] cum_x;
+
+
+
+
+	@Setup(Level.Trial)
+	public void setup () {
+		rangen = new OERandomGenerator (OEBenchSequences.BENCH_SEED);
+
+		cum_x = new double[100];
+		double total = 0.0;
+		for (int i = 0; i < cum_x.length; ++i) {
+			total += 1.0 / (i + 1.0);
+			cum_x[i] = total;
+		}
+	}
+
+
+
+
+	@Benchmark
+	public double uniform_sample () {
+		return rangen.uniform_sample (0.0, 1.0);
+	}
+
+	@Benchmark
+	public int poisson_sample_small () {
+		return rangen.poisson_sample (0.5);
+	}
+
+	@Benchmark
+	public int poisson_sample_large () {
+		return rangen.poisson_sample (50.0);
+	}
+
+	@Benchmark
+	public double omori_sample_shifted () {
+		return rangen.omori_sample_shifted (OEBenchSequences.BENCH_P, OEBenchSequences.BENCH_C, 0.0, 1.0, 366.0);
+	}
+
+	@Benchmark
+	public double gr_sample () {
+		return rangen.gr_sample (OEBenchSequences.BENCH_B, 3.0, 9.5);
+	}
+
+	@Benchmark
+	public int cumulative_sample () {
+		return rangen.cumulative_sample (cum_x, cum_x.length);
+	}
+
+}
@@ -0,0 +1,110 @@
+package org.opensha.oaf.oetas;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+// Benchmark for the OEStackedPoisson accumulator adds.
+//
+// Each invocation clears an accumulator and adds a fixed list of distributions,
+// with means spread over the cached range, as happens when the rate accumulator
+// stacks one bin from each catalog of an ensemble.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OEStackedPoissonBench {
+
+	// Number of distributions added per invocation.
+
+	private static final int ADD_COUNT = 1000;
+
+	// The stacked Poisson cache (the shared default).
+
+	private OEStackedPoisson stkpois;
+
+	// The accumulator.
+
+	private OEStackedPoisson.Accumulator accum;
+
+	// Means, shifts, and occurrence rates to add, with lam_occur[i] <= lambda[i].
+
+	private double[] lambda;
+	private int[] shift;
+	private double[] lam_occur;
+
+
+
+
+	@Setup(Level.Trial)
+	public void setup () {
+		stkpois = OEStackedPoisson.get_singleton();
+		accum = stkpois.make_accumulator();
+
+		OERandomGenerator rangen = new OERandomGenerator (OEBenchSequences.BENCH_SEED);
+		lambda = new double[ADD_COUNT];
+		shift = new int[ADD_COUNT];
+		lam_occur = new double[ADD_COUNT];
+		for (int i = 0; i < ADD_COUNT; ++i) {
+			lambda[i] = Math.pow (10.0, rangen.uniform_sample (-3.0, 2.0));		// 0.001 to 100
+			shift[i] = rangen.uniform_int_sample (0, 20);
+			lam_occur[i] = lambda[i] * rangen.uniform_sample (0.0, 1.0);
+		}
+	}
+
+
+
+
+	@Benchmark
+	@OperationsPerInvocation(ADD_COUNT)
+	public void add_poisson (Blackhole bh) {
+		accum.clear();
+		for (int i = 0; i < ADD_COUNT; ++i) {
+			accum.add_poisson (lambda[i]);
+		}
+		bh.consume (accum.get_total_weight());
+	}
+
+
+
+
+	@Benchmark
+	@OperationsPerInvocation(ADD_COUNT)
+	public void add_shifted_poisson (Blackhole bh) {
+		accum.clear();
+		for (int i = 0; i < ADD_COUNT; ++i) {
+			accum.add_shifted_poisson (lambda[i], shift[i]);
+		}
+		bh.consume (accum.get_total_weight());
+	}
+
+
+
+
+	@Benchmark
+	@OperationsPerInvocation(ADD_COUNT)
+	public void add_shifted_split_poisson (Blackhole bh) {
+		accum.clear();
+		for (int i = 0; i < ADD_COUNT; ++i) {
+			accum.add_shifted_split_poisson (lambda[i], lam_occur[i], shift[i]);
+		}
+		bh.consume (accum.get_total_weight());
+	}
+
+}
@@ -0,0 +1,156 @@
+package org.opensha.oaf.oetas.fit;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.opensha.oaf.oetas.OEBenchSequences;
+import org.opensha.oaf.oetas.OECatalogParams;
+import org.opensha.oaf.oetas.OEConstants;
+import org.opensha.oaf.oetas.OERupture;
+
+
+// Benchmark for the OEDisc2ExtFit matrix builds and applies.
+//
+// A fixed synthetic sequence is generated once and made into a history.  The
+// benchmarks then time building the Omori matrices for one (p, c) pair, and
+// applying them to build the per-pair vectors and compute a log-likelihood,
+// which is the work done for each grid point during parameter fitting.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OEDisc2ExtFitBench {
+
+	// Mainshock magnitude, which sets the size of the sequence.
+
+	@Param({"6.0", "7.0"})
+	public double mag_main;
+
+	// Kernel for the rupture-source Omori matrix (OMAT_KERNEL_XXXX).
+
+	@Param({"1", "2"})
+	public int omat_kernel;
+
+	// True to hold the Omori matrices in single precision.
+
+	@Param({"false"})
+	public boolean f_omat_float;
+
+	// Catalog parameters.
+
+	private OECatalogParams cat_params;
+
+	// The fitter and its data structures.
+
+	private OEDisc2ExtFit fitter;
+	private OEDisc2ExtFit.MagExponentHandle mexp;
+	private OEDisc2ExtFit.OmoriMatrixHandle omat;
+	private OEDisc2ExtFit.PairMagOmoriHandle pmom;
+	private OEDisc2ExtFit.AValueProdHandle avpr;
+
+
+
+
+	@Setup(Level.Trial)
+	public void setup () {
+
+		// Generate the sequence
+
+		cat_params = OEBenchSequences.make_cat_params (0.9);
+		List<OERupture> rup_list = OEBenchSequences.make_rup_list (cat_params, mag_main, OEBenchSequences.BENCH_SEED);
+
+		// Make the history, using the typical history parameters
+
+		OEMagCompFnDisc.SplitFn split_fn = new OEMagCompFnDisc.SplitFnRatio (0.5, 1.0e-5, 3.0);
+
+		OEDiscFGHParams hist_params = new OEDiscFGHParams();
+
+		hist_params.set_sim_history_typical (
+			cat_params.mref,				// magCat
+			OEConstants.HELM_PARAM_WORLD,	// helm_param
+			0.0,							// t_range_begin
+			cat_params.tend,				// t_range_end
+			0.2,							// disc_delta
+			3000,							// mag_cat_count
+			mag_main - 0.5,					// eligible_mag
+			5,								// eligible_count
+			split_fn,						// split_fn
+			cat_params.tbegin,				// t_interval_begin
+			50,								// before_max_count
+			1								// mag_cat_int_join
+		);
+
+		OEDisc2History history = new OEDisc2History();
+		history.build_from_fgh (hist_params, rup_list);
+
+		// Make the fitter
+
+		fitter = new OEDisc2ExtFit();
+		fitter.dfit_build (history, cat_params.get_params_mags(), true, true, OEConstants.DEF_LMR_OPT, false);
+		fitter.set_omat_float (f_omat_float);
+		fitter.set_omat_kernel (omat_kernel, OEConstants.DEF_OMAT_APPROX_TOL);
+
+		// Allocate the data structures, and build them once so the apply benchmark has a matrix
+
+		mexp = fitter.make_MagExponentHandle();
+		omat = fitter.make_OmoriMatrixHandle();
+		pmom = fitter.make_PairMagOmoriHandle();
+		avpr = fitter.make_AValueProdHandle();
+
+		mexp.mexp_build (cat_params.b, cat_params.alpha);
+		omat.omat_build (cat_params.p, cat_params.c);
+	}
+
+
+
+
+	@TearDown(Level.Trial)
+	public void teardown () {
+		avpr.close();
+		pmom.close();
+		omat.close();
+		mexp.close();
+	}
+
+
+
+
+	// Build the Omori matrices for one (p, c) pair.
+
+	@Benchmark
+	public OEDisc2ExtFit.OmoriMatrixHandle omat_build () {
+		omat.omat_build (cat_params.p, cat_params.c);
+		return omat;
+	}
+
+
+
+
+	// Apply the Omori matrices, and compute a log-likelihood.
+
+	@Benchmark
+	public double omat_apply () {
+		pmom.pmom_build (mexp, omat);
+		double ten_aint_q = Math.pow(10.0, cat_params.a) * mexp.get_q_correction();
+		avpr.avpr_build (pmom, ten_aint_q);
+		return avpr.avpr_calc_log_like (ten_aint_q, ten_aint_q);
+	}
+
+}
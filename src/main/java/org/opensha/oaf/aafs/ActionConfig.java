@@ -521,6 +521,31 @@ public final class ActionConfig {
 		return param_set.forecast_file_option == ActionConfigFile.FORECAST_FILE_OPTION_VERBOSE;
 	}
 
+	// Get number of worker threads for concurrent task execution, 0 = execute tasks serially. [v5]
+
+	public int get_dispatcher_workers () {
+		return param_set.dispatcher_workers;
+	}
+
+	// Get option to execute tasks by priority class. [v6]
+
+	public int get_task_priority_enable () {
+		return param_set.task_priority_enable;
+	}
+
+	// Get flag, indicating if tasks are executed by priority class. [v6]
+
+	public boolean get_is_task_priority_enabled () {
+		return param_set.task_priority_enable != ActionConfigFile.TASK_PRIORITY_DISABLE;
+	}
+
+	// Get time after which a waiting task runs ahead of higher priority tasks. [v6]
+	// Must be a whole number of seconds, between 1 minute and 24 hours.
+
+	public long get_task_starve_time () {
+		return param_set.task_starve_time;
+	}
+
 	// Get the version of shadowing algorithm to use. [v5]
 	// Eventually this will come from the configuration file.
 
@@ -984,6 +1009,7 @@ public final class ActionConfig {
 			System.out.println ("is_etas_enabled = " + action_config.get_is_etas_enabled());
 			System.out.println ("is_forecast_file_enabled = " + action_config.get_is_forecast_file_enabled());
 			System.out.println ("is_forecast_file_verbose = " + action_config.get_is_forecast_file_verbose());
+			System.out.println ("is_task_priority_enabled = " + action_config.get_is_task_priority_enabled());
 			System.out.println ("pdl_intake_region_min_min_mag = " + action_config.get_pdl_intake_region_min_min_mag());
 			System.out.println ("pdl_intake_region_min_intake_mag = " + action_config.get_pdl_intake_region_min_intake_mag());
 			System.out.println ("max_adv_window_end_off = " + action_config.get_max_adv_window_end_off());
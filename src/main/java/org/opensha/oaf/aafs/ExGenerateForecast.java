@@ -648,6 +648,7 @@ public class ExGenerateForecast extends ServerExecTask {
 
 		ForecastParameters forecast_params = new ForecastParameters();
 		ForecastResults forecast_results = new ForecastResults();
+		forecast_results.etas_cache_key = tstatus.event_id;
 
 		try {
 			forecast_params.fetch_all_params (next_forecast_lag, fcmain, tstatus.analyst_options.analyst_params);
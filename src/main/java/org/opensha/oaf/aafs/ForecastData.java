@@ -16,6 +16,8 @@ import java.io.IOException;
 import org.opensha.oaf.util.MarshalImpArray;
 import org.opensha.oaf.util.MarshalImpJsonReader;
 import org.opensha.oaf.util.MarshalImpJsonWriter;
+import org.opensha.oaf.util.MarshalImpJsonStreamReader;
+import org.opensha.oaf.util.MarshalImpJsonStreamWriter;
 import org.opensha.oaf.util.MarshalReader;
 import org.opensha.oaf.util.MarshalWriter;
 import org.opensha.oaf.util.MarshalException;
@@ -185,7 +187,7 @@ public class ForecastData implements Marshalable {
 	// Convert to JSON string.
 
 	public String to_json () {
-		MarshalImpJsonWriter writer = new MarshalImpJsonWriter();
+		MarshalImpJsonStreamWriter writer = new MarshalImpJsonStreamWriter();
 		marshal (writer, null);
 		writer.check_write_complete ();
 		String json_string = writer.get_json_string();
@@ -199,7 +201,7 @@ public class ForecastData implements Marshalable {
 	// Note: This also rebuilds transient data.
 
 	public ForecastData from_json (String json_string) {
-		MarshalImpJsonReader reader = new MarshalImpJsonReader (json_string);
+		MarshalImpJsonStreamReader reader = new MarshalImpJsonStreamReader (json_string);
 		unmarshal (reader, null);
 		reader.check_read_complete ();
 		rebuild_data();
@@ -213,7 +215,7 @@ public class ForecastData implements Marshalable {
 	// Note: This does not rebuild transient data.
 
 	public ForecastData from_json_no_rebuild (String json_string) {
-		MarshalImpJsonReader reader = new MarshalImpJsonReader (json_string);
+		MarshalImpJsonStreamReader reader = new MarshalImpJsonStreamReader (json_string);
 		unmarshal (reader, null);
 		reader.check_read_complete ();
 		return this;
@@ -229,10 +231,9 @@ public class ForecastData implements Marshalable {
 		try (
 			BufferedWriter file_writer = new BufferedWriter (new FileWriter (filename));
 		){
-			MarshalImpJsonWriter writer = new MarshalImpJsonWriter();
+			MarshalImpJsonStreamWriter writer = new MarshalImpJsonStreamWriter (file_writer);
 			marshal (writer, null);
 			writer.check_write_complete ();
-			writer.write_json_file (file_writer);
 		}
 		catch (IOException e) {
 			throw new MarshalException ("ForecastData: I/O error while writing JSON file: " + filename, e);
@@ -252,7 +253,7 @@ public class ForecastData implements Marshalable {
 		try (
 			BufferedReader file_reader = new BufferedReader (new FileReader (filename));
 		){
-			MarshalImpJsonReader reader = new MarshalImpJsonReader (file_reader);
+			MarshalImpJsonStreamReader reader = new MarshalImpJsonStreamReader (file_reader);
 			unmarshal (reader, null);
 			reader.check_read_complete ();
 			rebuild_data();
@@ -275,7 +276,7 @@ public class ForecastData implements Marshalable {
 		try (
 			BufferedReader file_reader = new BufferedReader (new FileReader (filename));
 		){
-			MarshalImpJsonReader reader = new MarshalImpJsonReader (file_reader);
+			MarshalImpJsonStreamReader reader = new MarshalImpJsonStreamReader (file_reader);
 			unmarshal (reader, null);
 			reader.check_read_complete ();
 		}
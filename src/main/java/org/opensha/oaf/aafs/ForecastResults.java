@@ -941,6 +941,11 @@ public class ForecastResults implements Marshalable {
 
 	public OEtasLogInfo etas_log_info = null;
 
+	// Key for keeping ETAS fitting data between successive forecasts, typically the timeline ID, or null if none.
+	// This field is not marshaled.
+
+	public String etas_cache_key = null;
+
 	// True if results sent to PDL. [v2]
 
 	public boolean etas_pdl = false;
@@ -1107,6 +1112,7 @@ public class ForecastResults implements Marshalable {
 					// Set up the communication area
 
 					exec_env.setup_comm_area (exec_timer);
+					exec_env.omori_cache_key = etas_cache_key;
 
 					// Select files we want
 
@@ -124,6 +124,14 @@ public interface MongoDBCollHandle {
 		return;
 	}
 
+	// Make a compound index on two fields, with the given name.
+	// The first field is descending, and the second field is ascending.
+
+	public default void make_compound_index_desc_asc (String field1, String field2, String name) {
+		createIndex (Indexes.compoundIndex (Indexes.descending (field1), Indexes.ascending (field2)), (new IndexOptions()).name (name));
+		return;
+	}
+
 	// Make a unique index on one field, with the given name.
 
 	public default void make_unique_index (String field, String name) {
@@ -269,6 +277,19 @@ public interface MongoDBCollHandle {
 		return updateOne (filter, update, null);
 	}
 
+	// Update all matching documents.
+	// Parameters:
+	//  filter = Filter to use for query (constructed by Filters), cannot be null.
+	//  update = Update operation to perform (constructed by Updates), cannot be null.
+	//  options = Options, or null if none, defaults to null.
+	// Returns update result object.
+
+	public UpdateResult updateMany (Bson filter, Bson update, UpdateOptions options);
+
+	public default UpdateResult updateMany (Bson filter, Bson update) {
+		return updateMany (filter, update, null);
+	}
+
 	// Open a change stream iterator on the collection.
 	// Parameters:
 	//  filter = Filter to use for change stream (constructed by Filters), or null if no filter, defaults to null.
@@ -757,6 +757,40 @@ public class MongoDBContent implements AutoCloseable {
 			return result;
 		}
 
+		// Update all matching documents.
+		// Parameters:
+		//  filter = Filter to use for query (constructed by Filters), cannot be null.
+		//  update = Update operation to perform (constructed by Updates), cannot be null.
+		//  options = Options, or null if none, defaults to null.
+		// Returns update result object.
+
+		@Override
+		public UpdateResult updateMany (Bson filter, Bson update, UpdateOptions options) {
+			UpdateResult result;
+			try {
+				ClientSession client_session = get_op_session_update();
+
+				if (client_session != null) {
+					if (options != null) {
+						result = mongo_collection.updateMany (client_session, filter, update, options);
+					} else {
+						result = mongo_collection.updateMany (client_session, filter, update);
+					}
+				} else {
+					if (options != null) {
+						result = mongo_collection.updateMany (filter, update, options);
+					} else {
+						result = mongo_collection.updateMany (filter, update);
+					}
+				}
+
+			}
+			catch (MongoException e) {
+				throw new DBDriverException (make_locus(e), "MongoDBCollHandle.updateMany: MongoDB exception: " + make_coll_id_message(), e);
+			}
+			return result;
+		}
+
 		// Open a change stream iterator on the collection.
 		// Parameters:
 		//  filter = Filter to use for change stream (constructed by Filters), or null if no filter, defaults to null.
@@ -26,6 +26,7 @@ import org.opensha.oaf.util.TestMode;
 import org.opensha.oaf.util.MarshalReader;
 import org.opensha.oaf.util.MarshalWriter;
 import org.opensha.oaf.util.MarshalException;
+import org.opensha.oaf.util.MarshalImpBsonWriter;
 
 
 /**
@@ -993,6 +994,37 @@ public class MongoDBUtil implements AutoCloseable {
 
 
 
+	// Read marshaled details from a document.
+	// The field can hold a BSON document or array written by MarshalImpBsonWriter, or
+	// (in records written before native storage) a string containing JSON.
+	// Returns a Document or List suitable for MarshalImpBsonReader, or null if the
+	// field is null or an empty string.
+	// An exception is thrown if the field is missing or cannot be converted.
+
+	public static Object doc_get_marshal_details (Document doc, String name) {
+
+		Object x;
+		try {
+			if (!( doc.containsKey (name) )) {
+				throw new NullPointerException ("Missing field");
+			}
+			x = doc.get (name);
+			if (x instanceof String) {
+				x = MarshalImpBsonWriter.json_string_to_bson ((String)x);
+			}
+			else if (!( x == null || x instanceof Document || x instanceof List )) {
+				throw new ClassCastException ("Unexpected type for marshaled details: " + x.getClass().getName());
+			}
+		} catch (Exception e) {
+			throw new DBCorruptException ("MongoDB document read: Error converting field: " + name, e);
+		}
+
+		return x;
+	}
+
+
+
+
 	// Convert a long array to a list of Long.
 
 	public static List<Long> long_array_to_list (long[] arr) {
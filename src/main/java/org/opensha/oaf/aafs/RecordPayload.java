@@ -1,6 +1,8 @@
 package org.opensha.oaf.aafs;
 
 import org.opensha.oaf.util.MarshalWriter;
+import org.opensha.oaf.util.MarshalImpBsonReader;
+import org.opensha.oaf.util.MarshalImpBsonWriter;
 
 import org.bson.types.ObjectId;
 
@@ -22,22 +24,55 @@ import org.bson.types.ObjectId;
  */
 public class RecordPayload implements MarshalWriter {
 
+	// True if the payload is held as BSON, false if it is held as a JSON string.
+
+	private boolean f_bson;
+
 	// The JSON string.
 
 	private String json_string;
 
+	// The BSON container (Document or List, or null).
+
+	private Object bson_container;
+
 	// Constructor saves the JSON string.
 
 	public RecordPayload (String json_string) {
+		this.f_bson = false;
 		this.json_string = json_string;
+		this.bson_container = null;
+	}
+
+	// Make a payload that holds a BSON container (Document or List, or null).
+
+	public static RecordPayload from_bson (Object bson_container) {
+		RecordPayload payload = new RecordPayload (null);
+		payload.f_bson = true;
+		payload.bson_container = bson_container;
+		return payload;
 	}
 
 	// Get the JSON string.
+	// If the payload is held as BSON, it is converted to JSON (empty string if none).
 
 	public String get_json_string () {
+		if (f_bson) {
+			return MarshalImpBsonReader.bson_to_json_string (bson_container);
+		}
 		return json_string;
 	}
 
+	// Get the BSON container.
+	// If the payload is held as JSON, it is converted to BSON (null if none).
+
+	public Object get_bson_container () {
+		if (f_bson) {
+			return bson_container;
+		}
+		return MarshalImpBsonWriter.json_string_to_bson (json_string);
+	}
+
 
 
 
@@ -45,7 +80,12 @@ public class RecordPayload implements MarshalWriter {
 
 	@Override
 	public String toString() {
-		String str = "RecordPayload: " + ((json_string == null) ? ("null") : ("len = " + json_string.length()));
+		String str;
+		if (f_bson) {
+			str = "RecordPayload: " + ((bson_container == null) ? "null" : "bson");
+		} else {
+			str = "RecordPayload: " + ((json_string == null) ? ("null") : ("len = " + json_string.length()));
+		}
 		return str;
 	}
 
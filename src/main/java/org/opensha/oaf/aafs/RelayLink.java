@@ -140,6 +140,13 @@ public class RelayLink extends ServerComponent {
 	private RiServerStatus local_status;
 
 
+	// Lock object that protects the primary state in the local status, and replacement of the local status.
+	// The primary state can be read by tasks executing in dispatcher worker threads (through is_primary_state),
+	// while the dispatcher thread polls the relay link.
+
+	private final Object prist_lock = new Object();
+
+
 	// The status received from the partner server.
 	// The is the status most recently received from the partner server.
 	// Unlike other relay items, items received from the partner server are not stored in the database.
@@ -240,7 +247,9 @@ public class RelayLink extends ServerComponent {
 
 		// No local status at this point
 
-		local_status = null;
+		synchronized (prist_lock) {
+			local_status = null;
+		}
 
 		// Get server status from database
 
@@ -265,7 +274,9 @@ public class RelayLink extends ServerComponent {
 
 		// Set local status
 
-		local_status = sstat_payload;
+		synchronized (prist_lock) {
+			local_status = sstat_payload;
+		}
 
 		// Mark it changed
 
@@ -332,7 +343,9 @@ public class RelayLink extends ServerComponent {
 
 		// Set shutdown state
 
-		local_status.fill_shutdown_state();
+		synchronized (prist_lock) {
+			local_status.fill_shutdown_state();
+		}
 		
 		// Store the local status
 
@@ -2801,7 +2814,9 @@ public class RelayLink extends ServerComponent {
 	// Get the current primary state.
 
 	private int get_primary_state () {
-		return local_status.primary_state;
+		synchronized (prist_lock) {
+			return local_status.primary_state;
+		}
 	}
 
 	// Set the current primary state.
@@ -2809,10 +2824,12 @@ public class RelayLink extends ServerComponent {
 	// Returns true if state changed.
 
 	private boolean set_primary_state (int new_primary_state) {
-		if (local_status.primary_state != new_primary_state) {
-			local_status.primary_state = new_primary_state;
-			set_status_changed();
-			return true;
+		synchronized (prist_lock) {
+			if (local_status.primary_state != new_primary_state) {
+				local_status.primary_state = new_primary_state;
+				set_status_changed();
+				return true;
+			}
 		}
 		return false;
 	}
@@ -3275,7 +3292,9 @@ public class RelayLink extends ServerComponent {
 
 				// Set shutdown state in local status
 
-				local_status.fill_shutdown_state();
+				synchronized (prist_lock) {
+					local_status.fill_shutdown_state();
+				}
 			}
 
 			// Make certain that the relay thread is terminated in all cases
@@ -3512,49 +3531,11 @@ public class RelayLink extends ServerComponent {
 
 
 
-	// Return true if currently in primary state.
-	// This may be called at any time, even if the relay link is not initialized.
-	// Note: Anything other than secondary state returns true,
-	// including the case where the relay link has not been initialized.
-
-	public boolean is_primary_state () {
-		if (local_status == null || get_primary_state() != PRIST_SECONDARY) {
-			return true;
-		}
-		return false;
-	}
-
-
-
-
-//	// Initialize the status in the database to shutdown state.
-//	// Also updates the fixed fields in the server status.
-//	// Note: This may be called only before initialization.
-//
-//	public void init_db_status () {
-//
-//		// Get the current time
-//
-//		long time_now = ServerClock.get_time();
-//
-//		// Change status in the database to shutdown state
-//
-//		shutdown_db_status (time_now);
-//	
-//		return;
-//	}
-
-
-
-
-	//=====[ Testing ]=====
-
-
-
-
 	// Run poll operation during task idle time, without updating the primary state.
 	// This should be run during idle time, not during a MongoDB transaction.
 	// This never switches the timeline to primary or secondary state.
+	// The dispatcher uses this while tasks are executing in worker threads, so that
+	// the primary state does not change underneath a running task.
 	// Returns true if it did significant work, false if not.
 
 	public boolean poll_relay_link_no_prist () {
@@ -3595,6 +3576,49 @@ public class RelayLink extends ServerComponent {
 
 
 
+	// Return true if currently in primary state.
+	// This may be called at any time, even if the relay link is not initialized.
+	// Note: Anything other than secondary state returns true,
+	// including the case where the relay link has not been initialized.
+	// This may be called from a dispatcher worker thread.
+
+	public boolean is_primary_state () {
+		synchronized (prist_lock) {
+			if (local_status == null || get_primary_state() != PRIST_SECONDARY) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+
+
+//	// Initialize the status in the database to shutdown state.
+//	// Also updates the fixed fields in the server status.
+//	// Note: This may be called only before initialization.
+//
+//	public void init_db_status () {
+//
+//		// Get the current time
+//
+//		long time_now = ServerClock.get_time();
+//
+//		// Change status in the database to shutdown state
+//
+//		shutdown_db_status (time_now);
+//	
+//		return;
+//	}
+
+
+
+
+	//=====[ Testing ]=====
+
+
+
+
 	// Get a one-line summary of local status.
 
 	public String get_local_status_summary () {
@@ -3659,7 +3683,9 @@ public class RelayLink extends ServerComponent {
 
 		// Status structures
 
-		local_status = null;
+		synchronized (prist_lock) {
+			local_status = null;
+		}
 		remote_status = null;
 		remote_status_item = null;
 
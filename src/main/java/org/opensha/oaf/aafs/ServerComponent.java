@@ -80,6 +80,70 @@ public class ServerComponent {
 
 
 
+	// Task priority classes.
+	// When priority scheduling is enabled, ready tasks execute in order of decreasing
+	// priority class, and in order of execution time within each class.
+
+	public static final int TASKPRI_MIN = 1;				// Minimum allowed priority
+	public static final int TASKPRI_BACKGROUND = 1;			// Background or unknown operations
+	public static final int TASKPRI_TIMELINE = 2;			// Forecasts and other operations on an existing timeline
+	public static final int TASKPRI_INTAKE = 3;				// Event intake and analyst actions
+	public static final int TASKPRI_CONTROL = 4;			// Server control operations
+	public static final int TASKPRI_MAX = 4;				// Maximum allowed priority
+
+	// Return the priority class of an opcode.
+
+	public static int get_task_priority (int opcode) {
+		switch (opcode) {
+
+		case OPCODE_NO_OP:
+		case OPCODE_SHUTDOWN:
+		case OPCODE_CON_MESSAGE:
+		case OPCODE_POLL_COMCAT_START:
+		case OPCODE_POLL_COMCAT_STOP:
+		case OPCODE_CLEANUP_PDL_START:
+		case OPCODE_CLEANUP_PDL_STOP:
+		case OPCODE_SET_RELAY_MODE:
+		case OPCODE_HEALTH_MON_RESET:
+		case OPCODE_HEALTH_MON_START:
+		case OPCODE_HEALTH_MON_STOP:
+			return TASKPRI_CONTROL;
+
+		case OPCODE_INTAKE_SYNC:
+		case OPCODE_INTAKE_PDL:
+		case OPCODE_INTAKE_POLL:
+		case OPCODE_ANALYST_INTERVENE:
+		case OPCODE_ANALYST_SELECTION:
+		case OPCODE_POLL_COMCAT_RUN:
+			return TASKPRI_INTAKE;
+
+		case OPCODE_GEN_FORECAST:
+		case OPCODE_GEN_PDL_REPORT:
+		case OPCODE_GEN_EXPIRE:
+		case OPCODE_ALIAS_SPLIT:
+		case OPCODE_ALIAS_STOP:
+		case OPCODE_ALIAS_REVIVE:
+		case OPCODE_NEXT_TIMELINE_OP:
+			return TASKPRI_TIMELINE;
+		}
+		return TASKPRI_BACKGROUND;
+	}
+
+	// Return a string describing a priority class.
+
+	public static String get_task_priority_as_string (int x) {
+		switch (x) {
+		case TASKPRI_BACKGROUND: return "TASKPRI_BACKGROUND";
+		case TASKPRI_TIMELINE: return "TASKPRI_TIMELINE";
+		case TASKPRI_INTAKE: return "TASKPRI_INTAKE";
+		case TASKPRI_CONTROL: return "TASKPRI_CONTROL";
+		}
+		return "TASKPRI_INVALID(" + x + ")";
+	}
+
+
+
+
 	// Special execution times.
 
 	public static final long EXEC_TIME_ACTIVE = 0L;						// Task is active
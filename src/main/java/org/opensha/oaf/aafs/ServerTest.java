@@ -5992,6 +5992,264 @@ public class ServerTest {
 
 
 
+	// Test #97 - Run two timelines concurrently in worker threads, with a relay mode change pending.
+
+	public static void test97(String[] args) throws Exception {
+
+		// 7 additional arguments
+
+		if (args.length != 8) {
+			System.err.println ("ServerTest : Invalid 'test97' or 'exec_concurrent_relay' subcommand");
+			return;
+		}
+
+		long cutoff_time = SimpleUtils.string_or_number_or_now_to_time (args[1]);		// ISO-8601 time, or number of milliseconds since epoch, or "now"
+		String logfile = args[2];		// can be "-" for none
+		String event_id_1 = args[3];
+		String event_id_2 = args[4];
+		int relay_mode = RelayLink.convert_user_string_to_mode (args[5]);
+		int configured_primary = RelayLink.convert_user_string_to_configured_primary (args[6]);
+		int num_workers = Integer.parseInt (args[7]);
+
+		if (relay_mode == 0) {
+			System.out.println ("Invalid relay mode: " + args[5]);
+			return;
+		}
+
+		if (configured_primary < 0) {
+			System.out.println ("Invalid primary server number: " + args[6]);
+			return;
+		}
+
+		if (num_workers < 2) {
+			System.out.println ("Invalid num_workers = " + num_workers);
+			return;
+		}
+
+		String my_logfile = null;
+		if (!( logfile.equals ("-") )) {
+			my_logfile = "'" + logfile + "'";		// makes this literal, so time is not substituted
+		}
+
+		// Turn off excessive log messages
+
+		MongoDBLogControl.disable_excessive();
+
+		// Get a task dispatcher and server group
+
+		TaskDispatcher dispatcher = new TaskDispatcher();
+		ServerGroup sg = dispatcher.get_server_group();
+
+		// Connect to MongoDB
+
+		try (
+			RelayLink.LinkSentinel rl_sentinel = sg.relay_link.make_link_sentinel();
+			MongoDBUtil mongo_instance = new MongoDBUtil();
+			TimeSplitOutputStream sum_tsop = TimeSplitOutputStream.make_tsop (my_logfile, 0L);
+		){
+
+			// Install the log file
+
+			dispatcher.set_summary_log_tsop (sum_tsop);
+
+			// Set up task context
+
+			dispatcher.setup_task_context();
+
+			// Initialize relay link
+
+			sg.relay_link.init_relay_link();
+			sg.relay_link.poll_relay_link();
+
+			System.out.println (sg.relay_link.get_local_status_summary());
+			System.out.println (sg.relay_link.get_remote_status_summary());
+
+			// Post intake commands for the two timelines
+
+			long the_time = ServerClock.get_time();
+
+			for (String event_id : new String[]{event_id_1, event_id_2}) {
+				OpIntakeSync payload = new OpIntakeSync();
+				payload.setup ();
+
+				System.out.println ("Posting intake, event_id = " + event_id);
+				TaskDispatcher.post_task (event_id, the_time, the_time, "ServerTest", TaskDispatcher.OPCODE_INTAKE_SYNC, 0, payload.marshal_task());
+			}
+
+			// Post the relay mode change, so the primary state change comes due while the timelines are executing
+
+			OpSetRelayMode relay_payload = new OpSetRelayMode();
+			relay_payload.setup (new RelayConfig (the_time, relay_mode, configured_primary));
+
+			System.out.println ("Posting relay mode change, relay_mode = " + args[5] + ", configured_primary = " + args[6]);
+			TaskDispatcher.post_task (ServerComponent.EVID_RELAY, the_time, the_time, "ServerTest", TaskDispatcher.OPCODE_SET_RELAY_MODE, 0, relay_payload.marshal_task());
+
+			// Run tasks in worker threads
+
+			boolean f_verbose = true;
+
+			int task_count = dispatcher.test_run_workers_until (cutoff_time, num_workers, f_verbose);
+
+			System.out.println ("Number of tasks executed = " + task_count);
+
+			// Display final status
+
+			dispatcher.setup_task_context();
+			sg.relay_link.poll_relay_link();
+
+			System.out.println (sg.relay_link.get_local_status_summary());
+			System.out.println (sg.relay_link.get_remote_status_summary());
+
+			// Shut down relay link
+
+			sg.relay_link.shutdown_relay_link();
+		}
+
+		return;
+	}
+
+
+
+
+	// Test #98 - Add tasks for several events, then activate and delete them using priority scheduling.
+
+	public static void test98(String[] args) {
+
+		// 2 additional arguments
+
+		if (args.length != 3) {
+			System.err.println ("ServerTest : Invalid 'test98' or 'task_priority_activate_delete' subcommand");
+			return;
+		}
+
+		long cutoff_time = Long.parseLong(args[1]);
+		long priority_cutoff = Long.parseLong(args[2]);
+
+		// Connect to MongoDB
+
+		try (
+			MongoDBUtil mongo_instance = new MongoDBUtil();
+		){
+
+			// Assign priority to any old tasks
+
+			long backfill_count = PendingTask.backfill_task_priority();
+			System.out.println ("Backfilled tasks = " + backfill_count);
+
+			// Event_A has a forecast, followed by a higher priority analyst intervention
+
+			PendingTask.submit_task ("Event_A", 10100L, 10000L, "Submitter_A1", TaskDispatcher.OPCODE_GEN_FORECAST, 1, null);
+			PendingTask.submit_task ("Event_A", 20100L, 20000L, "Submitter_A2", TaskDispatcher.OPCODE_ANALYST_INTERVENE, 2, null);
+
+			// Event_B has an intake
+
+			PendingTask.submit_task ("Event_B", 30100L, 30000L, "Submitter_B1", TaskDispatcher.OPCODE_INTAKE_SYNC, 3, null);
+
+			// Event_C has a PDL report
+
+			PendingTask.submit_task ("Event_C", 15100L, 15000L, "Submitter_C1", TaskDispatcher.OPCODE_GEN_PDL_REPORT, 4, null);
+
+			// Activate and delete tasks until there are none
+			// (Tasks for Event_A must stay in order of execution time)
+
+			for (;;) {
+				PendingTask task = PendingTask.activate_first_ready_task (cutoff_time, null, priority_cutoff);
+
+				if (task == null) {
+					System.out.println ("null");
+					break;
+				}
+
+				PendingTask.delete_task (task);
+
+				System.out.println (task.get_event_id() + ": "
+					+ "opcode = " + task.get_opcode()
+					+ ", stage = " + task.get_stage()
+					+ ", priority = " + TaskDispatcher.get_task_priority_as_string (task.get_priority()));
+			}
+		}
+
+		return;
+	}
+
+
+
+
+	// Test #99 - Round-trip a task with float-valued details through an entity backup.
+
+	public static void test99(String[] args) {
+
+		// 1 additional argument
+
+		if (args.length != 2) {
+			System.err.println ("ServerTest : Invalid 'test99' or 'task_backup_float' subcommand");
+			return;
+		}
+
+		float float_value = Float.parseFloat (args[1]);
+
+		// Build a task whose details contain a float, a double, and a string
+
+		MarshalWriter details = PendingTask.begin_details();
+		details.marshalMapBegin (null);
+		details.marshalFloat ("float_value", float_value);
+		details.marshalDouble ("double_value", (double)float_value);
+		details.marshalString ("string_value", "Details_float");
+		details.marshalMapEnd ();
+
+		PendingTask task = PendingTask.build_task ("Event_F", 10100L, 10000L, "Submitter_F", 101, 1, details);
+
+		// Write the backup
+
+		MarshalImpJsonWriter writer = new MarshalImpJsonWriter();
+		PendingTask.marshal_poly (writer, null, task);
+		writer.check_write_complete();
+		String backup = writer.get_json_string();
+
+		System.out.println ("Backup:");
+		System.out.println (backup);
+
+		// Read the backup
+
+		MarshalImpJsonReader reader = new MarshalImpJsonReader (backup);
+		PendingTask task2 = PendingTask.unmarshal_poly (reader, null);
+		reader.check_read_complete();
+
+		// Read the details
+
+		MarshalReader details2 = task2.get_details();
+		details2.unmarshalMapBegin (null);
+		float float_value2 = details2.unmarshalFloat ("float_value");
+		double double_value2 = details2.unmarshalDouble ("double_value");
+		String string_value2 = details2.unmarshalString ("string_value");
+		details2.unmarshalMapEnd ();
+
+		System.out.println ();
+		System.out.println ("float_value = " + float_value2);
+		System.out.println ("double_value = " + double_value2);
+		System.out.println ("string_value = " + string_value2);
+
+		// Write the backup again, it should be identical
+
+		MarshalImpJsonWriter writer2 = new MarshalImpJsonWriter();
+		PendingTask.marshal_poly (writer2, null, task2);
+		writer2.check_write_complete();
+		String backup2 = writer2.get_json_string();
+
+		System.out.println ();
+		if (float_value2 == float_value && backup2.equals (backup)) {
+			System.out.println ("Round trip OK");
+		} else {
+			System.out.println ("Round trip MISMATCH:");
+			System.out.println (backup2);
+		}
+
+		return;
+	}
+
+
+
+
 	// Test dispatcher.
 	
 	public static void main(String[] args) {
@@ -7681,6 +7939,63 @@ public class ServerTest {
 			return;
 		}
 
+		// Subcommand : Test #97
+		// Command format:
+		//  test97  cutoff_time  logfile  event_id_1  event_id_2  relay_mode  configured_primary  num_workers
+		// Run two timelines concurrently in worker threads, with a relay mode change pending.
+		// The logfile can be "-" for none.
+		// The cutoff_time can be in ISO-8601 format, or an integer giving milliseconds since the epoch, or "now".
+		// The relay_mode and configured_primary are as for the change_relay_mode command.
+		// The num_workers must be at least 2.
+		// Primary state changes should be deferred until no worker task is executing.
+
+		if (args[0].equalsIgnoreCase ("test97") || args[0].equalsIgnoreCase ("exec_concurrent_relay")) {
+
+			try {
+				test97(args);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+
+			return;
+		}
+
+		// Subcommand : Test #98
+		// Command format:
+		//  test98  cutoff_time  priority_cutoff
+		// Add tasks for several events, then activate and delete them using priority scheduling.
+		// Tasks with execution time after priority_cutoff are taken in priority order, but the
+		// tasks for any one event must be taken in order of execution time.
+
+		if (args[0].equalsIgnoreCase ("test98") || args[0].equalsIgnoreCase ("task_priority_activate_delete")) {
+
+			try {
+				test98(args);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+
+			return;
+		}
+
+		// Subcommand : Test #99
+		// Command format:
+		//  test99  float_value
+		// Round-trip a task with float-valued details through an entity backup.
+		// The float should appear in the backup in its shortest decimal form (e.g., 0.1),
+		// and the backup written after reading it back should be identical.
+
+		if (args[0].equalsIgnoreCase ("test99") || args[0].equalsIgnoreCase ("task_backup_float")) {
+
+			try {
+				test99(args);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+
+			return;
+		}
+
 		// Unrecognized subcommand.
 
 		System.err.println ("ServerTest : Unrecognized subcommand : " + args[0]);
@@ -1,6 +1,7 @@
 package org.opensha.oaf.aafs;
 
 import java.util.List;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
 
 import java.io.IOException;
@@ -12,6 +13,7 @@ import org.opensha.oaf.aafs.entity.CatalogSnapshot;
 import org.opensha.oaf.aafs.entity.TimelineEntry;
 import org.opensha.oaf.aafs.entity.AliasFamily;
 
+import org.opensha.oaf.util.AutoExecutorService;
 import org.opensha.oaf.util.MarshalReader;
 import org.opensha.oaf.util.MarshalWriter;
 import org.opensha.oaf.util.SimpleUtils;
@@ -124,88 +126,106 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 	//----- Task context -----
 	//
 	// These variables are used by the task dispatcher to supply context for the currently-executing task.
+	// They are kept per-thread, so that tasks running on worker threads each see their own context.
 
 
-	// Effective time at which the current task began to execute.
+	private static class TaskContext {
 
-	private long dispatcher_time = 0L;
+		// Effective time at which the current task began to execute.
 
-	// True time at which the current task began to execute.
+		public long dispatcher_time = 0L;
 
-	private long dispatcher_true_time = 0L;
+		// True time at which the current task began to execute.
 
-	// Action configuration parameters for the current task.
+		public long dispatcher_true_time = 0L;
 
-	private ActionConfig dispatcher_action_config = null;
+		// Action configuration parameters for the current task.
 
+		public ActionConfig dispatcher_action_config = null;
 
+		//----- Task results -----
+		//
+		// These variables are used by the currently-executing task to communicate results to the task dispatcher.
 
+		// Time to insert in log entry for current task.
+		// Defaults to dispatcher_time.
 
-	// Get the effective time at which the current task began to execute.
+		public long taskres_log_time = 0L;
 
-	public long get_time () {
-		return dispatcher_time;
-	}
+		// Remark to insert in log entry for current task.
+		// Defaults to "".
 
+		public String taskres_log_remark = "";
 
+		// Execution time to use when staging current task.
 
+		public long taskres_exec_time = 0L;
 
-	// Get the true time at which the current task began to execute.
+		// Stage to use when staging current task.
 
-	public long get_true_time () {
-		return dispatcher_true_time;
+		public int taskres_stage = 0;
+
+		// Event ID to use when staging current task, or null to leave event ID unchanged.
+
+		public String taskres_event_id = null;
 	}
 
 
+	// The task context for each thread.
 
+	private final ThreadLocal<TaskContext> task_context =
+		new ThreadLocal<TaskContext>() {
+			@Override protected TaskContext initialValue () {
+				return new TaskContext();
+			}
+		};
 
-	// Get the action configuration parameters for the current task.
 
-	public ActionConfig get_action_config () {
-		return dispatcher_action_config;
+	// Get the task context for the current thread.
+
+	private TaskContext ctx () {
+		return task_context.get();
 	}
 
 
 
 
-	// Refresh the task context variables.
+	// Get the effective time at which the current task began to execute.
 
-	private void refresh_task_context () {
-		dispatcher_time = ServerClock.get_time();
-		dispatcher_true_time = ServerClock.get_true_time();
-		dispatcher_action_config = new ActionConfig();
-		return;
+	public long get_time () {
+		return ctx().dispatcher_time;
 	}
 
 
 
 
-	//----- Task results -----
-	//
-	// These variables are used by the currently-executing task to communicate results to the task dispatcher.
+	// Get the true time at which the current task began to execute.
 
+	public long get_true_time () {
+		return ctx().dispatcher_true_time;
+	}
 
-	// Time to insert in log entry for current task.
-	// Defaults to dispatcher_time.
 
-	private long taskres_log_time = 0L;
 
-	// Remark to insert in log entry for current task.
-	// Defaults to "".
 
-	private String taskres_log_remark = "";
+	// Get the action configuration parameters for the current task.
 
-	// Execution time to use when staging current task.
+	public ActionConfig get_action_config () {
+		return ctx().dispatcher_action_config;
+	}
 
-	private long taskres_exec_time = 0L;
 
-	// Stage to use when staging current task.
 
-	private int taskres_stage = 0;
 
-	// Event ID to use when staging current task, or null to leave event ID unchanged.
+	// Refresh the task context variables.
 
-	private String taskres_event_id = null;
+	private void refresh_task_context () {
+		TaskContext tc = ctx();
+		tc.dispatcher_time = ServerClock.get_time();
+		tc.dispatcher_true_time = ServerClock.get_true_time();
+		tc.dispatcher_action_config = new ActionConfig();
+		return;
+	}
 
 
 
@@ -213,7 +233,7 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 	// Set the remark to be used in a log entry, during task disposition.
 
 	public void set_taskres_log (String log_remark) {
-		taskres_log_remark = log_remark;
+		ctx().taskres_log_remark = log_remark;
 		return;
 	}
 
@@ -223,7 +243,7 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 	// Set and display the remark to be used in a log entry, during task disposition.
 
 	public void set_display_taskres_log (String log_remark) {
-		taskres_log_remark = log_remark;
+		ctx().taskres_log_remark = log_remark;
 		System.err.println (log_remark);
 		return;
 	}
@@ -234,8 +254,9 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 	// Set the time and remark to be used in a log entry, during task disposition.
 
 	public void set_taskres_log (long log_time, String log_remark) {
-		taskres_log_time = log_time;
-		taskres_log_remark = log_remark;
+		TaskContext tc = ctx();
+		tc.taskres_log_time = log_time;
+		tc.taskres_log_remark = log_remark;
 		return;
 	}
 
@@ -245,9 +266,10 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 	// Set the execution time and stage to be used when staging a task, during task disposition.
 
 	public void set_taskres_stage (long exec_time, int stage) {
-		taskres_exec_time = exec_time;
-		taskres_stage = stage;
-		taskres_event_id = null;
+		TaskContext tc = ctx();
+		tc.taskres_exec_time = exec_time;
+		tc.taskres_stage = stage;
+		tc.taskres_event_id = null;
 		return;
 	}
 
@@ -257,9 +279,10 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 	// Set the execution time and stage to be used when staging a task, during task disposition.
 
 	public void set_taskres_stage (long exec_time, int stage, String event_id) {
-		taskres_exec_time = exec_time;
-		taskres_stage = stage;
-		taskres_event_id = event_id;
+		TaskContext tc = ctx();
+		tc.taskres_exec_time = exec_time;
+		tc.taskres_stage = stage;
+		tc.taskres_event_id = event_id;
 		return;
 	}
 
@@ -320,6 +343,21 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 
 	private int idle_force_task_count = 2;
 
+	// True to wait on a change stream over the task queue, so posted tasks are seen promptly.
+	// If false, or if change streams are not available, the dispatcher polls.
+
+	private boolean task_watch_enabled = true;
+
+	// The minimum time between checks of the task change stream, in milliseconds.
+	// (Normally each check blocks in the server for about 1 second; this guards against spinning.)
+
+	private long task_watch_pause = 100L;				// 100 milliseconds
+
+	// The maximum time that relay link primary state changes can be deferred while worker tasks are executing, in milliseconds.
+	// After this time, the dispatcher waits for all worker tasks to complete, and then lets the primary state change.
+
+	private long relay_prist_defer_max = 300000L;		// 5 minutes
+
 
 
 
@@ -419,7 +457,7 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 
 		for (TimeSplitOutputStream tsop : tsop_list) {
 			try {
-				tsop.redirect (dispatcher_true_time);
+				tsop.redirect (ctx().dispatcher_true_time);
 			} catch (IOException e) {
 			}
 		}
@@ -622,11 +660,511 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 
 
 
+	//----- Task queue change stream -----
+
+	// The change stream iterator over the task queue, or null if not available.
+
+	private RecordIterator<PendingTask> task_watch = null;
+
+
+
+
+	// Open the change stream over the task queue.
+	// Must be called while connected to MongoDB.
+	// If change streams are not available (for example, not a replica set), then
+	// task_watch is left null and the dispatcher falls back to polling.
+
+	private void open_task_watch () {
+		task_watch = null;
+		if (task_watch_enabled) {
+			try {
+				task_watch = PendingTask.watch_task_changes();
+			} catch (Exception e) {
+				task_watch = null;
+				if (dispatcher_verbose) {
+					System.out.println ("TaskDispatcher: Task queue change stream not available, using polling: " + e.toString());
+				}
+			}
+		}
+		return;
+	}
+
+
+
+
+	// Close the change stream over the task queue, catching all exceptions.
+
+	private void close_task_watch_nx () {
+		RecordIterator<PendingTask> my_task_watch = task_watch;
+		task_watch = null;
+		if (my_task_watch != null) {
+			try {
+				my_task_watch.close();
+			} catch (Exception e) {
+			}
+		}
+		return;
+	}
+
+
+
+
+	// Wait until a task is posted or staged, or the given delay has elapsed.
+	// Parameters:
+	//  delay = Maximum time to wait, in milliseconds.
+	// If there is a change stream, wait on it; otherwise just sleep for the delay.
+	// If the change stream fails, it is closed and the remaining time is spent sleeping.
+	// Note: Elapsed time is measured with the system clock, since server time may be frozen.
+
+	private void wait_for_task_change (long delay) {
+		long wait_end = System.currentTimeMillis() + delay;
+
+		// Wait on the change stream, if we have one
+
+		if (task_watch != null) {
+			try {
+				for (;;) {
+					long check_time = System.currentTimeMillis();
+					if (task_watch.hasNext()) {
+						task_watch.next();
+						return;
+					}
+					long time_now = System.currentTimeMillis();
+					if (time_now >= wait_end) {
+						return;
+					}
+					if (time_now - check_time < task_watch_pause) {
+						try {
+							Thread.sleep (Math.min (task_watch_pause, wait_end - time_now));
+						} catch (InterruptedException e) {
+						}
+					}
+				}
+			} catch (Exception e) {
+				close_task_watch_nx();
+				if (dispatcher_verbose) {
+					System.out.println ("TaskDispatcher: Task queue change stream failed, using polling: " + e.toString());
+				}
+			}
+		}
+
+		// Sleep for the remaining time
+
+		long remaining = wait_end - System.currentTimeMillis();
+		if (remaining > 0L) {
+			try {
+				Thread.sleep (remaining);
+			} catch (InterruptedException e) {
+			}
+		}
+		return;
+	}
+
+
+
+
+	// Get the time to wait until the next task in the queue is ready to execute.
+	// Parameters:
+	//  cutoff_time = Cutoff time used for the last check for a ready task.
+	//  max_delay = Maximum delay to return, in milliseconds.
+	// Returns a value between 0 and max_delay inclusive.
+
+	private long get_next_task_delay (long cutoff_time, long max_delay) {
+		PendingTask next_task = PendingTask.get_first_task_entry (cutoff_time + 1L, 0L, null);
+		if (next_task == null) {
+			return max_delay;
+		}
+		long delay = next_task.get_exec_time() - ServerClock.get_time();
+		return Math.max (0L, Math.min (max_delay, delay));
+	}
+
+
+
+
+	//----- Worker threads -----
+	//
+	// When the action configuration requests worker threads, tasks that operate on a single
+	// timeline are executed on a pool of worker threads, so that a long forecast for one
+	// event does not hold up processing for other events.  At most one task for any given
+	// event ID executes at a time, so tasks for an event execute in the same order as they
+	// would on a single thread.  All other tasks (intake, shutdown, polling, relay, health,
+	// cleanup, alias, etc.) are executed on the dispatcher thread only after all worker
+	// tasks have completed, and so they never overlap with any other task.  Idle time
+	// operations and relay link initialization also run only on the dispatcher thread.
+	// Each worker thread uses its own MongoDB connection and its own task context.
+
+
+	// The worker thread pool, or null if tasks are executed serially on the dispatcher thread.
+
+	private AutoExecutorService worker_pool = null;
+
+	// The number of threads in the worker thread pool.
+
+	private int worker_count = 0;
+
+	// Lock object that protects the variables below, and that is notified when a worker task ends.
+
+	private final Object worker_lock = new Object();
+
+	// The event IDs of tasks that are currently executing in worker threads.
+
+	private LinkedHashSet<String> worker_events = new LinkedHashSet<String>();
+
+	// Task that failed with an exception in a worker thread, or null if none.
+
+	private PendingTask worker_failed_task = null;
+
+	// The exception thrown by the failed worker task, or null if none.
+
+	private Throwable worker_failure = null;
+
+	// The true time at which the relay link was last polled with primary state changes enabled.
+
+	private long relay_prist_poll_time = 0L;
+
+
+
+
+	// Return true if the opcode can be executed in a worker thread.
+	// These are the tasks that operate on a single timeline, identified by the task's event ID.
+
+	private static boolean is_worker_opcode (int opcode) {
+		switch (opcode) {
+		case OPCODE_GEN_FORECAST:
+		case OPCODE_GEN_PDL_REPORT:
+		case OPCODE_GEN_EXPIRE:
+		case OPCODE_NEXT_TIMELINE_OP:
+			return true;
+		}
+		return false;
+	}
+
+
+
+
+	// Open the worker thread pool.
+	// The number of threads is obtained from the action configuration in the task context.
+	// If the number of threads is zero, no pool is created and tasks execute serially.
+
+	private void open_worker_pool () {
+		open_worker_pool (ctx().dispatcher_action_config.get_dispatcher_workers());
+		return;
+	}
+
+	private void open_worker_pool (int num_workers) {
+		synchronized (worker_lock) {
+			worker_events.clear();
+			worker_failed_task = null;
+			worker_failure = null;
+		}
+
+		relay_prist_poll_time = ctx().dispatcher_true_time;
+
+		worker_count = num_workers;
+		if (worker_count > 0) {
+			worker_pool = new AutoExecutorService (worker_count, AutoExecutorService.AESTO_FOREVER, AutoExecutorService.AESTO_FOREVER);
+			if (dispatcher_verbose) {
+				System.out.println ("TaskDispatcher: Executing tasks concurrently, worker threads = " + worker_count);
+			}
+		} else {
+			worker_pool = null;
+		}
+		return;
+	}
+
+
+
+
+	// Close the worker thread pool, waiting for all worker tasks to complete.
+	// It is not an error if the pool is not open.
+
+	private void close_worker_pool () {
+		AutoExecutorService my_worker_pool = worker_pool;
+		worker_pool = null;
+		if (my_worker_pool != null) {
+			my_worker_pool.close();
+		}
+		synchronized (worker_lock) {
+			worker_events.clear();
+		}
+		return;
+	}
+
+
+
+
+	// The WorkerSentinel class closes the worker thread pool when it is closed.
+	// It can be used in a try-with-resources statement to ensure that all worker tasks
+	// have completed before the relay link and MongoDB connection are closed.
+	// Note that close() waits for all worker tasks to complete.
+	// There is no error if the pool is not open when the sentinel is closed.
+
+	private class WorkerSentinel implements AutoCloseable {
+		@Override
+		public void close () {
+			close_worker_pool();
+			return;
+		}
+	}
+
+
+
+
+	// Get the event IDs of tasks that are currently executing in worker threads.
+	// Returns null if there are none.
+
+	private List<String> get_worker_events () {
+		synchronized (worker_lock) {
+			if (worker_events.isEmpty()) {
+				return null;
+			}
+			return new ArrayList<String> (worker_events);
+		}
+	}
+
+
+
+
+	// Return true if all worker threads are executing tasks.
+
+	private boolean is_worker_pool_full () {
+		synchronized (worker_lock) {
+			return worker_events.size() >= worker_count;
+		}
+	}
+
+
+
+
+	// Return true if any worker thread is executing a task.
+
+	private boolean is_worker_pool_busy () {
+		synchronized (worker_lock) {
+			return !( worker_events.isEmpty() );
+		}
+	}
+
+
+
+
+	// Wait until a worker task ends, or the given delay has elapsed.
+	// Returns immediately if no worker task is executing.
+
+	private void wait_for_worker (long delay) {
+		synchronized (worker_lock) {
+			if (!( worker_events.isEmpty() )) {
+				try {
+					worker_lock.wait (delay);
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+		return;
+	}
+
+
+
+
+	// Wait until all worker tasks have completed.
+
+	private void drain_workers () {
+		synchronized (worker_lock) {
+			while (!( worker_events.isEmpty() )) {
+				try {
+					worker_lock.wait();
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+		return;
+	}
+
+
+
+
+	// Check if a worker task has failed.
+	// If so, throw an exception, which causes the dispatcher to restart
+	// just as if the task had failed on the dispatcher thread.
+	// The failed task remains active in the queue, and so it is restarted.
+
+	private void check_worker_failure () {
+		PendingTask failed_task;
+		Throwable failure;
+		synchronized (worker_lock) {
+			failed_task = worker_failed_task;
+			failure = worker_failure;
+			worker_failed_task = null;
+			worker_failure = null;
+		}
+		if (failure != null) {
+			throw new RuntimeException ("TaskDispatcher.check_worker_failure: Worker task failed: " + failed_task.toString(), failure);
+		}
+		return;
+	}
+
+
+
+
+	// Start executing an active task in a worker thread.
+	// The caller must have checked that the pool is not full, and that
+	// no task for the same event ID is executing.
+
+	private void start_worker_task (PendingTask task) {
+		synchronized (worker_lock) {
+			worker_events.add (task.get_event_id());
+		}
+		try {
+			worker_pool.get_executor().execute (new TaskWorker (task));
+		} catch (RuntimeException e) {
+			end_worker_task (task, null);
+			throw e;
+		}
+		return;
+	}
+
+
+
+
+	// Note that a worker task has ended.
+	// If failure is non-null, it is the exception that terminated the task.
+
+	private void end_worker_task (PendingTask task, Throwable failure) {
+		synchronized (worker_lock) {
+			worker_events.remove (task.get_event_id());
+			if (failure != null && worker_failure == null) {
+				worker_failed_task = task;
+				worker_failure = failure;
+			}
+			worker_lock.notifyAll();
+		}
+		return;
+	}
+
+
+
+
+	// Poll the relay link, from the dispatcher thread.
+	// Tasks executing in worker threads read the primary state (through PDLSupport.is_pdl_primary)
+	// to decide whether to send to PDL, so while any worker task is executing the relay link is
+	// polled without primary state changes.  If primary state changes have been deferred for
+	// longer than relay_prist_defer_max, wait for all worker tasks to complete and then do a full poll.
+	// The task context must be refreshed before calling.
+
+	private void poll_relay_link_with_workers () {
+		if (worker_pool != null && is_worker_pool_busy()) {
+			if (ctx().dispatcher_true_time - relay_prist_poll_time < relay_prist_defer_max) {
+				sg.relay_link.poll_relay_link_no_prist();
+				return;
+			}
+
+			if (dispatcher_verbose) {
+				System.out.println ("TaskDispatcher: Waiting for worker tasks to complete before polling relay link primary state");
+			}
+
+			drain_workers();
+			check_worker_failure();
+			refresh_task_context();
+		}
+
+		sg.relay_link.poll_relay_link();
+		relay_prist_poll_time = ctx().dispatcher_true_time;
+		return;
+	}
+
+
+
+
+	// Class to execute a task in a worker thread.
+	// The task has already been activated by the dispatcher thread.
+
+	private class TaskWorker implements Runnable {
+
+		// The task to execute.
+
+		private PendingTask task;
+
+		public TaskWorker (PendingTask task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run () {
+			Throwable failure = null;
+
+			// Connect options
+
+			int conopt_outer = (dispatcher_transact ? MongoDBUtil.CONOPT_SESSION : MongoDBUtil.CONOPT_CONNECT);
+			int conopt_inner = (dispatcher_transact ? MongoDBUtil.CONOPT_TRANSACT_ABORT : MongoDBUtil.CONOPT_CONNECT);
+
+			int ddbopt = MongoDBUtil.DDBOPT_SAVE_SET;
+
+			// Connect to MongoDB
+
+			try (
+				MongoDBUtil mongo_instance = new MongoDBUtil (conopt_outer, ddbopt, null);
+			){
+				try (
+					MongoDBUtil mongo_inner = new MongoDBUtil (conopt_inner, ddbopt, null);
+				){
+
+					// Get task time and configuration for this thread
+
+					refresh_task_context();
+
+					// Dispatch on opcode
+
+					dispatch_task (task);
+
+					// If doing transactions, commit
+
+					if (dispatcher_transact) {
+						mongo_inner.set_transact_commit (true);
+					}
+				}
+
+			// Operation failed with exception
+
+			} catch (Exception e) {
+				failure = e;
+			} catch (Throwable e) {
+				failure = e;
+			}
+
+			// Report completion to the dispatcher
+
+			end_worker_task (task, failure);
+			return;
+		}
+	}
+
+
+
+
 	//----- Task dispatching functions -----
 
 
 
 
+	// Get the priority cutoff time to use when selecting the next task to execute.
+	// Parameters:
+	//  cutoff_time = Cutoff time for ready tasks.
+	// If priority scheduling is enabled, tasks that have been ready since the returned time
+	// execute first, in order of execution time, and other ready tasks execute in order of
+	// priority class.  Early tasks (such as shutdown) always execute first.
+	// If priority scheduling is disabled, the return value is cutoff_time, so all
+	// ready tasks execute in order of execution time.
+
+	private long get_priority_cutoff (long cutoff_time) {
+		ActionConfig action_config = ctx().dispatcher_action_config;
+		if (!( action_config.get_is_task_priority_enabled() )) {
+			return cutoff_time;
+		}
+		return Math.max (EXEC_TIME_MAX_EARLY, cutoff_time - action_config.get_task_starve_time());
+	}
+
+
+
+
 	// Run the task dispatcher.
 
 	@Override
@@ -664,6 +1202,7 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 			try (
 				RelayLink.LinkSentinel rl_sentinel = sg.relay_link.make_link_sentinel();
 				MongoDBUtil mongo_instance = new MongoDBUtil (conopt_outer, ddbopt, null);
+				WorkerSentinel worker_sentinel = new WorkerSentinel();
 			){
 
 				// If first connection ...
@@ -676,6 +1215,10 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 
 					delete_all_shutdown_tasks();
 				
+					// Assign a priority class to any tasks queued before priority scheduling
+
+					PendingTask.backfill_task_priority();
+				
 					// Remove any health monitoring commands from the task queue
 
 					sg.health_sup.delete_all_existing_health_monitoring_tasks();
@@ -735,9 +1278,17 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 					sg.relay_link.poll_relay_link();
 				}
 
+				// Open the change stream over the task queue, before the first check of the queue
+
+				open_task_watch();
+
+				// Open the worker thread pool, if the configuration requests concurrent execution
+
+				open_worker_pool();
+
 				// The time at which we force idle-time processing
 
-				long idle_force_time = dispatcher_true_time + idle_force_delay_long;
+				long idle_force_time = ctx().dispatcher_true_time + idle_force_delay_long;
 
 				// The state used for controlling idle-time forcing
 				// -1 = Idle-time processing with a task pending.
@@ -759,8 +1310,9 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 					refresh_task_context();
 
 					// Poll the relay link
+					// (Primary state changes are deferred while worker tasks are executing)
 
-					sg.relay_link.poll_relay_link();
+					poll_relay_link_with_workers();
 
 					// State = polling
 
@@ -772,16 +1324,22 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 
 					// Record the dispatcher active time
 
-					active_time = dispatcher_true_time;
+					active_time = ctx().dispatcher_true_time;
 
 					// Get the next task on the pending queue, that's ready to execute, and activate it
 
-					long cutoff_time = dispatcher_time;
+					long cutoff_time = ctx().dispatcher_time;
+					long priority_cutoff = get_priority_cutoff (cutoff_time);
 					task = null;
 
+					// If a worker task failed, restart the dispatcher
+
+					check_worker_failure();
+
 					// Do a prelimiary check without starting a transaction
+					// (Tasks for events that are executing in worker threads are skipped)
 
-					PendingTask prelim_task = PendingTask.get_first_ready_task (cutoff_time);
+					PendingTask prelim_task = PendingTask.get_first_ready_task (cutoff_time, get_worker_events(), priority_cutoff);
 
 					// No task, do idle-time with no task pending
 
@@ -805,7 +1363,7 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 						// Otherwise, check if we need to force idle-time, only if the task is not executing at early time
 
 						else {
-							if (dispatcher_true_time > idle_force_time && prelim_task.get_exec_time() > EXEC_TIME_MAX_EARLY) {
+							if (ctx().dispatcher_true_time > idle_force_time && prelim_task.get_exec_time() > EXEC_TIME_MAX_EARLY) {
 								idle_state = -1;
 							}
 						}
@@ -813,16 +1371,32 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 						prelim_task = null;
 					}
 
+					// If all worker threads are busy, wait for one to finish
+
+					if (idle_state > 0 && worker_pool != null && is_worker_pool_full()) {
+
+						// State = waiting
+
+						dispatcher_state = STATE_WAITING;
+
+						wait_for_worker (polling_delay_min);
+					}
+
 					// If passed prelimiary check, start a transaction if enabled
 
-					if (idle_state > 0) {
+					else if (idle_state > 0) {
+
+						// Task that was activated but must be executed after the transaction is committed
+
+						PendingTask deferred_task = null;
+
 						try (
 							MongoDBUtil mongo_inner = new MongoDBUtil (conopt_inner, ddbopt, null);
 						){
 
 							// Activate the task
 
-							task = PendingTask.activate_first_ready_task (cutoff_time);
+							task = PendingTask.activate_first_ready_task (cutoff_time, get_worker_events(), priority_cutoff);
 
 							// If we got an active task ...
 
@@ -832,9 +1406,17 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 
 								dispatcher_state = STATE_PROCESSING;
 
-								// Dispatch on opcode
+								// If the task goes to a worker thread, or must wait for worker threads to finish, defer it
+
+								if (worker_pool != null && (is_worker_opcode (task.get_opcode()) || is_worker_pool_busy())) {
+									deferred_task = task;
+								}
 
-								dispatch_task (task);
+								// Otherwise, dispatch on opcode
+
+								else {
+									dispatch_task (task);
+								}
 							}
 
 							// Otherwise, do idle-time with no task pending
@@ -853,52 +1435,118 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 
 							task = null;
 						}
+
+						// If we have a deferred task ...
+
+						if (deferred_task != null) {
+							task = deferred_task;
+
+							// If it can execute in a worker thread, start it
+
+							if (is_worker_opcode (task.get_opcode())) {
+								start_worker_task (task);
+							}
+
+							// Otherwise, wait for all worker tasks to complete, then execute it on this thread
+
+							else {
+								drain_workers();
+								check_worker_failure();
+
+								try (
+									MongoDBUtil mongo_inner = new MongoDBUtil (conopt_inner, ddbopt, null);
+								){
+
+									// Dispatch on opcode
+
+									dispatch_task (task);
+
+									// If doing transactions, commit
+
+									if (dispatcher_transact) {
+										mongo_inner.set_transact_commit (true);
+									}
+								}
+							}
+
+							// No active task
+
+							task = null;
+						}
 					}
 
 					// If idle ...
 
 					if (idle_state <= 0) {
 
-						// State = idle time
+						// If worker tasks are executing and no task is ready, wait for a worker task to end
+						// (Idle time operations are only done when no worker task is executing)
 
-						dispatcher_state = STATE_IDLE_TIME;
+						if (idle_state == 0 && is_worker_pool_busy()) {
 
-						// Execute idle time operations
+							// State = waiting
 
-						boolean did_work = exec_idle_time();
+							dispatcher_state = STATE_WAITING;
 
-						// Calculate time at which idle-time can be forced
+							wait_for_worker (polling_delay_min);
+						}
 
-						long time_now = ServerClock.get_true_time();
-						idle_force_time = time_now + (did_work ? idle_force_delay_short : idle_force_delay_long);
+						else {
 
-						// State = waiting
+							// Wait for all worker tasks to complete
 
-						dispatcher_state = STATE_WAITING;
+							drain_workers();
+							check_worker_failure();
 
-						// If no task pending, insert a time delay
+							// State = idle time
 
-						if (idle_state == 0) {
+							dispatcher_state = STATE_IDLE_TIME;
 
-							// Get polling delay, allowing for time consumed by idle time operations
+							// Execute idle time operations
 
-							long eff_polling_delay = dispatcher_true_time + polling_delay - time_now;
-							if (eff_polling_delay > polling_delay) {
-								eff_polling_delay = polling_delay;
-							}
+							boolean did_work = exec_idle_time();
 
-							// Wait for the polling delay
+							// Calculate time at which idle-time can be forced
 
-							if (eff_polling_delay >= polling_delay_min) {
-								try {
-									Thread.sleep(eff_polling_delay);
-								} catch (InterruptedException e) {
+							long time_now = ServerClock.get_true_time();
+							idle_force_time = time_now + (did_work ? idle_force_delay_short : idle_force_delay_long);
+
+							// State = waiting
+
+							dispatcher_state = STATE_WAITING;
+
+							// If no task pending, insert a time delay
+
+							if (idle_state == 0) {
+
+								// Get polling delay, allowing for time consumed by idle time operations
+
+								long eff_polling_delay = ctx().dispatcher_true_time + polling_delay - time_now;
+								if (eff_polling_delay > polling_delay) {
+									eff_polling_delay = polling_delay;
+								}
+
+								// Wait for the polling delay, or until the next task is ready, or a task is posted
+
+								if (eff_polling_delay >= polling_delay_min) {
+									long wait_delay = get_next_task_delay (cutoff_time, eff_polling_delay);
+									if (wait_delay > 0L) {
+										wait_for_task_change (wait_delay);
+									}
 								}
 							}
 						}
 					}
 				}
 
+				// Wait for worker tasks to complete, and close the worker thread pool
+
+				close_worker_pool();
+
+				// Close the change stream
+
+				close_task_watch_nx();
+
 				// Shut down the relay link
 
 				sg.relay_link.shutdown_relay_link();
@@ -923,6 +1571,10 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 				sg.log_sup.report_dispatcher_exception (task, e);
 			}
 
+			// Forget the change stream (it is closed when the connection is closed)
+
+			task_watch = null;
+
 			// If normal shutdown, exit the restart loop
 
 			if (dispatcher_state == STATE_SHUTDOWN) {
@@ -1009,8 +1661,8 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 
 			// Get task time and configuration
 
-			dispatcher_true_time = ServerClock.get_true_time();
-			dispatcher_action_config = new ActionConfig();
+			ctx().dispatcher_true_time = ServerClock.get_true_time();
+			ctx().dispatcher_action_config = new ActionConfig();
 
 			// Get the next task on the pending queue, and activate it
 
@@ -1052,7 +1704,7 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 						if (f_adjust_time) {
 							ServerClock.advance_frozen_time (task.get_apparent_time());
 						}
-						dispatcher_time = ServerClock.get_time();
+						ctx().dispatcher_time = ServerClock.get_time();
 
 						// If verbose, write message
 
@@ -1132,6 +1784,10 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 
 	private void dispatch_task (PendingTask task) {
 
+		// The task context for this thread
+
+		TaskContext tc = ctx();
+
 		// If restarting ...
 
 		if (task.is_restarted()) {
@@ -1151,12 +1807,12 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 		// (Note that dispatcher_time, dispatcher_true_time, and dispatcher_action_config
 		// are established by our caller)
 
-		taskres_log_time = dispatcher_time;
-		taskres_log_remark = "";
+		tc.taskres_log_time = tc.dispatcher_time;
+		tc.taskres_log_remark = "";
 
-		taskres_exec_time = 0L;
-		taskres_stage = 0;
-		taskres_event_id = null;
+		tc.taskres_exec_time = 0L;
+		tc.taskres_stage = 0;
+		tc.taskres_event_id = null;
 
 		// Say hello
 
@@ -1165,7 +1821,7 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 			if (task.is_restarted()) {
 
 				System.out.println (LOG_SEPARATOR_LINE);
-				display_taskinfo ("TASK-RESTART: " + SimpleUtils.time_to_string (dispatcher_time) + "\n"
+				display_taskinfo ("TASK-RESTART: " + SimpleUtils.time_to_string (tc.dispatcher_time) + "\n"
 					+ "opcode = " + get_opcode_as_string (task.get_opcode()) + "\n"
 					+ "event_id = " + task.get_event_id() + "\n"
 					+ "stage = " + task.get_stage());
@@ -1173,7 +1829,7 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 			} else {
 
 				System.out.println (LOG_SEPARATOR_LINE);
-				display_taskinfo ("TASK-BEGIN: " + SimpleUtils.time_to_string (dispatcher_time) + "\n"
+				display_taskinfo ("TASK-BEGIN: " + SimpleUtils.time_to_string (tc.dispatcher_time) + "\n"
 					+ "opcode = " + get_opcode_as_string (task.get_opcode()) + "\n"
 					+ "event_id = " + task.get_event_id() + "\n"
 					+ "stage = " + task.get_stage());
@@ -1215,7 +1871,7 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 
 			// Log the task
 
-			LogEntry.submit_log_entry (task, taskres_log_time, rescode, taskres_log_remark);
+			LogEntry.submit_log_entry (task, tc.taskres_log_time, rescode, tc.taskres_log_remark);
 
 			// Remove the task from the queue
 
@@ -1262,15 +1918,15 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 				display_taskinfo ("TASK-STAGE:\n"
 					+ "opcode = " + get_opcode_as_string (task.get_opcode()) + "\n"
 					+ "rescode = " + get_rescode_as_string (rescode) + "\n"
-					+ "taskres_exec_time = " + SimpleUtils.time_to_string (taskres_exec_time) + "\n"
-					+ "taskres_stage = " + taskres_stage + "\n"
-					+ "taskres_event_id = " + ((taskres_event_id == null) ? "null" : taskres_event_id) );
+					+ "taskres_exec_time = " + SimpleUtils.time_to_string (tc.taskres_exec_time) + "\n"
+					+ "taskres_stage = " + tc.taskres_stage + "\n"
+					+ "taskres_event_id = " + ((tc.taskres_event_id == null) ? "null" : tc.taskres_event_id) );
 			}
-			sg.log_sup.report_task_stage (task, rescode, taskres_event_id, taskres_stage, taskres_exec_time);
+			sg.log_sup.report_task_stage (task, rescode, tc.taskres_event_id, tc.taskres_stage, tc.taskres_exec_time);
 
 			// Stage the task, so it will execute again
 
-			PendingTask.stage_task (task, taskres_exec_time, taskres_stage, taskres_event_id);
+			PendingTask.stage_task (task, tc.taskres_exec_time, tc.taskres_stage, tc.taskres_event_id);
 
 			break;
 		}
@@ -1292,23 +1948,25 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 
 	public void setup_task_context () {
 
+		TaskContext tc = ctx();
+
 		//  dispatcher_time = TestMode.get_app_time();
 		//  dispatcher_true_time = dispatcher_time;
 		//  if (dispatcher_time <= 0L) {
 		//  	dispatcher_time = ServerClock.get_time();
 		//  	dispatcher_true_time = ServerClock.get_true_time();
 		//  }
-		dispatcher_time = ServerClock.get_time();
-		dispatcher_true_time = ServerClock.get_true_time();
+		tc.dispatcher_time = ServerClock.get_time();
+		tc.dispatcher_true_time = ServerClock.get_true_time();
 
-		dispatcher_action_config = new ActionConfig();
+		tc.dispatcher_action_config = new ActionConfig();
 
-		taskres_log_time = dispatcher_time;
-		taskres_log_remark = "";
+		tc.taskres_log_time = tc.dispatcher_time;
+		tc.taskres_log_remark = "";
 
-		taskres_exec_time = 0L;
-		taskres_stage = 0;
-		taskres_event_id = null;
+		tc.taskres_exec_time = 0L;
+		tc.taskres_stage = 0;
+		tc.taskres_event_id = null;
 	
 		return;
 	}
@@ -1333,16 +1991,18 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 
 	public boolean test_exec_idle_time () {
 
+		TaskContext tc = ctx();
+
 		//  dispatcher_time = TestMode.get_app_time();
 		//  dispatcher_true_time = dispatcher_time;
 		//  if (dispatcher_time <= 0L) {
 		//  	dispatcher_time = ServerClock.get_time();
 		//  	dispatcher_true_time = ServerClock.get_true_time();
 		//  }
-		dispatcher_time = ServerClock.get_time();
-		dispatcher_true_time = ServerClock.get_true_time();
+		tc.dispatcher_time = ServerClock.get_time();
+		tc.dispatcher_true_time = ServerClock.get_true_time();
 
-		dispatcher_action_config = new ActionConfig();
+		tc.dispatcher_action_config = new ActionConfig();
 	
 		boolean did_work = exec_idle_time();
 
@@ -1352,6 +2012,138 @@ public class TaskDispatcher extends ServerComponent implements Runnable {
 
 
 
+	// Execute tasks, using worker threads, until no task is ready and all worker tasks are complete.
+	// Parameters:
+	//  cutoff_time = Cutoff time for ready tasks.
+	//  num_workers = Number of worker threads, must be > 0.
+	//  f_verbose = True to write a message when each task begins, and when the local relay status changes.
+	// Returns the number of tasks executed.
+	// The relay link is polled before each task, in the same way as the dispatcher polling loop,
+	// so primary state changes are deferred while worker tasks are executing.
+	// There must be an established connection to MongoDB, and the relay link must be initialized.
+	// The clock is not adjusted to the task execution time.
+	// This is a test function.
+
+	public int test_run_workers_until (long cutoff_time, int num_workers, boolean f_verbose) {
+
+		if (num_workers <= 0) {
+			throw new IllegalArgumentException ("TaskDispatcher.test_run_workers_until: Invalid number of workers: num_workers = " + num_workers);
+		}
+
+		int task_count = 0;
+
+		// Transaction flag and connect options
+
+		dispatcher_transact = MongoDBUtil.is_transaction_enabled (null);
+
+		int conopt_inner = (dispatcher_transact ? MongoDBUtil.CONOPT_TRANSACT_ABORT : MongoDBUtil.CONOPT_CONNECT);
+
+		int ddbopt = MongoDBUtil.DDBOPT_SAVE_SET;
+
+		// Open the worker thread pool
+
+		setup_task_context();
+		open_worker_pool (num_workers);
+
+		String loc_stat = sg.relay_link.get_local_status_summary();
+
+		try (
+			WorkerSentinel worker_sentinel = new WorkerSentinel();
+		){
+
+			for (;;) {
+
+				// Poll the relay link
+
+				refresh_task_context();
+				poll_relay_link_with_workers();
+
+				if (f_verbose) {
+					String new_loc_stat = sg.relay_link.get_local_status_summary();
+					if (!( new_loc_stat.equals (loc_stat) )) {
+						loc_stat = new_loc_stat;
+						System.out.println ("Relay status changed, worker tasks executing = " + get_worker_events().size());
+						System.out.println (loc_stat);
+					}
+				}
+
+				// If a worker task failed, stop
+
+				check_worker_failure();
+
+				// If all worker threads are busy, wait for one to finish
+
+				if (is_worker_pool_full()) {
+					wait_for_worker (polling_delay_min);
+					continue;
+				}
+
+				// Activate the next ready task, skipping events that are executing in worker threads
+
+				PendingTask task = null;
+
+				try (
+					MongoDBUtil mongo_inner = new MongoDBUtil (conopt_inner, ddbopt, null);
+				){
+					task = PendingTask.activate_first_ready_task (cutoff_time, get_worker_events(), get_priority_cutoff (cutoff_time));
+
+					if (dispatcher_transact) {
+						mongo_inner.set_transact_commit (true);
+					}
+				}
+
+				// If no task, stop when all worker tasks are complete
+
+				if (task == null) {
+					if (!( is_worker_pool_busy() )) {
+						break;
+					}
+					wait_for_worker (polling_delay_min);
+					continue;
+				}
+
+				++task_count;
+
+				if (f_verbose) {
+					System.out.println ("Executing task: " + task.toString());
+				}
+
+				// If it can execute in a worker thread, start it
+
+				if (is_worker_opcode (task.get_opcode())) {
+					start_worker_task (task);
+				}
+
+				// Otherwise, wait for all worker tasks to complete, then execute it on this thread
+
+				else {
+					drain_workers();
+					check_worker_failure();
+
+					try (
+						MongoDBUtil mongo_inner = new MongoDBUtil (conopt_inner, ddbopt, null);
+					){
+						dispatch_task (task);
+
+						if (dispatcher_transact) {
+							mongo_inner.set_transact_commit (true);
+						}
+					}
+				}
+			}
+
+			// Wait for all worker tasks to complete
+
+			drain_workers();
+			check_worker_failure();
+		}
+
+		return task_count;
+	}
+
+
+
+
 	// Test if there is a shutdown command on the task queue.
 	// If there are any shutdown commands, they are deleted, and the return value is true.
 	// If there are no shutdown commands, the return value is false.
@@ -20,6 +20,7 @@ import org.opensha.oaf.comcat.ComcatConflictException;
 import org.opensha.oaf.comcat.ComcatRemovedException;
 import org.opensha.oaf.comcat.ComcatQueryException;
 import org.opensha.oaf.rj.CompactEqkRupList;
+import org.opensha.oaf.oetas.fit.OEOmoriRowCache;
 
 /**
  * Support functions for timelines.
@@ -506,6 +507,12 @@ public class TimelineSupport extends ServerComponent {
 
 		sg.log_sup.report_timeline_appended (tstatus);
 
+		// If the timeline no longer needs forecasts, release any ETAS fitting data kept for it
+
+		if (!( tstatus.is_forecast_state() )) {
+			OEOmoriRowCache.discard_timeline_cache (tstatus.event_id);
+		}
+
 		// Issue any new delayed command that is needed
 
 		next_auto_timeline (tstatus, last_pdl_lag);
@@ -1,6 +1,8 @@
 package org.opensha.oaf.aafs.entity;
 
 import java.util.List;
+import java.util.Collection;
+import java.util.Map;
 
 import org.bson.types.ObjectId;
 
@@ -8,10 +10,14 @@ import org.opensha.oaf.aafs.MongoDBUtil;
 import org.opensha.oaf.aafs.RecordKey;
 import org.opensha.oaf.aafs.RecordPayload;
 import org.opensha.oaf.aafs.RecordIterator;
+import org.opensha.oaf.aafs.ServerComponent;
 
 import org.opensha.oaf.util.MarshalImpArray;
 import org.opensha.oaf.util.MarshalImpJsonReader;
 import org.opensha.oaf.util.MarshalImpJsonWriter;
+import org.opensha.oaf.util.MarshalImpBsonReader;
+import org.opensha.oaf.util.MarshalImpBsonWriter;
+import org.opensha.oaf.util.MarshalImpJsonStreamWriter;
 import org.opensha.oaf.util.MarshalReader;
 import org.opensha.oaf.util.MarshalWriter;
 import org.opensha.oaf.util.MarshalException;
@@ -34,9 +40,12 @@ import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
 
 import org.opensha.oaf.aafs.DBCorruptException;
 import org.opensha.oaf.aafs.RecordIteratorMongo;
+import org.opensha.oaf.aafs.RecordChangeIteratorMongo;
 import org.opensha.oaf.aafs.MongoDBCollRet;
 import org.opensha.oaf.aafs.MongoDBCollHandle;
 
@@ -95,11 +104,18 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 
 	private int stage;
 
+	// Priority class for this task, determined by the opcode when the task is submitted.
+	// When priority scheduling is enabled, higher priority tasks are executed first.
+	// The collection is indexed on this field and exec_time.
+
+	private int priority;
+
 	// Details of this task.
-	// Any additional information needed is stored as a JSON string containing marshaled data.
-	// If none, this should be an empty string (not null).
+	// Any additional information needed is stored as a BSON document (or array) containing
+	// marshaled data, which is written into the database as a native subdocument.
+	// If none, this is null.
 
-	private String details;
+	private Object details;
 
 //	// Details of this task.
 //	// Any additional information needed is stored as marshaled data.
@@ -178,6 +194,14 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 		this.stage = stage;
 	}
 
+	public int get_priority() {
+		return priority;
+	}
+
+	private void set_priority (int priority) {
+		this.priority = priority;
+	}
+
 
 
 
@@ -185,17 +209,7 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 	 * get_details - Get a reader for the details.
 	 */
 	public MarshalReader get_details() {
-		Object json_source;
-		if (details == null) {
-			json_source = null;
-		}
-		else if (details.equals("")) {
-			json_source = null;
-		}
-		else {
-			json_source = details;
-		}
-		return new MarshalImpJsonReader (json_source);
+		return new MarshalImpBsonReader (details);
 	}
 
 
@@ -205,23 +219,43 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 	private void set_details (MarshalWriter writer) {
 
 		if (writer == null) {
-			details = "";
+			details = null;
+			return;
+		}
+
+		if (writer instanceof MarshalImpBsonWriter) {
+			MarshalImpBsonWriter w = (MarshalImpBsonWriter)writer;
+			if (w.check_write_complete()) {
+				details = w.get_bson_container();
+			} else {
+				details = null;
+			}
 			return;
 		}
 
 		if (writer instanceof MarshalImpJsonWriter) {
 			MarshalImpJsonWriter w = (MarshalImpJsonWriter)writer;
 			if (w.check_write_complete()) {
-				details = w.get_json_string();
+				details = MarshalImpBsonWriter.json_string_to_bson (w.get_json_string());
 			} else {
-				details = "";
+				details = null;
+			}
+			return;
+		}
+
+		if (writer instanceof MarshalImpJsonStreamWriter) {
+			MarshalImpJsonStreamWriter w = (MarshalImpJsonStreamWriter)writer;
+			if (w.check_write_complete()) {
+				details = MarshalImpBsonWriter.json_string_to_bson (w.get_json_string());
+			} else {
+				details = null;
 			}
 			return;
 		}
 
 		if (writer instanceof RecordPayload) {
 			RecordPayload p = (RecordPayload)writer;
-			details = p.get_json_string();
+			details = p.get_bson_container();
 			return;
 		}
 
@@ -233,7 +267,7 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 	 * begin_details - Get a writer to use for marhaling details.
 	 */
 	public static MarshalWriter begin_details() {
-		return new MarshalImpJsonWriter ();
+		return new MarshalImpBsonWriter ();
 	}
 
 
@@ -241,7 +275,7 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 	 * get_details_as_payload - Get a writer containing the details.
 	 */
 	RecordPayload get_details_as_payload() {
-		return new RecordPayload (details);
+		return RecordPayload.from_bson (details);
 	}
 
 
@@ -249,7 +283,13 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 	 * get_details_description - Get a string describing the details.
 	 */
 	private String get_details_description () {
-		return ((details == null) ? "null" : ("len = " + details.length()));
+		if (details == null) {
+			return "null";
+		}
+		if (details instanceof List) {
+			return "array, size = " + ((List<?>)details).size();
+		}
+		return "document, keys = " + ((Map<?, ?>)details).size();
 	}
 
 
@@ -257,7 +297,7 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 	 * dump_details - Dump details into a string, for trouble-shooting.
 	 */
 	public String dump_details () {
-		return ((details == null) ? "null" : details);
+		return ((details == null) ? "null" : MarshalImpBsonReader.bson_to_json_string (details));
 	}
 
 
@@ -368,6 +408,7 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 			+ "\tsubmit_id: " + submit_id + "\n"
 			+ "\topcode: " + opcode + "\n"
 			+ "\tstage: " + stage + "\n"
+			+ "\tpriority: " + priority + "\n"
 			+ "\tdetails: " + get_details_description();
 		return str;
 	}
@@ -502,6 +543,11 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 
 		coll_handle.make_compound_index_asc_asc ("event_id", "exec_time", "eventidtm");
 
+		// This index covers query and sort for priority scheduling, which does a range test
+		// on exec_time, followed by a descending sort on priority and ascending sort on exec_time:
+
+		coll_handle.make_compound_index_desc_asc ("priority", "exec_time", "priextime");
+
 		return;
 	}
 
@@ -582,6 +628,7 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 						.append ("submit_id"  , submit_id)
 						.append ("opcode"     , Integer.valueOf(opcode))
 						.append ("stage"      , Integer.valueOf(stage))
+						.append ("priority"   , Integer.valueOf(priority))
 						.append ("details"    , details);
 
 		return doc;
@@ -603,7 +650,15 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 		submit_id   = MongoDBUtil.doc_get_string    (doc, "submit_id"  );
 		opcode      = MongoDBUtil.doc_get_int       (doc, "opcode"     );
 		stage       = MongoDBUtil.doc_get_int       (doc, "stage"      );
-		details     = MongoDBUtil.doc_get_string    (doc, "details"    );
+		details     = MongoDBUtil.doc_get_marshal_details (doc, "details");
+
+		// Tasks written before priority scheduling have no priority, so use the default for the opcode
+
+		if (doc.containsKey ("priority")) {
+			priority = MongoDBUtil.doc_get_int (doc, "priority");
+		} else {
+			priority = ServerComponent.get_task_priority (opcode);
+		}
 
 		return this;
 	}
@@ -632,6 +687,27 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 
 
 
+	// Our change stream iterator class.
+
+	private static class MyChangeStreamIterator extends RecordChangeIteratorMongo<PendingTask> {
+
+		// Constructor passes thru the cursor.
+
+		public MyChangeStreamIterator (MongoCursor<ChangeStreamDocument<Document>> mongo_cursor, MongoDBCollHandle coll_handle) {
+			super (mongo_cursor, coll_handle);
+		}
+
+		// Hook routine to convert a Document to a T.
+
+		@Override
+		protected PendingTask hook_convert (Document doc, OperationType optype) {
+			return (new PendingTask()).from_bson_doc (doc);
+		}
+	}
+
+
+
+
 	//  // Make the natural sort for this collection.
 	//  // The natural sort is in increasing order of execution time.
 	//  
@@ -672,6 +748,16 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 
 
 
+	// Make the priority sort for this collection.
+	// The priority sort is in descending order of priority, and then ascending order of exec_time.
+
+	private static Bson priority_sort () {
+		return Sorts.orderBy (Sorts.descending ("priority"), Sorts.ascending ("exec_time"));
+	}
+
+
+
+
 	// Make a filter on the id field.
 
 	private static Bson id_filter (ObjectId the_id) {
@@ -734,6 +820,16 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 		return Filters.lte ("exec_time", Long.valueOf(cutoff_time));
 	}
 
+	// Make the filter for tasks that are ready to execute, excluding the given event IDs.
+	// If excluded_event_ids is null or empty, no event IDs are excluded.
+
+	private static Bson cutoff_filter (long cutoff_time, Collection<String> excluded_event_ids) {
+		if (excluded_event_ids == null || excluded_event_ids.isEmpty()) {
+			return cutoff_filter (cutoff_time);
+		}
+		return Filters.and (Filters.lte ("exec_time", Long.valueOf(cutoff_time)), Filters.nin ("event_id", excluded_event_ids));
+	}
+
 
 
 
@@ -843,6 +939,7 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 		ptask.set_submit_id (submit_id);
 		ptask.set_opcode (opcode);
 		ptask.set_stage (stage);
+		ptask.set_priority (ServerComponent.get_task_priority (opcode));
 		ptask.set_details (details);
 		
 		return ptask;
@@ -1143,31 +1240,87 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 
 
 
+	// Find the first ready task according to priority, then execution time,
+	// considering only the earliest ready task of each event.
+	// Parameters:
+	//  coll_handle = Collection handle.
+	//  cutoff_time = Cutoff time, in milliseconds since the epoch.
+	//  excluded_event_ids = Event IDs to skip, or null or empty to consider all tasks.
+	// Return is null if there are no such tasks.
+	// A task is skipped if its event has another ready task with an earlier execution time,
+	// so that priority scheduling never reorders the tasks for a single event.
+
+	private static PendingTask find_first_priority_task (MongoDBCollHandle coll_handle, long cutoff_time, Collection<String> excluded_event_ids) {
+
+		// Get the cursor and iterator, in priority order
+
+		MongoCursor<Document> cursor = coll_handle.find_iterator (cutoff_filter (cutoff_time, excluded_event_ids), priority_sort());
+		try (
+			MyRecordIterator iter = new MyRecordIterator (cursor, coll_handle);
+		){
+			while (iter.hasNext()) {
+				PendingTask ptask = iter.next();
+
+				// Filter: same event, and earlier execution time
+
+				Bson filter = Filters.and (Filters.eq ("event_id", ptask.get_event_id()), Filters.lt ("exec_time", Long.valueOf(ptask.get_exec_time())));
+
+				// If there is no earlier task for the event, this is the one
+
+				if (coll_handle.find_first (filter) == null) {
+					return ptask;
+				}
+			}
+		}
+
+		return null;
+	}
+
+
+
+
 	/**
 	 * get_first_ready_task - Get the first ready task, according to execution time.
 	 * @param cutoff_time = Cutoff time, in milliseconds since the epoch.
+	 * @param excluded_event_ids = Event IDs to skip, or null or empty to consider all tasks.
+	 * @param priority_cutoff = Priority cutoff time, in milliseconds since the epoch.
+	 *                          If omitted, defaults to cutoff_time, which disables priority scheduling.
 	 * Only tasks with exec_time <= cutoff_time are considered.
+	 * Tasks with exec_time <= priority_cutoff are taken first, according to execution time.
+	 * If there are none, tasks are taken according to priority, then execution time,
+	 * considering only the earliest ready task of each event.
 	 * Return is null if there are no such tasks.
 	 *
 	 * Current usage: Production.
 	 * Production code requires that the result be sorted (so it returns the first to execute).
 	 */
 	public static PendingTask get_first_ready_task (long cutoff_time) {
+		return get_first_ready_task (cutoff_time, null);
+	}
+
+	public static PendingTask get_first_ready_task (long cutoff_time, Collection<String> excluded_event_ids) {
+		return get_first_ready_task (cutoff_time, excluded_event_ids, cutoff_time);
+	}
+
+	public static PendingTask get_first_ready_task (long cutoff_time, Collection<String> excluded_event_ids, long priority_cutoff) {
 
 		// Get collection handle
 
 		MongoDBCollHandle coll_handle = get_coll_handle (null);
 
-		// Get the document
-
-		Document doc = coll_handle.find_first (cutoff_filter (cutoff_time), natural_sort (DEFAULT_SORT));
+		// Get the document, first by execution time up to the priority cutoff, then by priority
 
-		// Convert to task
+		Document doc = coll_handle.find_first (cutoff_filter (Math.min (cutoff_time, priority_cutoff), excluded_event_ids), natural_sort (DEFAULT_SORT));
 
 		if (doc == null) {
+			if (priority_cutoff < cutoff_time) {
+				return find_first_priority_task (coll_handle, cutoff_time, excluded_event_ids);
+			}
 			return null;
 		}
 
+		// Convert to task
+
 		return (new PendingTask()).from_bson_doc (doc);
 	}
 
@@ -1177,7 +1330,16 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 	/**
 	 * activate_first_ready_task - Get and activate the first ready task, according to execution time.
 	 * @param cutoff_time = Cutoff time, in milliseconds since the epoch.
+	 * @param excluded_event_ids = Event IDs to skip, or null or empty to consider all tasks.
+	 * @param priority_cutoff = Priority cutoff time, in milliseconds since the epoch.
+	 *                          If omitted, defaults to cutoff_time, which disables priority scheduling.
 	 * Only tasks with exec_time <= cutoff_time are considered.
+	 * Tasks with exec_time <= priority_cutoff are taken first, according to execution time.
+	 * If there are none, tasks are taken according to priority, then execution time,
+	 * considering only the earliest ready task of each event (so the tasks for any one
+	 * event always execute in order of execution time).
+	 * (So setting priority_cutoff to some time before cutoff_time lets tasks that have been
+	 * waiting for a long time run ahead of higher priority tasks, which prevents starvation.)
 	 * Return is null if there are no such tasks.
 	 * The task is marked active by setting exec_time = 0 in the database.
 	 *
@@ -1185,14 +1347,22 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 	 * Production code requires that the result be sorted (so it returns the first to execute).
 	 */
 	public static PendingTask activate_first_ready_task (long cutoff_time) {
+		return activate_first_ready_task (cutoff_time, null);
+	}
+
+	public static PendingTask activate_first_ready_task (long cutoff_time, Collection<String> excluded_event_ids) {
+		return activate_first_ready_task (cutoff_time, excluded_event_ids, cutoff_time);
+	}
+
+	public static PendingTask activate_first_ready_task (long cutoff_time, Collection<String> excluded_event_ids, long priority_cutoff) {
 
 		// Get collection handle
 
 		MongoDBCollHandle coll_handle = get_coll_handle (null);
 
-		// Filter: exec_time <= cutoff_time
+		// Filter: exec_time <= priority_cutoff, and event_id not excluded
 
-		Bson filter = cutoff_filter (cutoff_time);
+		Bson filter = cutoff_filter (Math.min (cutoff_time, priority_cutoff), excluded_event_ids);
 
 		// Update: Set exec_time to 0L
 
@@ -1206,6 +1376,30 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 
 		Document doc = coll_handle.findOneAndUpdate (filter, update, options);
 
+		// If none, and priority scheduling is in effect ...
+
+		while (doc == null && priority_cutoff < cutoff_time) {
+
+			// Find the highest priority task that is the earliest ready task of its event
+
+			PendingTask ptask = find_first_priority_task (coll_handle, cutoff_time, excluded_event_ids);
+			if (ptask == null) {
+				break;
+			}
+
+			// Filter: the task we found, if it has not changed since we found it
+
+			filter = Filters.and (id_filter (ptask.get_id()), Filters.eq ("exec_time", Long.valueOf(ptask.get_exec_time())));
+
+			// Options: return original document value
+
+			options = (new FindOneAndUpdateOptions()).returnDocument(ReturnDocument.BEFORE);
+
+			// Get the document, if it is null then the task changed and we look again
+
+			doc = coll_handle.findOneAndUpdate (filter, update, options);
+		}
+
 		// Convert to task
 
 		if (doc == null) {
@@ -1218,6 +1412,94 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 
 
 
+	/**
+	 * backfill_task_priority - Assign a priority class to tasks that do not have one.
+	 * Tasks written before priority scheduling have no priority field.  MongoDB sorts a
+	 * missing field below every value in the descending priority sort, so without this such
+	 * tasks would wait behind all other ready tasks.  Each such task is given the priority
+	 * class of its opcode.
+	 * Returns the number of tasks updated.
+	 *
+	 * Current usage: Production.
+	 */
+	public static long backfill_task_priority () {
+		long count = 0L;
+
+		// Get collection handle
+
+		MongoDBCollHandle coll_handle = get_coll_handle (null);
+
+		// Loop over priority classes, highest first
+
+		for (int priority = ServerComponent.TASKPRI_MAX; priority >= ServerComponent.TASKPRI_MIN; --priority) {
+
+			// Filter: no priority field
+
+			Bson filter = Filters.exists ("priority", false);
+
+			// Except for the lowest class, which takes all the remaining tasks, also filter on the opcodes in this class
+
+			if (priority > ServerComponent.TASKPRI_MIN) {
+				ArrayList<Integer> opcodes = new ArrayList<Integer>();
+				for (int opcode = ServerComponent.OPCODE_MIN; opcode <= ServerComponent.OPCODE_MAX; ++opcode) {
+					if (ServerComponent.get_task_priority (opcode) == priority) {
+						opcodes.add (Integer.valueOf (opcode));
+					}
+				}
+				if (opcodes.isEmpty()) {
+					continue;
+				}
+				filter = Filters.and (filter, Filters.in ("opcode", opcodes));
+			}
+
+			// Update: Set the priority
+
+			Bson update = Updates.set ("priority", Integer.valueOf (priority));
+
+			// Update the documents
+
+			count += coll_handle.updateMany (filter, update).getModifiedCount();
+		}
+
+		return count;
+	}
+
+
+
+
+	/**
+	 * watch_task_changes - Iterate changes in the task collection.
+	 *
+	 * The iterator returns tasks that are inserted, or updated so that they are waiting
+	 * to execute (exec_time > 0).  Tasks that are activated (exec_time == 0) or deleted
+	 * are not returned.  This lets the dispatcher wake up when a task is posted or staged.
+	 * Note: Change streams are only supported on replica sets.
+	 *
+	 * Current usage: Production.
+	 */
+	public static RecordIterator<PendingTask> watch_task_changes () {
+
+		// Get collection handle
+
+		MongoDBCollHandle coll_handle = get_coll_handle (null);
+
+		// Filter to watch exec_time > 0L, in the fullDocument subdocument of the change stream document
+
+		long exec_time_cutoff = 1L;
+
+		// The "not" form of the filter also passes changes that don't contain a full document, such as delete and invalidate
+
+		Bson filter = Filters.not (Filters.lt ("fullDocument.exec_time", Long.valueOf(exec_time_cutoff)));
+
+		// Get the cursor and iterator
+
+		MongoCursor<ChangeStreamDocument<Document>> cursor = coll_handle.watch (filter);
+		return new MyChangeStreamIterator (cursor, coll_handle);
+	}
+
+
+
+
 	/**
 	 * stage_task - Begin a new stage of a task.
 	 * @param ptask = Existing pending task to stage.
@@ -1305,6 +1587,7 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 	// Marshal version number.
 
 	private static final int MARSHAL_VER_1 = 8001;
+	private static final int MARSHAL_VER_2 = 8002;
 
 	private static final String M_VERSION_NAME = "PendingTask";
 
@@ -1322,7 +1605,9 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 
 		// Version
 
-		writer.marshalInt (M_VERSION_NAME, MARSHAL_VER_1);
+		int ver = MARSHAL_VER_2;
+
+		writer.marshalInt (M_VERSION_NAME, ver);
 
 		// Contents
 
@@ -1334,7 +1619,8 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 		writer.marshalString      ("submit_id"  , submit_id  );
 		writer.marshalInt         ("opcode"     , opcode     );
 		writer.marshalInt         ("stage"      , stage      );
-		writer.marshalString      ("details"    , details    );
+		writer.marshalInt         ("priority"   , priority   );
+		writer.marshalString      ("details"    , MarshalImpBsonReader.bson_to_json_string (details));
 //		writer.marshalLongArray   ("details_l"  , details_l  );
 //		writer.marshalDoubleArray ("details_d"  , details_d  );
 //		writer.marshalStringArray ("details_s"  , details_s  );
@@ -1349,7 +1635,7 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 	
 		// Version
 
-		int ver = reader.unmarshalInt (M_VERSION_NAME, MARSHAL_VER_1, MARSHAL_VER_1);
+		int ver = reader.unmarshalInt (M_VERSION_NAME, MARSHAL_VER_1, MARSHAL_VER_2);
 
 		// Contents
 
@@ -1361,7 +1647,12 @@ public class PendingTask extends DBEntity implements java.io.Serializable {
 		submit_id   = reader.unmarshalString      ("submit_id"  );
 		opcode      = reader.unmarshalInt         ("opcode"     );
 		stage       = reader.unmarshalInt         ("stage"      );
-		details     = reader.unmarshalString      ("details"    );
+		if (ver >= MARSHAL_VER_2) {
+			priority    = reader.unmarshalInt         ("priority"   );
+		} else {
+			priority    = ServerComponent.get_task_priority (opcode);
+		}
+		details     = MarshalImpBsonWriter.json_string_to_bson (reader.unmarshalString ("details"));
 //		details_l   = reader.unmarshalLongArray   ("details_l"  );
 //		details_d   = reader.unmarshalDoubleArray ("details_d"  );
 //		details_s   = reader.unmarshalStringArray ("details_s"  );
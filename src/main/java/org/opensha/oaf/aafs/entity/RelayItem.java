@@ -12,6 +12,8 @@ import org.opensha.oaf.aafs.RecordIterator;
 import org.opensha.oaf.util.MarshalImpArray;
 import org.opensha.oaf.util.MarshalImpJsonReader;
 import org.opensha.oaf.util.MarshalImpJsonWriter;
+import org.opensha.oaf.util.MarshalImpJsonStreamReader;
+import org.opensha.oaf.util.MarshalImpJsonStreamWriter;
 import org.opensha.oaf.util.MarshalReader;
 import org.opensha.oaf.util.MarshalWriter;
 import org.opensha.oaf.util.MarshalException;
@@ -150,7 +152,7 @@ public class RelayItem extends DBEntity implements java.io.Serializable {
 		else {
 			json_source = details;
 		}
-		return new MarshalImpJsonReader (json_source);
+		return new MarshalImpJsonStreamReader (json_source);
 	}
 
 
@@ -174,6 +176,16 @@ public class RelayItem extends DBEntity implements java.io.Serializable {
 			return;
 		}
 
+		if (writer instanceof MarshalImpJsonStreamWriter) {
+			MarshalImpJsonStreamWriter w = (MarshalImpJsonStreamWriter)writer;
+			if (w.check_write_complete()) {
+				details = w.get_json_string();
+			} else {
+				details = "";
+			}
+			return;
+		}
+
 		if (writer instanceof RecordPayload) {
 			RecordPayload p = (RecordPayload)writer;
 			details = p.get_json_string();
@@ -188,7 +200,7 @@ public class RelayItem extends DBEntity implements java.io.Serializable {
 	 * begin_details - Get a writer to use for marhaling details.
 	 */
 	public static MarshalWriter begin_details() {
-		return new MarshalImpJsonWriter ();
+		return new MarshalImpJsonStreamWriter ();
 	}
 
 
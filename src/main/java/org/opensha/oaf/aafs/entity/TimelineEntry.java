@@ -2,6 +2,7 @@ package org.opensha.oaf.aafs.entity;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.bson.types.ObjectId;
 
@@ -13,6 +14,9 @@ import org.opensha.oaf.aafs.RecordIterator;
 import org.opensha.oaf.util.MarshalImpArray;
 import org.opensha.oaf.util.MarshalImpJsonReader;
 import org.opensha.oaf.util.MarshalImpJsonWriter;
+import org.opensha.oaf.util.MarshalImpBsonReader;
+import org.opensha.oaf.util.MarshalImpBsonWriter;
+import org.opensha.oaf.util.MarshalImpJsonStreamWriter;
 import org.opensha.oaf.util.MarshalReader;
 import org.opensha.oaf.util.MarshalWriter;
 import org.opensha.oaf.util.MarshalException;
@@ -92,10 +96,11 @@ public class TimelineEntry extends DBEntity implements java.io.Serializable {
 	private int actcode;
 
 	// Details of this action.
-	// Any additional information needed is stored as a JSON string containing marshaled data.
-	// If none, this should be an empty string (not null).
+	// Any additional information needed is stored as a BSON document (or array) containing
+	// marshaled data, which is written into the database as a native subdocument.
+	// If none, this is null.
 
-	private String details;
+	private Object details;
 
 //	// Details of this action.
 //	// Any additional information needed is stored as marshaled data.
@@ -157,17 +162,7 @@ public class TimelineEntry extends DBEntity implements java.io.Serializable {
 	 * get_details - Get a reader for the details.
 	 */
 	public MarshalReader get_details() {
-		Object json_source;
-		if (details == null) {
-			json_source = null;
-		}
-		else if (details.equals("")) {
-			json_source = null;
-		}
-		else {
-			json_source = details;
-		}
-		return new MarshalImpJsonReader (json_source);
+		return new MarshalImpBsonReader (details);
 	}
 
 
@@ -177,23 +172,43 @@ public class TimelineEntry extends DBEntity implements java.io.Serializable {
 	private void set_details (MarshalWriter writer) {
 
 		if (writer == null) {
-			details = "";
+			details = null;
+			return;
+		}
+
+		if (writer instanceof MarshalImpBsonWriter) {
+			MarshalImpBsonWriter w = (MarshalImpBsonWriter)writer;
+			if (w.check_write_complete()) {
+				details = w.get_bson_container();
+			} else {
+				details = null;
+			}
 			return;
 		}
 
 		if (writer instanceof MarshalImpJsonWriter) {
 			MarshalImpJsonWriter w = (MarshalImpJsonWriter)writer;
 			if (w.check_write_complete()) {
-				details = w.get_json_string();
+				details = MarshalImpBsonWriter.json_string_to_bson (w.get_json_string());
 			} else {
-				details = "";
+				details = null;
+			}
+			return;
+		}
+
+		if (writer instanceof MarshalImpJsonStreamWriter) {
+			MarshalImpJsonStreamWriter w = (MarshalImpJsonStreamWriter)writer;
+			if (w.check_write_complete()) {
+				details = MarshalImpBsonWriter.json_string_to_bson (w.get_json_string());
+			} else {
+				details = null;
 			}
 			return;
 		}
 
 		if (writer instanceof RecordPayload) {
 			RecordPayload p = (RecordPayload)writer;
-			details = p.get_json_string();
+			details = p.get_bson_container();
 			return;
 		}
 
@@ -205,7 +220,7 @@ public class TimelineEntry extends DBEntity implements java.io.Serializable {
 	 * begin_details - Get a writer to use for marhaling details.
 	 */
 	public static MarshalWriter begin_details() {
-		return new MarshalImpJsonWriter ();
+		return new MarshalImpBsonWriter ();
 	}
 
 
@@ -213,7 +228,7 @@ public class TimelineEntry extends DBEntity implements java.io.Serializable {
 	 * get_details_as_payload - Get a writer containing the details.
 	 */
 	RecordPayload get_details_as_payload() {
-		return new RecordPayload (details);
+		return RecordPayload.from_bson (details);
 	}
 
 
@@ -221,7 +236,13 @@ public class TimelineEntry extends DBEntity implements java.io.Serializable {
 	 * get_details_description - Get a string describing the details.
 	 */
 	private String get_details_description () {
-		return ((details == null) ? "null" : ("len = " + details.length()));
+		if (details == null) {
+			return "null";
+		}
+		if (details instanceof List) {
+			return "array, size = " + ((List<?>)details).size();
+		}
+		return "document, keys = " + ((Map<?, ?>)details).size();
 	}
 
 
@@ -229,7 +250,7 @@ public class TimelineEntry extends DBEntity implements java.io.Serializable {
 	 * dump_details - Dump details into a string, for trouble-shooting.
 	 */
 	public String dump_details () {
-		return ((details == null) ? "null" : details);
+		return ((details == null) ? "null" : MarshalImpBsonReader.bson_to_json_string (details));
 	}
 
 
@@ -531,7 +552,7 @@ public class TimelineEntry extends DBEntity implements java.io.Serializable {
 		event_id    = MongoDBUtil.doc_get_string       (doc, "event_id"   );
 		comcat_ids  = MongoDBUtil.doc_get_string_array (doc, "comcat_ids" );
 		actcode     = MongoDBUtil.doc_get_int          (doc, "actcode"    );
-		details     = MongoDBUtil.doc_get_string       (doc, "details"    );
+		details     = MongoDBUtil.doc_get_marshal_details (doc, "details");
 
 		return this;
 	}
@@ -998,7 +1019,7 @@ public class TimelineEntry extends DBEntity implements java.io.Serializable {
 		writer.marshalString      ("event_id"   , event_id   );
 		writer.marshalStringArray ("comcat_ids" , comcat_ids );
 		writer.marshalInt         ("actcode"    , actcode    );
-		writer.marshalString      ("details"    , details    );
+		writer.marshalString      ("details"    , MarshalImpBsonReader.bson_to_json_string (details));
 //		writer.marshalLongArray   ("details_l"  , details_l  );
 //		writer.marshalDoubleArray ("details_d"  , details_d  );
 //		writer.marshalStringArray ("details_s"  , details_s  );
@@ -1022,7 +1043,7 @@ public class TimelineEntry extends DBEntity implements java.io.Serializable {
 		event_id    = reader.unmarshalString      ("event_id"   );
 		comcat_ids  = reader.unmarshalStringArray ("comcat_ids" );
 		actcode     = reader.unmarshalInt         ("actcode"    );
-		details     = reader.unmarshalString      ("details"    );
+		details     = MarshalImpBsonWriter.json_string_to_bson (reader.unmarshalString ("details"));
 //		details_l   = reader.unmarshalLongArray   ("details_l"  );
 //		details_d   = reader.unmarshalDoubleArray ("details_d"  );
 //		details_s   = reader.unmarshalStringArray ("details_s"  );
@@ -303,19 +303,12 @@ public abstract class ETAS_AftershockModel {
 
 		int[] numM = new int[simulatedCatalog.nSims];
 
-		List<float[]> eqCat = new ArrayList<float[]>();
-
 		Point2D pt = new Point2D.Double();
 
 		// cycle through the simulated catalogs
 		for (int i = 0; i < simulatedCatalog.nSims; i++) {
-			eqCat = simulatedCatalog.getETAScatalog(i); // double[] eqCat = {relativeTime, magnitude, generationNumber}
-			numM[i] = 0;
 			// count all events in time window and magnitude range in this catalog
-			for (float[] eq : eqCat) {
-				if (eq[0] > tMinDays && eq[0] <= tMaxDays && eq[1] >= forecastMag)
-					numM[i]++;
-			}
+			numM[i] = simulatedCatalog.countEvents(i, tMinDays, tMaxDays, forecastMag);
 
 			pt.setLocation(numM[i], 1d / simulatedCatalog.nSims);
 			num_DistributionFunc.set(pt); // increment the distribution
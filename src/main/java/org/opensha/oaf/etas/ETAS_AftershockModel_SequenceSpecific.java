@@ -3,7 +3,14 @@ package org.opensha.oaf.etas;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
 
 import org.apache.commons.math3.analysis.UnivariateFunction;
 import org.opensha.sha.earthquake.observedEarthquake.ObsEqkRupList;
@@ -26,6 +33,9 @@ public class ETAS_AftershockModel_SequenceSpecific extends ETAS_AftershockModel
 	private volatile boolean pauseRequested;
 	private ETAS_AftershockModel_Generic priorModel;
 
+	// Number of threads for the (p, c) grid search; 0 or less uses all processors
+	private static int numThreads = 0;
+
 	public ETAS_AftershockModel_SequenceSpecific(ObsEqkRupture mainshock, ObsEqkRupList aftershocks,
 			double[] amsVec, double amsSigma, double[] aVec, double[] pVec, double[] cVec, double alpha, double b, double refMag, 	
 			double dataStartTimeDays, double dataEndTimeDays, double forecastMinDays, double forecastMaxDays, 
@@ -188,10 +198,51 @@ public class ETAS_AftershockModel_SequenceSpecific extends ETAS_AftershockModel
 	}		
 	
 	/**
-	 * Get likelihood matrix with or without time dependent Mc. Checks for supercriticality 
-	 * and gives a warning if too many supercritical parameter sets are found;
+	 * Get likelihood matrix with time dependent Mc, where c scales with the productivity
+	 * of each parent. Checks for supercriticality and gives a warning if too many
+	 * supercritical parameter sets are found;
 	 */
 	private void getLikelihoodMatrixGridFastMc() {
+		getLikelihoodMatrixGrid(true);
+	}
+
+	/**
+	 * Get likelihood matrix without time dependent Mc. Checks for supercriticality 
+	 * and gives a warning if too many supercritical parameter sets are found;
+	 */
+	private void getLikelihoodMatrixGridFast() {
+		getLikelihoodMatrixGrid(false);
+	}
+
+	/**
+	 * Set the number of threads used for the (p, c) grid search.
+	 * 
+	 * A positive value uses that many threads, and a value of 0 or less (the default)
+	 * uses one thread per available processor. Each (p, c) grid point is computed
+	 * independently and the maximum is located afterwards in the original loop order,
+	 * so the results do not depend on the number of threads.
+	 */
+	public static void setNumThreads(int threads) {
+		numThreads = threads;
+	}
+
+	public static int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Get likelihood matrix with or without time dependent Mc, using a fork-join pool
+	 * over the (p, c) grid points.
+	 * 
+	 * Log-likelihoods are written into a flat array, indexed as
+	 * ((pIndex*num_c + cIndex)*num_ams + amsIndex)*num_a + aIndex, so that each (p, c)
+	 * task fills one contiguous block. The likelihood matrix, maximum likelihood indexes
+	 * and subcritical fraction are then assembled serially.
+	 * 
+	 * @param mcScaledC - if true, c is scaled by the productivity of each parent
+	 * (time-dependent Mc); otherwise c is used directly
+	 */
+	private void getLikelihoodMatrixGrid(final boolean mcScaledC) {
 		double[] relativeEventTimes = ETAS_StatsCalc.getDaysSinceMainShockArray(mainShock, aftershockList.getRupsAboveMag(magComplete));
 		double[] magAftershocks = ETAS_StatsCalc.getAftershockMags(aftershockList.getRupsAboveMag(magComplete));
 				
@@ -213,198 +264,126 @@ public class ETAS_AftershockModel_SequenceSpecific extends ETAS_AftershockModel
 			double[] temp = sortedEQlist.get(i);
 			relativeEventTimes[i] = temp[0];
 			magAftershocks[i] = temp[1];
-			sortedEQlist.add(temp);
 		}
 
-		// instantiate two likelihood matrices -- one to hold subcritical likelihoods, one to hold supercritical likelihoods (for bookkeeping).
-		likelihood = new double[num_ams][num_a][num_p][num_c];
-		double[][][][] superCriticalLikelihood = new double[num_ams][num_a][num_p][num_c];
-		double[][][][] subCriticalLikelihood = new double[num_ams][num_a][num_p][num_c];
-		double[][][][] priorLikelihood = new double[num_ams][num_a][num_p][num_c];
-		
+		// the prior likelihood, or null for a flat prior
+		final double[][][][] priorLikelihood;
 		if (priorModel != null && priorModel.likelihood != null)
 			priorLikelihood = priorModel.get_priorLikelihoodMatrix(ams_vec, a_vec, p_vec, c_vec, false);
-		else{
-//			timeDependentMc = false; // can't do time-dependent Mc in a timely fashion without fixing incompleteness to typical values
-			for(int amsIndex=0;amsIndex<num_ams;amsIndex++)
-				for(int aIndex=0;aIndex<num_a;aIndex++)
-					for(int pIndex=0;pIndex<num_p;pIndex++)
-						for(int cIndex=0;cIndex<num_c;cIndex++){
-							priorLikelihood[amsIndex][aIndex][pIndex][cIndex] = 1;
-						}
-		}
-		
-		double maxVal= Double.NEGATIVE_INFINITY;
-		double logLike;
-		boolean subCritFlag;
-		
-		double ams, a, k, kms, p, c, c0;
-		double kc = Math.pow(10, ac);
-		int amsIndex, aIndex, pIndex, cIndex;
-		double timeIntegralMS, NtotAS, NtotMS, Ntot;
-		
-		int Nas = relativeEventTimes.length;	//the number of aftershocks, not counting the mainshock
-		double productivityMS;
-		double[] productivityAS = new double[Nas];
-		double[] lambda = new double[Nas];
-		double[] timeDecayMS = new double[Nas];
-		double[] timeDecayAS = new double[Nas];
-		double timeIntegral;
+		else
+			priorLikelihood = null;
 		
+		final int Nas = relativeEventTimes.length;	//the number of aftershocks, not counting the mainshock
+		final double[] productivityAS = new double[Nas];
 		
 		//do productivities
-		productivityMS = Math.pow(10, alpha*(mainShock.getMag()-magComplete) );
+		final double productivityMS = Math.pow(10, alpha*(mainShock.getMag()-magComplete) );
 		for(int i=0; i<Nas; i++) //compute productivity for this aftershock
 			productivityAS[i] = Math.pow(10, alpha*(magAftershocks[i] - magComplete));	//productivity of this aftershock
 
+		// flat log-likelihood store, and subcriticality flags
+		final int numAms = num_ams;
+		final int blockSize = numAms*num_a;
+		final int numPoints = num_p*num_c;
+		final double[] gridLogLike = new double[numPoints*blockSize];
+		final boolean[] gridSubCrit = new boolean[numPoints*blockSize];
+		final AtomicLong doneCount = new AtomicLong(0);
+		final double kc = Math.pow(10, ac);
+		final double[] eventTimes = relativeEventTimes;
 
-		double tStartIntegration;
-	
 		// set up timer/time estimator
-		double toc, timeEstimate, n;
+		double toc, timeEstimate;
 		Stopwatch watch = Stopwatch.createStarted();
 		int warnTime = 3;
 		String initialMessageString = "Estimating sequence-specific model. ";
 		
-		for(pIndex=0;pIndex<num_p;pIndex++) {
-			p = p_vec[pIndex];
-
-			for(cIndex=0;cIndex<num_c;cIndex++) {
-				c0 = c_vec[cIndex];
-
-				tStartIntegration = 0;
-				
-				//compute total number at end of fit window for mainshock (unscaled by a)
-				c = c0*Math.pow(kc*productivityMS,1/p);
-				if ( Math.abs(1-p) < 1e-6 ){
-					timeIntegralMS = Math.log(dataEndTimeDays + c) - Math.log(tStartIntegration + c);
-				} else {
-					timeIntegralMS = (Math.pow(dataEndTimeDays + c, 1-p) - Math.pow(tStartIntegration + c, 1-p)) / (1-p);
+		int threads = (numThreads > 0) ? numThreads : Runtime.getRuntime().availableProcessors();
+		threads = Math.max(1, Math.min(threads, numPoints));
+		if(D) System.out.println("Grid search over " + numPoints + " (p, c) points on " + threads + " threads.");
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			ForkJoinTask<?> job = pool.submit(new GridBlock(0, numPoints, new IntConsumer() {
+				public void accept(int point) {
+					if (stopRequested)
+						return;
+					computeGridPoint(point / num_c, point % num_c, mcScaledC, kc, eventTimes, productivityMS,
+							productivityAS, priorLikelihood, gridLogLike, gridSubCrit);
+					doneCount.addAndGet(blockSize);
 				}
-				NtotMS = productivityMS*timeIntegralMS;
-//				if(D) System.out.println("NtotMS: " + NtotMS);
-				
-				//compute instantaneous intensities and total number for aftershocks (unscaled by a)
-				NtotAS = 0;
-				for(int i=0; i<Nas; i++){
-					//compute intensity at this moment due to mainshock (unscaled by ams)
-					c = c0*Math.pow(kc*productivityMS,1/p);
-					timeDecayMS[i] = productivityMS/Math.pow(relativeEventTimes[i] + c, p); //from the mainshock
-					
-					//compute intensity at this moment due to previous aftershocks (unscaled by a)
-					timeDecayAS[i] = 0;
-					for(int j = 0; j < i; j++){
-						if(relativeEventTimes[j] < relativeEventTimes[i])
-							c = c0*Math.pow(kc*productivityAS[j],1/p);
-							timeDecayAS[i] += productivityAS[j]/Math.pow(relativeEventTimes[i] - relativeEventTimes[j] + c, p);	//from the aftershocks
+			}));
+
+			// wait for the grid, reporting progress and checking for a stop request
+			long total = ((long) numPoints)*blockSize;
+			while (!job.isDone()) {
+				try {
+					job.get(1, TimeUnit.SECONDS);
+				} catch (TimeoutException e) {
+					// still running
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Parameter estimation interrupted", e);
+				} catch (ExecutionException e) {
+					throw new RuntimeException("Parameter estimation failed", e.getCause());
+				}
+
+				// run the timer to see how long this is going to take
+				toc = watch.elapsed(TimeUnit.SECONDS);
+				if(toc > warnTime && !job.isDone()){
+					//check for stopRequested?
+					if (stopRequested){
+						System.out.println("Parameter estimation terminated prematurely.");
+						return;
 					}
-				
-					tStartIntegration = relativeEventTimes[i];
-					
-					//compute total number at end of fit window due to this aftershock (unscaled by a)
-					c = c0*Math.pow(kc*productivityAS[i],1/p);
-					if(relativeEventTimes[i] < dataEndTimeDays){
-						if(Math.abs(1-p) < 1e-6){
-							timeIntegral = Math.log(dataEndTimeDays - relativeEventTimes[i] + c) - Math.log(tStartIntegration - relativeEventTimes[i] + c); 
-						} else {
-							timeIntegral = (Math.pow(dataEndTimeDays - relativeEventTimes[i] + c, 1-p) - Math.pow(tStartIntegration - relativeEventTimes[i] + c, 1-p)) / (1-p);
+
+					warnTime += 10;
+
+					long count = Math.max(1, doneCount.get());
+					timeEstimate = toc * total/count;
+					System.out.format(initialMessageString + "Approximately %d seconds remaining...\n", (int) ((timeEstimate - toc)));
+					initialMessageString = "...";
+					if (progress != null){
+						progress.updateProgress(count, total, String.format("%d%% complete. %d seconds remaining", (int) (((double) count)/((double) total) * 100), (int) ((timeEstimate - toc))));
+						progress.repaint();
+						try {
+							Thread.sleep(100);
+						} catch (InterruptedException e) {
+							// TODO Auto-generated catch block
+							e.printStackTrace();
 						}
-						
-						NtotAS += productivityAS[i]*timeIntegral;	//aftershock Contributions
-						
-//						if(D) System.out.println("NtotAS: " + NtotAS);
 					}
 				}
-				
-				// loop over productivities
-				for(amsIndex=0;amsIndex<num_ams;amsIndex++) {
-					//			double ams;	//assigned in next loop
-					ams = ams_vec[amsIndex];
-					
-					for(aIndex=0;aIndex<num_a;aIndex++) {
-						a = a_vec[aIndex];
-
-						logLike = 0;
-						
-						// now put in the productivity terms and compute likelihood
-						kms = Math.pow(10,ams);
-						k = Math.pow(10, a);
-						
-						Ntot = kms*NtotMS + k*NtotAS;
-
-						logLike += -Ntot;
-						
-						for(int i=0; i<Nas; i++){
-							//compute intensity at this moment due to previous earthquakes
-							lambda[i] = kms*timeDecayMS[i]; //from the mainshock
-							lambda[i] += k*timeDecayAS[i];	//from the aftershocks
-							logLike += Math.log(lambda[i]);
-							
-//							if(D) System.out.println("logLike: " + logLike);
-						}
-						
-						//add prior regularization
-						logLike += Math.log(priorLikelihood[amsIndex][aIndex][pIndex][cIndex]);
-						
-						//check for supercritical parameters over the forecast time window
-						c = c0*Math.pow(kc,1/p);
-						n = ETAS_StatsCalc.calculateBranchingRatio(a, p, c, alpha, b, forecastMaxDays, magComplete, maxMag);
-						
-						subCritFlag = ( n < 1 );
-												
-						// fill out the likelihood matrices with the joint likelihood
-						if(Doubles.isFinite(logLike)){
-							if (subCritFlag){
-								likelihood[amsIndex][aIndex][pIndex][cIndex] = logLike;
-								subCriticalLikelihood[amsIndex][aIndex][pIndex][cIndex] = logLike;
-								superCriticalLikelihood[amsIndex][aIndex][pIndex][cIndex] = Double.NEGATIVE_INFINITY;
-
-								if(maxVal<logLike ) {
-									maxVal=logLike;
-									max_ams_index=amsIndex;
-									max_a_index=aIndex;
-									max_p_index=pIndex;
-									max_c_index=cIndex;
-								}
-							} else {
-								likelihood[amsIndex][aIndex][pIndex][cIndex] = Double.NEGATIVE_INFINITY;
-								subCriticalLikelihood[amsIndex][aIndex][pIndex][cIndex] = Double.NEGATIVE_INFINITY;
-								superCriticalLikelihood[amsIndex][aIndex][pIndex][cIndex] = logLike;
-							}
-						}else{
-							likelihood[amsIndex][aIndex][pIndex][cIndex] = Double.NEGATIVE_INFINITY;
-							subCriticalLikelihood[amsIndex][aIndex][pIndex][cIndex] = Double.NEGATIVE_INFINITY;
-							superCriticalLikelihood[amsIndex][aIndex][pIndex][cIndex] = Double.NEGATIVE_INFINITY;
-						}
-
-						// run the timer to see how long this is going to take
-						toc = watch.elapsed(TimeUnit.SECONDS);
-						if(toc > warnTime){
-							//check for stopRequested?
-							if (stopRequested){
-								System.out.println("Parameter estimation terminated prematurely.");
-								return;
-							}
-								
+			}
+		} finally {
+			pool.shutdownNow();
+		}
 
-							warnTime += 10;
+		if (stopRequested){
+			System.out.println("Parameter estimation terminated prematurely.");
+			return;
+		}
 
-							long count = (pIndex)*(num_c*num_ams*num_a) + (cIndex)*(num_ams*num_a) + (amsIndex)*(num_a) + aIndex;
-							long total = (num_p*num_c*num_ams*num_a);
-							timeEstimate = toc * total/count;
-							System.out.format(initialMessageString + "Approximately %d seconds remaining...\n", (int) ((timeEstimate - toc)));
-							initialMessageString = "...";
-							if (progress != null){
-								progress.updateProgress(count, total, String.format("%d%% complete. %d seconds remaining", (int) (((double) count)/((double) total) * 100), (int) ((timeEstimate - toc))));
-//								progress.setProgressMessage(String.format("%d%% complete. %d seconds remaining", (int) (((double) count)/((double) total) * 100),(int) ((timeEstimate - toc))));
-								progress.repaint();
-								try {
-									Thread.sleep(100);
-								} catch (InterruptedException e) {
-									// TODO Auto-generated catch block
-									e.printStackTrace();
-								}
+		// fill the likelihood matrix, and find the maximum in the original (p, c, ams, a) order
+		likelihood = new double[num_ams][num_a][num_p][num_c];
+		double maxVal= Double.NEGATIVE_INFINITY;
+		for(int pIndex=0;pIndex<num_p;pIndex++) {
+			for(int cIndex=0;cIndex<num_c;cIndex++) {
+				int base = (pIndex*num_c + cIndex)*blockSize;
+				for(int amsIndex=0;amsIndex<num_ams;amsIndex++) {
+					for(int aIndex=0;aIndex<num_a;aIndex++) {
+						int ix = base + amsIndex*num_a + aIndex;
+						double logLike = gridLogLike[ix];
+						if(gridSubCrit[ix]){
+							likelihood[amsIndex][aIndex][pIndex][cIndex] = logLike;
+							if(maxVal<logLike ) {
+								maxVal=logLike;
+								max_ams_index=amsIndex;
+								max_a_index=aIndex;
+								max_p_index=pIndex;
+								max_c_index=cIndex;
 							}
+						} else {
+							likelihood[amsIndex][aIndex][pIndex][cIndex] = Double.NEGATIVE_INFINITY;
 						}
 					}
 				}
@@ -426,9 +405,24 @@ public class ETAS_AftershockModel_SequenceSpecific extends ETAS_AftershockModel
 		if(D) System.out.format("Grid search took %d seconds.\n", (int)toc);
 		if(D) System.out.println("Total likelihood  = " + testTotalLikelihood); //debug
 		
-		//measure the proportion of supercritical combinations
-		double totalSubCriticalLikelihood = convertLogLikelihoodArrayToLikelihood_nonNormalized(subCriticalLikelihood, maxVal);
-		double totalSuperCriticalLikelihood = convertLogLikelihoodArrayToLikelihood_nonNormalized(superCriticalLikelihood, maxVal);
+		//measure the proportion of supercritical combinations, summing in (ams, a, p, c) order
+		double totalSubCriticalLikelihood = 0;
+		double totalSuperCriticalLikelihood = 0;
+		for(int amsIndex=0;amsIndex<numAms;amsIndex++) {
+			for(int aIndex=0;aIndex<num_a;aIndex++) {
+				for(int pIndex=0;pIndex<num_p;pIndex++) {
+					for(int cIndex=0;cIndex<num_c;cIndex++) {
+						int ix = (pIndex*num_c + cIndex)*blockSize + amsIndex*num_a + aIndex;
+						double loglike = gridLogLike[ix] - maxVal;
+						double like = (loglike < -20) ? 0 : Math.exp(loglike);
+						if (gridSubCrit[ix])
+							totalSubCriticalLikelihood += like;
+						else
+							totalSuperCriticalLikelihood += like;
+					}
+				}
+			}
+		}
 		double fractionSubCritical = totalSubCriticalLikelihood/(totalSubCriticalLikelihood + totalSuperCriticalLikelihood);
 		
 		toc = watch.elapsed(TimeUnit.SECONDS);
@@ -440,249 +434,159 @@ public class ETAS_AftershockModel_SequenceSpecific extends ETAS_AftershockModel
 	}
 
 	/**
-	 * Get likelihood matrix with or without time dependent Mc. Checks for supercriticality 
-	 * and gives a warning if too many supercritical parameter sets are found;
+	 * Compute the log-likelihoods for one (p, c) grid point, for every (ams, a).
+	 * 
+	 * The O(N^2) aftershock-to-aftershock Omori sum is done once per (p, c), and
+	 * the results are written into one contiguous block of the flat store. Entries
+	 * that are not finite are stored as negative infinity and flagged supercritical,
+	 * which gives them zero weight in both subcritical and supercritical totals.
+	 * Threading: Called concurrently for different grid points; writes only its own block.
 	 */
-	private void getLikelihoodMatrixGridFast() {
-		double[] relativeEventTimes = ETAS_StatsCalc.getDaysSinceMainShockArray(mainShock, aftershockList.getRupsAboveMag(magComplete));
-		double[] magAftershocks = ETAS_StatsCalc.getAftershockMags(aftershockList.getRupsAboveMag(magComplete));
-				
-		List<double[]> sortedEQlist = new ArrayList<double[]>();
-		
-		for(int i = 0; i < relativeEventTimes.length; i++){
-			double[] temp = new double[]{relativeEventTimes[i], magAftershocks[i]};
-			sortedEQlist.add(temp);
+	private void computeGridPoint(int pIndex, int cIndex, boolean mcScaledC, double kc,
+			double[] relativeEventTimes, double productivityMS, double[] productivityAS,
+			double[][][][] priorLikelihood, double[] gridLogLike, boolean[] gridSubCrit) {
+
+		final int Nas = relativeEventTimes.length;
+		final double p = p_vec[pIndex];
+		final double c0 = c_vec[cIndex];
+		double c, timeIntegralMS, timeIntegral, NtotMS, NtotAS, tStartIntegration;
+		double[] timeDecayMS = new double[Nas];
+		double[] timeDecayAS = new double[Nas];
+
+		// c for each parent, which depends on its productivity if Mc is time-dependent
+		final double cMS = mcScaledC ? c0*Math.pow(kc*productivityMS,1/p) : c0;
+		double[] cAS = null;
+		if (mcScaledC) {
+			cAS = new double[Nas];
+			for(int i=0; i<Nas; i++)
+				cAS[i] = c0*Math.pow(kc*productivityAS[i],1/p);
 		}
-		
-		//sort times and magnitudes
-		Collections.sort(sortedEQlist, new java.util.Comparator<double[]>() {
-		    public int compare(double[] a, double[] b) {
-		        return Double.compare(a[0], b[0]);
-		    }
-		});
 
-		for(int i = 0; i < relativeEventTimes.length; i++){
-			double[] temp = sortedEQlist.get(i);
-			relativeEventTimes[i] = temp[0];
-			magAftershocks[i] = temp[1];
-			sortedEQlist.add(temp);
+		tStartIntegration = 0;
+
+		//compute total number at end of fit window for mainshock (unscaled by a)
+		c = cMS;
+		if (Math.abs(1-p) < 1e-6){
+			timeIntegralMS = Math.log(dataEndTimeDays + c) - Math.log(tStartIntegration + c);
+		} else {
+			timeIntegralMS = (Math.pow(dataEndTimeDays + c, 1-p) - Math.pow(tStartIntegration + c, 1-p)) / (1-p);
 		}
+		NtotMS = productivityMS*timeIntegralMS;
+
+		//compute instantaneous intensities and total number for aftershocks (unscaled by a)
+		NtotAS = 0;
+		for(int i=0; i<Nas; i++){
+			final double ti = relativeEventTimes[i];
+
+			//compute intensity at this moment due to mainshock (unscaled by ams)
+			c = cMS;
+			timeDecayMS[i] = productivityMS/Math.pow(ti + c, p); //from the mainshock
+
+			//compute intensity at this moment due to previous aftershocks (unscaled by a)
+			double decay = 0;
+			if (mcScaledC) {
+				// c is only updated for strictly earlier parents, as in the original Mc(t) fit
+				for(int j = 0; j < i; j++){
+					if(relativeEventTimes[j] < ti)
+						c = cAS[j];
+					decay += productivityAS[j]/Math.pow(ti - relativeEventTimes[j] + c, p);	//from the aftershocks
+				}
+			} else {
+				for(int j = 0; j < i; j++){
+					if(relativeEventTimes[j] < ti)
+						decay += productivityAS[j]/Math.pow(ti - relativeEventTimes[j] + c, p);	//from the aftershocks
+				}
+			}
+			timeDecayAS[i] = decay;
 
-		// instantiate two likelihood matrices -- one to hold subcritical likelihoods, one to hold supercritical likelihoods (for bookkeeping).
-		likelihood = new double[num_ams][num_a][num_p][num_c];
-		double[][][][] superCriticalLikelihood = new double[num_ams][num_a][num_p][num_c];
-		double[][][][] subCriticalLikelihood = new double[num_ams][num_a][num_p][num_c];
-		double[][][][] priorLikelihood = new double[num_ams][num_a][num_p][num_c];
-		
-		if (priorModel != null && priorModel.likelihood != null)
-			priorLikelihood = priorModel.get_priorLikelihoodMatrix(ams_vec, a_vec, p_vec, c_vec, false);
-		else{
-//			timeDependentMc = false; // can't do time-dependent Mc in a timely fashion without fixing incompleteness to typical values
-			for(int amsIndex=0;amsIndex<num_ams;amsIndex++)
-				for(int aIndex=0;aIndex<num_a;aIndex++)
-					for(int pIndex=0;pIndex<num_p;pIndex++)
-						for(int cIndex=0;cIndex<num_c;cIndex++){
-							priorLikelihood[amsIndex][aIndex][pIndex][cIndex] = 1;
-						}
+			tStartIntegration = ti;
+
+			//compute total number at end of fit window due to this aftershock (unscaled by a)
+			c = mcScaledC ? cAS[i] : c0;
+			if(ti < dataEndTimeDays){
+				if(Math.abs(1-p) < 1e-6){
+					timeIntegral = Math.log(dataEndTimeDays - ti + c) - Math.log(tStartIntegration - ti + c); 
+				} else {
+					timeIntegral = (Math.pow(dataEndTimeDays - ti + c, 1-p) - Math.pow(tStartIntegration - ti + c, 1-p)) / (1-p);
+				}
+
+				NtotAS += productivityAS[i]*timeIntegral;	//aftershock Contributions
+			}
 		}
-		
-		double maxVal= Double.NEGATIVE_INFINITY;
-		double logLike;
-		boolean subCritFlag;
-		
-		double ams, a, k, kms, p, c;
-		int amsIndex, aIndex, pIndex, cIndex;
-		double timeIntegralMS, NtotAS, NtotMS, Ntot;
-		
-		int Nas = relativeEventTimes.length;	//the number of aftershocks, not counting the mainshock
-		double productivityMS;
-		double[] productivityAS = new double[Nas];
-		double[] lambda = new double[Nas];
-		double[] timeDecayMS = new double[Nas];
-		double[] timeDecayAS = new double[Nas];
-		double timeIntegral;
-		
-		
-		//do productivities
-		productivityMS = Math.pow(10, alpha*(mainShock.getMag()-magComplete) );
-		for(int i=0; i<Nas; i++) //compute productivity for this aftershock
-			productivityAS[i] = Math.pow(10, alpha*(magAftershocks[i] - magComplete));	//productivity of this aftershock
 
+		// c used for the branching ratio check
+		final double cBranch = mcScaledC ? c0*Math.pow(kc,1/p) : c0;
 
-		double tStartIntegration;
-	
-		// set up timer/time estimator
-		double toc, timeEstimate, n;
-		Stopwatch watch = Stopwatch.createStarted();
-		int warnTime = 3;
-		String initialMessageString = "Estimating sequence-specific model. ";
-		
-		for(pIndex=0;pIndex<num_p;pIndex++) {
-			p = p_vec[pIndex];
+		// loop over productivities
+		int ix = (pIndex*num_c + cIndex)*num_ams*num_a;
+		for(int amsIndex=0;amsIndex<num_ams;amsIndex++) {
+			final double ams = ams_vec[amsIndex];
 
-			for(cIndex=0;cIndex<num_c;cIndex++) {
-				c = c_vec[cIndex];
+			for(int aIndex=0;aIndex<num_a;aIndex++, ix++) {
+				final double a = a_vec[aIndex];
+
+				double logLike = 0;
+
+				// now put in the productivity terms and compute likelihood
+				double kms = Math.pow(10,ams);
+				double k = Math.pow(10, a);
+
+				double Ntot = kms*NtotMS + k*NtotAS;
+
+				logLike += -Ntot;
 
-				tStartIntegration = 0;
-				
-				
-				//compute total number at end of fit window for mainshock (unscaled by a)
-				if (Math.abs(1-p) < 1e-6){
-					timeIntegralMS = Math.log(dataEndTimeDays + c) - Math.log(tStartIntegration + c);
-				} else {
-					timeIntegralMS = (Math.pow(dataEndTimeDays + c, 1-p) - Math.pow(tStartIntegration + c, 1-p)) / (1-p);
-				}
-				NtotMS = productivityMS*timeIntegralMS;
-				
-				//compute instantaneous intensities and total number for aftershocks (unscaled by a)
-				NtotAS = 0;
 				for(int i=0; i<Nas; i++){
-					//compute intensity at this moment due to mainshock (unscaled by ams)
-					timeDecayMS[i] = productivityMS/Math.pow(relativeEventTimes[i] + c, p); //from the mainshock
-					
-					//compute intensity at this moment due to previous aftershocks (unscaled by a)
-					timeDecayAS[i] = 0;
-					for(int j = 0; j < i; j++){
-						if(relativeEventTimes[j] < relativeEventTimes[i])
-							timeDecayAS[i] += productivityAS[j]/Math.pow(relativeEventTimes[i] - relativeEventTimes[j] + c, p);	//from the aftershocks
-					}
-				
-					tStartIntegration = relativeEventTimes[i];
-					
-					//compute total number at end of fit window due to this aftershock (unscaled by a)
-					if(relativeEventTimes[i] < dataEndTimeDays){
-						if(Math.abs(1-p) < 1e-6){
-							timeIntegral = Math.log(dataEndTimeDays - relativeEventTimes[i] + c) - Math.log(tStartIntegration - relativeEventTimes[i] + c); 
-						} else {
-							timeIntegral = (Math.pow(dataEndTimeDays - relativeEventTimes[i] + c, 1-p) - Math.pow(tStartIntegration - relativeEventTimes[i] + c, 1-p)) / (1-p);
-						}
-						
-						NtotAS += productivityAS[i]*timeIntegral;	//aftershock Contributions
-					}
+					//compute intensity at this moment due to previous earthquakes
+					double lambda = kms*timeDecayMS[i]; //from the mainshock
+					lambda += k*timeDecayAS[i];	//from the aftershocks
+					logLike += Math.log(lambda);
 				}
-				
-				// loop over productivities
-				for(amsIndex=0;amsIndex<num_ams;amsIndex++) {
-					//			double ams;	//assigned in next loop
-					ams = ams_vec[amsIndex];
-					
-					for(aIndex=0;aIndex<num_a;aIndex++) {
-						a = a_vec[aIndex];
-
-						logLike = 0;
-						
-						// now put in the productivity terms and compute likelihood
-						kms = Math.pow(10,ams);
-						k = Math.pow(10, a);
-						
-						Ntot = kms*NtotMS + k*NtotAS;
-						
-						logLike += -Ntot;
-						
-						for(int i=0; i<Nas; i++){
-							//compute intensity at this moment due to previous earthquakes
-							lambda[i] = kms*timeDecayMS[i]; //from the mainshock
-							lambda[i] += k*timeDecayAS[i];	//from the aftershocks
-							logLike += Math.log(lambda[i]);
-						}
-						
-						//add prior regularization
-						logLike += Math.log(priorLikelihood[amsIndex][aIndex][pIndex][cIndex]);
-						
-						//check for supercritical parameters over the forecast time window
-						n = ETAS_StatsCalc.calculateBranchingRatio(a, p, c, alpha, b, forecastMaxDays, magComplete, maxMag);
-						
-						subCritFlag = ( n < 1 );
-
-						
-						// fill out the likelihood matrices with the joint likelihood
-						if(Doubles.isFinite(logLike)){
-							if (subCritFlag){
-								likelihood[amsIndex][aIndex][pIndex][cIndex] = logLike;
-								subCriticalLikelihood[amsIndex][aIndex][pIndex][cIndex] = logLike;
-								superCriticalLikelihood[amsIndex][aIndex][pIndex][cIndex] = Double.NEGATIVE_INFINITY;
-
-								if(maxVal<logLike ) {
-									maxVal=logLike;
-									max_ams_index=amsIndex;
-									max_a_index=aIndex;
-									max_p_index=pIndex;
-									max_c_index=cIndex;
-								}
-							} else {
-								likelihood[amsIndex][aIndex][pIndex][cIndex] = Double.NEGATIVE_INFINITY;
-								subCriticalLikelihood[amsIndex][aIndex][pIndex][cIndex] = Double.NEGATIVE_INFINITY;
-								superCriticalLikelihood[amsIndex][aIndex][pIndex][cIndex] = logLike;
-							}
-						}else{
-							likelihood[amsIndex][aIndex][pIndex][cIndex] = Double.NEGATIVE_INFINITY;
-							subCriticalLikelihood[amsIndex][aIndex][pIndex][cIndex] = Double.NEGATIVE_INFINITY;
-							superCriticalLikelihood[amsIndex][aIndex][pIndex][cIndex] = Double.NEGATIVE_INFINITY;
-						}
 
-						// run the timer to see how long this is going to take
-						toc = watch.elapsed(TimeUnit.SECONDS);
-						if(toc > warnTime){
-							//check for stopRequested?
-							if (stopRequested){
-								System.out.println("Parameter estimation terminated prematurely.");
-								return;
-							}
-								
+				//add prior regularization
+				if (priorLikelihood != null)
+					logLike += Math.log(priorLikelihood[amsIndex][aIndex][pIndex][cIndex]);
 
-							warnTime += 10;
+				//check for supercritical parameters over the forecast time window
+				double n = ETAS_StatsCalc.calculateBranchingRatio(a, p, cBranch, alpha, b, forecastMaxDays, magComplete, maxMag);
 
-							long count = (pIndex)*(num_c*num_ams*num_a) + (cIndex)*(num_ams*num_a) + (amsIndex)*(num_a) + aIndex;
-							long total = (num_p*num_c*num_ams*num_a);
-							timeEstimate = toc * total/count;
-							System.out.format(initialMessageString + "Approximately %d seconds remaining...\n", (int) ((timeEstimate - toc)));
-							initialMessageString = "...";
-							if (progress != null){
-								progress.updateProgress(count, total, String.format("%d%% complete. %d seconds remaining", (int) (((double) count)/((double) total) * 100), (int) ((timeEstimate - toc))));
-//								progress.setProgressMessage(String.format("%d%% complete. %d seconds remaining", (int) (((double) count)/((double) total) * 100),(int) ((timeEstimate - toc))));
-								progress.repaint();
-								try {
-									Thread.sleep(100);
-								} catch (InterruptedException e) {
-									// TODO Auto-generated catch block
-									e.printStackTrace();
-								}
-							}
-						}
-					}
+				// fill out the flat store with the joint likelihood
+				if(Doubles.isFinite(logLike)){
+					gridLogLike[ix] = logLike;
+					gridSubCrit[ix] = ( n < 1 );
+				} else {
+					gridLogLike[ix] = Double.NEGATIVE_INFINITY;
+					gridSubCrit[ix] = false;
 				}
 			}
 		}
+	}
 
-		// if not fitting MS productivity, make sure the ams_vector reflects this constraint
-		if(!fitMSProductivity){
-			this.min_ams = getMaxLikelihood_a();
-			this.max_ams = getMaxLikelihood_a();
-			this.num_ams = 1;
-			this.ams_vec = ETAS_StatsCalc.linspace(min_ams, max_ams, num_ams);
-		};
+	/**
+	 * Fork-join task over a range of (p, c) grid points, split in halves down to single points.
+	 */
+	private static class GridBlock extends RecursiveAction {
+		private final int lo;
+		private final int hi;
+		private final IntConsumer body;
+
+		GridBlock(int lo, int hi, IntConsumer body) {
+			this.lo = lo;
+			this.hi = hi;
+			this.body = body;
+		}
 
-		// convert array from log-likelihood to likelihood
-		double testTotalLikelihood = convertLogLikelihoodArrayToLikelihood(maxVal); // this converts likelihood from log to linear
-		toc = watch.elapsed(TimeUnit.SECONDS);
-		
-		if(D) System.out.format("Grid search took %d seconds.\n", (int)toc);
-		if(D) System.out.println("Total likelihood  = " + testTotalLikelihood); //debug
-		
-		//measure the proportion of supercritical combinations
-		double totalSubCriticalLikelihood = convertLogLikelihoodArrayToLikelihood_nonNormalized(subCriticalLikelihood, maxVal);
-		double totalSuperCriticalLikelihood = convertLogLikelihoodArrayToLikelihood_nonNormalized(superCriticalLikelihood, maxVal);
-		double fractionSubCritical = totalSubCriticalLikelihood/(totalSubCriticalLikelihood + totalSuperCriticalLikelihood);
-		
-		toc = watch.elapsed(TimeUnit.SECONDS);
-		
-		if(D) System.out.format("Sequence Specific Model: %3.2f%% subcritical.\n", fractionSubCritical*100);
-		if(D) System.out.format("Mainshock productivity magnitude: %2.2f\n" , getProductivityMag());
-		watch.stop();
-		this.epiLikelihood = likelihood;
+		@Override
+		protected void compute() {
+			if (hi - lo <= 1) {
+				if (hi > lo)
+					body.accept(lo);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new GridBlock(lo, mid, body), new GridBlock(mid, hi, body));
+		}
 	}
 	
-	
 //	/**
 //	 * Get likelihood matrix with no shortcuts (computing p and c terms inside a and ams loops) SLOOOOOOW!
 //	 */
@@ -7,7 +7,14 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
 
 import org.opensha.commons.data.xyz.GriddedGeoDataSet;
 import org.opensha.commons.geo.GriddedRegion;
@@ -214,64 +221,48 @@ public class ETAS_RateModel2D {
 		
 		GriddedGeoDataSet smoothGridData = new GriddedGeoDataSet(rateModel.getRegion(), false);
 
-		Location pt1;
-		Location pt2;
-		double dx, dy, r2;
-		double d2 = distance*distance/111.111/111.111; //km --> deg
-		double lon, lat, lon0, lat0, latFactor;
-		double rateSum;
-
-		// set up timer/time estimator
-		double toc, timeEstimate;
-		Stopwatch watch = Stopwatch.createStarted();
-		int warnTime = 3;
-		String initialMessageString = "Computing smoothed rate map. ";
-		
-		for (int i=0 ; i < smoothGridData.size(); i++){
-			pt1 = smoothGridData.getLocation(i);
-			lon0 = pt1.getLongitude();
-			lat0 = pt1.getLatitude();
-			latFactor = Math.cos(Math.toRadians(lat0));
-
-			//find the grid points near enough to include
-			rateSum = 0;
-			for (int j = 0; j < smoothGridData.size(); j++){
-				//start with the quick estimate
-				pt2 = smoothGridData.getLocation(j);
-				lon = pt2.getLongitude();
-				lat = pt2.getLatitude();
-				dx = (lon-lon0)*latFactor;
-				dy = (lat-lat0);
-
-				r2 = dx*dx + dy*dy;
-				if (r2 < d2){
-					rateSum += rateModel.get(j);
+		final double d2 = distance*distance/111.111/111.111; //km --> deg
+		final NodeIndex index = new NodeIndex(smoothGridData, Math.sqrt(d2));
+		final double[] rates = getRates(index.size());
+		final double[] lons = index.lon;
+		final double[] lats = index.lat;
+		
+		// scale to new magnitude reference
+		final double magScale = Math.pow(10, -forecastModel.get_b()*(magPlot - forecastModel.magComplete));
+		final double[] probs = new double[index.size()];
+
+		forEachNode(index.size(), "Computing smoothed rate map. ", new IntConsumer() {
+			public void accept(int i) {
+				double lon0 = lons[i];
+				double lat0 = lats[i];
+				double latFactor = Math.cos(Math.toRadians(lat0));
+
+				//find the grid points near enough to include, from the buckets within the radius
+				double rateSum = 0;
+				int[] cells = index.cellRange(lon0, lat0, latFactor);
+				for (int cy = cells[2]; cy <= cells[3]; cy++){
+					for (int cx = cells[0]; cx <= cells[1]; cx++){
+						int cell = cy*index.nLonCells + cx;
+						for (int k = index.cellStart[cell]; k < index.cellStart[cell + 1]; k++){
+							int j = index.cellNodes[k];
+							double dx = (lons[j]-lon0)*latFactor;
+							double dy = (lats[j]-lat0);
+
+							double r2 = dx*dx + dy*dy;
+							if (r2 < d2){
+								rateSum += rates[j];
+							}
+						}
+					}
 				}
-			}
-
-			// run the timer to see how long this is going to take
-			toc = watch.elapsed(TimeUnit.SECONDS);
-			if(toc > warnTime){
-				warnTime += 10;
 
-				long count = i;
-				long total = smoothGridData.size();
-				timeEstimate = toc * (double)total/ (double)count;
-				System.out.format(initialMessageString + "Approximately %d seconds remaining...\n", (int) ((timeEstimate - toc)));
-				initialMessageString = "...";
-				
-				if (forecastModel.progress != null){
-					//									progress.updateProgress(count, total, String.format("%d%% complete. %d seconds remaining", (int) (((double) count)/((double) total) * 100), (int) ((timeEstimate - toc)/1000)));
-					forecastModel.progress.setProgressMessage(String.format("%d%% complete. %d seconds remaining", (int) (((double) count)/((double) total) * 100),(int) ((timeEstimate - toc))));
-					forecastModel.progress.pack();
-				}
+				rateSum *= magScale;
+				probs[i] = 1d - Math.exp(-rateSum);
 			}
-			// scale to new magnitude reference
-			rateSum *= Math.pow(10, -forecastModel.get_b()*(magPlot - forecastModel.magComplete));
-			double probSum = 1d - Math.exp(-rateSum);
+		});
 
-			smoothGridData.set(i, probSum);
-		}
+		for (int i=0 ; i < probs.length; i++)
+			smoothGridData.set(i, probs[i]);
 		
 		return smoothGridData;
 	}
@@ -283,68 +274,283 @@ public class ETAS_RateModel2D {
 		
 		GriddedGeoDataSet smoothGridData = new GriddedGeoDataSet(rateModel.getRegion(), false);
 
-		Location pt1;
-		Location pt2;
-		double dx, dy, r, mag;
-		double lon, lat, lon0, lat0, latFactor;
-		double rateSum;
-		double magRef = forecastModel.magComplete;
+		mmiModel = null; //reset the mmi-magnitude interpolation forecastModel
+		getMagForMMI(mmiRef, 0);	//build the mmi-magnitude table, which also sets maxDist
+
+		// precompute the rate scaling for each step of the distance table; beyond maxDist the magnitude is infinite and the weight is zero
+		final double[] kernelDist = mmiModel[0];
+		final double[] kernelWeight = new double[kernelDist.length];
+		for (int k = 0; k < kernelDist.length; k++)
+			kernelWeight[k] = Math.pow(10, -forecastModel.get_b()*(mmiModel[1][k] - forecastModel.magComplete));
+		final double cutoff = maxDist;
+
+		final NodeIndex index = new NodeIndex(smoothGridData, cutoff/111.1111);
+		final double[] rates = getRates(index.size());
+		final double[] lons = index.lon;
+		final double[] lats = index.lat;
+		final double[] rateSums = new double[index.size()];
+
+		forEachNode(index.size(), "Computing smoothed rate map. ", new IntConsumer() {
+			public void accept(int i) {
+				double lon0 = lons[i];
+				double lat0 = lats[i];
+				double latFactor = Math.cos(Math.toRadians(lat0));
+
+				//sum the contributions from the buckets within the cutoff distance
+				double rateSum = 0;
+				int[] cells = index.cellRange(lon0, lat0, latFactor);
+				for (int cy = cells[2]; cy <= cells[3]; cy++){
+					for (int cx = cells[0]; cx <= cells[1]; cx++){
+						int cell = cy*index.nLonCells + cx;
+						for (int k = index.cellStart[cell]; k < index.cellStart[cell + 1]; k++){
+							int j = index.cellNodes[k];
+							double dx = (lons[j]-lon0)*latFactor;
+							double dy = (lats[j]-lat0);
+
+							double r = Math.sqrt(dx*dx + dy*dy)*111.1111;
+							if (r >= cutoff)
+								continue;
+
+							rateSum += rates[j] * kernelWeight[stepIndex(kernelDist, r)];
+						}
+					}
+				}
+
+				rateSums[i] = rateSum;
+			}
+		});
+
+		for (int i=0 ; i < rateSums.length; i++)
+			smoothGridData.set(i, rateSums[i]);
+
+		return smoothGridData;
+	}
+
+	/**
+	 * Returns the index of the last table distance that is less than or equal to D, or 0 if there is none.
+	 * This is the same step lookup as getMagForMMI, done by bisection.
+	 */
+	private static int stepIndex(double[] distances, double D){
+		int lo = 0;
+		int hi = distances.length - 1;
+		if (!(D < distances[hi]))
+			return hi;
+		while (hi - lo > 1){
+			int mid = (lo + hi) >>> 1;
+			if (D < distances[mid])
+				hi = mid;
+			else
+				lo = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Copy the gridded rates into an array, so worker threads do not touch the data set.
+	 */
+	private double[] getRates(int size){
+		double[] rates = new double[size];
+		for (int j = 0; j < size; j++)
+			rates[j] = rateModel.get(j);
+		return rates;
+	}
+
+	// Number of threads used for the smoothed maps; 0 or less uses all processors
+	private static int numThreads = 0;
+
+	/**
+	 * Set the number of threads used by calculateSmoothRateModel and calculateMMIRateModel.
+	 * A positive value uses that many threads, and a value of 0 or less (the default) uses
+	 * one thread per available processor.
+	 */
+	public static void setNumThreads(int threads){
+		numThreads = threads;
+	}
+
+	public static int getNumThreads(){
+		return numThreads;
+	}
+
+	/**
+	 * Run the body for every node index on a fork-join pool, reporting progress from the
+	 * calling thread in the same manner as the serial loops did.
+	 */
+	private void forEachNode(int total, String initialMessageString, IntConsumer body){
+		int threads = (numThreads > 0) ? numThreads : Runtime.getRuntime().availableProcessors();
+		threads = Math.max(1, Math.min(threads, Math.max(1, total)));
+
+		final AtomicLong doneCount = new AtomicLong(0);
 
 		// set up timer/time estimator
 		double toc, timeEstimate;
 		Stopwatch watch = Stopwatch.createStarted();
 		int warnTime = 3;
-		String initialMessageString = "Computing smoothed rate map. ";
-		
-		mmiModel = null; //reset the mmi-magnitude interpolation forecastModel
-		
-		for (int i=0 ; i < smoothGridData.size(); i++){
-			pt1 = smoothGridData.getLocation(i);
-			lon0 = pt1.getLongitude();
-			lat0 = pt1.getLatitude();
-			latFactor = Math.cos(Math.toRadians(lat0));
-
-			//find the grid points near enough to include
-			rateSum = 0;
-			for (int j = 0; j < smoothGridData.size(); j++){
-				//start with the quick estimate
-				pt2 = smoothGridData.getLocation(j);
-				lon = pt2.getLongitude();
-				lat = pt2.getLatitude();
-				dx = (lon-lon0)*latFactor;
-				dy = (lat-lat0);
-
-				r = Math.sqrt(dx*dx + dy*dy)*111.1111;
-				
-				mag = getMagForMMI(mmiRef, r);
-				
-				rateSum += rateModel.get(j) * Math.pow(10, -forecastModel.get_b()*(mag - forecastModel.magComplete));;
-			}
-			
 
-			// run the timer to see how long this is going to take
-			toc = watch.elapsed(TimeUnit.SECONDS);
-			if(toc > warnTime){
-				warnTime += 10;
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			ForkJoinTask<?> job = pool.submit(new NodeBlock(0, total, body, doneCount));
+			while (!job.isDone()){
+				try {
+					job.get(1, TimeUnit.SECONDS);
+				} catch (TimeoutException e) {
+					// still running
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Rate map calculation interrupted", e);
+				} catch (ExecutionException e) {
+					throw new RuntimeException("Rate map calculation failed", e.getCause());
+				}
 
-				long count = i;
-				long total = smoothGridData.size();
-				timeEstimate = toc * (double)total/ (double)count;
-				System.out.format(initialMessageString + "Approximately %d seconds remaining...\n", (int) ((timeEstimate - toc)));
-				initialMessageString = "...";
-				
-				if (forecastModel.progress != null){
-					//									progress.updateProgress(count, total, String.format("%d%% complete. %d seconds remaining", (int) (((double) count)/((double) total) * 100), (int) ((timeEstimate - toc)/1000)));
-					forecastModel.progress.setProgressMessage(String.format("%d%% complete. %d seconds remaining", (int) (((double) count)/((double) total) * 100),(int) ((timeEstimate - toc))));
-					forecastModel.progress.pack();
+				// run the timer to see how long this is going to take
+				toc = watch.elapsed(TimeUnit.SECONDS);
+				if(toc > warnTime && !job.isDone()){
+					warnTime += 10;
+
+					long count = Math.max(1, doneCount.get());
+					timeEstimate = toc * (double)total/ (double)count;
+					System.out.format(initialMessageString + "Approximately %d seconds remaining...\n", (int) ((timeEstimate - toc)));
+					initialMessageString = "...";
+
+					if (forecastModel.progress != null){
+						forecastModel.progress.setProgressMessage(String.format("%d%% complete. %d seconds remaining", (int) (((double) count)/((double) total) * 100),(int) ((timeEstimate - toc))));
+						forecastModel.progress.pack();
+					}
 				}
 			}
-			smoothGridData.set(i, rateSum);
+		} finally {
+			pool.shutdownNow();
 		}
+	}
 
-		return smoothGridData;
+	/**
+	 * Fork-join task over a range of node indexes, split in halves down to small blocks.
+	 */
+	private static class NodeBlock extends RecursiveAction {
+		private static final int BLOCK = 64;
+		private final int lo;
+		private final int hi;
+		private final IntConsumer body;
+		private final AtomicLong doneCount;
+
+		NodeBlock(int lo, int hi, IntConsumer body, AtomicLong doneCount){
+			this.lo = lo;
+			this.hi = hi;
+			this.body = body;
+			this.doneCount = doneCount;
+		}
+
+		@Override
+		protected void compute(){
+			if (hi - lo <= BLOCK){
+				for (int i = lo; i < hi; i++)
+					body.accept(i);
+				doneCount.addAndGet(hi - lo);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new NodeBlock(lo, mid, body, doneCount), new NodeBlock(mid, hi, body, doneCount));
+		}
 	}
-	
+
+	/**
+	 * Uniform-grid bucket index over the nodes of a gridded data set, for radius queries.
+	 * 
+	 * Nodes are binned into square cells (in degrees) at least as large as the query radius,
+	 * stored in compressed form: the nodes of cell n are cellNodes[cellStart[n] .. cellStart[n+1]-1].
+	 * A query returns a conservative range of cells, and the caller applies the exact distance
+	 * test, so the set of nodes included is the same as for a search over all nodes.
+	 */
+	private static class NodeIndex {
+		final double[] lon;
+		final double[] lat;
+		final double radius;
+		final double minLon;
+		final double minLat;
+		final double cellSize;
+		final int nLonCells;
+		final int nLatCells;
+		final int[] cellStart;
+		final int[] cellNodes;
+
+		/**
+		 * @param data - the gridded data set whose node locations are indexed
+		 * @param radius - the query radius, in degrees of latitude; may be infinite
+		 */
+		NodeIndex(GriddedGeoDataSet data, double radius){
+			int size = data.size();
+			lon = new double[size];
+			lat = new double[size];
+			double maxLon = Double.NEGATIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+			double lonMin = Double.POSITIVE_INFINITY, latMin = Double.POSITIVE_INFINITY;
+			for (int j = 0; j < size; j++){
+				Location loc = data.getLocation(j);
+				lon[j] = loc.getLongitude();
+				lat[j] = loc.getLatitude();
+				lonMin = Math.min(lonMin, lon[j]);
+				latMin = Math.min(latMin, lat[j]);
+				maxLon = Math.max(maxLon, lon[j]);
+				maxLat = Math.max(maxLat, lat[j]);
+			}
+			minLon = (size > 0) ? lonMin : 0;
+			minLat = (size > 0) ? latMin : 0;
+
+			// pad the radius slightly so rounding cannot exclude a node that passes the exact test
+			this.radius = radius*(1 + 1e-9) + 1e-12;
+
+			// cells no smaller than the radius, and not so many that the index outgrows the data
+			double extent = (size > 0) ? Math.max(maxLon - minLon, maxLat - minLat) : 0;
+			int maxCellsPerSide = 2*(int)Math.ceil(Math.sqrt(size)) + 1;
+			double size0 = Math.max(this.radius, extent/maxCellsPerSide);
+			cellSize = (Double.isInfinite(size0) || size0 <= 0) ? Math.max(extent, 1) : size0;
+			nLonCells = (size > 0) ? (int)Math.floor((maxLon - minLon)/cellSize) + 1 : 1;
+			nLatCells = (size > 0) ? (int)Math.floor((maxLat - minLat)/cellSize) + 1 : 1;
+
+			// counting sort of the nodes into cells, keeping node order within each cell
+			int[] nodeCell = new int[size];
+			cellStart = new int[nLonCells*nLatCells + 1];
+			for (int j = 0; j < size; j++){
+				nodeCell[j] = lonCell(lon[j]) + nLonCells*latCell(lat[j]);
+				cellStart[nodeCell[j] + 1]++;
+			}
+			for (int n = 0; n < nLonCells*nLatCells; n++)
+				cellStart[n + 1] += cellStart[n];
+			int[] fill = java.util.Arrays.copyOf(cellStart, cellStart.length - 1);
+			cellNodes = new int[size];
+			for (int j = 0; j < size; j++)
+				cellNodes[fill[nodeCell[j]]++] = j;
+		}
+
+		int size(){
+			return lon.length;
+		}
+
+		int lonCell(double x){
+			return clampCell((x - minLon)/cellSize, nLonCells);
+		}
+
+		int latCell(double y){
+			return clampCell((y - minLat)/cellSize, nLatCells);
+		}
+
+		private static int clampCell(double v, int n){
+			if (!(v > 0))
+				return 0;
+			if (v >= n)
+				return n - 1;
+			return (int)v;
+		}
+
+		/**
+		 * Returns {lonCellLo, lonCellHi, latCellLo, latCellHi}, inclusive, covering every node
+		 * within the radius of (lon0, lat0), where longitude differences are scaled by latFactor.
+		 */
+		int[] cellRange(double lon0, double lat0, double latFactor){
+			double lonRadius = (latFactor > 1e-12) ? radius/latFactor : Double.POSITIVE_INFINITY;
+			return new int[] {lonCell(lon0 - lonRadius), lonCell(lon0 + lonRadius),
+					latCell(lat0 - radius), latCell(lat0 + radius)};
+		}
+	}
+
 	private double[][] mmiModel;
 	private double maxDist = Double.POSITIVE_INFINITY;
 	
@@ -61,7 +61,15 @@ public class ETAS_ShakingForecastCalc {
 		return calcForecast( calcRegion,  rateModel,  refMag,  maxMag,  b,  gmpe,
 				 mechWts,  maxSourceDist, vs30Provider,  false); 
 	}
-	
+
+	/**
+	 * As above, with the option of asking the user whether to continue a long calculation.
+	 * The curves are calculated on GriddedInterpGMPE_Calc.getNumThreads() threads. The prompt
+	 * is skipped when no display is available, so this can be run headless.
+	 *
+	 * @param prompt if true, show a confirmation dialog when the calculation will take a while
+	 * @return array of hazard curves, or null if the user cancelled
+	 */
 	public static DiscretizedFunc[] calcForecast(GriddedRegion calcRegion, GeoDataSet rateModel, double refMag, double maxMag, double b, ScalarIMR gmpe,
 			Map<FocalMech, Double> mechWts, double maxSourceDist, SiteData<Double> vs30Provider, boolean prompt) throws IOException {
 		
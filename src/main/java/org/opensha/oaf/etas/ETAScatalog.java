@@ -5,7 +5,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.opensha.commons.data.function.ArbDiscrEmpiricalDistFunc;
 import org.opensha.sha.earthquake.observedEarthquake.ObsEqkRupList;
@@ -54,7 +59,8 @@ public class ETAScatalog {
 	public int[] numEventsFinal;
 	// private int[] numGenerations;
 
-	private List<List<float[]>> catalogList; // list of catalogs
+	private List<List<float[]>> catalogList; // list of catalogs (serial mode)
+	private SimCatalog[] simCatalogs; // columnar catalogs (parallel mode)
 	// private List<List<float[]>> catalogTimesList; //list of catalog times
 	private boolean validate;
 
@@ -69,6 +75,30 @@ public class ETAScatalog {
 		random = new java.util.Random(seed);
 	}
 
+	// Number of worker threads for catalog generation; 0 selects the original serial generator
+	private static int numThreads = 0;
+
+	/**
+	 * Select the catalog generation engine.
+	 * 
+	 * A value of 0 (the default) uses the original serial generator, which draws
+	 * every catalog from the shared static Random. A positive value runs the
+	 * parallel engine with that many worker threads, and a negative value uses one
+	 * thread per available processor.
+	 * 
+	 * The parallel engine gives every catalog its own random stream, derived from
+	 * the shared Random after parameter sampling, so for a given seed the
+	 * catalogs are bit-identical regardless of the number of threads. They are
+	 * not identical to the catalogs produced by the serial generator.
+	 */
+	public static void setNumThreads(int threads) {
+		numThreads = threads;
+	}
+
+	public static int getNumThreads() {
+		return numThreads;
+	}
+
 	public ETAScatalog(double[] ams_vec, double[] a_vec, double[] p_vec, double[] c_vec, double[][][][] likelihood,
 			double alpha, double b, double refMag,
 			ObsEqkRupture mainshock, ObsEqkRupList aftershocks,
@@ -101,6 +131,7 @@ public class ETAScatalog {
 		// only {time}
 
 		List<List<float[]>> catalogList = new ArrayList<List<float[]>>(); // list of catalogs
+		SimCatalog[] simCatalogs = null; // columnar catalogs, if using the parallel engine
 		// List<List<float[]>> catalogTimesList = new ArrayList<List<float[]>>(); //
 		// just the times
 
@@ -126,51 +157,57 @@ public class ETAScatalog {
 			String initialMessageString = "Calculating " + nSims + " " + (int) (forecastEnd - forecastStart)
 					+ "-day ETAS catalogs. ";
 
-			for (int i = 0; i < nSims; i++) {
-				toc = watch.elapsed(TimeUnit.SECONDS);
-				if (toc > warnTime) {
-					warnTime += 10;
-					timeEstimate = (double) toc * (double) (nSims) / (double) i;
-					System.out.format(initialMessageString + "Approximately %d seconds remaining...\n",
-							(int) ((timeEstimate - toc)));
-					initialMessageString = "...";
-				}
+			if (numThreads != 0) {
+				// parallel engine: columnar catalogs, one random stream per catalog
+				catalogList = null;
+				simCatalogs = generateParallel(paramList, mainshock, aftershocks, nEvents);
+			} else {
+				for (int i = 0; i < nSims; i++) {
+					toc = watch.elapsed(TimeUnit.SECONDS);
+					if (toc > warnTime) {
+						warnTime += 10;
+						timeEstimate = (double) toc * (double) (nSims) / (double) i;
+						System.out.format(initialMessageString + "Approximately %d seconds remaining...\n",
+								(int) ((timeEstimate - toc)));
+						initialMessageString = "...";
+					}
 
-				double[] params = paramList[i];
-				double ams_sample, a_sample, p_sample, c_sample;
-				ams_sample = params[0];
-				a_sample = params[1];
-				p_sample = params[2];
-				c_sample = params[3];
-
-				if (D && Math.floorMod(i, nSims / 10) == 0)
-					System.out.println("Parameter set " + i + ": " + ams_sample + " " + a_sample + " " + p_sample + " "
-							+ c_sample);
-				// if (D) System.out.println("Parameter set " + i + ": " + ams_sample + " " +
-				// a_sample + " " + p_sample + " " + c_sample);
-
-				// Currently sets the first event as mainshock and adjusts magnitude
-				// todo step1: change magnitude of LARGEST earthquake
-				// todo step2: depending on the total number of events, adjust N-largest
-				// magnitudes
-				ObsEqkRupture simulationMainshock = (ObsEqkRupture) mainshock.clone();
-				simulationMainshock.setMag(mainshock.getMag() + (ams_sample - a_sample));
-
-				newEqList = getNewETAScatalog(simulationMainshock, aftershocks, a_sample, p_sample, c_sample, i);
-				// newEqTimesList = getNewETAScatalogTimes(simulationMainshock, aftershocks,
-				// a_sample, p_sample, c_sample, i);
-
-				// maxMags[i] = get_maxMag(newEqList);
-				nEvents[i] = get_nEvents(newEqList);
-
-				// nGens[i] = get_nGenerations(newEqList);
-
-				// eqInt = compress(newEqList);
-				// catalogTimesList.add(i, newEqTimesList);
-				catalogList.add(i, newEqList); // this is super memory intensive... need a compressed representation
-				// instead of adding the new catalog to the list, just compute a histogram of
-				// event times. (Magnitude isn't even required)
+					double[] params = paramList[i];
+					double ams_sample, a_sample, p_sample, c_sample;
+					ams_sample = params[0];
+					a_sample = params[1];
+					p_sample = params[2];
+					c_sample = params[3];
+
+					if (D && Math.floorMod(i, nSims / 10) == 0)
+						System.out.println("Parameter set " + i + ": " + ams_sample + " " + a_sample + " " + p_sample + " "
+								+ c_sample);
+					// if (D) System.out.println("Parameter set " + i + ": " + ams_sample + " " +
+					// a_sample + " " + p_sample + " " + c_sample);
+
+					// Currently sets the first event as mainshock and adjusts magnitude
+					// todo step1: change magnitude of LARGEST earthquake
+					// todo step2: depending on the total number of events, adjust N-largest
+					// magnitudes
+					ObsEqkRupture simulationMainshock = (ObsEqkRupture) mainshock.clone();
+					simulationMainshock.setMag(mainshock.getMag() + (ams_sample - a_sample));
+
+					newEqList = getNewETAScatalog(simulationMainshock, aftershocks, a_sample, p_sample, c_sample, i);
+					// newEqTimesList = getNewETAScatalogTimes(simulationMainshock, aftershocks,
+					// a_sample, p_sample, c_sample, i);
+
+					// maxMags[i] = get_maxMag(newEqList);
+					nEvents[i] = get_nEvents(newEqList);
+
+					// nGens[i] = get_nGenerations(newEqList);
+
+					// eqInt = compress(newEqList);
+					// catalogTimesList.add(i, newEqTimesList);
+					catalogList.add(i, newEqList); // this is super memory intensive... need a compressed representation
+					// instead of adding the new catalog to the list, just compute a histogram of
+					// event times. (Magnitude isn't even required)
 
+				}
 			}
 			toc = watch.elapsed(TimeUnit.SECONDS);
 			if (D)
@@ -186,6 +223,7 @@ public class ETAScatalog {
 
 		// this.eqList = getLastETAScatalog();
 		this.catalogList = catalogList;
+		this.simCatalogs = simCatalogs;
 		// this.catalogTimesList = catalogTimesList;
 		// this.maxMags = maxMags;
 		this.numEventsFinal = nEvents;
@@ -405,6 +443,289 @@ public class ETAScatalog {
 
 	}
 
+	/*
+	 * Parallel catalog engine.
+	 * 
+	 * Catalogs are distributed over a pool of worker threads. Each catalog draws
+	 * from its own SplittableRandom, seeded from a table that is filled serially
+	 * from the shared Random, so the result for a given seed does not depend on the
+	 * number of threads or on scheduling. The cascade is walked with an explicit
+	 * stack that visits events in the same order as the recursive getChildren, and
+	 * events are written into primitive column buffers that each worker reuses from
+	 * one catalog to the next.
+	 */
+	private SimCatalog[] generateParallel(double[][] paramList, ObsEqkRupture mainshock, ObsEqkRupList aftershocks,
+			int[] nEvents) {
+
+		final int nCat = paramList.length;
+		final SimCatalog[] catalogs = new SimCatalog[nCat];
+
+		// one seed per catalog, drawn in catalog order
+		final long[] catSeeds = new long[nCat];
+		for (int i = 0; i < nCat; i++)
+			catSeeds[i] = random.nextLong();
+
+		// observed seed events, in the order used by getNewETAScatalog (aftershocks
+		// reversed), excluding the mainshock whose magnitude depends on the sample
+		double t0 = mainshock.getOriginTime();
+		final float msTime = 0f;
+		final float[] seedTime = new float[aftershocks.size()];
+		final float[] seedMag = new float[aftershocks.size()];
+		int nSeed = 0;
+		for (int n = aftershocks.size() - 1; n >= 0; n--) {
+			ObsEqkRupture rup = aftershocks.get(n);
+			seedTime[nSeed] = (float) ((rup.getOriginTime() - t0) / ETAS_StatsCalc.MILLISEC_PER_DAY);
+			seedMag[nSeed] = (float) rup.getMag();
+			nSeed++;
+		}
+		final int numSeeds = nSeed;
+		final double msMag = mainshock.getMag();
+
+		int threads = (numThreads > 0) ? numThreads : Runtime.getRuntime().availableProcessors();
+		threads = Math.max(1, Math.min(threads, nCat));
+
+		if (D)
+			System.out.println("Generating " + nCat + " catalogs on " + threads + " threads.");
+
+		final AtomicInteger nextCat = new AtomicInteger(0);
+		final AtomicInteger doneCat = new AtomicInteger(0);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			for (int w = 0; w < threads; w++) {
+				futures.add(executor.submit(new Runnable() {
+					public void run() {
+						CatalogWorkspace ws = new CatalogWorkspace();
+						for (int i = nextCat.getAndIncrement(); i < nCat; i = nextCat.getAndIncrement()) {
+							double[] params = paramList[i];
+							double ams_sample = params[0];
+							double a_sample = params[1];
+							double p_sample = params[2];
+							double c_sample = params[3];
+
+							if (D && nCat >= 10 && Math.floorMod(i, nCat / 10) == 0)
+								System.out.println("Parameter set " + i + ": " + ams_sample + " " + a_sample + " "
+										+ p_sample + " " + c_sample);
+
+							ws.rand = new SplittableRandom(catSeeds[i]);
+							ws.count = 0;
+
+							float simMsMag = (float) (msMag + (ams_sample - a_sample));
+							if (msTime <= forecastStart && simMsMag >= minMagLimit)
+								generateCascade(ws, msTime, simMsMag, a_sample, p_sample, c_sample, i);
+							for (int n = 0; n < numSeeds; n++) {
+								if (seedTime[n] <= forecastStart && seedTime[n] >= 0 && seedMag[n] >= minMagLimit)
+									generateCascade(ws, seedTime[n], seedMag[n], a_sample, p_sample, c_sample, i);
+							}
+
+							catalogs[i] = ws.toSortedCatalog();
+							nEvents[i] = catalogs[i].size();
+							doneCat.incrementAndGet();
+						}
+					}
+				}));
+			}
+			executor.shutdown();
+
+			// wait for the workers, reporting progress in the same manner as the serial loop
+			Stopwatch watch = Stopwatch.createStarted();
+			int warnTime = 3;
+			String initialMessageString = "Calculating " + nCat + " " + (int) (forecastEnd - forecastStart)
+					+ "-day ETAS catalogs. ";
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				long toc = watch.elapsed(TimeUnit.SECONDS);
+				int done = doneCat.get();
+				if (toc > warnTime && done > 0) {
+					warnTime += 10;
+					double timeEstimate = (double) toc * (double) (nCat) / (double) done;
+					System.out.format(initialMessageString + "Approximately %d seconds remaining...\n",
+							(int) ((timeEstimate - toc)));
+					initialMessageString = "...";
+				}
+			}
+
+			// propagate any exception thrown by a worker
+			for (Future<?> f : futures)
+				f.get();
+
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("ETAScatalog: Interrupted while generating catalogs", e);
+		} catch (java.util.concurrent.ExecutionException e) {
+			executor.shutdownNow();
+			throw new RuntimeException("ETAScatalog: Catalog generation failed", e.getCause());
+		}
+
+		return catalogs;
+	}
+
+	/*
+	 * Add all descendants of one seed event to the workspace.
+	 * 
+	 * This is the iterative equivalent of getChildren: each stack frame holds a
+	 * parent and the number of its children not yet generated, and a child's own
+	 * offspring are drawn immediately after the child, so random numbers are
+	 * consumed in exactly the order the recursion would consume them.
+	 */
+	private void generateCascade(CatalogWorkspace ws, float seedTime, float seedMag, double a_sample,
+			double p_sample, double c_sample, int simNumber) {
+
+		final double c = c_sample;
+		final double prodCorrection = Math.log10((maxMagLimit - Mc) / (maxMagLimit - minMagLimit));
+
+		ws.depth = 0;
+		pushOffspring(ws, seedTime, seedMag, 0, a_sample, p_sample, c, c_sample, prodCorrection, simNumber);
+
+		while (ws.depth > 0) {
+			int top = ws.depth - 1;
+			if (ws.stackRemaining[top] == 0) {
+				ws.depth--;
+				continue;
+			}
+			ws.stackRemaining[top]--;
+
+			float t = ws.stackTime[top];
+			int ngen = ws.stackGen[top] + 1;
+
+			float newMag = (float) assignMagnitude(ws.rand, b, minMagLimit, maxMagLimit);
+			float newTime = (float) assignTime(ws.rand, t, forecastStart, forecastEnd, p_sample, c);
+			ws.add(newTime, newMag, ngen);
+
+			pushOffspring(ws, newTime, newMag, ngen, a_sample, p_sample, c, c_sample, prodCorrection, simNumber);
+		}
+	}
+
+	/*
+	 * Draw the number of offspring of an event and, if there are any to generate,
+	 * push the event onto the workspace stack.
+	 */
+	private void pushOffspring(CatalogWorkspace ws, float t, float mag, int ngen, double a_sample, double p_sample,
+			double c, double c_sample, double prodCorrection, int simNumber) {
+
+		double prod;
+		if (ngen == 1)
+			prod = calculateProductivity(t, mag, forecastStart, forecastEnd, a_sample, b, p_sample, c, alpha,
+					minMagLimit);
+		else
+			prod = calculateProductivity(t, mag, forecastStart, forecastEnd, a_sample + prodCorrection, b, p_sample,
+					c, alpha, minMagLimit);
+		long numNew = assignNumberOfOffspring(ws.rand, prod);
+
+		if (numNew > 0 && ngen < maxGenerations) {
+			ws.push(t, ngen, numNew);
+		} else if (ngen == maxGenerations) {
+			if (D)
+				System.out.println("Sim=" + simNumber + " t=" + t + " has reached " + maxGenerations
+						+ " generations. Cutting it short.");
+			if (D)
+				System.out.println("n = "
+						+ ETAS_StatsCalc.calculateBranchingRatio(a_sample, p_sample, c, alpha, b, forecastEnd,
+								minMagLimit, maxMagLimit)
+						+ " a=" + a_sample + " p=" + p_sample + " c=" + c + " (" + c_sample + ")" + " al=" + alpha
+						+ " b=" + b + " T=" + forecastEnd + " Mmin=" + minMagLimit + " Mmax=" + maxMagLimit);
+		}
+	}
+
+	/*
+	 * Per-thread scratch space for the parallel engine. The event columns and the
+	 * generation stack grow as needed and are reused for every catalog the thread
+	 * builds, so generating events does not allocate.
+	 */
+	private static final class CatalogWorkspace {
+		SplittableRandom rand;
+
+		// event columns: {time, mag, gen}
+		float[] time = new float[1024];
+		float[] mag = new float[1024];
+		int[] gen = new int[1024];
+		int count;
+
+		// generation stack: parent time, parent generation, children remaining
+		float[] stackTime = new float[64];
+		int[] stackGen = new int[64];
+		long[] stackRemaining = new long[64];
+		int depth;
+
+		// sort keys: sortable time bits in the high word, event index in the low word
+		long[] sortKeys = new long[1024];
+
+		void add(float t, float m, int g) {
+			if (count == time.length) {
+				int newCap = time.length * 2;
+				time = Arrays.copyOf(time, newCap);
+				mag = Arrays.copyOf(mag, newCap);
+				gen = Arrays.copyOf(gen, newCap);
+			}
+			time[count] = t;
+			mag[count] = m;
+			gen[count] = g;
+			count++;
+		}
+
+		void push(float t, int g, long remaining) {
+			if (depth == stackTime.length) {
+				int newCap = stackTime.length * 2;
+				stackTime = Arrays.copyOf(stackTime, newCap);
+				stackGen = Arrays.copyOf(stackGen, newCap);
+				stackRemaining = Arrays.copyOf(stackRemaining, newCap);
+			}
+			stackTime[depth] = t;
+			stackGen[depth] = g;
+			stackRemaining[depth] = remaining;
+			depth++;
+		}
+
+		// Stable sort of the events by time, copied into a right-sized catalog.
+		// Ties keep generation order, as with Collections.sort in getNewETAScatalog.
+		SimCatalog toSortedCatalog() {
+			if (sortKeys.length < count)
+				sortKeys = new long[time.length];
+			for (int n = 0; n < count; n++) {
+				int bits = Float.floatToIntBits(time[n]);
+				bits ^= (bits >> 31) & 0x7fffffff; // order negative values correctly as signed ints
+				sortKeys[n] = (((long) bits) << 32) | (n & 0xffffffffL);
+			}
+			Arrays.sort(sortKeys, 0, count);
+
+			SimCatalog cat = new SimCatalog(count);
+			for (int n = 0; n < count; n++) {
+				int k = (int) sortKeys[n];
+				cat.time[n] = time[k];
+				cat.mag[n] = mag[k];
+				cat.gen[n] = gen[k];
+			}
+			return cat;
+		}
+	}
+
+	/*
+	 * A simulated catalog stored as primitive columns, sorted by time.
+	 */
+	private static final class SimCatalog {
+		final float[] time;
+		final float[] mag;
+		final int[] gen;
+
+		SimCatalog(int n) {
+			time = new float[n];
+			mag = new float[n];
+			gen = new int[n];
+		}
+
+		int size() {
+			return time.length;
+		}
+
+		List<float[]> toList() {
+			List<float[]> eqList = new ArrayList<float[]>(time.length);
+			for (int n = 0; n < time.length; n++)
+				eqList.add(new float[] { time[n], mag[n], gen[n] });
+			return eqList;
+		}
+	}
+
 	private double calculateProductivity(float t, float mag, double forecastStart, double forecastEnd,
 			double a_sample, double b, double p, double c, double alpha, double refMag) {
 
@@ -539,6 +860,20 @@ public class ETAScatalog {
 		return k - 1;
 	}
 
+	// Same as assignNumberOfOffspring(double), drawing from a per-catalog stream
+	private static long assignNumberOfOffspring(SplittableRandom rand, double lambda) {
+		if (lambda <= 0)
+			return 0;
+		double L = Math.exp(-lambda);
+		long k = 0;
+		double p = 1.0;
+		do {
+			k++;
+			p *= rand.nextDouble();
+		} while (p > L);
+		return k - 1;
+	}
+
 	private double assignMagnitude(double b, double minMag, double Mmax) {
 		// double u = Math.random();
 		// double mag = minMag - Math.log10(1.0 - u*(1.0 - Math.pow(10,
@@ -554,9 +889,28 @@ public class ETAScatalog {
 			return mag;
 	}
 
+	// Same as assignMagnitude(double, double, double), drawing from a per-catalog stream
+	private static double assignMagnitude(SplittableRandom rand, double b, double minMag, double Mmax) {
+		double mag = minMag - 1 / b * Math.log10(rand.nextDouble());
+
+		if (mag > Mmax)
+			return Mmax;
+		else
+			return mag;
+	}
+
 	private double assignTime(double t0, double tmin, double tmax, double p, double c) {
+		return omoriTime(random.nextDouble(), t0, tmin, tmax, p, c);
+	}
+
+	// Same as assignTime(double, double, double, double, double), drawing from a per-catalog stream
+	private static double assignTime(SplittableRandom rand, double t0, double tmin, double tmax, double p, double c) {
+		return omoriTime(rand.nextDouble(), t0, tmin, tmax, p, c);
+	}
+
+	// Invert the Omori time distribution at the uniform variate u
+	private static double omoriTime(double u, double t0, double tmin, double tmax, double p, double c) {
 
-		double u = random.nextDouble();
 		double a1, a2, a3;
 		double t;
 
@@ -596,9 +950,32 @@ public class ETAScatalog {
 	}
 
 	public List<float[]> getETAScatalog(int index) {
+		if (simCatalogs != null)
+			return simCatalogs[index].toList();
 		return catalogList.get(index);
 	}
 
+	/**
+	 * Count the events in one simulated catalog with tMinDays < t <= tMaxDays and
+	 * magnitude >= minMag, without building the List view of the catalog.
+	 */
+	public int countEvents(int index, double tMinDays, double tMaxDays, double minMag) {
+		int num = 0;
+		if (simCatalogs != null) {
+			SimCatalog cat = simCatalogs[index];
+			for (int n = 0; n < cat.time.length; n++) {
+				if (cat.time[n] > tMinDays && cat.time[n] <= tMaxDays && cat.mag[n] >= minMag)
+					num++;
+			}
+		} else {
+			for (float[] eq : catalogList.get(index)) {
+				if (eq[0] > tMinDays && eq[0] <= tMaxDays && eq[1] >= minMag)
+					num++;
+			}
+		}
+		return num;
+	}
+
 	// //not so useful...
 	// public List<float[]> getAllETAScatalogs(){
 	// List<float[]> allCatalogList = new ArrayList<float[]>(); //list of catalogs
@@ -717,19 +1094,10 @@ public class ETAScatalog {
 
 		int[] numM = new int[nSims];
 
-		List<float[]> eqCat = new ArrayList<float[]>();
-
-		// cycle through the simulated catalogs
-		for (int i = 0; i < nSims; i++) {
-			eqCat = getETAScatalog(i); // double[] eqCat = {relativeTime, magnitude, generationNumber}
-			numM[i] = 0;
-
-			// count all events in time window and magnitude range in this catalog
-			for (float[] eq : eqCat) {
-				if (eq[0] > tMinDays && eq[0] <= tMaxDays && eq[1] >= forecastMag)
-					numM[i]++;
-			}
-		}
+		// cycle through the simulated catalogs, counting all events in time window and
+		// magnitude range
+		for (int i = 0; i < nSims; i++)
+			numM[i] = countEvents(i, tMinDays, tMaxDays, forecastMag);
 		return numM;
 	}
 
@@ -71,6 +71,7 @@ public class ETASConfig {
         public boolean timeDependentMc;
         public boolean fitMSProductivity;
         public Long seed; // Optional: for reproducibility. If null, uses random seed.
+        public Integer numThreads; // Optional: catalog generation threads. If null or 0, uses the serial generator; negative uses all processors.
     }
 
     public static class OutputConfig {
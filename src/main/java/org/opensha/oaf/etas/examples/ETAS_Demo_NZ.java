@@ -149,6 +149,15 @@ public class ETAS_Demo_NZ {
             System.out.println("Random Seed: (not set - non-reproducible)");
         }
 
+        // --- Select Catalog Generation Engine ---
+        if (config.simulation.numThreads != null && config.simulation.numThreads != 0) {
+            org.opensha.oaf.etas.ETAScatalog.setNumThreads(config.simulation.numThreads);
+            System.out.println("Catalog Threads: " + (config.simulation.numThreads > 0 ? config.simulation.numThreads
+                    : "all (" + Runtime.getRuntime().availableProcessors() + ")"));
+        } else {
+            System.out.println("Catalog Threads: (serial generator)");
+        }
+
         // --- Fetch Data ---
         ETAS_GeoNetAccessor accessor = new ETAS_GeoNetAccessor();
 
@@ -1,6 +1,7 @@
 package org.opensha.oaf.etas.griddedInterpGMPE;
 
 import java.awt.Color;
+import java.awt.GraphicsEnvironment;
 import java.awt.geom.Point2D;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -10,7 +11,13 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
@@ -234,85 +241,109 @@ public class GriddedInterpGMPE_Calc {
 		}
 	}
 	
+	// Number of threads used by calc; 0 or less uses all processors
+	private static int numThreads = 0;
+	
+	/**
+	 * Set the number of threads used by calc. A positive value uses that many threads, and a
+	 * value of 0 or less (the default) uses one thread per available processor.
+	 */
+	public static void setNumThreads(int threads) {
+		numThreads = threads;
+	}
+	
+	public static int getNumThreads() {
+		return numThreads;
+	}
+	
 	private volatile boolean stopRequested = false;
+	
+	/**
+	 * Ask a calculation running on another thread to stop, in which case calc returns null.
+	 */
+	public void requestStop() {
+		stopRequested = true;
+	}
+	
+	/**
+	 * Calculates a hazard curve at each site from the total cumulative rate at each source node.
+	 * 
+	 * Sites are split across threads, each thread accumulating into its own non-exceedance arrays.
+	 * The interpolation indexes that depend only on the site are detected once per site, and the
+	 * sources near each site are found with a latitude/longitude bin index before the exact distance
+	 * test against distInterp.getMax(). Sources are applied to each site in their original order.
+	 * 
+	 * The long calculation prompt is only shown if promptForLongCalc is set and a display is
+	 * available, so this can be run headless.
+	 * 
+	 * @param griddedTotCumRates total cumulative rate at each source node
+	 * @param sites sites at which curves are calculated
+	 * @return array of hazard curves, one per site, or null if the calculation was stopped
+	 */
 	public DiscretizedFunc[] calc(GeoDataSet griddedTotCumRates, List<Site> sites) {
-		DiscretizedFunc[] curves = new DiscretizedFunc[sites.size()];
+		final int numSites = sites.size();
+		final int numIMLs = xVals.size();
 		
-		for (int i=0; i<sites.size(); i++) {
-			curves[i] = new LightFixedXFunc(xVals);
-			// initialize the hazard function to 1.0
-			for (int j=0; j<curves[i].size(); j++)
-				curves[i].set(j, 1d);
+		// interpolation indexes for everything other than distance and IML, found once per site
+		final Location[] siteLocs = new Location[numSites];
+		final double[][] siteIndexes = new double[numSites][];
+		for (int s=0; s<numSites; s++) {
+			Site site = sites.get(s);
+			siteLocs[s] = site.getLocation();
+			siteIndexes[s] = new double[allInterps.size()];
+			for (int j=1; j<allInterps.size()-1; j++)
+				siteIndexes[s][j] = allInterps.get(j).detectInterpolatedBinIndex(null, site);
 		}
 		
-		double[] indexes = new double[allInterps.size()];
+		final SourceIndex sourceIndex = new SourceIndex(griddedTotCumRates, inputMFD.getCumRate(0), distInterp.getMax());
 		
-		double inputMFD_totCumRate = inputMFD.getCumRate(0);
+		final double[][] nonExceed = new double[numSites][];
+		final AtomicLong doneCount = new AtomicLong(0);
+		
+		int threads = (numThreads > 0) ? numThreads : Runtime.getRuntime().availableProcessors();
+		threads = Math.max(1, Math.min(threads, Math.max(1, numSites)));
 		
 		// set up timer/time estimator
-		double toc, timeEstimate, n;
+		double toc, timeEstimate;
 		Stopwatch watch = Stopwatch.createStarted();
 		int warnTime = 1;
 		boolean userWarned = false;
-		double deltaT = 0; //this will record the time spent waiting for the dialog box.
 		String initialMessageString = "Calculating shaking map. ";
+		boolean canPrompt = promptForLongCalc && !GraphicsEnvironment.isHeadless();
 		
-		for (int g=0; g<griddedTotCumRates.size(); g++) {
-			Location sourceLoc = griddedTotCumRates.getLocation(g);
-			double totCumRate = griddedTotCumRates.get(g);
-			double rateScalar = totCumRate / inputMFD_totCumRate;
-			
-			for (int s=0; s<sites.size(); s++) {
-				Site site = sites.get(s);
-				double dist = LocationUtils.horzDistanceFast(sourceLoc, site.getLocation());
-				if (dist > distInterp.getMax())
-					continue;
-				if (dist == 0 )
-					dist = distInterp.getMin();
-
-				indexes[0] = distInterp.getInterpolatedBinIndex(dist);
-				
-				for (int j=1; j<allInterps.size()-1; j++)
-					indexes[j] = allInterps.get(j).detectInterpolatedBinIndex(null, site);
-				
-				for (int i=0; i<xVals.size(); i++) {
-					indexes[indexes.length-1] = i;
-					double sourceExceedRate = interpolator.interpolate(allExceedRates, arrayCalc, indexes);
-					
-					// now we scale to the actual rate of this source
-					sourceExceedRate *= rateScalar;
-					
-					double sourceExceedProb = 1d - Math.exp(-sourceExceedRate);
-					
-					double sourceNonExceedProb = 1d - sourceExceedProb;
-					
-					curves[s].set(i, curves[s].getY(i)*sourceNonExceedProb);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			ForkJoinTask<?> job = pool.submit(new SiteBlock(0, numSites, siteLocs, siteIndexes, sourceIndex, nonExceed, doneCount));
+			while (!job.isDone()) {
+				try {
+					job.get(1, TimeUnit.SECONDS);
+				} catch (TimeoutException e) {
+					// still running
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Shaking map calculation interrupted", e);
+				} catch (ExecutionException e) {
+					throw new RuntimeException("Shaking map calculation failed", e.getCause());
 				}
-		
+				
 				// run the timer to see how long this is going to take
-				toc = watch.elapsed(TimeUnit.SECONDS) - deltaT;
-				if(toc > warnTime){
-					long count = (g)*(sites.size()) + s;
-					long total = (sites.size() * griddedTotCumRates.size());
-					timeEstimate = toc * total/count;
+				toc = watch.elapsed(TimeUnit.SECONDS);
+				if (toc > warnTime && !job.isDone() && !stopRequested) {
+					long count = Math.max(1, doneCount.get());
+					timeEstimate = toc * (double)numSites / (double)count;
 					System.out.format(initialMessageString + "Approximately %d seconds remaining...\n", (int) ((timeEstimate - toc)));
 					initialMessageString = "...";
 					
-					// if the time estimate is more than 20 seconds, ask if user wants to quit
-					if (!userWarned && (timeEstimate < 0 || timeEstimate > 30) && promptForLongCalc) { // only the first time around and if it'll take more than a minute
+					// if the time estimate is more than 30 seconds, ask if user wants to quit
+					if (!userWarned && (timeEstimate < 0 || timeEstimate > 30) && canPrompt) { // only the first time around
 						userWarned = true;
-						// launch a dialog as a new thread
-//						String message = "It will take approximately " + Math.round(timeEstimate) + " seconds to complete each map at this resolution.\n"
-//								+ "If plotting MMI multiply this estimate by a factor of 2.\n";
-//						message += "Are you sure you wish to continue with the current grid spacing of \u0394 (km)?";
-						
 						String message = "It will take approximately " + Math.round(timeEstimate) + " seconds to complete each map at this resolution.\n"
 								+ "If plotting MMI multiply this estimate by a factor of 2.\n";
 						message += "Are you sure you wish to continue with the current grid spacing of \u0394 (km)?";
 						
 						String title = "Warning";
 						
-						double t1 = watch.elapsed(TimeUnit.SECONDS); 
+						// the worker threads keep going while the dialog is up
 						try {
 							int ret = JOptionPane.showConfirmDialog(null, message, title, JOptionPane.OK_CANCEL_OPTION);
 							if (ret == JOptionPane.CANCEL_OPTION)
@@ -321,80 +352,254 @@ public class GriddedInterpGMPE_Calc {
 							System.err.println("Error displaying error message!");
 							e.printStackTrace();
 						}
-						deltaT = watch.elapsed(TimeUnit.SECONDS) - t1;
 					}
 					warnTime += 10;
-				}	
-				
-				if (stopRequested) {
-					System.out.println("Map calculation terminated prematurely");
-					return null;
 				}
 			}
+		} finally {
+			pool.shutdownNow();
 		}
 		
-//	
-//		for (ProbEqkSource source : sources) {
-//			// calculate distances
-//			Preconditions.checkState(source.getSourceSurface() instanceof PointSurface, "Only point sources supported");
-//			Location sourceLoc = ((PointSurface)source.getSourceSurface()).getLocation();
-//			double[] distances = new double[sites.size()];
-//			for (int s=0; s<sites.size(); s++)
-//				distances[s] = LocationUtils.horzDistanceFast(sourceLoc, sites.get(s).getLocation());
-//			for (ProbEqkRupture rup : source) {
-//				// these 2 are common to all
-//				Preconditions.checkState(rup.getMag() >= magInterp.getMin() && rup.getMag() <= magInterp.getMax(),
-//						"Rup mag=%s outisde of range [%s %s]", rup.getMag(), magInterp.getMin(), magInterp.getMax());
-//				indexes[1] = magInterp.getInterpolatedBinIndex(rup.getMag());
-//				FocalMech mech = FocalMechInterpolator.forRake(rup.getAveRake());
-//				double[] exceedProbs = this.exceedProbs.get(mech);
-//				for (int s=0; s<sites.size(); s++) {
-//					Site site = sites.get(s);
-//					if (distances[s] > distInterp.getMax())
-//						continue;
-////					System.out.println("dist: "+distances[s]);
-//					// set dist and any other params
-//					indexes[2] = distInterp.getInterpolatedBinIndex(distances[s]);
-//					for (int j=2; j<allInterps.size(); j++)
-//						indexes[j+1] = allInterps.get(j).detectInterpolatedBinIndex(null, site);
-//					
-//					// multi-dimensional interpolation
-////					double mean = interpolator.interpolate(means, arrayCalc, indexes);
-////					double stdDev = interpolator.interpolate(stdDevs, arrayCalc, indexes);
-////					gmpe.setSite(site);
-////					gmpe.setEqkRupture(rup);
-////					double mean = gmpe.getMean();
-////					double stdDev = gmpe.getStdDev();
-//					
-////					if (debugMeanScatter != null) {
-////						gmpe.setSite(site);
-////						gmpe.setEqkRupture(rup);
-////						double mean2 = gmpe.getMean();
-////						double stdDev2 = gmpe.getStdDev();
-////						debugMeanScatter.set(mean2, mean);
-////						debugStdDevScatter.set(stdDev2, stdDev);
-////					}
-//					
-//					for (int i=0; i<xVals.size(); i++) {
-//						indexes[0] = i; // IML index
-//						double exceedProb = interpolator.interpolate(exceedProbs, arrayCalc, indexes);
-////						if (Math.random() < 0.00001)
-////							System.out.println("Indexes: "+(float)indexes[0]+" "+(float)indexes[1]
-////								+" "+(float)indexes[2]+" "+(float)indexes[3]+" ==> "+exceedProb);
-//						curves[s].set(i, curves[s].getY(i)*Math.pow(1-rup.getProbability(), exceedProb));
-//					}
-//				}
-//			}
-//		}
+		if (stopRequested) {
+			System.out.println("Map calculation terminated prematurely");
+			return null;
+		}
 		
 		// convert to exceedance probabilities (currently non-exceedance)
-		for (DiscretizedFunc curve : curves)
-			for (int i=0; i<curve.size(); i++)
-				curve.set(i, 1d - curve.getY(i));
+		DiscretizedFunc[] curves = new DiscretizedFunc[numSites];
+		for (int s=0; s<numSites; s++) {
+			curves[s] = new LightFixedXFunc(xVals);
+			for (int i=0; i<numIMLs; i++)
+				curves[s].set(i, 1d - nonExceed[s][i]);
+		}
 		
 		return curves;
 	}
 	
+	/**
+	 * Fork-join task over a range of sites, split in halves down to small blocks. Each block
+	 * has its own interpolator and scratch arrays.
+	 */
+	private class SiteBlock extends RecursiveAction {
+		private static final int BLOCK = 16;
+		private final int lo;
+		private final int hi;
+		private final Location[] siteLocs;
+		private final double[][] siteIndexes;
+		private final SourceIndex sourceIndex;
+		private final double[][] nonExceed;
+		private final AtomicLong doneCount;
+		
+		SiteBlock(int lo, int hi, Location[] siteLocs, double[][] siteIndexes, SourceIndex sourceIndex,
+				double[][] nonExceed, AtomicLong doneCount) {
+			this.lo = lo;
+			this.hi = hi;
+			this.siteLocs = siteLocs;
+			this.siteIndexes = siteIndexes;
+			this.sourceIndex = sourceIndex;
+			this.nonExceed = nonExceed;
+			this.doneCount = doneCount;
+		}
+		
+		@Override
+		protected void compute() {
+			if (hi - lo <= BLOCK) {
+				NDimensionalLinearInterpolation interp = new NDimensionalLinearInterpolation(allInterps.size());
+				int[][] nearby = new int[][] {new int[256]};
+				for (int s=lo; s<hi; s++) {
+					if (stopRequested)
+						return;
+					nonExceed[s] = calcSite(siteLocs[s], siteIndexes[s], sourceIndex, interp, nearby);
+					doneCount.incrementAndGet();
+				}
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new SiteBlock(lo, mid, siteLocs, siteIndexes, sourceIndex, nonExceed, doneCount),
+					new SiteBlock(mid, hi, siteLocs, siteIndexes, sourceIndex, nonExceed, doneCount));
+		}
+	}
+	
+	/**
+	 * Calculates the non-exceedance probabilities at one site.
+	 * @param siteLoc site location
+	 * @param indexes interpolation indexes for the site (distance and IML entries are overwritten)
+	 * @param sourceIndex source bin index
+	 * @param interp interpolator, not shared with other threads
+	 * @param scratch holder for a scratch array of source indexes, which is enlarged as needed
+	 */
+	private double[] calcSite(Location siteLoc, double[] indexes, SourceIndex sourceIndex,
+			NDimensionalLinearInterpolation interp, int[][] scratch) {
+		int numIMLs = xVals.size();
+		double[] nonExceed = new double[numIMLs];
+		Arrays.fill(nonExceed, 1d);
+		
+		// sources that may be in range, in their original order so products accumulate as before
+		int numNearby = sourceIndex.findNearby(siteLoc, scratch[0]);
+		if (numNearby < 0) {
+			scratch[0] = new int[-numNearby];
+			numNearby = sourceIndex.findNearby(siteLoc, scratch[0]);
+		}
+		int[] nearby = scratch[0];
+		Arrays.sort(nearby, 0, numNearby);
+		
+		for (int k=0; k<numNearby; k++) {
+			int g = nearby[k];
+			double dist = LocationUtils.horzDistanceFast(sourceIndex.locs[g], siteLoc);
+			if (dist > distInterp.getMax())
+				continue;
+			if (dist == 0 )
+				dist = distInterp.getMin();
+			
+			indexes[0] = distInterp.getInterpolatedBinIndex(dist);
+			double rateScalar = sourceIndex.rateScalars[g];
+			
+			for (int i=0; i<numIMLs; i++) {
+				indexes[indexes.length-1] = i;
+				double sourceExceedRate = interp.interpolate(allExceedRates, arrayCalc, indexes);
+				
+				// now we scale to the actual rate of this source
+				sourceExceedRate *= rateScalar;
+				
+				double sourceExceedProb = 1d - Math.exp(-sourceExceedRate);
+				
+				double sourceNonExceedProb = 1d - sourceExceedProb;
+				
+				nonExceed[i] *= sourceNonExceedProb;
+			}
+		}
+		
+		return nonExceed;
+	}
+	
+	/**
+	 * Latitude/longitude bin index over the source nodes, for finding the sources within the
+	 * maximum source distance of a site.
+	 * 
+	 * Sources are binned into cells at least as large as the search radius, stored in compressed
+	 * form: the sources in cell n are cellSources[cellStart[n] .. cellStart[n+1]-1]. A search returns
+	 * every source that can pass the horzDistanceFast test, and some that cannot, so the caller still
+	 * applies the exact test. Sources with zero rate contribute a factor of one and are left out.
+	 */
+	private static class SourceIndex {
+		final Location[] locs;
+		final double[] rateScalars;
+		private final double radius; // degrees
+		private final double minLon;
+		private final double minLat;
+		private final double cellSize;
+		private final int nLonCells;
+		private final int nLatCells;
+		private final int[] cellStart;
+		private final int[] cellSources;
+		
+		SourceIndex(GeoDataSet griddedTotCumRates, double inputMFD_totCumRate, double maxDist) {
+			int size = griddedTotCumRates.size();
+			locs = new Location[size];
+			rateScalars = new double[size];
+			
+			double lonMin = Double.POSITIVE_INFINITY, latMin = Double.POSITIVE_INFINITY;
+			double lonMax = Double.NEGATIVE_INFINITY, latMax = Double.NEGATIVE_INFINITY;
+			int count = 0;
+			for (int g=0; g<size; g++) {
+				locs[g] = griddedTotCumRates.getLocation(g);
+				rateScalars[g] = griddedTotCumRates.get(g) / inputMFD_totCumRate;
+				if (rateScalars[g] == 0d)
+					continue;
+				count++;
+				lonMin = Math.min(lonMin, locs[g].getLongitude());
+				lonMax = Math.max(lonMax, locs[g].getLongitude());
+				latMin = Math.min(latMin, locs[g].getLatitude());
+				latMax = Math.max(latMax, locs[g].getLatitude());
+			}
+			minLon = (count > 0) ? lonMin : 0;
+			minLat = (count > 0) ? latMin : 0;
+			
+			// horzDistanceFast is at least the earth radius times the latitude difference in radians;
+			// pad slightly so that rounding cannot drop a source that passes the exact test
+			radius = Math.toDegrees(maxDist / LocationUtils.EARTH_RADIUS_MEAN) * (1 + 1e-9) + 1e-12;
+			
+			// cells no smaller than the radius, and not so many that the index outgrows the data
+			double extent = (count > 0) ? Math.max(lonMax - lonMin, latMax - latMin) : 0;
+			int maxCellsPerSide = 2*(int)Math.ceil(Math.sqrt(count)) + 1;
+			double size0 = Math.max(radius, extent/maxCellsPerSide);
+			cellSize = (Double.isNaN(size0) || Double.isInfinite(size0) || size0 <= 0) ? Math.max(extent, 1) : size0;
+			nLonCells = (count > 0) ? (int)Math.floor((lonMax - lonMin)/cellSize) + 1 : 1;
+			nLatCells = (count > 0) ? (int)Math.floor((latMax - latMin)/cellSize) + 1 : 1;
+			
+			// counting sort of the sources into cells
+			int[] sourceCell = new int[size];
+			cellStart = new int[nLonCells*nLatCells + 1];
+			for (int g=0; g<size; g++) {
+				if (rateScalars[g] == 0d)
+					continue;
+				sourceCell[g] = lonCell(locs[g].getLongitude()) + nLonCells*latCell(locs[g].getLatitude());
+				cellStart[sourceCell[g] + 1]++;
+			}
+			for (int n=0; n<nLonCells*nLatCells; n++)
+				cellStart[n + 1] += cellStart[n];
+			int[] fill = Arrays.copyOf(cellStart, cellStart.length - 1);
+			cellSources = new int[count];
+			for (int g=0; g<size; g++) {
+				if (rateScalars[g] == 0d)
+					continue;
+				cellSources[fill[sourceCell[g]]++] = g;
+			}
+		}
+		
+		private int lonCell(double x) {
+			return clampCell((x - minLon)/cellSize, nLonCells);
+		}
+		
+		private int latCell(double y) {
+			return clampCell((y - minLat)/cellSize, nLatCells);
+		}
+		
+		private static int clampCell(double v, int n) {
+			if (!(v > 0))
+				return 0;
+			if (v >= n)
+				return n - 1;
+			return (int)v;
+		}
+		
+		/**
+		 * Puts the indexes of the sources that may be within range of the location into nearby,
+		 * and returns how many there are. If nearby is too short, nothing is stored and the
+		 * negative of the required length is returned.
+		 */
+		int findNearby(Location loc, int[] nearby) {
+			double lon0 = loc.getLongitude();
+			double lat0 = loc.getLatitude();
+			
+			// horzDistanceFast scales longitude by the cosine of the mean latitude, which is
+			// no smaller than its value at the farthest latitude in range
+			double maxAbsLat = Math.abs(lat0) + radius;
+			double lonRadius = (maxAbsLat < 89.9) ? radius/Math.cos(Math.toRadians(maxAbsLat)) : Double.POSITIVE_INFINITY;
+			
+			int lonLo = lonCell(lon0 - lonRadius);
+			int lonHi = lonCell(lon0 + lonRadius);
+			int latLo = latCell(lat0 - radius);
+			int latHi = latCell(lat0 + radius);
+			
+			int num = 0;
+			for (int y=latLo; y<=latHi; y++)
+				num += cellStart[lonHi + 1 + nLonCells*y] - cellStart[lonLo + nLonCells*y];
+			if (num > nearby.length)
+				return -num;
+			
+			num = 0;
+			for (int y=latLo; y<=latHi; y++) {
+				for (int x=lonLo; x<=lonHi; x++) {
+					int n = x + nLonCells*y;
+					for (int k=cellStart[n]; k<cellStart[n+1]; k++)
+						nearby[num++] = cellSources[k];
+				}
+			}
+			return num;
+		}
+	}
+	
 	public void setPromptForLongCalc(boolean prompt) {
 		this.promptForLongCalc = prompt;
 	}
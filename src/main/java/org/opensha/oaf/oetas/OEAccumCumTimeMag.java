@@ -11,6 +11,7 @@ import org.opensha.oaf.util.MarshalException;
 import org.opensha.oaf.util.AutoExecutorService;
 
 import org.opensha.oaf.oetas.util.OEArraysCalc;
+import org.opensha.oaf.oetas.util.OECountSketch;
 
 import static org.opensha.oaf.oetas.OEConstants.INFILL_METH_MIN;
 import static org.opensha.oaf.oetas.OEConstants.INFILL_METH_NONE;
@@ -86,6 +87,17 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 	private int[][][] acc_counts;
 
+	// The merged sketch of the counts, or null if sketches are not in use.
+	// When sketches are in use, acc_counts is not allocated, and each consumer
+	// accumulates into its own sketch, which are merged at the end.
+	// Memory is then independent of the number of catalogs.
+
+	private OECountSketch acc_sketch;
+
+	// The per-consumer sketches, which are merged into acc_sketch at the end of accumulation.
+
+	private ArrayList<OECountSketch> acc_partials = new ArrayList<OECountSketch>();
+
 
 	// The next catalog index to use.
 
@@ -127,6 +139,8 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 		acc_size = 0;
 		acc_catix.set(0);
 		acc_counts = new int[0][0][0];
+		acc_sketch = null;
+		acc_partials.clear();
 
 		return;
 	}
@@ -193,7 +207,77 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 		acc_size = 0;
 		acc_catix.set(0);
 		acc_counts = null;
+		acc_sketch = null;
+		acc_partials.clear();
+
+		return;
+	}
+
+
+
+
+	// Select accumulation into mergeable sketches, instead of storing every count.
+	// Parameters:
+	//  exact_limit = Counts less than this are stored exactly, must be >= 1.
+	//  rel_error = Maximum relative error for larger counts, must satisfy 0 < rel_error < 1.
+	// This must be called after setup, and before making any consumers.
+	// Fractiles are exact when the true fractile is less than exact_limit, and are
+	// otherwise within a relative error of rel_error (see OECountSketch).
+	// Probabilities of occurrence are exact for xcount < exact_limit.
+
+	public void setup_sketch (int exact_limit, double rel_error) {
+		acc_sketch = new OECountSketch (time_bins, mag_bins, exact_limit, rel_error);
+		acc_partials.clear();
+		acc_counts = new int[0][0][0];
+		return;
+	}
+
+
+
+
+	// Return true if accumulating into sketches.
+
+	public final boolean is_sketch () {
+		return acc_sketch != null;
+	}
+
+
+
+
+	// Make a sketch for a consumer, or return null if sketches are not in use.
+	// Threading: Can be called in multiple threads.
+
+	private synchronized OECountSketch make_partial_sketch () {
+		if (acc_sketch == null) {
+			return null;
+		}
+		OECountSketch partial = acc_sketch.make_empty_copy();
+		acc_partials.add (partial);
+		return partial;
+	}
+
+
+
+
+	// Store the cumulated counts for one catalog.
+	// Parameters:
+	//  csr_counts = Cumulated counts, with dimension csr_counts[time_bins][mag_bins].
+	//  csr_sketch = The consumer's sketch, or null if sketches are not in use.
+	// Threading: Can be called by multiple consumers simultaneously.
+
+	private void store_counts (int[][] csr_counts, OECountSketch csr_sketch) {
+
+		// Get the index for this catalog
+
+		int catix = get_acc_catix();
+
+		// Store our counts into the accumulator, or into the consumer's sketch
 
+		if (csr_sketch == null) {
+			OEArraysCalc.set_each_array_column (acc_counts, catix, csr_counts);
+		} else {
+			csr_sketch.add_values (csr_counts);
+		}
 		return;
 	}
 
@@ -220,6 +304,10 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 		private int[][] csr_counts;
 
+		// The sketch for this consumer, or null if sketches are not in use.
+
+		private OECountSketch csr_sketch;
+
 
 		//----- Construction -----
 
@@ -228,6 +316,7 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 		public ConsumerNone () {
 			f_open = false;
 			csr_counts = new int[time_bins][mag_bins];
+			csr_sketch = make_partial_sketch();
 		}
 
 		//----- Open/Close methods (Implementation of OECatalogConsumer) -----
@@ -267,13 +356,9 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 				OEArraysCalc.cumulate_2d_array (csr_counts, true, false);
 
-				// Get the index for this catalog
-
-				int catix = get_acc_catix();
-
 				// Store our counts into the accumulator
 
-				OEArraysCalc.set_each_array_column (acc_counts, catix, csr_counts);
+				store_counts (csr_counts, csr_sketch);
 			}
 
 			return;
@@ -406,6 +491,10 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 		private int[][] csr_counts;
 
+		// The sketch for this consumer, or null if sketches are not in use.
+
+		private OECountSketch csr_sketch;
+
 		// Count in each time bin, in the current generation.
 		// Dimension: cur_gen_counts[time_bins]
 
@@ -424,6 +513,7 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 		public ConsumerScale () {
 			f_open = false;
 			csr_counts = new int[time_bins][mag_bins];
+			csr_sketch = make_partial_sketch();
 			cur_gen_counts = new int[time_bins];
 			infill_mag_bin_hi = 0;
 		}
@@ -465,13 +555,9 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 				OEArraysCalc.cumulate_2d_array (csr_counts, true, false);
 
-				// Get the index for this catalog
-
-				int catix = get_acc_catix();
-
 				// Store our counts into the accumulator
 
-				OEArraysCalc.set_each_array_column (acc_counts, catix, csr_counts);
+				store_counts (csr_counts, csr_sketch);
 			}
 
 			return;
@@ -644,6 +730,10 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 		private int[][] csr_counts;
 
+		// The sketch for this consumer, or null if sketches are not in use.
+
+		private OECountSketch csr_sketch;
+
 		// The accumulated expected values.
 		// Dimension: csr_counts[time_bins][mag_bins]
 		// Each bin contains the total expected number of ruptures below
@@ -680,6 +770,7 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 		public ConsumerPoisson () {
 			f_open = false;
 			csr_counts = new int[time_bins][mag_bins];
+			csr_sketch = make_partial_sketch();
 			csr_expected = new double[time_bins][mag_bins];
 			cur_gen_rates = new double[time_bins];
 			infill_mag_bin_hi = 0;
@@ -723,13 +814,9 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 				OEArraysCalc.cumulate_2d_array (csr_counts, true, false);
 
-				// Get the index for this catalog
-
-				int catix = get_acc_catix();
-
 				// Store our counts into the accumulator
 
-				OEArraysCalc.set_each_array_column (acc_counts, catix, csr_counts);
+				store_counts (csr_counts, csr_sketch);
 			}
 
 			return;
@@ -977,6 +1064,10 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 		private int[][] csr_counts;
 
+		// The sketch for this consumer, or null if sketches are not in use.
+
+		private OECountSketch csr_sketch;
+
 
 		//----- Construction -----
 
@@ -985,6 +1076,7 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 		public ConsumerSterile () {
 			f_open = false;
 			csr_counts = new int[time_bins][mag_bins];
+			csr_sketch = make_partial_sketch();
 		}
 
 		//----- Open/Close methods (Implementation of OECatalogConsumer) -----
@@ -1024,13 +1116,9 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 				OEArraysCalc.cumulate_2d_array (csr_counts, true, false);
 
-				// Get the index for this catalog
-
-				int catix = get_acc_catix();
-
 				// Store our counts into the accumulator
 
-				OEArraysCalc.set_each_array_column (acc_counts, catix, csr_counts);
+				store_counts (csr_counts, csr_sketch);
 			}
 
 			return;
@@ -1248,7 +1336,18 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 		if (capacity > acc_capacity) {
 			acc_capacity = capacity;
-			acc_counts = new int[time_bins][mag_bins][acc_capacity];
+			if (acc_sketch == null) {
+				acc_counts = new int[time_bins][mag_bins][acc_capacity];
+			}
+		}
+
+		// Empty the sketches
+
+		if (acc_sketch != null) {
+			acc_sketch.clear_counts();
+			for (OECountSketch partial : acc_partials) {
+				partial.clear_counts();
+			}
 		}
 
 		// Initialize the size
@@ -1278,7 +1377,9 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 		if (capacity > acc_capacity) {
 			acc_capacity = capacity;
-			OEArraysCalc.resize_each_array_column (acc_counts, acc_capacity);
+			if (acc_sketch == null) {
+				OEArraysCalc.resize_each_array_column (acc_counts, acc_capacity);
+			}
 		}
 
 		return;
@@ -1300,6 +1401,17 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 		// Get the size
 
 		acc_size = acc_catix.get();
+
+		// If using sketches, merge the per-consumer sketches, and release their memory
+
+		if (acc_sketch != null) {
+			acc_sketch.clear_counts();
+			for (OECountSketch partial : acc_partials) {
+				acc_sketch.merge_from (partial);
+				partial.clear_counts();
+			}
+			return;
+		}
 	
 		// Sort each column, so fractiles are available
 
@@ -1378,6 +1490,9 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 		if (n >= acc_size) {
 			n = acc_size - 1;
 		}
+		if (acc_sketch != null) {
+			return acc_sketch.get_rank_array (n);
+		}
 		return OEArraysCalc.get_each_array_column (acc_counts, n);
 	}
 
@@ -1391,6 +1506,9 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 	// at least one rupture occurs.
 
 	public final double[][] get_prob_occur_array () {
+		if (acc_sketch != null) {
+			return acc_sketch.get_probex_array (0);
+		}
 		return OEArraysCalc.probex_each_array_column (acc_counts, 0, 0, acc_size);
 	}
 
@@ -1410,6 +1528,9 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 	@Override
 	public final double[][] get_prob_occur_array (int xcount) {
+		if (acc_sketch != null) {
+			return acc_sketch.get_probex_array (xcount);
+		}
 		return OEArraysCalc.probex_each_array_column (acc_counts, xcount, 0, acc_size);
 	}
 
@@ -1493,6 +1614,7 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 	// Marshal version number.
 
 	private static final int MARSHAL_VER_1 = 77001;
+	private static final int MARSHAL_VER_2 = 77002;
 
 	private static final String M_VERSION_NAME = "OEAccumCumTimeMag";
 
@@ -1502,7 +1624,7 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 		// Version
 
-		int ver = MARSHAL_VER_1;
+		int ver = MARSHAL_VER_2;
 
 		writer.marshalInt (M_VERSION_NAME, ver);
 
@@ -1510,7 +1632,8 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 		switch (ver) {
 
-		case MARSHAL_VER_1: {
+		case MARSHAL_VER_1:
+		case MARSHAL_VER_2: {
 
 			writer.marshalInt         ("infill_meth" , infill_meth );
 
@@ -1523,6 +1646,14 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 			writer.marshalInt         ("acc_size"    , acc_size    );
 			writer.marshalInt3DArray  ("acc_counts"  , acc_counts  );
 
+			if (ver >= MARSHAL_VER_2) {
+				boolean f_sketch = (acc_sketch != null);
+				writer.marshalBoolean ("f_sketch", f_sketch);
+				if (f_sketch) {
+					OECountSketch.static_marshal (writer, "acc_sketch", acc_sketch);
+				}
+			}
+
 		}
 		break;
 
@@ -1537,13 +1668,14 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 	
 		// Version
 
-		int ver = reader.unmarshalInt (M_VERSION_NAME, MARSHAL_VER_1, MARSHAL_VER_1);
+		int ver = reader.unmarshalInt (M_VERSION_NAME, MARSHAL_VER_1, MARSHAL_VER_2);
 
 		// Contents
 
 		switch (ver) {
 
-		case MARSHAL_VER_1: {
+		case MARSHAL_VER_1:
+		case MARSHAL_VER_2: {
 
 			infill_meth  = reader.unmarshalInt         ("infill_meth" );
 
@@ -1557,6 +1689,15 @@ public class OEAccumCumTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 			acc_counts   = reader.unmarshalInt3DArray  ("acc_counts"  );
 
 			acc_catix.set (acc_size);
+
+			acc_sketch = null;
+			acc_partials.clear();
+			if (ver >= MARSHAL_VER_2) {
+				boolean f_sketch = reader.unmarshalBoolean ("f_sketch");
+				if (f_sketch) {
+					acc_sketch = OECountSketch.static_unmarshal (reader, "acc_sketch");
+				}
+			}
 		}
 		break;
 
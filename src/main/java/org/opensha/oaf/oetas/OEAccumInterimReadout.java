@@ -0,0 +1,29 @@
+package org.opensha.oaf.oetas;
+
+
+// Interface for reading out interim results from an ensemble accumulator for Operational ETAS.
+//
+// This interface represents an ensemble accumulator that can supply results for the
+// catalogs accumulated so far, while accumulation is still in progress.  It is used
+// to decide whether enough catalogs have been generated (see OEEnsembleGenerator).
+//
+// Threading: The functions in this interface may only be called from the main thread,
+// after begin_accumulation and before end_accumulation, at a time when none of the
+// accumulator's consumers are open (for example, between rounds of catalog generation).
+
+public interface OEAccumInterimReadout {
+
+	// Get the number of catalogs accumulated so far.
+
+	public int get_interim_count ();
+
+
+	// Make a readout of the catalogs accumulated so far.
+	// Returns an object that can supply fractiles and probabilities of occurrence, as
+	// they would be if accumulation ended now.  The object is a snapshot, which is not
+	// affected by further accumulation.
+	// Note: This does not disturb the accumulation, which can continue afterwards.
+
+	public OEAccumReadoutTimeMag make_interim_readout ();
+
+}
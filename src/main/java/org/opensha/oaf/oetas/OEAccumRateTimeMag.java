@@ -2,15 +2,17 @@ package org.opensha.oaf.oetas;
 
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.opensha.oaf.util.MarshalReader;
 import org.opensha.oaf.util.MarshalWriter;
 import org.opensha.oaf.util.MarshalException;
 import org.opensha.oaf.util.AutoExecutorService;
+import org.opensha.oaf.util.SimpleThreadManager;
+import org.opensha.oaf.util.SimpleThreadTarget;
 
 import org.opensha.oaf.oetas.util.OEArraysCalc;
 
@@ -56,7 +58,7 @@ import static org.opensha.oaf.oetas.OECatalogParams.MAG_ADJ_SEED_EST;
 // is a count of events in the catalog.  The shifted Poisson distributions
 // are stacked by summing their probability density functions.
 
-public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadoutTimeMag {
+public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadoutTimeMag, OEAccumInterimReadout {
 
 	//----- Code options -----
 
@@ -143,7 +145,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 	// A class that holds an ensemble accumulator.
 	// To avoid contention between threads, there are multiple of these objects,
-	// so each thread can have its own.  There is also one for the entire ensemble.
+	// one for each thread number that accumulates catalogs, and one for each consumer
+	// made without a thread number (a shard).  At the end the shards are merged to
+	// form one for the entire ensemble.
 
 	private class EnsembleAccum implements AutoCloseable {
 
@@ -158,19 +162,20 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 		// Open the accumulator.
 
 		public void open () {
+			if (f_open) {
+				throw new IllegalStateException ("OEAccumRateTimeMag.EnsembleAccum.open: Accumulator is already open");
+			}
 			f_open = true;
 			return;
 		}
 
 
-		// Closing puts this accumulator on the avaiability queue.
+		// Closing marks the accumulator closed.
+		// The accumulator remains assigned to its shard number, and is re-opened by the next get_partial_acc().
 
 		@Override
 		public void close() {
-			if (f_open) {
-				f_open = false;
-				release_partial_acc (this);
-			}
+			f_open = false;
 			return;
 		}
 
@@ -189,19 +194,20 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 		public int[] acc_live_counts;
 
 		// The probability distributions.
-		// Dimension: acc_distribution[time_bins][mag_bins]
+		// Cells: acc_distribution[time_bins * mag_bins]
 		// There is a separate probability distribution for each time/magnitude bin.
+		// The bin (time_ix, mag_ix) is the cell with index time_ix*mag_bins + mag_ix.
 
-		public OEStackedPoisson.Accumulator[][] acc_distribution;
+		public OEStackedPoisson.AccumulatorBlock acc_distribution;
 
 		// The catalog size distributions.
-		// Dimension: acc_cat_size_dist[time_bins]
+		// Cells: acc_cat_size_dist[time_bins]
 		// For each time bin there is a distribution for the total number of ruptures
 		// occurring in the bin or in any earlier bin (but not before the first bin),
 		// regardless of rupture magnitude.
 		// This is null if catalog size distributions are not being accumulated.
 
-		public OEStackedPoisson.Accumulator[] acc_cat_size_dist;
+		public OEStackedPoisson.AccumulatorBlock acc_cat_size_dist;
 
 
 		//--- Construction ---
@@ -218,12 +224,10 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 			acc_live_counts = new int[time_bins];
 			OEArraysCalc.zero_array (acc_live_counts);
 
-			acc_distribution = new OEStackedPoisson.Accumulator[time_bins][mag_bins];
-			stacked_poisson.make_acc_array (acc_distribution);
+			acc_distribution = stacked_poisson.make_acc_block (time_bins * mag_bins);
 
 			if (f_acc_cat_size) {
-				acc_cat_size_dist = new OEStackedPoisson.Accumulator[time_bins];
-				stacked_poisson.make_acc_array (acc_cat_size_dist);
+				acc_cat_size_dist = stacked_poisson.make_acc_block (time_bins);
 			} else {
 				acc_cat_size_dist = null;
 			}
@@ -239,10 +243,10 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 			OEArraysCalc.zero_array (acc_live_counts);
 
-			stacked_poisson.clear_acc_array (acc_distribution);
+			acc_distribution.clear();
 
 			if (f_acc_cat_size) {
-				stacked_poisson.clear_acc_array (acc_cat_size_dist);
+				acc_cat_size_dist.clear();
 			}
 			return;
 		}
@@ -258,9 +262,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 			for (int j = 0; j < time_bins; ++j) {
 				acc_live_counts[j] += other.acc_live_counts[j];
 			}
-			OEStackedPoisson.combine_acc_array (acc_distribution, other.acc_distribution);
+			acc_distribution.combine_with (other.acc_distribution);
 			if (f_acc_cat_size) {
-				OEStackedPoisson.combine_acc_array (acc_cat_size_dist, other.acc_cat_size_dist);
+				acc_cat_size_dist.combine_with (other.acc_cat_size_dist);
 			}
 			return;
 		}
@@ -270,9 +274,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 		public final void cumulate () {
 			OEArraysCalc.cumulate_array (acc_live_counts, false) ;
-			OEStackedPoisson.cumulate_acc_array (acc_distribution);
+			acc_distribution.cumulate();
 			if (f_acc_cat_size) {
-				OEStackedPoisson.cumulate_acc_array (acc_cat_size_dist);
+				acc_cat_size_dist.cumulate();
 			}
 			return;
 		}
@@ -308,8 +312,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 		public void add_point_mass (int time_bin_lo, int time_bin_hi, int mag_bin_lo, int mag_bin_hi, int[][] value, double weight) {
 			for (int time_ix = time_bin_lo; time_ix < time_bin_hi; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
 				for (int mag_ix = mag_bin_lo; mag_ix < mag_bin_hi; ++mag_ix) {
-					acc_distribution[time_ix][mag_ix].add_point_mass (value[time_ix][mag_ix], weight);
+					acc_distribution.get_cell (cell_base + mag_ix).add_point_mass (value[time_ix][mag_ix], weight);
 				}
 			}
 			return;
@@ -318,8 +323,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 		public void add_point_mass (int time_bin_lo, int time_bin_hi, int mag_bin_lo, int mag_bin_hi, int[][] value) {
 			for (int time_ix = time_bin_lo; time_ix < time_bin_hi; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
 				for (int mag_ix = mag_bin_lo; mag_ix < mag_bin_hi; ++mag_ix) {
-					acc_distribution[time_ix][mag_ix].add_point_mass (value[time_ix][mag_ix]);
+					acc_distribution.get_cell (cell_base + mag_ix).add_point_mass (value[time_ix][mag_ix]);
 				}
 			}
 			return;
@@ -339,8 +345,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 		public void add_poisson (int time_bin_lo, int time_bin_hi, int mag_bin_lo, int mag_bin_hi, double[][] lambda, double weight) {
 			for (int time_ix = time_bin_lo; time_ix < time_bin_hi; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
 				for (int mag_ix = mag_bin_lo; mag_ix < mag_bin_hi; ++mag_ix) {
-					acc_distribution[time_ix][mag_ix].add_poisson (lambda[time_ix][mag_ix], weight);
+					acc_distribution.get_cell (cell_base + mag_ix).add_poisson (lambda[time_ix][mag_ix], weight);
 				}
 			}
 			return;
@@ -349,8 +356,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 		public void add_poisson (int time_bin_lo, int time_bin_hi, int mag_bin_lo, int mag_bin_hi, double[][] lambda) {
 			for (int time_ix = time_bin_lo; time_ix < time_bin_hi; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
 				for (int mag_ix = mag_bin_lo; mag_ix < mag_bin_hi; ++mag_ix) {
-					acc_distribution[time_ix][mag_ix].add_poisson (lambda[time_ix][mag_ix]);
+					acc_distribution.get_cell (cell_base + mag_ix).add_poisson (lambda[time_ix][mag_ix]);
 				}
 			}
 			return;
@@ -371,8 +379,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 		public void add_shifted_poisson (int time_bin_lo, int time_bin_hi, int mag_bin_lo, int mag_bin_hi, double[][] lambda, int[][] shift, double weight) {
 			for (int time_ix = time_bin_lo; time_ix < time_bin_hi; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
 				for (int mag_ix = mag_bin_lo; mag_ix < mag_bin_hi; ++mag_ix) {
-					acc_distribution[time_ix][mag_ix].add_shifted_poisson (lambda[time_ix][mag_ix], shift[time_ix][mag_ix], weight);
+					acc_distribution.get_cell (cell_base + mag_ix).add_shifted_poisson (lambda[time_ix][mag_ix], shift[time_ix][mag_ix], weight);
 				}
 			}
 			return;
@@ -381,8 +390,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 		public void add_shifted_poisson (int time_bin_lo, int time_bin_hi, int mag_bin_lo, int mag_bin_hi, double[][] lambda, int[][] shift) {
 			for (int time_ix = time_bin_lo; time_ix < time_bin_hi; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
 				for (int mag_ix = mag_bin_lo; mag_ix < mag_bin_hi; ++mag_ix) {
-					acc_distribution[time_ix][mag_ix].add_shifted_poisson (lambda[time_ix][mag_ix], shift[time_ix][mag_ix]);
+					acc_distribution.get_cell (cell_base + mag_ix).add_shifted_poisson (lambda[time_ix][mag_ix], shift[time_ix][mag_ix]);
 				}
 			}
 			return;
@@ -403,8 +413,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 		public void add_split_poisson (int time_bin_lo, int time_bin_hi, int mag_bin_lo, int mag_bin_hi, double[][] lambda, double[][] lam_occur, double weight) {
 			for (int time_ix = time_bin_lo; time_ix < time_bin_hi; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
 				for (int mag_ix = mag_bin_lo; mag_ix < mag_bin_hi; ++mag_ix) {
-					acc_distribution[time_ix][mag_ix].add_split_poisson (lambda[time_ix][mag_ix], lam_occur[time_ix][mag_ix], weight);
+					acc_distribution.get_cell (cell_base + mag_ix).add_split_poisson (lambda[time_ix][mag_ix], lam_occur[time_ix][mag_ix], weight);
 				}
 			}
 			return;
@@ -413,8 +424,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 		public void add_split_poisson (int time_bin_lo, int time_bin_hi, int mag_bin_lo, int mag_bin_hi, double[][] lambda, double[][] lam_occur) {
 			for (int time_ix = time_bin_lo; time_ix < time_bin_hi; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
 				for (int mag_ix = mag_bin_lo; mag_ix < mag_bin_hi; ++mag_ix) {
-					acc_distribution[time_ix][mag_ix].add_split_poisson (lambda[time_ix][mag_ix], lam_occur[time_ix][mag_ix]);
+					acc_distribution.get_cell (cell_base + mag_ix).add_split_poisson (lambda[time_ix][mag_ix], lam_occur[time_ix][mag_ix]);
 				}
 			}
 			return;
@@ -436,8 +448,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 		public void add_shifted_split_poisson (int time_bin_lo, int time_bin_hi, int mag_bin_lo, int mag_bin_hi, double[][] lambda, double[][] lam_occur, int[][] shift, double weight) {
 			for (int time_ix = time_bin_lo; time_ix < time_bin_hi; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
 				for (int mag_ix = mag_bin_lo; mag_ix < mag_bin_hi; ++mag_ix) {
-					acc_distribution[time_ix][mag_ix].add_shifted_split_poisson (lambda[time_ix][mag_ix], lam_occur[time_ix][mag_ix], shift[time_ix][mag_ix], weight);
+					acc_distribution.get_cell (cell_base + mag_ix).add_shifted_split_poisson (lambda[time_ix][mag_ix], lam_occur[time_ix][mag_ix], shift[time_ix][mag_ix], weight);
 				}
 			}
 			return;
@@ -446,8 +459,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 		public void add_shifted_split_poisson (int time_bin_lo, int time_bin_hi, int mag_bin_lo, int mag_bin_hi, double[][] lambda, double[][] lam_occur, int[][] shift) {
 			for (int time_ix = time_bin_lo; time_ix < time_bin_hi; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
 				for (int mag_ix = mag_bin_lo; mag_ix < mag_bin_hi; ++mag_ix) {
-					acc_distribution[time_ix][mag_ix].add_shifted_split_poisson (lambda[time_ix][mag_ix], lam_occur[time_ix][mag_ix], shift[time_ix][mag_ix]);
+					acc_distribution.get_cell (cell_base + mag_ix).add_shifted_split_poisson (lambda[time_ix][mag_ix], lam_occur[time_ix][mag_ix], shift[time_ix][mag_ix]);
 				}
 			}
 			return;
@@ -468,7 +482,7 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 		public void add_cat_size_info (int time_bin_lo, int time_bin_hi, int[] value, double weight) {
 			if (f_acc_cat_size) {
 				for (int time_ix = time_bin_lo; time_ix < time_bin_hi; ++time_ix) {
-					acc_cat_size_dist[time_ix].add_point_mass (value[time_ix], weight);
+					acc_cat_size_dist.get_cell (time_ix).add_point_mass (value[time_ix], weight);
 				}
 			}
 			return;
@@ -478,7 +492,7 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 		public void add_cat_size_info (int time_bin_lo, int time_bin_hi, int[] value) {
 			if (f_acc_cat_size) {
 				for (int time_ix = time_bin_lo; time_ix < time_bin_hi; ++time_ix) {
-					acc_cat_size_dist[time_ix].add_point_mass (value[time_ix]);
+					acc_cat_size_dist.get_cell (time_ix).add_point_mass (value[time_ix]);
 				}
 			}
 			return;
@@ -494,7 +508,14 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 		// Each element contains the probability that the value is > 0.
 
 		public double[][] get_prob_occur () {
-			return OEStackedPoisson.prob_occur_acc_array (acc_distribution);
+			double[][] prob_occur = new double[time_bins][mag_bins];
+			for (int time_ix = 0; time_ix < time_bins; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
+				for (int mag_ix = 0; mag_ix < mag_bins; ++mag_ix) {
+					prob_occur[time_ix][mag_ix] = acc_distribution.get_cell (cell_base + mag_ix).get_prob_occur();
+				}
+			}
+			return prob_occur;
 		}
 
 
@@ -503,7 +524,14 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 		// Each element contains the mean.
 
 		public double[][] get_mean () {
-			return OEStackedPoisson.mean_acc_array (acc_distribution);
+			double[][] mean = new double[time_bins][mag_bins];
+			for (int time_ix = 0; time_ix < time_bins; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
+				for (int mag_ix = 0; mag_ix < mag_bins; ++mag_ix) {
+					mean[time_ix][mag_ix] = acc_distribution.get_cell (cell_base + mag_ix).get_mean();
+				}
+			}
+			return mean;
 		}
 
 
@@ -516,7 +544,14 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 		// Note: The cumulate() function must have been called.
 
 		public int[][] get_fractile (double frac) {
-			return OEStackedPoisson.fractile_acc_array (acc_distribution, frac);
+			int[][] fractile = new int[time_bins][mag_bins];
+			for (int time_ix = 0; time_ix < time_bins; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
+				for (int mag_ix = 0; mag_ix < mag_bins; ++mag_ix) {
+					fractile[time_ix][mag_ix] = acc_distribution.get_cell (cell_base + mag_ix).get_fractile (frac);
+				}
+			}
+			return fractile;
 		}
 
 
@@ -530,8 +565,9 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 		public int[][] get_bin_size () {
 			int[][] bin_size = new int[time_bins][mag_bins];
 			for (int time_ix = 0; time_ix < time_bins; ++time_ix) {
+				final int cell_base = time_ix * mag_bins;
 				for (int mag_ix = 0; mag_ix < mag_bins; ++mag_ix) {
-					bin_size[time_ix][mag_ix] = (int)Math.round (acc_distribution[time_ix][mag_ix].get_total_weight());
+					bin_size[time_ix][mag_ix] = (int)Math.round (acc_distribution.get_cell (cell_base + mag_ix).get_total_weight());
 				}
 			}
 			return bin_size;
@@ -549,7 +585,11 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 		public int[] get_cat_size_fractile (double frac) {
 			if (f_acc_cat_size) {
-				return OEStackedPoisson.fractile_acc_array (acc_cat_size_dist, frac);
+				int[] fractile = new int[time_bins];
+				for (int time_ix = 0; time_ix < time_bins; ++time_ix) {
+					fractile[time_ix] = acc_cat_size_dist.get_cell (time_ix).get_fractile (frac);
+				}
+				return fractile;
 			}
 			return null;
 		}
@@ -561,55 +601,208 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 	private EnsembleAccum total_acc;
 
-	// The list of available partial accumulators.
+	// The partial accumulators (shards), indexed by thread number.
+	// Each thread that accumulates catalogs gets its own shard the first time it asks,
+	// and uses that same shard for every later catalog, so no shared queue is needed.
+	// The array grows to the number of threads, and elements are null for threads that
+	// have not yet accumulated a catalog.
+	// Access to this array must be synchronized on partial_acc_lock.
+
+	private EnsembleAccum[] partial_acc_shards;
 
-	private ConcurrentLinkedQueue<EnsembleAccum> partial_acc_list;
+	// The lock that protects partial_acc_shards.
 
+	private final Object partial_acc_lock = new Object();
 
-	// Get or make a partial accumulator.
+	// The partial accumulators (shards) for consumers made without a thread number.
+	// Each such consumer has its own shard, because it may be used by any thread, and several
+	// of them may be in use simultaneously.  The key is the consumer's private shard index.
+	// Access to this map must be synchronized on partial_acc_lock.
 
-	private EnsembleAccum get_partial_acc () {
-		EnsembleAccum acc = partial_acc_list.poll();
-		if (acc == null) {
-			return new EnsembleAccum();
+	private HashMap<Integer, EnsembleAccum> private_acc_shards;
+
+	// The source of private shard indexes, for consumers made without a thread number.
+	// This is never reset, so a consumer made before a call to begin_accumulation keeps a unique index.
+
+	private final AtomicInteger private_shard_counter = new AtomicInteger (0);
+
+	// Minimum number of shards for which the final merge is done in parallel.
+
+	private static final int MIN_PARALLEL_MERGE_SHARDS = 4;
+
+
+	// Get the partial accumulator for the given shard number, making it if needed.
+	// A shard number >= 0 is a thread number, the one passed to SimpleThreadTarget.thread_entry,
+	// so at most one thread uses each shard at a time.
+	// A shard number < 0 is -1 minus a private shard index, which belongs to a single consumer,
+	// and a consumer consumes only one catalog at a time.
+
+	private EnsembleAccum get_partial_acc (int shard_number) {
+		EnsembleAccum acc;
+		synchronized (partial_acc_lock) {
+			if (shard_number < 0) {
+				Integer key = Integer.valueOf (-1 - shard_number);
+				acc = private_acc_shards.get (key);
+				if (acc == null) {
+					acc = new EnsembleAccum();
+					private_acc_shards.put (key, acc);
+					return acc;
+				}
+			} else {
+				if (shard_number >= partial_acc_shards.length) {
+					partial_acc_shards = Arrays.copyOf (partial_acc_shards, shard_number + 1);
+				}
+				acc = partial_acc_shards[shard_number];
+				if (acc == null) {
+					acc = new EnsembleAccum();
+					partial_acc_shards[shard_number] = acc;
+					return acc;
+				}
+			}
 		}
 		acc.open();
 		return acc;
 	}
 
 
-	// Release a partial accumulator, and put it back on the queue.
+	// Make a shard number for a consumer made without a thread number.
 
-	private void release_partial_acc (EnsembleAccum acc) {
-		partial_acc_list.add (acc);
-		return;
+	private int make_private_shard_number () {
+		return -1 - private_shard_counter.getAndIncrement();
+	}
+
+
+	// Get a list of the shards that have been created.
+	// Threading: Can be called while accumulation is in progress.
+
+	private ArrayList<EnsembleAccum> get_partial_acc_list () {
+		ArrayList<EnsembleAccum> acc_list = new ArrayList<EnsembleAccum>();
+		synchronized (partial_acc_lock) {
+			for (EnsembleAccum acc : partial_acc_shards) {
+				if (acc != null) {
+					acc_list.add (acc);
+				}
+			}
+			acc_list.addAll (private_acc_shards.values());
+		}
+		return acc_list;
+	}
+
+
+	// Class to merge the shards in parallel, by tree reduction.
+	// Each round, shard i absorbs shard i + stride, for each i that is a multiple
+	// of 2*stride; then stride doubles.  After the last round, shard 0 holds the total.
+	// The pairs within a round are independent, so they are distributed over threads.
+
+	private class ShardMerger implements SimpleThreadTarget {
+
+		// The shards being merged.
+
+		private EnsembleAccum[] shards;
+
+		// The stride for the current round.
+
+		private int stride;
+
+		// The number of pairs in the current round.
+
+		private int pair_count;
+
+		// Index of the next pair to merge in the current round.
+
+		private AtomicInteger next_pair = new AtomicInteger();
+
+
+		// Constructor.
+
+		public ShardMerger (EnsembleAccum[] the_shards) {
+			shards = the_shards;
+		}
+
+
+		// Merge the pairs of the current round.
+
+		@Override
+		public void thread_entry (SimpleThreadManager thread_manager, int thread_number) throws Exception {
+			for (int k = next_pair.getAndIncrement(); k < pair_count; k = next_pair.getAndIncrement()) {
+				if (thread_manager.get_req_termination()) {
+					break;
+				}
+				final int i = k * 2 * stride;
+				shards[i].combine_with (shards[i + stride]);
+			}
+			return;
+		}
+
+
+		// Merge all the shards into shards[0].
+		// Parameters:
+		//  executor = The executor to use for merging in parallel, or null to merge in this thread.
+		// The executor is typically the one that was used to generate the catalogs, and
+		// must have no threads running.
+
+		public void merge_all (AutoExecutorService executor) {
+			for (stride = 1; stride < shards.length; stride *= 2) {
+				pair_count = ((shards.length - 1 - stride) / (2 * stride)) + 1;
+
+				// A single pair, or no executor, is merged in this thread
+
+				if (pair_count == 1 || executor == null || executor.get_num_threads() < 2) {
+					for (int k = 0; k < pair_count; ++k) {
+						final int i = k * 2 * stride;
+						shards[i].combine_with (shards[i + stride]);
+					}
+					continue;
+				}
+
+				// Otherwise, distribute the pairs over threads
+
+				next_pair.set (0);
+				SimpleThreadManager thread_manager = new SimpleThreadManager();
+				thread_manager.launch_threads (this, executor.get_executor(), Math.min (pair_count, executor.get_num_threads()));
+				thread_manager.await_termination();
+
+				if (thread_manager.is_abort()) {
+					throw new IllegalStateException ("OEAccumRateTimeMag.ShardMerger.merge_all: Shard merge failed:\n" + thread_manager.get_abort_message_string());
+				}
+			}
+			return;
+		}
 	}
 
 
 	// Totalize all partial accumulators.
+	// Parameters:
+	//  executor = The executor to use for merging in parallel, or null to merge in this thread.
 
-	private void totalize_partial_acc () {
+	private void totalize_partial_acc (AutoExecutorService executor) {
 
-		// Get the first accumulator off the list
+		// Get the shards, and then delete the shard array
 
-		total_acc = partial_acc_list.poll();
+		EnsembleAccum[] shards = get_partial_acc_list().toArray (new EnsembleAccum[0]);
+		synchronized (partial_acc_lock) {
+			partial_acc_shards = null;
+			private_acc_shards = null;
+		}
 
-		// If the list is empty, set up a zero total
+		// If there are no shards, set up a zero total
 
-		if (total_acc == null) {
+		if (shards.length == 0) {
 			total_acc = new EnsembleAccum();
 			return;
 		}
 
-		// Sum the remaining partial accumulators
+		// Merge the shards, in parallel if there are enough of them
 
-		for (EnsembleAccum acc = partial_acc_list.poll(); acc != null; acc = partial_acc_list.poll()) {
-			total_acc.combine_with (acc);
+		if (shards.length >= MIN_PARALLEL_MERGE_SHARDS) {
+			(new ShardMerger (shards)).merge_all (executor);
+		} else {
+			for (int i = 1; i < shards.length; ++i) {
+				shards[0].combine_with (shards[i]);
+			}
 		}
 
-		// And then delete the list itself
-
-		partial_acc_list = null;
+		total_acc = shards[0];
 		return;
 	}
 
@@ -640,7 +833,8 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 		mag_values = new double[0];
 
 		total_acc = null;
-		partial_acc_list = null;
+		partial_acc_shards = null;
+		private_acc_shards = null;
 
 		return;
 	}
@@ -714,7 +908,8 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 		// Empty accumulators
 
 		total_acc = null;
-		partial_acc_list = null;
+		partial_acc_shards = null;
+		private_acc_shards = null;
 
 		return;
 	}
@@ -787,6 +982,12 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 		protected boolean f_open;
 
+		// The shard number, which selects the partial accumulator this consumer adds to.
+		// It is the thread number of the thread that uses this consumer, or a negative
+		// value for a consumer that has its own shard (see get_partial_acc).
+
+		protected int shard_number;
+
 		//----- Accumulators, for the entire catalog -----
 
 		// The accumulated counts, for the entire catalog.
@@ -2042,9 +2243,12 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 
 
-		// Default constructor.
+		// Constructor.
+		// Parameters:
+		//  the_shard_number = The shard number, which selects the partial accumulator it adds to.
 
-		public ConsumerBase () {
+		public ConsumerBase (int the_shard_number) {
+			shard_number = the_shard_number;
 			f_open = false;
 
 			csr_counts = new int[time_bins][mag_bins];
@@ -2151,7 +2355,7 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 				// Get an accumulator
 
 				try (
-					EnsembleAccum ens_accum = get_partial_acc();
+					EnsembleAccum ens_accum = get_partial_acc (shard_number);
 				) {
 
 					// Accumulate counted time bins and number of catalogs
@@ -2540,9 +2744,28 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 	// Note: The returned consumer can be opened and closed repeatedly to consume
 	// multiple catalogs.
 
+	// Each consumer made by this function adds to its own shard, so consumers can be
+	// used simultaneously by any threads.
+
 	@Override
 	public OECatalogConsumer make_consumer () {
-		OECatalogConsumer consumer = new ConsumerBase();
+		OECatalogConsumer consumer = new ConsumerBase (make_private_shard_number());
+		return consumer;
+	}
+
+
+
+
+	// Make a catalog consumer, for use by the given thread.
+	// Parameters:
+	//  thread_number = The thread number, which ranges from 0 to the number of threads minus 1.
+	// Consumers with different thread numbers add to different shards, so they
+	// can be used simultaneously.  Consumers made by make_consumer() have their own shards.
+	// Threading: Same as make_consumer().
+
+	@Override
+	public OECatalogConsumer make_consumer (int thread_number) {
+		OECatalogConsumer consumer = new ConsumerBase (thread_number);
 		return consumer;
 	}
 
@@ -2568,7 +2791,10 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 		// Initialize the accumulators
 
 		total_acc = null;
-		partial_acc_list = new ConcurrentLinkedQueue<EnsembleAccum>();
+		synchronized (partial_acc_lock) {
+			partial_acc_shards = new EnsembleAccum[AutoExecutorService.get_default_num_threads()];
+			private_acc_shards = new HashMap<Integer, EnsembleAccum>();
+		}
 
 		return;
 	}
@@ -2603,10 +2829,24 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 	@Override
 	public void end_accumulation () {
+		end_accumulation (null);
+		return;
+	}
+
+
+
+
+	// End accumulating catalogs, using the given executor to merge the shards.
+	// Parameters:
+	//  executor = The executor to use, or null to merge in the current thread.
+	// Threading: Same as end_accumulation(); in addition, no threads can be running in the executor.
+
+	@Override
+	public void end_accumulation (AutoExecutorService executor) {
 
 		// Total all the partial accumulators
 
-		totalize_partial_acc();
+		totalize_partial_acc (executor);
 
 		// Cumulate the distributions
 
@@ -2618,6 +2858,23 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 
 
+	// Discard the accumulation, when its results are not needed.
+	// The shards are released without being merged.
+	// Threading: Same as end_accumulation().
+
+	@Override
+	public void discard_accumulation () {
+		total_acc = null;
+		synchronized (partial_acc_lock) {
+			partial_acc_shards = null;
+			private_acc_shards = null;
+		}
+		return;
+	}
+
+
+
+
 	//----- Readout functions -----
 
 
@@ -2759,6 +3016,86 @@ public class OEAccumRateTimeMag implements OEEnsembleAccumulator, OEAccumReadout
 
 
 
+	//----- Interim readout -----
+
+
+
+
+	// Class that reads out results from a snapshot of the accumulators.
+
+	private class InterimReadout implements OEAccumReadoutTimeMag {
+
+		// The snapshot, which has been cumulated.
+
+		private EnsembleAccum snapshot;
+
+		// Constructor.
+
+		public InterimReadout (EnsembleAccum the_snapshot) {
+			snapshot = the_snapshot;
+		}
+
+		@Override
+		public int[][] get_fractile_array (double fractile) {
+			return snapshot.get_fractile (fractile);
+		}
+
+		@Override
+		public double[][] get_prob_occur_array (int xcount) {
+			if (xcount != 0) {
+				throw new UnsupportedOperationException ("OEAccumRateTimeMag.InterimReadout.get_prob_occur_array: Unsupported exceedence count: xcount = " + xcount);
+			}
+			return snapshot.get_prob_occur();
+		}
+
+		@Override
+		public boolean has_cat_size_info () {
+			return f_acc_cat_size;
+		}
+
+		@Override
+		public int[] get_cat_size_fractile_array (double fractile) {
+			return snapshot.get_cat_size_fractile (fractile);
+		}
+	}
+
+
+
+
+	// Get the number of catalogs accumulated so far.
+	// Threading: See OEAccumInterimReadout.
+
+	@Override
+	public int get_interim_count () {
+		int count = 0;
+		for (EnsembleAccum acc : get_partial_acc_list()) {
+			count += acc.acc_size;
+		}
+		return count;
+	}
+
+
+
+
+	// Make a readout of the catalogs accumulated so far.
+	// The shards are combined into a new accumulator, which is then cumulated,
+	// so the shards themselves are left unchanged and accumulation can continue.
+	// Threading: See OEAccumInterimReadout.
+
+	@Override
+	public OEAccumReadoutTimeMag make_interim_readout () {
+		EnsembleAccum snapshot = new EnsembleAccum();
+		snapshot.close();
+		for (EnsembleAccum acc : get_partial_acc_list()) {
+			snapshot.combine_with (acc);
+		}
+		snapshot.cumulate();
+		return new InterimReadout (snapshot);
+	}
+
+
+
+
 	// Convert a fractile array to a string.
 	// Parameters:
 	//  fractile_array = Fractile array as returned by get_fractile_array().
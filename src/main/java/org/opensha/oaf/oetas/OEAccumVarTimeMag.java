@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.ArrayList;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.opensha.oaf.util.MarshalReader;
 import org.opensha.oaf.util.MarshalWriter;
@@ -11,6 +12,7 @@ import org.opensha.oaf.util.MarshalException;
 import org.opensha.oaf.util.AutoExecutorService;
 
 import org.opensha.oaf.oetas.util.OEArraysCalc;
+import org.opensha.oaf.oetas.util.OECountSketch;
 
 import static org.opensha.oaf.oetas.OEConstants.INFILL_METH_MIN;
 import static org.opensha.oaf.oetas.OEConstants.INFILL_METH_NONE;
@@ -126,6 +128,22 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 	private int[] acc_live_counts;
 
+	// The merged sketch of the counts, or null if sketches are not in use.
+	// When sketches are in use, acc_counts and acc_counted_bins are not allocated,
+	// and each consumer accumulates into its own sketch, which are merged at the end.
+	// Memory is then independent of the number of catalogs.
+
+	private OECountSketch acc_sketch;
+
+	// The per-consumer sketches, which are merged into acc_sketch at the end of accumulation.
+
+	private ArrayList<OECountSketch> acc_partials = new ArrayList<OECountSketch>();
+
+	// When sketches are in use, the number of catalogs with each number of counted time bins.
+	// Dimension: acc_counted_tally[time_bins + 1]
+
+	private AtomicIntegerArray acc_counted_tally;
+
 
 	// The next catalog index to use.
 
@@ -176,6 +194,10 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 		acc_bin_size = new int[0][0];
 		acc_live_counts = new int[0];
 
+		acc_sketch = null;
+		acc_partials.clear();
+		acc_counted_tally = null;
+
 		return;
 	}
 
@@ -252,12 +274,61 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 		acc_bin_size = null;
 		acc_live_counts = null;
 
+		acc_sketch = null;
+		acc_partials.clear();
+		acc_counted_tally = null;
+
+		return;
+	}
+
+
+
+
+	// Select accumulation into mergeable sketches, instead of storing every count.
+	// Parameters:
+	//  exact_limit = Counts less than this are stored exactly, must be >= 1.
+	//  rel_error = Maximum relative error for larger counts, must satisfy 0 < rel_error < 1.
+	// This must be called after setup, and before making any consumers.
+	// Fractiles are exact when the true fractile is less than exact_limit, and are
+	// otherwise within a relative error of rel_error (see OECountSketch).
+	// Probabilities of occurrence are exact for xcount < exact_limit.
+
+	public void setup_sketch (int exact_limit, double rel_error) {
+		acc_sketch = new OECountSketch (time_bins, mag_bins, exact_limit, rel_error);
+		acc_partials.clear();
+		acc_counted_tally = new AtomicIntegerArray (time_bins + 1);
+		acc_counts = new int[0][0][0];
+		acc_counted_bins = new int[0];
 		return;
 	}
 
 
 
 
+	// Return true if accumulating into sketches.
+
+	public final boolean is_sketch () {
+		return acc_sketch != null;
+	}
+
+
+
+
+	// Make a sketch for a consumer, or return null if sketches are not in use.
+	// Threading: Can be called in multiple threads.
+
+	private synchronized OECountSketch make_partial_sketch () {
+		if (acc_sketch == null) {
+			return null;
+		}
+		OECountSketch partial = acc_sketch.make_empty_copy();
+		acc_partials.add (partial);
+		return partial;
+	}
+
+
+
+
 	//----- Consumers -----
 
 
@@ -301,6 +372,10 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 		protected int report_time_bins;
 
+		// The sketch for this consumer, or null if sketches are not in use.
+
+		protected OECountSketch csr_sketch;
+
 
 		//----- Construction -----
 
@@ -312,6 +387,7 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 			stop_time_bin = 0;
 			cat_time_bins = 0;
 			report_time_bins = 0;
+			csr_sketch = make_partial_sketch();
 		}
 
 
@@ -410,11 +486,17 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 				int catix = get_acc_catix();
 
-				// Store our counts into the accumulator
+				// Store our counts into the accumulator, or into our sketch
 
-				OEArraysCalc.set_each_array_column (acc_counts, catix, csr_counts);
+				if (csr_sketch == null) {
+					OEArraysCalc.set_each_array_column (acc_counts, catix, csr_counts);
 
-				acc_counted_bins[catix] = cat_time_bins;
+					acc_counted_bins[catix] = cat_time_bins;
+				} else {
+					csr_sketch.add_values (csr_counts, OMIT_BIN);
+
+					acc_counted_tally.incrementAndGet (cat_time_bins);
+				}
 			}
 
 			return;
@@ -1091,8 +1173,20 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 		if (capacity > acc_capacity) {
 			acc_capacity = capacity;
-			acc_counts = new int[time_bins][mag_bins][acc_capacity];
-			acc_counted_bins = new int[acc_capacity];
+			if (acc_sketch == null) {
+				acc_counts = new int[time_bins][mag_bins][acc_capacity];
+				acc_counted_bins = new int[acc_capacity];
+			}
+		}
+
+		// Empty the sketches
+
+		if (acc_sketch != null) {
+			acc_sketch.clear_counts();
+			for (OECountSketch partial : acc_partials) {
+				partial.clear_counts();
+			}
+			acc_counted_tally = new AtomicIntegerArray (time_bins + 1);
 		}
 
 		// Initialize the counters
@@ -1125,8 +1219,10 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 		if (capacity > acc_capacity) {
 			acc_capacity = capacity;
-			OEArraysCalc.resize_each_array_column (acc_counts, acc_capacity);
-			acc_counted_bins = Arrays.copyOf (acc_counted_bins, acc_capacity);
+			if (acc_sketch == null) {
+				OEArraysCalc.resize_each_array_column (acc_counts, acc_capacity);
+				acc_counted_bins = Arrays.copyOf (acc_counted_bins, acc_capacity);
+			}
 		}
 
 		return;
@@ -1148,6 +1244,28 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 		// Get the size
 
 		acc_size = acc_catix.get();
+
+		// If using sketches, merge the per-consumer sketches and release their memory,
+		// then get the bin sizes and live counts from the sketch and tally
+
+		if (acc_sketch != null) {
+			acc_sketch.clear_counts();
+			for (OECountSketch partial : acc_partials) {
+				acc_sketch.merge_from (partial);
+				partial.clear_counts();
+			}
+
+			acc_bin_size = acc_sketch.get_bin_size_array();
+
+			acc_live_counts = new int[time_bins];
+			for (int n = 1; n <= time_bins; ++n) {
+				acc_live_counts[n - 1] = acc_counted_tally.get (n);
+			}
+
+			OEArraysCalc.cumulate_array (acc_live_counts, false) ;
+
+			return;
+		}
 	
 		// Sort each column, so fractiles are available
 
@@ -1237,6 +1355,9 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 	@Override
 	public final int[][] get_fractile_array (double fractile) {
+		if (acc_sketch != null) {
+			return acc_sketch.get_fractile_array (fractile);
+		}
 		return OEArraysCalc.fractile_each_array_column (acc_counts, fractile, acc_bin_zero, acc_bin_size);
 	}
 
@@ -1250,6 +1371,9 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 	// at least one rupture occurs.
 
 	public final double[][] get_prob_occur_array () {
+		if (acc_sketch != null) {
+			return acc_sketch.get_probex_array (0);
+		}
 		return OEArraysCalc.probex_each_array_column (acc_counts, 0, acc_bin_zero, acc_bin_size);
 	}
 
@@ -1269,6 +1393,9 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 	@Override
 	public final double[][] get_prob_occur_array (int xcount) {
+		if (acc_sketch != null) {
+			return acc_sketch.get_probex_array (xcount);
+		}
 		return OEArraysCalc.probex_each_array_column (acc_counts, xcount, acc_bin_zero, acc_bin_size);
 	}
 
@@ -1390,6 +1517,7 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 	// Marshal version number.
 
 	private static final int MARSHAL_VER_1 = 99001;
+	private static final int MARSHAL_VER_2 = 99002;
 
 	private static final String M_VERSION_NAME = "OEAccumVarTimeMag";
 
@@ -1399,7 +1527,7 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 		// Version
 
-		int ver = MARSHAL_VER_1;
+		int ver = MARSHAL_VER_2;
 
 		writer.marshalInt (M_VERSION_NAME, ver);
 
@@ -1407,7 +1535,8 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 
 		switch (ver) {
 
-		case MARSHAL_VER_1: {
+		case MARSHAL_VER_1:
+		case MARSHAL_VER_2: {
 
 			writer.marshalInt         ("infill_meth"      , infill_meth      );
 			writer.marshalInt         ("active_time_bins" , active_time_bins );
@@ -1427,6 +1556,14 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 			writer.marshalInt2DArray  ("acc_bin_size"     , acc_bin_size     );
 			writer.marshalIntArray    ("acc_live_counts"  , acc_live_counts  );
 
+			if (ver >= MARSHAL_VER_2) {
+				boolean f_sketch = (acc_sketch != null);
+				writer.marshalBoolean ("f_sketch", f_sketch);
+				if (f_sketch) {
+					OECountSketch.static_marshal (writer, "acc_sketch", acc_sketch);
+				}
+			}
+
 		}
 		break;
 
@@ -1441,13 +1578,14 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 	
 		// Version
 
-		int ver = reader.unmarshalInt (M_VERSION_NAME, MARSHAL_VER_1, MARSHAL_VER_1);
+		int ver = reader.unmarshalInt (M_VERSION_NAME, MARSHAL_VER_1, MARSHAL_VER_2);
 
 		// Contents
 
 		switch (ver) {
 
-		case MARSHAL_VER_1: {
+		case MARSHAL_VER_1:
+		case MARSHAL_VER_2: {
 
 			infill_meth       = reader.unmarshalInt          ("infill_meth"      );
 			active_time_bins  = reader.unmarshalInt          ("active_time_bins" );
@@ -1467,6 +1605,16 @@ public class OEAccumVarTimeMag implements OEEnsembleAccumulator, OEAccumReadoutT
 			acc_bin_size      = reader.unmarshalInt2DArray   ("acc_bin_size"     );
 			acc_live_counts   = reader.unmarshalIntArray     ("acc_live_counts"  );
 
+			acc_sketch = null;
+			acc_partials.clear();
+			acc_counted_tally = null;
+			if (ver >= MARSHAL_VER_2) {
+				boolean f_sketch = reader.unmarshalBoolean ("f_sketch");
+				if (f_sketch) {
+					acc_sketch = OECountSketch.static_unmarshal (reader, "acc_sketch");
+				}
+			}
+
 		}
 		break;
 
@@ -52,6 +52,7 @@ package org.opensha.oaf.oetas;
 // A simple and recommended way to satisfy memory consistency requirements is to
 // call the accumulator's begin_accumulation() method before creating the worker
 // threads; then have each worker thread call the accumulator's make_consumer()
+// (or make_consumer(thread_number), passing its own thread number)
 // and begin_accumulation() methods, open(), close(), and data methods; and then
 // call the accumulator's end_accumulation() method after the worker threads are
 // all terminated.  (This presumes that worker thread creation and termination are
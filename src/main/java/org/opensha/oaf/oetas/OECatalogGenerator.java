@@ -1,5 +1,7 @@
 package org.opensha.oaf.oetas;
 
+import java.util.Arrays;
+
 import static org.opensha.oaf.oetas.OEConstants.TINY_OMORI_RATE;
 import static org.opensha.oaf.oetas.OEConstants.SMALL_EXPECTED_COUNT;
 
@@ -112,6 +114,12 @@ public class OECatalogGenerator {
 
 	private int[] work_child_count;
 
+	// The time of each rupture in the current generation.
+	// This is filled in by a block read of the catalog, so the Omori rates
+	// can be calculated in bulk.
+
+	private double[] work_t_day;
+
 
 
 
@@ -135,6 +143,7 @@ public class OECatalogGenerator {
 		workspace_capacity = DEF_WORKSPACE_CAPACITY;
 		work_omori_rate = new double[workspace_capacity];
 		work_child_count = new int[workspace_capacity];
+		work_t_day = new double[workspace_capacity];
 		return;
 	}
 
@@ -320,6 +329,7 @@ public class OECatalogGenerator {
 
 			work_omori_rate = new double[workspace_capacity];
 			work_child_count = new int[workspace_capacity];
+			work_t_day = new double[workspace_capacity];
 		}
 
 		// The effective end time is the stop time, but not after the configured end time
@@ -334,37 +344,39 @@ public class OECatalogGenerator {
 
 		//--- Determine the Omori rate for each rupture, and the size and minimum magnitude of the next generation
 
-		// Scan the current generation ...
+		// Read the times and productivities of the current generation in bulk,
+		// with the productivities going into the Omori rate array
+
+		cat_builder.get_gen_time_prod (cur_i_gen, 0, cur_gen_size, work_t_day, work_omori_rate);
+
+		// Calculate the expected rate of each rupture in the forecast interval,
+		// overwriting the productivities
+		// Note omori_rate_shifted_array returns zero if t0 > t2 - teps
+
+		OERandomGenerator.omori_rate_shifted_array (
+			cat_params.p,			// p
+			cat_params.c,			// c
+			cat_params.teps,		// teps
+			cat_params.tbegin,		// t1
+			eff_tend,				// t2
+			work_t_day,				// a_t0
+			work_omori_rate,		// a_k
+			work_omori_rate,		// a_rate
+			cur_gen_size			// len
+			);
+
+		// Accumulate the total, making the rates cumulative
 
 		double total_omori_rate = 0.0;
 
 		for (int cur_j_rup = 0; cur_j_rup < cur_gen_size; ++cur_j_rup) {
-
-			// Get the rupture in the current generation, time and productivity only
-
-			cat_builder.get_rup_time_prod (cur_i_gen, cur_j_rup, cur_rup);
-
-			// Calculate its expected rate in the forecast interval
-			// Note omori_rate_shifted returns zero if t0 > t2 - teps
-
-			double omori_rate = cur_rup.k_prod * OERandomGenerator.omori_rate_shifted (
-				cat_params.p,			// p
-				cat_params.c,			// c
-				cur_rup.t_day,			// t0
-				cat_params.teps,		// teps
-				cat_params.tbegin,		// t1
-				eff_tend				// t2
-				);
-
-			// Accumulate the total
-
-			total_omori_rate += omori_rate;
+			total_omori_rate += work_omori_rate[cur_j_rup];
 			work_omori_rate[cur_j_rup] = total_omori_rate;
+		}
 
-			// Initialize child count
+		// Initialize child counts
 
-			work_child_count[cur_j_rup] = 0;
-		}
+		Arrays.fill (work_child_count, 0, cur_gen_size, 0);
 
 		// To avoid divide-by-zero, stop if total rate is extremely small
 		// (Note that OERandomGenerator.gr_inv_rate will not overflow even if
@@ -643,11 +655,10 @@ public class OECatalogGenerator {
 
 		// Distribute the child earthquakes over the possible parents
 		// with probability proportional to each parent's expected rate
+		// (This is a multinomial split, which gives each parent its count of
+		// children in a single pass, instead of a separate pick for each child)
 
-		for (int n = 0; n < next_gen_size; ++n) {
-			int i_parent = rangen.cumulative_sample (work_omori_rate, cur_gen_size);
-			work_child_count[i_parent]++;
-		}
+		rangen.cumulative_multinomial_sample (work_omori_rate, cur_gen_size, next_gen_size, work_child_count);
 
 		// Set up generation info for the next generation
 
@@ -800,6 +811,7 @@ public class OECatalogGenerator {
 
 			work_omori_rate = new double[workspace_capacity];
 			work_child_count = new int[workspace_capacity];
+			work_t_day = new double[workspace_capacity];
 		}
 
 		// Scan the current generation ...
@@ -1019,6 +1031,158 @@ public class OECatalogGenerator {
 
 
 
+	// Calculate all generations, holding only the last generation in memory.
+	// Parameters:
+	//  cat_window = Window storage, which must be the catalog builder passed to setup.
+	// Returns the number of generations.
+	// This is a dry run, which determines the catalog's stop time, result code, and
+	// size, without keeping the catalog.  On return, only the last generation is held.
+	// Note: Before calling this function (after calling setup),
+	// you must call cat_builder.begin_catalog() and create the first
+	// generation to seed the catalog.
+	// Note: This function calls cat_builder.end_catalog();
+
+	public int calc_all_gen_dry_run (OECatalogStorageWindow cat_window) {
+
+		// Check the storage is our builder
+
+		if (cat_window != cat_builder) {
+			throw new IllegalArgumentException ("OECatalogGenerator.calc_all_gen_dry_run: Window is not the catalog builder");
+		}
+
+		// Get the catalog parameters
+		// (in case they have changed since setup was called)
+
+		this.cat_builder.get_cat_params (cat_params);
+
+		// Make generations until end of catalog, discarding all but the newest non-empty generation
+		// (calc_next_gen reads only the current generation)
+
+		if (cat_params.gen_count_max > 1) {		// don't do this if caller is requesting seeds only
+			int gen_size = cat_window.get_gen_size (0);
+			while (gen_size > 0) {
+				gen_size = calc_next_gen();
+				if (gen_size > 0) {
+					cat_window.discard_before (cat_window.get_gen_count() - 1);
+				}
+			}
+		}
+
+		// End the catalog
+
+		cat_window.end_catalog();
+
+		// Return number of generations
+
+		return cat_window.get_gen_count();
+	}
+
+
+
+
+	// Calculate all generations, streaming each generation to a scanner as it is completed.
+	// Parameters:
+	//  cat_window = Window storage, which must be the catalog builder passed to setup.
+	//  cat_scanner = Scanner, which must be open.
+	//  scan_rangen = Random number generator for the scanner to use.
+	//  stop_time = Final stop time of the catalog.
+	//  result_code = Final result code of the catalog.
+	// Returns the number of generations.
+	// Each generation is passed to the scanner once the following generation is
+	// known to be non-empty (or the catalog has ended), and generations are discarded
+	// once the scanner no longer needs them, so at most three generations are held:
+	// the one being scanned, the one before it, and the one after it.
+	// The consumers need the final stop time and result code when the catalog begins,
+	// but those are not known until the catalog is complete.  So the caller must
+	// obtain them beforehand, typically by generating the same catalog with
+	// calc_all_gen_dry_run, from the same random number stream.  If the catalog
+	// does not end with the given stop time and result code, an exception is thrown.
+	// Note: scan_rangen must be a different object than the generator's random number
+	// generator, so that scanning does not change the random numbers used to generate
+	// the catalog.
+	// Note: Before calling this function (after calling setup),
+	// you must call cat_builder.begin_catalog() and create the first
+	// generation to seed the catalog.
+	// Note: This function calls cat_builder.end_catalog();
+
+	public int calc_all_gen_streaming (OECatalogStorageWindow cat_window, OECatalogScanner cat_scanner,
+		OERandomGenerator scan_rangen, double stop_time, int result_code) {
+
+		// Check the storage is our builder, and the scanner has its own random number generator
+
+		if (cat_window != cat_builder) {
+			throw new IllegalArgumentException ("OECatalogGenerator.calc_all_gen_streaming: Window is not the catalog builder");
+		}
+		if (scan_rangen == rangen) {
+			throw new IllegalArgumentException ("OECatalogGenerator.calc_all_gen_streaming: Scanner and generator cannot share a random number generator");
+		}
+
+		// Get the catalog parameters
+		// (in case they have changed since setup was called)
+
+		this.cat_builder.get_cat_params (cat_params);
+
+		// Begin the scan
+
+		cat_scanner.stream_begin (cat_window, scan_rangen, stop_time, result_code);
+
+		// The next generation to pass to the scanner
+
+		int scan_i_gen = 0;
+
+		// Make generations until end of catalog
+
+		if (cat_params.gen_count_max > 1) {		// don't do this if caller is requesting seeds only
+			int gen_size = cat_window.get_gen_size (0);
+			while (gen_size > 0) {
+				gen_size = calc_next_gen();
+
+				// If we made a non-empty generation, the one before it is not the final generation ...
+
+				if (gen_size > 0) {
+					int last_i_gen = cat_window.get_gen_count() - 1;
+
+					// Scan generations up to but not including the new one
+
+					for ( ; scan_i_gen < last_i_gen; ++scan_i_gen) {
+						cat_scanner.stream_gen (cat_window, scan_i_gen);
+					}
+
+					// Keep the last scanned generation (needed for sterile ruptures) and the new one
+
+					cat_window.discard_before (scan_i_gen - 1);
+				}
+			}
+		}
+
+		// End the catalog
+
+		cat_window.end_catalog();
+
+		// Check we got the expected result
+
+		if (!( cat_window.get_cat_stop_time() == stop_time && cat_window.get_cat_result_code() == result_code )) {
+			throw new IllegalStateException ("OECatalogGenerator.calc_all_gen_streaming: Catalog result differs from expected: stop_time = "
+				+ cat_window.get_cat_stop_time() + ", expected = " + stop_time
+				+ ", result_code = " + cat_window.get_cat_result_code() + ", expected = " + result_code);
+		}
+
+		// Scan the remaining generations, and end the scan
+
+		for ( ; scan_i_gen < cat_window.get_gen_count(); ++scan_i_gen) {
+			cat_scanner.stream_gen (cat_window, scan_i_gen);
+		}
+
+		cat_scanner.stream_end (cat_window);
+
+		// Return number of generations
+
+		return cat_window.get_gen_count();
+	}
+
+
+
+
 	//----- Testing -----
 
 
@@ -1031,10 +1195,21 @@ public class OECatalogGenerator {
 	// Returns the resulting catalog.
 
 	public static OECatalogStorage gen_simple_catalog (OECatalogParams test_cat_params, double mag_main) {
+		return gen_simple_catalog (test_cat_params, mag_main, OERandomGenerator.get_thread_rangen());
+	}
 
-		// Get the random number generator
 
-		OERandomGenerator the_rangen = OERandomGenerator.get_thread_rangen();
+
+
+	// Generate a simple catalog, seeded with a single mainshock, using the given random number generator.
+	// Parameters:
+	//  test_cat_params = Catalog parameters.
+	//  mag_main = Mainshock magnitude.
+	//  the_rangen = Random number generator to use.
+	// Returns the resulting catalog.
+	// Note: Passing a generator constructed with a fixed seed produces a repeatable catalog.
+
+	public static OECatalogStorage gen_simple_catalog (OECatalogParams test_cat_params, double mag_main, OERandomGenerator the_rangen) {
 
 		// Allocate the storage (which is also the builder)
 
@@ -667,7 +667,7 @@ public class OECatalogRange implements Marshalable {
 
 
 	// Check if two range structures are identical.
-	// Note: This is primarily for testing.
+	// Note: This is used for testing, and to check if catalogs generated with one range are valid for another.
 
 	public final boolean check_range_equal (OECatalogRange other) {
 		if (
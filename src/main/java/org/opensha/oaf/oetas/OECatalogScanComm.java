@@ -15,7 +15,10 @@ import static org.opensha.oaf.oetas.OEConstants.NO_MAG_POS_CHECK;
 // of generations.  If those are not used, then it is possible for a consumer
 // to process a catalog that is never in memory all at once.  With the current
 // interface, all that needs to be in memory is the current, previous, and
-// next generations.
+// next generations.  OECatalogGenerator.calc_all_gen_streaming does exactly that.
+//
+// Note: In a streaming scan, cat_size, cat_etas_size, and cat_valid_size are
+// -1 until end_catalog is called, because they are not known until then.
 //
 // Note: A scanner implementation may choose to inherit from this class,
 // to have convenient access to these variables.
@@ -49,14 +52,17 @@ public class OECatalogScanComm {
 	public boolean f_result_success;
 
 	// Number of ruptures in the catalog.
+	// In a streaming scan, this is -1 until end_catalog.
 
 	public int cat_size;
 
 	// Number of ruptures in the catalog, excluding seed ruptures.
+	// In a streaming scan, this is -1 until end_catalog.
 
 	public int cat_etas_size;
 
 	// Number of ruptures in the catalog before the stop time.
+	// In a streaming scan, this is -1 until end_catalog.
 
 	public int cat_valid_size;
 
@@ -247,6 +253,45 @@ public class OECatalogScanComm {
 
 
 
+	// Set up per-catalog data for a streaming scan.
+	// Parameters:
+	//  view = Catalog view, which need only contain the seed generation.
+	//  the_rangen = Random number generator to use.
+	//  stop_time = Final stop time of the catalog.
+	//  result_code = Final result code of the catalog.
+	// The catalog sizes are set to -1.  The scanner sets them when the catalog ends.
+
+	public void setup_cat_for_stream (OECatalogView view, OERandomGenerator the_rangen, double stop_time, int result_code) {
+
+		// Get catalog parameters
+
+		view.get_cat_params (cat_params);
+
+		// Save the random number generator
+
+		rangen = the_rangen;
+
+		// Save catalog results
+
+		cat_stop_time = stop_time;
+		f_early_stop = false;
+		if (cat_stop_time < cat_params.tend) {
+			f_early_stop = true;
+		}
+
+		cat_result_code = result_code;
+		f_result_success = OEConstants.is_cat_result_success (cat_result_code);
+
+		cat_size = -1;
+		cat_etas_size = -1;
+		cat_valid_size = -1;
+
+		return;
+	}
+
+
+
+
 	// Set up per-generation data from a catalog view.
 	// Parameters:
 	//  view = Catalog view.
@@ -28,6 +28,14 @@ public class OECatalogScanner implements OECatalogExaminer {
 
 	private boolean f_open;
 
+	// The next generation to be passed in a streaming scan, or -1 if no streaming scan is in progress.
+
+	private int stream_next_gen;
+
+	// The number of valid ruptures passed so far in a streaming scan.
+
+	private int stream_valid_size;
+
 
 
 
@@ -122,9 +130,11 @@ public class OECatalogScanner implements OECatalogExaminer {
 		work_omori_rate = new double[workspace_capacity];
 		work_child_count = new int[workspace_capacity];
 
-		// Not open
+		// Not open, and not streaming
 
 		f_open = false;
+		stream_next_gen = -1;
+		stream_valid_size = 0;
 	}
 
 
@@ -155,6 +165,33 @@ public class OECatalogScanner implements OECatalogExaminer {
 
 
 
+	// Set up to perform scanning in the given thread.
+	// Parameters:
+	//  thread_number = The thread number, which ranges from 0 to the number of threads in the pool minus 1.
+	//  accumulators = One or more accumulators to receive the scan.
+	// The scanner must only be used by a thread with the given thread number.
+
+	public void setup (int thread_number, OEEnsembleAccumulator... accumulators) {
+
+		// Obtain a list of consumers for the thread
+
+		consumer_count = accumulators.length;
+		consumers = new OECatalogConsumer[consumer_count];
+
+		for (int i = 0; i < consumer_count; ++i) {
+			consumers[i] = accumulators[i].make_consumer (thread_number);
+		}
+
+		// Not open
+
+		f_open = false;
+	
+		return;
+	}
+
+
+
+
 	//----- Scanning -----
 
 
@@ -245,9 +282,43 @@ public class OECatalogScanner implements OECatalogExaminer {
 			consumer.begin_catalog (comm);
 		}
 
-		// Set up the per-generation information for the seeds
+		// Set up the per-generation information for the seeds, and send the seed generation
 
 		comm.setup_gen_from_view (view, 0);
+		send_seed_gen (view);
+
+		// Loop over ETAS generations...
+
+		for (int i_gen = 1; i_gen < view.get_gen_count(); ++i_gen) {
+
+			// Set up the per-generation information, and send the generation
+
+			comm.setup_gen_from_view (view, i_gen);
+			send_etas_gen (view);
+		}
+
+		// Tell the consumers we are ending a catalog
+
+		for (OECatalogConsumer consumer : consumers) {
+			consumer.end_catalog (comm);
+		}
+
+		// Forget retained objects
+
+		comm.forget();
+
+		return;
+	}
+
+
+
+
+	// Send the seed generation to the consumers.
+	// Parameters:
+	//  view = Catalog view.
+	// The per-generation information must already be set up in comm.
+
+	private void send_seed_gen (OECatalogView view) {
 
 		// Tell the consumers we are beginning the seed generation
 
@@ -281,55 +352,178 @@ public class OECatalogScanner implements OECatalogExaminer {
 			consumer.end_seed_generation (comm);
 		}
 
-		// Loop over ETAS generations...
+		return;
+	}
 
-		for (int i_gen = 1; i_gen < view.get_gen_count(); ++i_gen) {
 
-			// Set up the per-generation information
 
-			comm.setup_gen_from_view (view, i_gen);
 
-			// Tell the consumers we are beginning the generation
+	// Send an ETAS generation to the consumers.
+	// Parameters:
+	//  view = Catalog view.
+	// The per-generation information must already be set up in comm.
+	// The view must contain the prior generation, in case sterile ruptures are needed.
 
-			for (OECatalogConsumer consumer : consumers) {
-				consumer.begin_generation (comm);
-			}
+	private void send_etas_gen (OECatalogView view) {
 
-			// Loop over ruptures in the generation
+		// Tell the consumers we are beginning the generation
 
-			for (int j_rup = 0; j_rup < comm.gen_size; ++j_rup) {
+		for (OECatalogConsumer consumer : consumers) {
+			consumer.begin_generation (comm);
+		}
+
+		// Loop over ruptures in the generation
+
+		for (int j_rup = 0; j_rup < comm.gen_size; ++j_rup) {
 		
-				// Set up the per-rupture information
+			// Set up the per-rupture information
 
-				comm.setup_rup_from_view (view, j_rup);
+			comm.setup_rup_from_view (view, j_rup);
 
-				// If it is a valid rupture (before the stop time) ...
+			// If it is a valid rupture (before the stop time) ...
 
-				if (comm.f_valid_rup) {
+			if (comm.f_valid_rup) {
 
-					// Pass rupture to the consumers
+				// Pass rupture to the consumers
 
-					for (OECatalogConsumer consumer : consumers) {
-						consumer.next_rup (comm);
-					}
+				for (OECatalogConsumer consumer : consumers) {
+					consumer.next_rup (comm);
 				}
 			}
+		}
 
-			// If sterile ruptures are needed ...
+		// If sterile ruptures are needed ...
 
-			if (comm.is_sterile_mag()) {
+		if (comm.is_sterile_mag()) {
 
-				// Calculate the sterile ruptures
+			// Calculate the sterile ruptures
 
-				calc_sterile_rups (view);
-			}
+			calc_sterile_rups (view);
+		}
 
-			// Tell the consumers we are ending the generation
+		// Tell the consumers we are ending the generation
 
-			for (OECatalogConsumer consumer : consumers) {
-				consumer.end_generation (comm);
+		for (OECatalogConsumer consumer : consumers) {
+			consumer.end_generation (comm);
+		}
+
+		return;
+	}
+
+
+
+
+	//----- Streaming scan -----
+	//
+	// A streaming scan passes a catalog to the consumers one generation at a time,
+	// while the catalog is being generated, so the whole catalog need not be held
+	// in memory (see OECatalogGenerator.calc_all_gen_streaming).  The call sequence
+	// is stream_begin, then stream_gen for each generation in order, then stream_end.
+	//
+	// When stream_gen is called for a generation, the view must contain that
+	// generation, the prior generation, and (unless it is the final generation)
+	// the next generation.
+	//
+	// The consumers see the same calls as with scan(), except that cat_size,
+	// cat_etas_size, and cat_valid_size are not known until end_catalog.
+
+
+
+
+	// Begin a streaming scan.
+	// Parameters:
+	//  view = Catalog view, which must contain the seed generation.
+	//  rangen = Random number generator to use.
+	//  stop_time = Final stop time of the catalog.
+	//  result_code = Final result code of the catalog.
+
+	public void stream_begin (OECatalogView view, OERandomGenerator rangen, double stop_time, int result_code) {
+
+		// There must be at least one generation
+
+		if (view.get_gen_count() < 1) {
+			throw new IllegalArgumentException ("OECatalogScanner.stream_begin -- Empty catalog");
+		}
+
+		// Set up the per-catalog information
+
+		comm.setup_cat_for_stream (view, rangen, stop_time, result_code);
+		stream_next_gen = 0;
+		stream_valid_size = 0;
+
+		// Tell the consumers we are beginning a catalog
+
+		for (OECatalogConsumer consumer : consumers) {
+			consumer.begin_catalog (comm);
+		}
+
+		return;
+	}
+
+
+
+
+	// Pass the next generation in a streaming scan.
+	// Parameters:
+	//  view = Catalog view.
+	//  i_gen = Generation number, which must be one more than the previous call (or 0 for the first call).
+
+	public void stream_gen (OECatalogView view, int i_gen) {
+
+		// Check the generation is the expected one
+
+		if (i_gen != stream_next_gen || stream_next_gen < 0) {
+			throw new IllegalStateException ("OECatalogScanner.stream_gen -- Generation out of order: i_gen = " + i_gen + ", expected = " + stream_next_gen);
+		}
+		++stream_next_gen;
+
+		// Set up the per-generation information, counting the valid ruptures against the final stop time
+
+		comm.setup_gen_from_view (view, i_gen);
+
+		int count = 0;
+		for (int j_rup = 0; j_rup < comm.gen_size; ++j_rup) {
+			view.get_rup_time (i_gen, j_rup, cur_rup);
+			if (cur_rup.t_day < comm.cat_stop_time) {
+				++count;
 			}
 		}
+		comm.gen_valid_size = count;
+		stream_valid_size += count;
+
+		// Send the generation
+
+		if (i_gen == 0) {
+			send_seed_gen (view);
+		} else {
+			send_etas_gen (view);
+		}
+
+		return;
+	}
+
+
+
+
+	// End a streaming scan.
+	// Parameters:
+	//  view = Catalog view, which must have ended the catalog.
+	// All generations must have been passed.
+
+	public void stream_end (OECatalogView view) {
+
+		// Check all generations were passed
+
+		if (stream_next_gen != view.get_gen_count()) {
+			throw new IllegalStateException ("OECatalogScanner.stream_end -- Not all generations were scanned: scanned = " + stream_next_gen + ", gen_count = " + view.get_gen_count());
+		}
+		stream_next_gen = -1;
+
+		// Set the catalog size, now that it is known
+
+		comm.cat_size = view.size();
+		comm.cat_etas_size = view.etas_size();
+		comm.cat_valid_size = stream_valid_size;
 
 		// Tell the consumers we are ending a catalog
 
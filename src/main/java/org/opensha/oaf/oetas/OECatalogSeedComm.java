@@ -16,6 +16,12 @@ public class OECatalogSeedComm {
 
 	public OERandomGenerator rangen;
 
+	// Index of this catalog within the ensemble, or -1 if not known.
+	// When known, seeders should use it (rather than a shared counter) to make
+	// any per-catalog choices, so the catalog does not depend on thread scheduling.
+
+	public int catalog_index;
+
 
 
 
@@ -29,6 +35,7 @@ public class OECatalogSeedComm {
 	public OECatalogSeedComm () {
 		cat_builder = null;
 		rangen = null;
+		catalog_index = -1;
 	}
 
 
@@ -50,6 +57,26 @@ public class OECatalogSeedComm {
 
 		cat_builder = the_cat_builder;
 		rangen = the_rangen;
+		catalog_index = -1;
+		return;
+	}
+
+
+
+
+	// Set up per-catalog data, for a catalog with a known index.
+	// Parameters:
+	//  the_cat_builder = Catalog builder.
+	//  the_rangen = Random number generator.
+	//  the_catalog_index = Index of this catalog within the ensemble.
+
+	public void setup_seed_comm (OECatalogBuilder the_cat_builder, OERandomGenerator the_rangen, int the_catalog_index) {
+
+		// Save the objects
+
+		cat_builder = the_cat_builder;
+		rangen = the_rangen;
+		catalog_index = the_catalog_index;
 		return;
 	}
 
@@ -61,6 +88,7 @@ public class OECatalogSeedComm {
 	public void forget () {
 		cat_builder = null;
 		rangen = null;
+		catalog_index = -1;
 		return;
 	}
 
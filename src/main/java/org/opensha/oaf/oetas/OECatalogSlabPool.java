@@ -0,0 +1,252 @@
+package org.opensha.oaf.oetas;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+
+// Pool of off-heap slabs, for catalog storage.
+//
+// A slab is a direct ByteBuffer of fixed size, which holds one block of ruptures
+// for OECatalogStorageArena.  Slabs are obtained from the pool as a catalog grows,
+// and returned to the pool when the catalog is trimmed or closed, so that they can
+// be re-used by any thread.
+//
+// The pool keeps at most free_limit bytes of free slabs.  A slab returned when the
+// pool is full is dropped.  Its memory is freed by the JVM once the (small) ByteBuffer
+// object is collected, so off-heap memory does not count against the heap and does
+// not need to be scanned or copied by the garbage collector.
+//
+// The pool keeps track of the total bytes in slabs it has handed out or holds free,
+// and the peak of that total, so the off-heap memory use can be reported.
+//
+// Threading: All functions are thread-safe.
+
+public class OECatalogSlabPool {
+
+	//----- Slab layout -----
+
+	// Number of ruptures in one slab.
+	// This must equal the block size used by OECatalogStorageArena.
+
+	public static final int SLAB_RUP_COUNT = 0x2000;
+
+	// Byte offsets to the start of each column within a slab.
+	// The double-valued columns come first, then the int-valued column.
+
+	public static final int SLAB_T_DAY_BASE      = 0;
+	public static final int SLAB_RUP_MAG_BASE    = SLAB_T_DAY_BASE   + (SLAB_RUP_COUNT * 8);
+	public static final int SLAB_K_PROD_BASE     = SLAB_RUP_MAG_BASE + (SLAB_RUP_COUNT * 8);
+	public static final int SLAB_X_KM_BASE       = SLAB_K_PROD_BASE  + (SLAB_RUP_COUNT * 8);
+	public static final int SLAB_Y_KM_BASE       = SLAB_X_KM_BASE    + (SLAB_RUP_COUNT * 8);
+	public static final int SLAB_RUP_PARENT_BASE = SLAB_Y_KM_BASE    + (SLAB_RUP_COUNT * 8);
+
+	// Total number of bytes in one slab.
+
+	public static final int SLAB_BYTES = SLAB_RUP_PARENT_BASE + (SLAB_RUP_COUNT * 4);
+
+	// Default limit on free slab storage held by the pool, in bytes.
+
+	public static final long DEF_FREE_LIMIT = 256L * 1024L * 1024L;
+
+
+
+
+	//----- Pool state -----
+
+	// The free slabs.
+
+	private final ArrayDeque<ByteBuffer> free_slabs;
+
+	// Maximum number of bytes of free slabs to retain.
+
+	private long free_limit;
+
+	// Number of bytes currently allocated, which includes slabs in use and slabs in the free list.
+
+	private long allocated_bytes;
+
+	// Peak value of allocated_bytes.
+
+	private long peak_bytes;
+
+	// Total number of slabs allocated from the system, and total number dropped.
+
+	private long total_alloc_count;
+	private long total_drop_count;
+
+
+
+
+	//----- Construction -----
+
+
+
+
+	// Constructor.
+	// Parameters:
+	//  free_limit = Maximum number of bytes of free slabs to retain, must be >= 0.
+
+	public OECatalogSlabPool (long free_limit) {
+		if (free_limit < 0L) {
+			throw new IllegalArgumentException ("OECatalogSlabPool.OECatalogSlabPool: Invalid free limit: free_limit = " + free_limit);
+		}
+		this.free_slabs = new ArrayDeque<ByteBuffer>();
+		this.free_limit = free_limit;
+		this.allocated_bytes = 0L;
+		this.peak_bytes = 0L;
+		this.total_alloc_count = 0L;
+		this.total_drop_count = 0L;
+	}
+
+
+
+
+	// Default constructor uses the default free limit.
+
+	public OECatalogSlabPool () {
+		this (DEF_FREE_LIMIT);
+	}
+
+
+
+
+	// A singleton, which can be used to store a system-wide default.
+	// Access to this variable must be synchronized.
+
+	private static OECatalogSlabPool singleton = null;
+
+
+	// Get the singleton.
+	// If it doesn't exist, create one with default parameters.
+
+	public static synchronized OECatalogSlabPool get_singleton () {
+		if (singleton == null) {
+			singleton = new OECatalogSlabPool();
+		}
+		return singleton;
+	}
+
+
+
+
+	//----- Slab management -----
+
+
+
+
+	// Obtain a slab, from the free list if possible, otherwise newly allocated.
+	// The contents of the slab are not initialized.
+
+	public final ByteBuffer acquire_slab () {
+		synchronized (this) {
+			ByteBuffer slab = free_slabs.pollLast();
+			if (slab != null) {
+				return slab;
+			}
+			allocated_bytes += SLAB_BYTES;
+			peak_bytes = Math.max (peak_bytes, allocated_bytes);
+			++total_alloc_count;
+		}
+
+		// Allocate outside the lock, since it can be slow
+
+		return ByteBuffer.allocateDirect (SLAB_BYTES).order (ByteOrder.nativeOrder());
+	}
+
+
+
+
+	// Return a slab to the pool.
+	// The caller must not use the slab after this call.
+
+	public final synchronized void release_slab (ByteBuffer slab) {
+		if (((long)(free_slabs.size() + 1)) * ((long)SLAB_BYTES) <= free_limit) {
+			free_slabs.addLast (slab);
+		} else {
+			allocated_bytes -= SLAB_BYTES;
+			++total_drop_count;
+		}
+		return;
+	}
+
+
+
+
+	// Set the maximum number of bytes of free slabs to retain.
+	// Free slabs in excess of the new limit are dropped.
+
+	public final synchronized void set_free_limit (long the_free_limit) {
+		if (the_free_limit < 0L) {
+			throw new IllegalArgumentException ("OECatalogSlabPool.set_free_limit: Invalid free limit: free_limit = " + the_free_limit);
+		}
+		free_limit = the_free_limit;
+		while (((long)free_slabs.size()) * ((long)SLAB_BYTES) > free_limit) {
+			free_slabs.pollLast();
+			allocated_bytes -= SLAB_BYTES;
+			++total_drop_count;
+		}
+		return;
+	}
+
+
+
+
+	//----- Statistics -----
+
+
+
+
+	// Get the number of bytes currently allocated, including free slabs.
+
+	public final synchronized long get_allocated_bytes () {
+		return allocated_bytes;
+	}
+
+
+	// Get the peak number of bytes allocated.
+
+	public final synchronized long get_peak_bytes () {
+		return peak_bytes;
+	}
+
+
+	// Reset the peak number of bytes allocated to the current number.
+
+	public final synchronized void reset_peak_bytes () {
+		peak_bytes = allocated_bytes;
+		return;
+	}
+
+
+	// Get the number of bytes in free slabs.
+
+	public final synchronized long get_free_bytes () {
+		return ((long)free_slabs.size()) * ((long)SLAB_BYTES);
+	}
+
+
+	// Get the maximum number of bytes of free slabs to retain.
+
+	public final synchronized long get_free_limit () {
+		return free_limit;
+	}
+
+
+	// Display our contents.
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder result = new StringBuilder();
+		result.append ("OECatalogSlabPool:" + "\n");
+		result.append ("slab_bytes = " + SLAB_BYTES + "\n");
+		result.append ("free_limit = " + free_limit + "\n");
+		result.append ("free_count = " + free_slabs.size() + "\n");
+		result.append ("allocated_bytes = " + allocated_bytes + "\n");
+		result.append ("peak_bytes = " + peak_bytes + "\n");
+		result.append ("total_alloc_count = " + total_alloc_count + "\n");
+		result.append ("total_drop_count = " + total_drop_count + "\n");
+		return result.toString();
+	}
+
+}
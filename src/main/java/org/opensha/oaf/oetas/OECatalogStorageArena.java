@@ -0,0 +1,970 @@
+package org.opensha.oaf.oetas;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.opensha.oaf.oetas.OECatalogSlabPool.SLAB_BYTES;
+import static org.opensha.oaf.oetas.OECatalogSlabPool.SLAB_T_DAY_BASE;
+import static org.opensha.oaf.oetas.OECatalogSlabPool.SLAB_RUP_MAG_BASE;
+import static org.opensha.oaf.oetas.OECatalogSlabPool.SLAB_K_PROD_BASE;
+import static org.opensha.oaf.oetas.OECatalogSlabPool.SLAB_X_KM_BASE;
+import static org.opensha.oaf.oetas.OECatalogSlabPool.SLAB_Y_KM_BASE;
+import static org.opensha.oaf.oetas.OECatalogSlabPool.SLAB_RUP_PARENT_BASE;
+
+
+// Class to store an Operational ETAS catalog, using off-heap memory.
+//
+// Per-generation information is stored in a set of arrays of primitive type,
+// the same as OECatalogStorage.
+//
+// Per-rupture information is stored in slabs obtained from an OECatalogSlabPool.
+// Each slab is a direct ByteBuffer that holds one block of ruptures, with all the
+// per-rupture values for the block stored in columns within the slab.  More slabs
+// are obtained from the pool as needed.
+//
+// When a new catalog is begun, slabs in excess of the trim size are returned to the
+// pool.  So after a very large catalog, the storage shrinks back to the trim size,
+// instead of holding its high-water mark for as long as the object exists.  Also,
+// since the slabs are off-heap, the garbage collector does not need to scan, copy,
+// or promote them, which keeps GC pauses short during large ensembles.
+//
+// The values stored, and the results returned, are the same as OECatalogStorage.
+// Call close() when the storage is no longer needed, to return all slabs to the pool.
+
+public class OECatalogStorageArena implements OECatalogBuilder, AutoCloseable {
+
+	//----- Per-Catalog storage -----
+
+	// Parameters for this catalog.
+
+	private OECatalogParams cat_params;
+
+	// Time at which the catalog stops, defaults to HUGE_TIME_DAYS.
+
+	private double cat_stop_time;
+
+	// Catalog result code, defaults to CAT_RESULT_OK.
+
+	private int cat_result_code;
+
+
+	// Initialize the per-catlog storage, except the catalog parameters.
+
+	private void init_cat () {
+		cat_stop_time = OEConstants.HUGE_TIME_DAYS;
+		cat_result_code = OEConstants.CAT_RESULT_OK;
+		return;
+	}
+
+
+
+
+	//----- Per-Generation storage -----
+
+	// The current number of generations.
+
+	private int gen_count;
+
+	// The capacity of the per-generation arrays.
+
+	private int gen_capacity;
+
+	// The initial capacity.
+
+	private static final int INIT_GEN_CAPACITY = 128;
+
+	// Per-generation array containing the initial rupture number for the generation.
+
+	private int[] gen_start;
+
+	// Per-generation array containing the number of ruptures in the generation.
+
+	private int[] gen_size;
+
+	// Per-generation array containing the number of ruptures in the generation before the stop time.
+
+	private int[] gen_valid_size;
+
+	// Per-generation array containing the minimum magnitude for the generation.
+
+	private double[] gen_mag_min;
+
+	// Per-generation array containing the maximum magnitude for the generation.
+
+	private double[] gen_mag_max;
+
+
+	// Initialize the per-generation storage.
+
+	private void init_gen () {
+		gen_count = 0;
+		gen_capacity = INIT_GEN_CAPACITY;
+		gen_start = new int[INIT_GEN_CAPACITY];
+		gen_size = new int[INIT_GEN_CAPACITY];
+		gen_valid_size = new int[INIT_GEN_CAPACITY];
+		gen_mag_min = new double[INIT_GEN_CAPACITY];
+		gen_mag_max = new double[INIT_GEN_CAPACITY];
+		return;
+	}
+
+
+	// Ensure there is sufficient capacity for per-generation storage.
+	// Allocates additional storage, if needed, so that there is sufficient
+	// storage to hold gen_count generations.
+	// Newly-allocated storage is not initialized in any way.
+
+	private void ensure_capacity_gen () {
+
+		// If insufficient capacity for the number of generations needed ...
+
+		if (gen_count > gen_capacity) {
+
+			// Get the capacity we need
+
+			do {
+				gen_capacity = gen_capacity * 2;
+			} while (gen_count > gen_capacity);
+
+			// Re-allocate the arrays at the required size
+
+			gen_start = Arrays.copyOf (gen_start, gen_capacity);
+			gen_size = Arrays.copyOf (gen_size, gen_capacity);
+			gen_valid_size = Arrays.copyOf (gen_valid_size, gen_capacity);
+			gen_mag_min = Arrays.copyOf (gen_mag_min, gen_capacity);
+			gen_mag_max = Arrays.copyOf (gen_mag_max, gen_capacity);
+		}
+
+		return;
+	}
+
+
+
+
+	//----- Per-Rupture storage -----
+
+	// The current total number of ruptures.
+
+	private int rup_count;
+
+	// The current total number of ruptures before the stop time.
+
+	private int rup_valid_count;
+
+	// The block size, block size minus 1, block mask, block shift count, and initial block count.
+	// The block size must equal the number of ruptures in a slab.
+
+	private static final int RUP_BLOCK_SIZE = OECatalogSlabPool.SLAB_RUP_COUNT;
+	private static final int RUP_BLOCK_SIZE_MINUS_1 = RUP_BLOCK_SIZE - 1;
+	private static final int RUP_BLOCK_MASK = RUP_BLOCK_SIZE - 1;
+	private static final int RUP_BLOCK_SHIFT = 13;
+
+	private static final int INIT_RUP_BLOCK_COUNT = 16;
+
+	// Default number of bytes retained when the storage is trimmed.
+
+	public static final long DEF_TRIM_BYTES = 32L * 1024L * 1024L;
+
+	// The pool that supplies slabs.
+
+	private OECatalogSlabPool slab_pool;
+
+	// The number of slabs retained when the storage is trimmed.
+
+	private int trim_slab_count;
+
+	// The slabs, each holding one block of ruptures.
+
+	private ByteBuffer[] slabs;
+
+	// The number of slabs currently held.
+
+	private int slab_count;
+
+	// The largest number of slabs held at any one time.
+
+	private int peak_slab_count;
+
+
+	// Initialize the per-rupture storage.
+
+	private void init_rup () {
+		rup_count = 0;
+		rup_valid_count = 0;
+		slabs = new ByteBuffer[INIT_RUP_BLOCK_COUNT];
+		slab_count = 0;
+		peak_slab_count = 0;
+		return;
+	}
+
+
+	// Ensure there is sufficient capacity for per-rupture storage.
+	// Obtains additional slabs from the pool, if needed, so that there is
+	// sufficient storage to hold rup_count ruptures.
+	// Newly-obtained storage is not initialized in any way.
+
+	private void ensure_capacity_rup () {
+
+		// The number of blocks needed
+
+		int blocks_needed = (rup_count + RUP_BLOCK_SIZE_MINUS_1) >> RUP_BLOCK_SHIFT;
+
+		// If insufficient slabs ...
+
+		if (blocks_needed > slab_count) {
+
+			// If insufficient capacity in the slab array, expand it
+
+			if (blocks_needed > slabs.length) {
+				int capacity = slabs.length;
+				do {
+					capacity = capacity * 2;
+				} while (blocks_needed > capacity);
+				slabs = Arrays.copyOf (slabs, capacity);
+			}
+
+			// Obtain the additional slabs needed
+
+			do {
+				slabs[slab_count] = slab_pool.acquire_slab();
+				++slab_count;
+			} while (blocks_needed > slab_count);
+
+			peak_slab_count = Math.max (peak_slab_count, slab_count);
+		}
+
+		return;
+	}
+
+
+	// Return slabs to the pool, retaining the given number of slabs.
+
+	private void release_slabs (int retain_count) {
+		while (slab_count > retain_count) {
+			--slab_count;
+			slab_pool.release_slab (slabs[slab_count]);
+			slabs[slab_count] = null;
+		}
+		return;
+	}
+
+
+
+
+	//----- Construction -----
+
+
+
+
+	// Constructor.
+	// Parameters:
+	//  slab_pool = The pool that supplies slabs.
+	//  trim_bytes = The amount of storage to retain when trimmed, in bytes, must be >= 0.
+
+	public OECatalogStorageArena (OECatalogSlabPool slab_pool, long trim_bytes) {
+		if (trim_bytes < 0L) {
+			throw new IllegalArgumentException ("OECatalogStorageArena.OECatalogStorageArena: Invalid trim size: trim_bytes = " + trim_bytes);
+		}
+		this.slab_pool = slab_pool;
+		this.trim_slab_count = (int)(Math.min (trim_bytes / ((long)SLAB_BYTES), (long)Integer.MAX_VALUE));
+		cat_params = new OECatalogParams();
+		init_cat();
+		init_gen();
+		init_rup();
+	}
+
+
+
+
+	// Default constructor uses the shared pool and the default trim size.
+
+	public OECatalogStorageArena () {
+		this (OECatalogSlabPool.get_singleton(), DEF_TRIM_BYTES);
+	}
+
+
+
+
+	// Re-initialize to an empty catalog.
+	// Slabs beyond the trim size are returned to the pool, others are retained and re-used.
+
+	public final void re_init () {
+		init_cat();
+		gen_count = 0;
+		rup_count = 0;
+		rup_valid_count = 0;
+		trim();
+		return;
+	}
+
+
+
+
+	// Return slabs beyond the trim size, and not currently in use, to the pool.
+
+	public final void trim () {
+		int blocks_needed = (rup_count + RUP_BLOCK_SIZE_MINUS_1) >> RUP_BLOCK_SHIFT;
+		release_slabs (Math.max (blocks_needed, trim_slab_count));
+		return;
+	}
+
+
+
+
+	// Return all slabs to the pool, and make the catalog empty.
+	// The object can still be used after this call, and it obtains new slabs as needed.
+
+	@Override
+	public final void close () {
+		init_cat();
+		gen_count = 0;
+		rup_count = 0;
+		rup_valid_count = 0;
+		release_slabs (0);
+		return;
+	}
+
+
+
+
+	// Get the number of bytes of off-heap storage currently held.
+
+	public final long get_held_bytes () {
+		return ((long)slab_count) * ((long)SLAB_BYTES);
+	}
+
+
+	// Get the largest number of bytes of off-heap storage held at any one time.
+
+	public final long get_peak_bytes () {
+		return ((long)peak_slab_count) * ((long)SLAB_BYTES);
+	}
+
+
+	// Get the pool that supplies slabs.
+
+	public final OECatalogSlabPool get_slab_pool () {
+		return slab_pool;
+	}
+
+
+
+
+	//----- Implementation of OECatalogView -----
+
+
+
+
+	// Get parameters for the catalog.
+	// Parameters:
+	//  cat_params = Structure to receive the catalog parameters.
+
+	@Override
+	public void get_cat_params (OECatalogParams cat_params) {
+		cat_params.copy_from (this.cat_params);
+		return;
+	}
+
+
+
+
+	// Get the total number of ruptures in the catalog.
+
+	@Override
+	public int size () {
+		return rup_count;
+	}
+
+
+
+
+	// Get the total number of ruptures in the catalog, excluding seed ruptures.
+
+	@Override
+	public int etas_size () {
+		if (gen_count < 1) {
+			return rup_count;
+		}
+		return rup_count - gen_size[0];
+	}
+
+
+
+
+	// Get the total number of ruptures in the catalog before the stop time.
+	// This cannot be called until after the catalog is fully built.
+
+	@Override
+	public int valid_size () {
+		return rup_valid_count;
+	}
+
+
+
+
+	// Get the number of generations in the catalog.
+
+	@Override
+	public int get_gen_count () {
+		return gen_count;
+	}
+
+
+
+
+	// Get the number of ruptures in the i-th generation.
+	// Parameters:
+	//  i_gen = Generation number.
+
+	@Override
+	public int get_gen_size (int i_gen) {
+		return gen_size[i_gen];
+	}
+
+
+
+
+	// Get the number of ruptures in the i-th generation before the stop time.
+	// Parameters:
+	//  i_gen = Generation number.
+	// This cannot be called until after the catalog is fully built.
+
+	@Override
+	public int get_gen_valid_size (int i_gen) {
+		return gen_valid_size[i_gen];
+	}
+
+
+
+
+	// Get information about the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  gen_info = Structure to receive the generation information.
+
+	@Override
+	public void get_gen_info (int i_gen, OEGenerationInfo gen_info) {
+		gen_info.set (
+			gen_mag_min[i_gen],
+			gen_mag_max[i_gen]
+		);
+		return;
+	}
+
+
+
+
+	// Get the j-th rupture in the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  j_rup = Rupture number, within the generation.
+	//  rup = Structure to receive the rupture information.
+
+	@Override
+	public void get_rup_full (int i_gen, int j_rup, OERupture rup) {
+		int index = gen_start[i_gen] + j_rup;
+
+		final ByteBuffer slab = slabs[index >> RUP_BLOCK_SHIFT];
+		int offset = index & RUP_BLOCK_MASK;
+
+		rup.set (
+			slab.getDouble (SLAB_T_DAY_BASE + (offset << 3)),
+			slab.getDouble (SLAB_RUP_MAG_BASE + (offset << 3)),
+			slab.getDouble (SLAB_K_PROD_BASE + (offset << 3)),
+			slab.getInt (SLAB_RUP_PARENT_BASE + (offset << 2)),
+			slab.getDouble (SLAB_X_KM_BASE + (offset << 3)),
+			slab.getDouble (SLAB_Y_KM_BASE + (offset << 3))
+		);
+
+		return;
+	}
+
+
+
+
+	// Get the time of the j-th rupture in the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  j_rup = Rupture number, within the generation.
+	//  rup = Structure to receive the rupture information.
+	// This function fills in rup.t_day.
+	// Other fields may or may not be modified.
+
+	@Override
+	public void get_rup_time (int i_gen, int j_rup, final OERupture rup) {
+		int index = gen_start[i_gen] + j_rup;
+		rup.t_day = slabs[index >> RUP_BLOCK_SHIFT].getDouble (SLAB_T_DAY_BASE + ((index & RUP_BLOCK_MASK) << 3));
+		return;
+	}
+
+
+
+
+	// Get the time and productivity of the j-th rupture in the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  j_rup = Rupture number, within the generation.
+	//  rup = Structure to receive the rupture information.
+	// This function fills in rup.t_day and rup.k_prod.
+	// Other fields may or may not be modified.
+
+	@Override
+	public void get_rup_time_prod (int i_gen, int j_rup, final OERupture rup) {
+		int index = gen_start[i_gen] + j_rup;
+
+		final ByteBuffer slab = slabs[index >> RUP_BLOCK_SHIFT];
+		int offset = index & RUP_BLOCK_MASK;
+
+		rup.t_day = slab.getDouble (SLAB_T_DAY_BASE + (offset << 3));
+		rup.k_prod = slab.getDouble (SLAB_K_PROD_BASE + (offset << 3));
+
+		return;
+	}
+
+
+
+
+	// Get the time and location of the j-th rupture in the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  j_rup = Rupture number, within the generation.
+	//  rup = Structure to receive the rupture information.
+	// This function fills in rup.t_day, rup.x_km, and rup.y_km.
+	// Other fields may or may not be modified.
+
+	@Override
+	public void get_rup_time_x_y (int i_gen, int j_rup, final OERupture rup) {
+		int index = gen_start[i_gen] + j_rup;
+
+		final ByteBuffer slab = slabs[index >> RUP_BLOCK_SHIFT];
+		int offset = index & RUP_BLOCK_MASK;
+
+		rup.t_day = slab.getDouble (SLAB_T_DAY_BASE + (offset << 3));
+		rup.x_km = slab.getDouble (SLAB_X_KM_BASE + (offset << 3));
+		rup.y_km = slab.getDouble (SLAB_Y_KM_BASE + (offset << 3));
+
+		return;
+	}
+
+
+
+
+	// Get the times and productivities of a range of ruptures in the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  j_begin = Beginning rupture number, within the generation.
+	//  j_end = Ending rupture number, within the generation.
+	//  a_t_day = Array to receive the times.
+	//  a_k_prod = Array to receive the productivities.
+	// Rupture j, for j_begin <= j < j_end, is stored at index j - j_begin in the arrays.
+	// This reads one slab at a time, rather than looking up the slab for each rupture.
+
+	@Override
+	public void get_gen_time_prod (int i_gen, int j_begin, int j_end, double[] a_t_day, double[] a_k_prod) {
+		int index = gen_start[i_gen] + j_begin;
+		int index_end = gen_start[i_gen] + j_end;
+		int dest = 0;
+
+		while (index < index_end) {
+			final ByteBuffer slab = slabs[index >> RUP_BLOCK_SHIFT];
+			int offset = index & RUP_BLOCK_MASK;
+			int len = Math.min (RUP_BLOCK_SIZE - offset, index_end - index);
+
+			for (int k = 0; k < len; ++k) {
+				a_t_day[dest + k] = slab.getDouble (SLAB_T_DAY_BASE + ((offset + k) << 3));
+				a_k_prod[dest + k] = slab.getDouble (SLAB_K_PROD_BASE + ((offset + k) << 3));
+			}
+
+			index += len;
+			dest += len;
+		}
+
+		return;
+	}
+
+
+
+
+	// Get the time at which the catalog stops.
+	// The return value need not satisfy stop_time <= cat_params.tend; however,
+	// the catalog does not extend past cat_params.tend regardless of stop_time.
+	// If stop_time < cat_params.tend, then the catalog ended before the full time interval.
+
+	@Override
+	public double get_cat_stop_time () {
+		return cat_stop_time;
+	}
+
+
+
+
+	// Get the catalog result code, see OEConstants.CAT_RESULT_XXXX.
+
+	@Override
+	public int get_cat_result_code () {
+		return cat_result_code;
+	}
+
+
+
+
+	//----- Implementation of OECatalogBuilder -----
+
+
+
+
+	// Begin construction of a catalog.
+	// Parameters:
+	//  cat_params = Parameters to use for this catalog.
+	// This method clears the internal data structures and sets up
+	// an empty catalog with zero generations.
+	// Note: This allows re-using a catalog object to generate a new catalog.
+	// Note: This function does not retain cat_params; it copies the contents.
+	// Note: Slabs beyond the trim size, left over from a prior catalog, are returned to the pool.
+
+	@Override
+	public void begin_catalog (OECatalogParams cat_params) {
+
+		// Re-initialize, re-using existing memory up to the trim size
+
+		re_init();
+
+		// Save the parameters
+
+		this.cat_params.copy_from (cat_params);
+		return;
+	}
+
+
+
+
+	// End construction of a catalog.
+
+	@Override
+	public void end_catalog () {
+
+		// Remove any trailing zero-size generations, but not the seed generation
+
+		while (gen_count > 1 && gen_size[gen_count - 1] == 0) {
+			--gen_count;
+		}
+
+		// Assume all ruptures are valid
+
+		rup_valid_count = rup_count;
+
+		// If stop time is before end time, then the catalog ended early ...
+
+		if (cat_stop_time < cat_params.tend) {
+
+			// Initialize count
+
+			rup_valid_count = 0;
+
+			// Loop over generations
+
+			for (int i_gen = 0; i_gen < gen_count; ++i_gen) {
+
+				// Count ruptures before the stop time
+
+				int count = 0;
+				int index_end = gen_start[i_gen] + gen_size[i_gen];
+
+				for (int index = gen_start[i_gen]; index < index_end; ++index) {
+					if (slabs[index >> RUP_BLOCK_SHIFT].getDouble (SLAB_T_DAY_BASE + ((index & RUP_BLOCK_MASK) << 3)) < cat_stop_time) {
+						++count;
+					}
+				}
+
+				// Save count
+
+				gen_valid_size[i_gen] = count;
+				rup_valid_count += count;
+			}
+		}
+
+		return;
+	}
+
+
+
+
+	// Begin a new generation of a catalog.
+	// Parameters:
+	//  gen_info = Structure containing the generation information to set.
+	// This method increments the number of generations, and creates a
+	// new empty generation.
+	// Note: This function does not retain gen_info; it copies the contents.
+
+	@Override
+	public void begin_generation (OEGenerationInfo gen_info) {
+
+		// Get the index of the new generation
+
+		int i_gen = gen_count;
+
+		// Count the new generation, and allocate storage if needed
+
+		++gen_count;
+		ensure_capacity_gen();
+
+		// Initialize rupture start index, and zero size
+
+		gen_start[i_gen] = rup_count;
+		gen_size[i_gen] = 0;
+		gen_valid_size[i_gen] = 0;
+
+		// Save generation information
+
+		gen_mag_min[i_gen] = gen_info.gen_mag_min;
+		gen_mag_max[i_gen] = gen_info.gen_mag_max;
+		return;
+	}
+
+
+
+
+	// End a generation of a catalog.
+
+	@Override
+	public void end_generation () {
+
+		// Get the index of the new generation
+
+		int i_gen = gen_count - 1;
+
+		// Assume valid size equals size
+
+		gen_valid_size[i_gen] = gen_size[i_gen];
+		return;
+	}
+
+
+
+
+	// Add a rupture to the current generation of a catalog.
+	// Parameters:
+	//  rup = Structure containing the rupture information to set.
+	// Note: Ruptures can only be added to the generation currently being built.
+	// Note: This function does not retain rup; it copies the contents.
+
+	@Override
+	public void add_rup (OERupture rup) {
+
+		// Get the index of the new rupture, and break it into block and offset
+
+		int index = rup_count;
+		int block = index >> RUP_BLOCK_SHIFT;
+		int offset = index & RUP_BLOCK_MASK;
+
+		// Count the new rupture, and allocate storage if needed
+
+		++rup_count;
+		ensure_capacity_rup();
+
+		// Count this rupture in the current generation
+
+		gen_size[gen_count - 1]++;
+
+		// Save rupture information
+
+		final ByteBuffer slab = slabs[block];
+
+		slab.putDouble (SLAB_T_DAY_BASE + (offset << 3), rup.t_day);
+		slab.putDouble (SLAB_RUP_MAG_BASE + (offset << 3), rup.rup_mag);
+		slab.putDouble (SLAB_K_PROD_BASE + (offset << 3), rup.k_prod);
+		slab.putInt (SLAB_RUP_PARENT_BASE + (offset << 2), rup.rup_parent);
+		slab.putDouble (SLAB_X_KM_BASE + (offset << 3), rup.x_km);
+		slab.putDouble (SLAB_Y_KM_BASE + (offset << 3), rup.y_km);
+		return;
+	}
+
+
+
+
+	// Set the time at which the catalog stops.
+	// Defaults to HUGE_TIME_DAYS if it is never set.
+	// If stop_time < cat_params.tend, then the catalog ended before the full time interval.
+
+	@Override
+	public void set_cat_stop_time (double stop_time) {
+		cat_stop_time = stop_time;
+		return;
+	}
+
+
+
+
+	// Set the catalog result code, CAT_RESULT_OK indicates success.
+	// Defaults to CAT_RESULT_OK if it is never set.
+
+	@Override
+	public void set_cat_result_code (int result_code) {
+		cat_result_code = result_code;
+		return;
+	}
+
+
+
+
+	//----- Testing -----
+
+
+
+
+	public static void main(String[] args) {
+
+		// There needs to be at least one argument, which is the subcommand
+
+		if (args.length < 1) {
+			System.err.println ("OECatalogStorageArena : Missing subcommand");
+			return;
+		}
+
+
+
+
+		// Subcommand : Test #1
+		// Command format:
+		//  test1  test_gen_count  test_gen_size  trim_bytes
+		// Build a catalog with test_gen_count generations, in both an arena and an OECatalogStorage.
+		// Each generation has a mean of test_gen_size ruptures, but varies randomly.
+		// Ruptures are generated randomly.
+		// Then, compare the two catalogs, and display pool statistics.
+		// Then, build a small catalog in the arena, and display pool statistics after the trim.
+
+		if (args[0].equalsIgnoreCase ("test1")) {
+
+			// 3 additional arguments
+
+			if (args.length != 4) {
+				System.err.println ("OECatalogStorageArena : Invalid 'test1' subcommand");
+				return;
+			}
+
+			try {
+
+				int test_gen_count = Integer.parseInt (args[1]);
+				int test_gen_size = Integer.parseInt (args[2]);
+				long trim_bytes = Long.parseLong (args[3]);
+
+				// Say hello
+
+				System.out.println ("Generating catalog with random data");
+				System.out.println ("test_gen_count = " + test_gen_count);
+				System.out.println ("test_gen_size = " + test_gen_size);
+				System.out.println ("trim_bytes = " + trim_bytes);
+
+				// Get the random number generator
+
+				OERandomGenerator rangen = OERandomGenerator.get_thread_rangen();
+
+				// Allocate the storage, with a private pool
+
+				OECatalogSlabPool slab_pool = new OECatalogSlabPool();
+				OECatalogStorageArena arena = new OECatalogStorageArena (slab_pool, trim_bytes);
+				OECatalogStorage cat_storage = new OECatalogStorage();
+
+				// Build the catalogs
+
+				OECatalogParams in_cat_params = (new OECatalogParams()).set_to_random (rangen);
+				arena.begin_catalog (in_cat_params);
+				cat_storage.begin_catalog (in_cat_params);
+
+				for (int i_gen = 0; i_gen < test_gen_count; ++i_gen) {
+					OEGenerationInfo gen_info = (new OEGenerationInfo()).set_to_random (rangen);
+					arena.begin_generation (gen_info);
+					cat_storage.begin_generation (gen_info);
+
+					int gen_size = rangen.uniform_int_sample (test_gen_size/2 + 1, 3*test_gen_size/2 + 1);
+					for (int j_rup = 0; j_rup < gen_size; ++j_rup) {
+						OERupture rup = (new OERupture()).set_to_random (rangen);
+						arena.add_rup (rup);
+						cat_storage.add_rup (rup);
+					}
+
+					arena.end_generation();
+					cat_storage.end_generation();
+				}
+
+				arena.set_cat_stop_time (in_cat_params.tend * 0.5);
+				cat_storage.set_cat_stop_time (in_cat_params.tend * 0.5);
+				arena.end_catalog();
+				cat_storage.end_catalog();
+
+				// Compare
+
+				System.out.println ();
+				System.out.println ("Checking catalog...");
+
+				int err_count = 0;
+				if (!( arena.size() == cat_storage.size() && arena.valid_size() == cat_storage.valid_size()
+					&& arena.get_gen_count() == cat_storage.get_gen_count() )) {
+					System.out.println ("MISMATCH for catalog size");
+					++err_count;
+				}
+
+				OERupture arena_rup = new OERupture();
+				OERupture storage_rup = new OERupture();
+
+				for (int i_gen = 0; i_gen < cat_storage.get_gen_count() && err_count < 10; ++i_gen) {
+					if (!( arena.get_gen_size (i_gen) == cat_storage.get_gen_size (i_gen)
+						&& arena.get_gen_valid_size (i_gen) == cat_storage.get_gen_valid_size (i_gen) )) {
+						System.out.println ("MISMATCH for generation " + i_gen + " size");
+						++err_count;
+					}
+					for (int j_rup = 0; j_rup < cat_storage.get_gen_size (i_gen) && err_count < 10; ++j_rup) {
+						arena.get_rup_full (i_gen, j_rup, arena_rup);
+						cat_storage.get_rup_full (i_gen, j_rup, storage_rup);
+						if (!( arena_rup.check_rup_equal (storage_rup) )) {
+							System.out.println ("MISMATCH for generation " + i_gen + " rupture " + j_rup);
+							System.out.println ("Expected: " + storage_rup.one_line_string());
+							System.out.println ("Got: " + arena_rup.one_line_string());
+							++err_count;
+						}
+					}
+				}
+
+				System.out.println ("Error count = " + err_count);
+
+				// Pool statistics
+
+				System.out.println ();
+				System.out.println ("After large catalog: held_bytes = " + arena.get_held_bytes() + ", peak_bytes = " + arena.get_peak_bytes());
+				System.out.println (slab_pool.toString());
+
+				// Build a small catalog, which trims the arena
+
+				arena.begin_catalog (in_cat_params);
+				arena.begin_generation ((new OEGenerationInfo()).set_to_random (rangen));
+				arena.add_rup ((new OERupture()).set_to_random (rangen));
+				arena.end_generation();
+				arena.end_catalog();
+
+				System.out.println ("After small catalog: held_bytes = " + arena.get_held_bytes() + ", peak_bytes = " + arena.get_peak_bytes());
+				System.out.println (slab_pool.toString());
+
+				// Close the arena
+
+				arena.close();
+
+				System.out.println ("After close: held_bytes = " + arena.get_held_bytes());
+				System.out.println (slab_pool.toString());
+
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+
+			return;
+		}
+
+
+
+
+		// Unrecognized subcommand.
+
+		System.err.println ("OECatalogStorageArena : Unrecognized subcommand : " + args[0]);
+		return;
+
+	}
+
+}
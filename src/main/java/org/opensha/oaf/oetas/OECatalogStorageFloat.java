@@ -533,6 +533,43 @@ public class OECatalogStorageFloat implements OECatalogBuilder {
 
 
 
+	// Get the times and productivities of a range of ruptures in the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  j_begin = Beginning rupture number, within the generation.
+	//  j_end = Ending rupture number, within the generation.
+	//  a_t_day = Array to receive the times.
+	//  a_k_prod = Array to receive the productivities.
+	// Rupture j, for j_begin <= j < j_end, is stored at index j - j_begin in the arrays.
+	// This copies one storage block at a time, rather than one rupture at a time.
+
+	@Override
+	public void get_gen_time_prod (int i_gen, int j_begin, int j_end, double[] a_t_day, double[] a_k_prod) {
+		int index = gen_start[i_gen] + j_begin;
+		int index_end = gen_start[i_gen] + j_end;
+		int dest = 0;
+
+		while (index < index_end) {
+			int block = index >> RUP_BLOCK_SHIFT;
+			int offset = index & RUP_BLOCK_MASK;
+			int len = Math.min (RUP_BLOCK_SIZE - offset, index_end - index);
+
+			System.arraycopy (t_day[block], offset, a_t_day, dest, len);
+			final float[] k_prod_block = k_prod[block];
+			for (int k = 0; k < len; ++k) {
+				a_k_prod[dest + k] = (double)(k_prod_block[offset + k]);
+			}
+
+			index += len;
+			dest += len;
+		}
+
+		return;
+	}
+
+
+
+
 	// Get the time at which the catalog stops.
 	// The return value need not satisfy stop_time <= cat_params.tend; however,
 	// the catalog does not extend past cat_params.tend regardless of stop_time.
@@ -0,0 +1,1040 @@
+package org.opensha.oaf.oetas;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+
+// Class to store a window of generations of an Operational ETAS catalog.
+//
+// This is a catalog builder that can discard generations once they are no longer
+// needed, so that a catalog can be generated and scanned without ever holding the
+// whole catalog in memory.  The generator only needs the current generation to make
+// the next one, and the scanner only needs the previous, current, and next generations
+// (see OECatalogScanComm).  So a caller that streams generations to a scanner as they
+// are completed can call discard_before() to release older generations.
+//
+// Per-generation information (size, magnitude range) is kept for all generations,
+// including discarded ones.  Per-rupture information is stored in one set of column
+// arrays per generation.  When a generation is discarded, its columns are kept in a
+// free list and re-used for a later generation (of this or a later catalog), so once
+// the storage has reached its working size there is no further allocation.
+//
+// If discard_before() is never called, this is an ordinary (if less compact) catalog
+// storage, holding all generations.
+//
+// Note: Any attempt to read the ruptures of a discarded generation throws an exception.
+// Functions that read every rupture in the catalog (such as dump_to_string) can only be
+// used if no generations have been discarded.
+//
+// Note: The valid size of a discarded generation is not updated when the catalog ends,
+// because its ruptures are no longer available.  So, valid_size() and get_gen_valid_size()
+// are correct only if the stop time did not decrease after a generation was discarded.
+// A streaming scan should count valid ruptures itself (OECatalogScanner does).
+
+public class OECatalogStorageWindow implements OECatalogBuilder {
+
+	//----- Per-Catalog storage -----
+
+	// Parameters for this catalog.
+
+	private OECatalogParams cat_params;
+
+	// Time at which the catalog stops, defaults to HUGE_TIME_DAYS.
+
+	private double cat_stop_time;
+
+	// Catalog result code, defaults to CAT_RESULT_OK.
+
+	private int cat_result_code;
+
+
+	// Initialize the per-catlog storage, except the catalog parameters.
+
+	private void init_cat () {
+		cat_stop_time = OEConstants.HUGE_TIME_DAYS;
+		cat_result_code = OEConstants.CAT_RESULT_OK;
+		return;
+	}
+
+
+
+
+	//----- Per-Generation columns -----
+
+	// Columns holding the ruptures of one generation.
+	// The capacity is the length of each array.
+
+	private static final class GenColumns {
+
+		// Rupture time, in days.
+
+		public double[] t_day;
+
+		// Rupture magnitude.
+
+		public double[] rup_mag;
+
+		// Productivity "k" value.
+
+		public double[] k_prod;
+
+		// The parent rupture number, relative to the start of the prior generation.
+
+		public int[] rup_parent;
+
+		// The x coordinate, in km.
+
+		public double[] x_km;
+
+		// The y coordinate, in km.
+
+		public double[] y_km;
+
+		// Constructor allocates arrays of the given capacity.
+
+		public GenColumns (int capacity) {
+			t_day = new double[capacity];
+			rup_mag = new double[capacity];
+			k_prod = new double[capacity];
+			rup_parent = new int[capacity];
+			x_km = new double[capacity];
+			y_km = new double[capacity];
+		}
+
+		// Get the capacity.
+
+		public int capacity () {
+			return t_day.length;
+		}
+
+		// Grow to at least the given capacity, preserving the contents.
+
+		public void grow (int needed) {
+			int capacity = capacity();
+			do {
+				capacity = capacity * 2;
+			} while (needed > capacity);
+
+			t_day = Arrays.copyOf (t_day, capacity);
+			rup_mag = Arrays.copyOf (rup_mag, capacity);
+			k_prod = Arrays.copyOf (k_prod, capacity);
+			rup_parent = Arrays.copyOf (rup_parent, capacity);
+			x_km = Arrays.copyOf (x_km, capacity);
+			y_km = Arrays.copyOf (y_km, capacity);
+			return;
+		}
+	}
+
+	// The initial capacity of a set of columns.
+
+	private static final int INIT_COLUMN_CAPACITY = 1024;
+
+	// Free columns, available for re-use.
+
+	private ArrayDeque<GenColumns> free_columns;
+
+
+	// Obtain a set of columns, from the free list if possible.
+
+	private GenColumns acquire_columns () {
+		GenColumns cols = free_columns.pollLast();
+		if (cols == null) {
+			cols = new GenColumns (INIT_COLUMN_CAPACITY);
+		}
+		return cols;
+	}
+
+
+	// Release the columns of the i-th generation, if it holds any.
+
+	private void release_columns (int i_gen) {
+		if (gen_cols[i_gen] != null) {
+			free_columns.addLast (gen_cols[i_gen]);
+			gen_cols[i_gen] = null;
+		}
+		return;
+	}
+
+
+	// Get the columns of the i-th generation, which must not be discarded.
+
+	private GenColumns get_columns (int i_gen) {
+		GenColumns cols = gen_cols[i_gen];
+		if (cols == null) {
+			throw new IllegalStateException ("OECatalogStorageWindow.get_columns: Generation has been discarded: i_gen = " + i_gen + ", gen_first_held = " + gen_first_held);
+		}
+		return cols;
+	}
+
+
+
+
+	//----- Per-Generation storage -----
+
+	// The current number of generations.
+
+	private int gen_count;
+
+	// The first generation whose ruptures are still held.
+
+	private int gen_first_held;
+
+	// The capacity of the per-generation arrays.
+
+	private int gen_capacity;
+
+	// The initial capacity.
+
+	private static final int INIT_GEN_CAPACITY = 128;
+
+	// Per-generation array containing the number of ruptures in the generation.
+
+	private int[] gen_size;
+
+	// Per-generation array containing the number of ruptures in the generation before the stop time.
+
+	private int[] gen_valid_size;
+
+	// Per-generation array containing the minimum magnitude for the generation.
+
+	private double[] gen_mag_min;
+
+	// Per-generation array containing the maximum magnitude for the generation.
+
+	private double[] gen_mag_max;
+
+	// Per-generation array containing the rupture columns, or null if the generation is discarded.
+
+	private GenColumns[] gen_cols;
+
+
+	// Initialize the per-generation storage.
+
+	private void init_gen () {
+		gen_count = 0;
+		gen_first_held = 0;
+		gen_capacity = INIT_GEN_CAPACITY;
+		gen_size = new int[INIT_GEN_CAPACITY];
+		gen_valid_size = new int[INIT_GEN_CAPACITY];
+		gen_mag_min = new double[INIT_GEN_CAPACITY];
+		gen_mag_max = new double[INIT_GEN_CAPACITY];
+		gen_cols = new GenColumns[INIT_GEN_CAPACITY];
+		free_columns = new ArrayDeque<GenColumns>();
+		return;
+	}
+
+
+	// Re-initialize the per-generation storage.
+	// The columns of held generations are returned to the free list.
+
+	private void re_init_gen () {
+		for (int i_gen = gen_first_held; i_gen < gen_count; ++i_gen) {
+			release_columns (i_gen);
+		}
+		gen_count = 0;
+		gen_first_held = 0;
+		return;
+	}
+
+
+	// Ensure there is sufficient capacity for per-generation storage.
+	// Allocates additional storage, if needed, so that there is sufficient
+	// storage to hold gen_count generations.
+	// Newly-allocated storage is not initialized, except gen_cols is null.
+
+	private void ensure_capacity_gen () {
+
+		// If insufficient capacity for the number of generations needed ...
+
+		if (gen_count > gen_capacity) {
+
+			// Get the capacity we need
+
+			do {
+				gen_capacity = gen_capacity * 2;
+			} while (gen_count > gen_capacity);
+
+			// Re-allocate the arrays at the required size
+
+			gen_size = Arrays.copyOf (gen_size, gen_capacity);
+			gen_valid_size = Arrays.copyOf (gen_valid_size, gen_capacity);
+			gen_mag_min = Arrays.copyOf (gen_mag_min, gen_capacity);
+			gen_mag_max = Arrays.copyOf (gen_mag_max, gen_capacity);
+			gen_cols = Arrays.copyOf (gen_cols, gen_capacity);
+		}
+
+		return;
+	}
+
+
+
+
+	//----- Per-Rupture storage -----
+
+	// The current total number of ruptures, including discarded generations.
+
+	private int rup_count;
+
+	// The current total number of ruptures before the stop time.
+
+	private int rup_valid_count;
+
+
+	// Initialize the per-rupture storage.
+
+	private void init_rup () {
+		rup_count = 0;
+		rup_valid_count = 0;
+		return;
+	}
+
+
+
+
+	//----- Construction -----
+
+
+
+
+	// Clear to default values, and perform initial memory allocation.
+	// Any previously-allocated memory is discarded.
+
+	public final void clear () {
+		cat_params.clear();
+		init_cat();
+		init_gen();
+		init_rup();
+		return;
+	}
+
+
+
+
+	// Default constructor.
+
+	public OECatalogStorageWindow () {
+		cat_params = new OECatalogParams();
+		clear();
+	}
+
+
+
+
+	// Re-initialize to an empty catalog.
+	// Previously-allocated memory is retained and re-used.
+
+	public final void re_init () {
+		init_cat();
+		re_init_gen();
+		init_rup();
+		return;
+	}
+
+
+
+
+	//----- Window control -----
+
+
+
+
+	// Discard the ruptures of all generations before the given generation.
+	// Parameters:
+	//  i_gen = First generation to keep.  If i_gen exceeds the number of generations,
+	//          all generations are discarded.
+	// Per-generation information (size and magnitude range) remains available.
+	// Generations already discarded are not affected.
+
+	public final void discard_before (int i_gen) {
+		int i_end = Math.min (i_gen, gen_count);
+		for ( ; gen_first_held < i_end; ++gen_first_held) {
+			release_columns (gen_first_held);
+		}
+		return;
+	}
+
+
+
+
+	// Get the first generation whose ruptures are still held.
+	// Generations from this one to get_gen_count() - 1 can be read.
+
+	public final int get_first_held_gen () {
+		return gen_first_held;
+	}
+
+
+
+
+	// Get the number of ruptures currently held.
+
+	public final int get_held_rup_count () {
+		int result = 0;
+		for (int i_gen = gen_first_held; i_gen < gen_count; ++i_gen) {
+			result += gen_size[i_gen];
+		}
+		return result;
+	}
+
+
+
+
+	// Get the number of bytes of rupture storage allocated, including free columns.
+	// Each rupture takes 44 bytes (five doubles and one int).
+
+	public final long get_allocated_bytes () {
+		long capacity = 0L;
+		for (int i_gen = gen_first_held; i_gen < gen_count; ++i_gen) {
+			if (gen_cols[i_gen] != null) {
+				capacity += gen_cols[i_gen].capacity();
+			}
+		}
+		for (GenColumns cols : free_columns) {
+			capacity += cols.capacity();
+		}
+		return capacity * 44L;
+	}
+
+
+
+
+	//----- Implementation of OECatalogView -----
+
+
+
+
+	// Get parameters for the catalog.
+	// Parameters:
+	//  cat_params = Structure to receive the catalog parameters.
+
+	@Override
+	public void get_cat_params (OECatalogParams cat_params) {
+		cat_params.copy_from (this.cat_params);
+		return;
+	}
+
+
+
+
+	// Get the total number of ruptures in the catalog.
+	// This includes ruptures in discarded generations.
+
+	@Override
+	public int size () {
+		return rup_count;
+	}
+
+
+
+
+	// Get the total number of ruptures in the catalog, excluding seed ruptures.
+	// This includes ruptures in discarded generations.
+
+	@Override
+	public int etas_size () {
+		if (gen_count < 1) {
+			return rup_count;
+		}
+		return rup_count - gen_size[0];
+	}
+
+
+
+
+	// Get the total number of ruptures in the catalog before the stop time.
+	// This cannot be called until after the catalog is fully built.
+	// See the note at the top of the file about discarded generations.
+
+	@Override
+	public int valid_size () {
+		return rup_valid_count;
+	}
+
+
+
+
+	// Get the number of generations in the catalog.
+
+	@Override
+	public int get_gen_count () {
+		return gen_count;
+	}
+
+
+
+
+	// Get the number of ruptures in the i-th generation.
+	// Parameters:
+	//  i_gen = Generation number.
+
+	@Override
+	public int get_gen_size (int i_gen) {
+		return gen_size[i_gen];
+	}
+
+
+
+
+	// Get the number of ruptures in the i-th generation before the stop time.
+	// Parameters:
+	//  i_gen = Generation number.
+	// This cannot be called until after the catalog is fully built.
+	// See the note at the top of the file about discarded generations.
+
+	@Override
+	public int get_gen_valid_size (int i_gen) {
+		return gen_valid_size[i_gen];
+	}
+
+
+
+
+	// Get information about the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  gen_info = Structure to receive the generation information.
+
+	@Override
+	public void get_gen_info (int i_gen, OEGenerationInfo gen_info) {
+		gen_info.set (
+			gen_mag_min[i_gen],
+			gen_mag_max[i_gen]
+		);
+		return;
+	}
+
+
+
+
+	// Get the j-th rupture in the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  j_rup = Rupture number, within the generation.
+	//  rup = Structure to receive the rupture information.
+
+	@Override
+	public void get_rup_full (int i_gen, int j_rup, OERupture rup) {
+		GenColumns cols = get_columns (i_gen);
+
+		rup.set (
+			cols.t_day[j_rup],
+			cols.rup_mag[j_rup],
+			cols.k_prod[j_rup],
+			cols.rup_parent[j_rup],
+			cols.x_km[j_rup],
+			cols.y_km[j_rup]
+		);
+
+		return;
+	}
+
+
+
+
+	// Get the time of the j-th rupture in the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  j_rup = Rupture number, within the generation.
+	//  rup = Structure to receive the rupture information.
+	// This function fills in rup.t_day.
+	// Other fields may or may not be modified.
+
+	@Override
+	public void get_rup_time (int i_gen, int j_rup, final OERupture rup) {
+		rup.t_day = get_columns(i_gen).t_day[j_rup];
+		return;
+	}
+
+
+
+
+	// Get the time and productivity of the j-th rupture in the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  j_rup = Rupture number, within the generation.
+	//  rup = Structure to receive the rupture information.
+	// This function fills in rup.t_day and rup.k_prod.
+	// Other fields may or may not be modified.
+
+	@Override
+	public void get_rup_time_prod (int i_gen, int j_rup, final OERupture rup) {
+		GenColumns cols = get_columns (i_gen);
+
+		rup.t_day = cols.t_day[j_rup];
+		rup.k_prod = cols.k_prod[j_rup];
+
+		return;
+	}
+
+
+
+
+	// Get the time and location of the j-th rupture in the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  j_rup = Rupture number, within the generation.
+	//  rup = Structure to receive the rupture information.
+	// This function fills in rup.t_day, rup.x_km, and rup.y_km.
+	// Other fields may or may not be modified.
+
+	@Override
+	public void get_rup_time_x_y (int i_gen, int j_rup, final OERupture rup) {
+		GenColumns cols = get_columns (i_gen);
+
+		rup.t_day = cols.t_day[j_rup];
+		rup.x_km = cols.x_km[j_rup];
+		rup.y_km = cols.y_km[j_rup];
+
+		return;
+	}
+
+
+
+
+	// Get the times and productivities of a range of ruptures in the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  j_begin = Beginning rupture number, within the generation.
+	//  j_end = Ending rupture number, within the generation.
+	//  a_t_day = Array to receive the times.
+	//  a_k_prod = Array to receive the productivities.
+	// Rupture j, for j_begin <= j < j_end, is stored at index j - j_begin in the arrays.
+	// Each generation is contiguous, so this is a single copy per column.
+
+	@Override
+	public void get_gen_time_prod (int i_gen, int j_begin, int j_end, double[] a_t_day, double[] a_k_prod) {
+		GenColumns cols = get_columns (i_gen);
+
+		System.arraycopy (cols.t_day, j_begin, a_t_day, 0, j_end - j_begin);
+		System.arraycopy (cols.k_prod, j_begin, a_k_prod, 0, j_end - j_begin);
+
+		return;
+	}
+
+
+
+
+	// Get the time at which the catalog stops.
+	// The return value need not satisfy stop_time <= cat_params.tend; however,
+	// the catalog does not extend past cat_params.tend regardless of stop_time.
+	// If stop_time < cat_params.tend, then the catalog ended before the full time interval.
+
+	@Override
+	public double get_cat_stop_time () {
+		return cat_stop_time;
+	}
+
+
+
+
+	// Get the catalog result code, see OEConstants.CAT_RESULT_XXXX.
+
+	@Override
+	public int get_cat_result_code () {
+		return cat_result_code;
+	}
+
+
+
+
+
+	//----- Implementation of OECatalogBuilder -----
+
+
+
+
+	// Begin construction of a catalog.
+	// Parameters:
+	//  cat_params = Parameters to use for this catalog.
+	// This method clears the internal data structures and sets up
+	// an empty catalog with zero generations.
+	// Note: This allows re-using a catalog object to generate a new catalog.
+	// Note: This function does not retain cat_params; it copies the contents.
+
+	@Override
+	public void begin_catalog (OECatalogParams cat_params) {
+
+		// Re-initialize, re-using existing memory
+
+		re_init();
+
+		// Save the parameters
+
+		this.cat_params.copy_from (cat_params);
+		return;
+	}
+
+
+
+
+	// End construction of a catalog.
+	// Valid sizes are recomputed only for generations that are still held.
+
+	@Override
+	public void end_catalog () {
+
+		// Remove any trailing zero-size generations, but not the seed generation
+
+		while (gen_count > 1 && gen_size[gen_count - 1] == 0) {
+			--gen_count;
+			release_columns (gen_count);
+		}
+		gen_first_held = Math.min (gen_first_held, gen_count);
+
+		// If stop time is before end time, then the catalog ended early ...
+
+		if (cat_stop_time < cat_params.tend) {
+
+			// Count valid ruptures in each held generation
+
+			for (int i_gen = gen_first_held; i_gen < gen_count; ++i_gen) {
+				double[] t_day = gen_cols[i_gen].t_day;
+				int size = gen_size[i_gen];
+				int count = 0;
+
+				for (int j_rup = 0; j_rup < size; ++j_rup) {
+					if (t_day[j_rup] < cat_stop_time) {
+						++count;
+					}
+				}
+
+				gen_valid_size[i_gen] = count;
+			}
+		}
+
+		// Total the valid counts
+
+		rup_valid_count = 0;
+		for (int i_gen = 0; i_gen < gen_count; ++i_gen) {
+			rup_valid_count += gen_valid_size[i_gen];
+		}
+
+		return;
+	}
+
+
+
+
+	// Begin a new generation of a catalog.
+	// Parameters:
+	//  gen_info = Structure containing the generation information to set.
+	// This method increments the number of generations, and creates a
+	// new empty generation.
+	// Note: This function does not retain gen_info; it copies the contents.
+
+	@Override
+	public void begin_generation (OEGenerationInfo gen_info) {
+
+		// Get the index of the new generation
+
+		int i_gen = gen_count;
+
+		// Count the new generation, and allocate storage if needed
+
+		++gen_count;
+		ensure_capacity_gen();
+
+		// Obtain columns, and zero size
+
+		gen_cols[i_gen] = acquire_columns();
+		gen_size[i_gen] = 0;
+		gen_valid_size[i_gen] = 0;
+
+		// Save generation information
+
+		gen_mag_min[i_gen] = gen_info.gen_mag_min;
+		gen_mag_max[i_gen] = gen_info.gen_mag_max;
+
+		return;
+	}
+
+
+
+
+	// End a generation of a catalog.
+
+	@Override
+	public void end_generation () {
+
+		// Get the index of the new generation
+
+		int i_gen = gen_count - 1;
+
+		// Assume valid size equals size
+
+		gen_valid_size[i_gen] = gen_size[i_gen];
+		return;
+	}
+
+
+
+
+	// Add a rupture to the current generation of a catalog.
+	// Parameters:
+	//  rup = Structure containing the rupture information to set.
+	// Note: Ruptures can only be added to the generation currently being built.
+	// Note: This function does not retain rup; it copies the contents.
+
+	@Override
+	public void add_rup (OERupture rup) {
+
+		// Get the current generation, and the index of the new rupture within it
+
+		int i_gen = gen_count - 1;
+		GenColumns cols = gen_cols[i_gen];
+		int j_rup = gen_size[i_gen];
+
+		// Allocate storage if needed
+
+		if (j_rup >= cols.capacity()) {
+			cols.grow (j_rup + 1);
+		}
+
+		// Count the new rupture
+
+		++rup_count;
+		gen_size[i_gen] = j_rup + 1;
+
+		// Save rupture information
+
+		cols.t_day[j_rup] = rup.t_day;
+		cols.rup_mag[j_rup] = rup.rup_mag;
+		cols.k_prod[j_rup] = rup.k_prod;
+		cols.rup_parent[j_rup] = rup.rup_parent;
+		cols.x_km[j_rup] = rup.x_km;
+		cols.y_km[j_rup] = rup.y_km;
+
+		return;
+	}
+
+
+
+
+	// Set the time at which the catalog stops.
+	// Defaults to HUGE_TIME_DAYS if it is never set.
+	// If stop_time < cat_params.tend, then the catalog ended before the full time interval.
+
+	@Override
+	public void set_cat_stop_time (double stop_time) {
+		cat_stop_time = stop_time;
+		return;
+	}
+
+
+
+
+	// Set the catalog result code, CAT_RESULT_OK indicates success.
+	// Defaults to CAT_RESULT_OK if it is never set.
+
+	@Override
+	public void set_cat_result_code (int result_code) {
+		cat_result_code = result_code;
+		return;
+	}
+
+
+
+
+	//----- Testing -----
+
+
+
+
+	public static void main(String[] args) {
+
+		// There needs to be at least one argument, which is the subcommand
+
+		if (args.length < 1) {
+			System.err.println ("OECatalogStorageWindow : Missing subcommand");
+			return;
+		}
+
+
+
+
+		// Subcommand : Test #1
+		// Command format:
+		//  test1  n  p  c  b  alpha  gen_size_target  gen_count_max  mag_main
+		// Generate a catalog into OECatalogStorage and OECatalogStorageWindow using the same
+		// random seed, and check that the two agree (holding all generations).
+		// Then generate it again into OECatalogStorageWindow, discarding all but the last
+		// generation, and check the stop time, result code, and sizes agree.
+		// The "n" is the branch ratio; "a" is computed from it.
+
+		if (args[0].equalsIgnoreCase ("test1")) {
+
+			// 8 additional arguments
+
+			if (args.length != 9) {
+				System.err.println ("OECatalogStorageWindow : Invalid 'test1' subcommand");
+				return;
+			}
+
+			try {
+
+				double n = Double.parseDouble (args[1]);
+				double p = Double.parseDouble (args[2]);
+				double c = Double.parseDouble (args[3]);
+				double b = Double.parseDouble (args[4]);
+				double alpha = Double.parseDouble (args[5]);
+				int gen_size_target = Integer.parseInt (args[6]);
+				int gen_count_max = Integer.parseInt (args[7]);
+				double mag_main = Double.parseDouble (args[8]);
+
+				// Say hello
+
+				System.out.println ("Comparing catalog storage with window storage");
+				System.out.println ("n = " + n);
+				System.out.println ("p = " + p);
+				System.out.println ("c = " + c);
+				System.out.println ("b = " + b);
+				System.out.println ("alpha = " + alpha);
+				System.out.println ("gen_size_target = " + gen_size_target);
+				System.out.println ("gen_count_max = " + gen_count_max);
+				System.out.println ("mag_main = " + mag_main);
+
+				// Set up catalog parameters, with productivity "a" for the given branch ratio
+
+				double a = 0.0;			// for the moment
+				OECatalogParams test_cat_params = (new OECatalogParams()).set_to_typical (
+					a,
+					p,
+					c,
+					b,
+					alpha,
+					gen_size_target,
+					gen_count_max
+				);
+
+				a = OEStatsCalc.calc_inv_branch_ratio (n, test_cat_params);
+				test_cat_params.a = a;
+				System.out.println ("a = " + a);
+
+				// Generate each catalog, with the same seed
+
+				final long seed = 123456789L;
+
+				OECatalogStorage cat_storage = OECatalogGenerator.gen_simple_catalog (test_cat_params, mag_main, new OERandomGenerator (seed));
+
+				OECatalogStorageWindow cat_window = new OECatalogStorageWindow();
+				gen_test_catalog (cat_window, test_cat_params, mag_main, new OERandomGenerator (seed), false);
+
+				// Compare
+
+				System.out.println();
+				System.out.println ("size = " + cat_storage.size() + ", " + cat_window.size());
+				System.out.println ("gen_count = " + cat_storage.get_gen_count() + ", " + cat_window.get_gen_count());
+
+				String result = compare_views (cat_storage, cat_window);
+				System.out.println ("Full window: " + ((result == null) ? "Match" : result));
+
+				// Generate again, discarding old generations
+
+				gen_test_catalog (cat_window, test_cat_params, mag_main, new OERandomGenerator (seed), true);
+
+				boolean f_match = (cat_storage.size() == cat_window.size()
+								&& cat_storage.etas_size() == cat_window.etas_size()
+								&& cat_storage.get_gen_count() == cat_window.get_gen_count()
+								&& cat_storage.get_cat_stop_time() == cat_window.get_cat_stop_time()
+								&& cat_storage.get_cat_result_code() == cat_window.get_cat_result_code());
+
+				System.out.println ("Discarding window: " + (f_match ? "Match" : "MISMATCH"));
+				System.out.println ("first_held_gen = " + cat_window.get_first_held_gen());
+				System.out.println ("held_rup_count = " + cat_window.get_held_rup_count());
+				System.out.println ("allocated_bytes = " + cat_window.get_allocated_bytes());
+
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+
+			return;
+		}
+
+
+
+
+		// Unrecognized subcommand.
+
+		System.err.println ("OECatalogStorageWindow : Unrecognized subcommand : " + args[0]);
+		return;
+
+	}
+
+
+
+
+	// Generate a test catalog, seeded with a single mainshock.
+	// This is the same as OECatalogGenerator.gen_simple_catalog, except for the storage.
+	// If f_discard is true, all generations except the last are discarded as the catalog is generated.
+
+	private static void gen_test_catalog (OECatalogStorageWindow cat_window, OECatalogParams test_cat_params, double mag_main, OERandomGenerator rangen, boolean f_discard) {
+		OECatalogGenerator cat_generator = new OECatalogGenerator();
+
+		cat_window.begin_catalog (test_cat_params);
+
+		OEGenerationInfo test_gen_info = (new OEGenerationInfo()).set (
+			test_cat_params.mref,	// gen_mag_min
+			test_cat_params.msup	// gen_mag_max
+		);
+		cat_window.begin_generation (test_gen_info);
+
+		double k_prod = OEStatsCalc.calc_k_corr (
+			mag_main,			// m0
+			test_cat_params,	// cat_params
+			test_gen_info		// gen_info
+		);
+
+		OERupture mainshock_rup = new OERupture();
+		mainshock_rup.set (
+			0.0,					// t_day
+			mag_main,				// rup_mag
+			k_prod,					// k_prod
+			OERupture.RUPPAR_SEED,	// rup_parent
+			0.0,					// x_km
+			0.0						// y_km
+		);
+		cat_window.add_rup (mainshock_rup);
+		cat_window.end_generation();
+
+		cat_generator.setup (rangen, cat_window, false);
+		if (f_discard) {
+			cat_generator.calc_all_gen_dry_run (cat_window);
+		} else {
+			cat_generator.calc_all_gen();
+		}
+		cat_generator.forget();
+		return;
+	}
+
+
+
+
+	// Compare two catalog views.
+	// Returns null if they match, or a description of the first difference.
+
+	private static String compare_views (OECatalogView view1, OECatalogView view2) {
+		if (view1.get_gen_count() != view2.get_gen_count()) {
+			return "Generation count mismatch";
+		}
+		if (view1.size() != view2.size() || view1.valid_size() != view2.valid_size()) {
+			return "Size mismatch";
+		}
+		OERupture rup1 = new OERupture();
+		OERupture rup2 = new OERupture();
+		for (int i_gen = 0; i_gen < view1.get_gen_count(); ++i_gen) {
+			if (view1.get_gen_size (i_gen) != view2.get_gen_size (i_gen)) {
+				return "Generation size mismatch: i_gen = " + i_gen;
+			}
+			for (int j_rup = 0; j_rup < view1.get_gen_size (i_gen); ++j_rup) {
+				view1.get_rup_full (i_gen, j_rup, rup1);
+				view2.get_rup_full (i_gen, j_rup, rup2);
+				if (rup1.t_day != rup2.t_day || rup1.rup_mag != rup2.rup_mag || rup1.k_prod != rup2.k_prod
+					|| rup1.rup_parent != rup2.rup_parent || rup1.x_km != rup2.x_km || rup1.y_km != rup2.y_km) {
+					return "Rupture mismatch: i_gen = " + i_gen + ", j_rup = " + j_rup;
+				}
+			}
+		}
+		return null;
+	}
+
+}
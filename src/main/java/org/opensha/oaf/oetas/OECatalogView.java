@@ -118,6 +118,30 @@ public interface OECatalogView {
 
 
 
+	// Get the times and productivities of a range of ruptures in the i-th generation in the catalog.
+	// Parameters:
+	//  i_gen = Generation number.
+	//  j_begin = Beginning rupture number, within the generation.
+	//  j_end = Ending rupture number, within the generation.
+	//  a_t_day = Array to receive the times.
+	//  a_k_prod = Array to receive the productivities.
+	// Rupture j, for j_begin <= j < j_end, is stored at index j - j_begin in the arrays.
+	// The default implementation calls get_rup_time_prod for each rupture.  Storage
+	// classes should override it to copy directly out of their column arrays.
+
+	public default void get_gen_time_prod (int i_gen, int j_begin, int j_end, double[] a_t_day, double[] a_k_prod) {
+		OERupture rup = new OERupture();
+		for (int j_rup = j_begin; j_rup < j_end; ++j_rup) {
+			get_rup_time_prod (i_gen, j_rup, rup);
+			a_t_day[j_rup - j_begin] = rup.t_day;
+			a_k_prod[j_rup - j_begin] = rup.k_prod;
+		}
+		return;
+	}
+
+
+
+
 	// Construct a string that summarizes the catalog contents.
 	// This displays the catalog size and generation count,
 	// parameters, and info for each generation.
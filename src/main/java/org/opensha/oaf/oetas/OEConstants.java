@@ -349,7 +349,17 @@ public class OEConstants {
 	public static final int SEL_ACCUM_RATE_TIME_MAG		= 4;	// OEAccumRateTimeMag
 	public static final int SEL_ACCUM_SIM_RANGING		= 5;	// OEAccumSimRanging
 	public static final int SEL_ACCUM_SEED_EST_RANGING	= 6;	// OEAccumSeedEstRanging
-	public static final int SEL_ACCUM_MAX				= 6;
+	public static final int SEL_ACCUM_CUM_TIME_MAG_SKETCH	= 7;	// OEAccumCumTimeMag, accumulating into sketches
+	public static final int SEL_ACCUM_VAR_TIME_MAG_SKETCH	= 8;	// OEAccumVarTimeMag, accumulating into sketches
+	public static final int SEL_ACCUM_MAX				= 8;
+
+	// Counts less than this are stored exactly, when an accumulator uses sketches.
+
+	public static final int DEF_SKETCH_EXACT_LIMIT = 1024;
+
+	// Maximum relative error for larger counts, when an accumulator uses sketches.
+
+	public static final double DEF_SKETCH_REL_ERROR = 0.005;
 
 
 
@@ -706,6 +716,42 @@ public class OEConstants {
 
 
 
+	// Default value of the option to use an Omori row cache when fitting parameters.
+
+	public static final boolean DEF_OMORI_CACHE = false;
+
+	// Default maximum number of Omori matrix elements held in the Omori row cache.
+	// This limits the total held for all timelines whose caches are kept between fits.
+	// Each element is a double, so the default allows about 16 MB.
+
+	public static final long DEF_OMORI_CACHE_MAX_ELEMENTS = 2000000L;
+
+	// Default value of the option to hold the Omori matrices in single precision when fitting
+	// parameters, which halves their memory at some cost in accuracy.
+
+	public static final boolean DEF_OMAT_FLOAT = false;
+
+
+
+	// Options to select the kernel used to apply the rupture-target rupture-source Omori matrix,
+	// when fitting parameters.
+
+	public static final int OMAT_KERNEL_MIN = 1;			// Minimum value.
+	public static final int OMAT_KERNEL_EXACT = 1;			// Exact dense matrix, O(N^2) time and memory.
+	public static final int OMAT_KERNEL_APPROX = 2;			// Hierarchical approximation within a tolerance, O(N log N).
+	public static final int OMAT_KERNEL_VALIDATE = 3;		// Compute both, use the exact result, and record the approximation error.
+	public static final int OMAT_KERNEL_MAX = 3;			// Maximum value.
+
+	// Default value of the option to select the Omori matrix kernel (OMAT_KERNEL_XXXX).
+
+	public static final int DEF_OMAT_KERNEL = 1;			// OMAT_KERNEL_EXACT
+
+	// Default relative error tolerance for the approximate Omori matrix kernel.
+
+	public static final double DEF_OMAT_APPROX_TOL = 1.0e-6;
+
+
+
 
 	//----- Bayesian weighting -----
 
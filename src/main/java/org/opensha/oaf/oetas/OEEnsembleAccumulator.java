@@ -1,5 +1,6 @@
 package org.opensha.oaf.oetas;
 
+import org.opensha.oaf.util.AutoExecutorService;
 
 // Interface for accumulating results from a set of catalogs of Operational ETAS ruptures.
 // Author: Michael Barall 12/30/2019.
@@ -24,9 +25,27 @@ public interface OEEnsembleAccumulator {
 	// begin_accumulation, and must be closed before the call to end_accumulation.
 	// Note: The returned consumer can be opened and closed repeatedly to consume
 	// multiple catalogs.
+	// Note: Consumers returned by this function must be usable simultaneously by
+	// any threads, so an accumulator that keeps per-thread storage must give each
+	// of them storage of its own (it cannot assume a thread number).
 
 	public OECatalogConsumer make_consumer ();
 
+	// Make a catalog consumer, for use by the given thread.
+	// Parameters:
+	//  thread_number = The thread number, which ranges from 0 to the number of
+	//                  threads in the pool minus 1 (as passed to SimpleThreadTarget.thread_entry).
+	// This is the same as make_consumer(), except that the accumulator may use the
+	// thread number to select per-thread storage.  The returned consumer must only
+	// be used by a thread with the given thread number.  Consumers for different
+	// thread numbers can be used simultaneously, and may also be used simultaneously
+	// with consumers returned by make_consumer().
+	// The default implementation ignores the thread number.
+
+	public default OECatalogConsumer make_consumer (int thread_number) {
+		return make_consumer();
+	}
+
 
 	//----- Control methods -----
 
@@ -66,4 +85,30 @@ public interface OEEnsembleAccumulator {
 
 	public void end_accumulation ();
 
+	// End accumulating catalogs, with an executor available for finishing.
+	// Parameters:
+	//  executor = The executor, which the accumulator may use to finish in parallel, or null if none.
+	// This is the same as end_accumulation(), except that the accumulator may use
+	// threads from the executor.  Typically this is the executor that was used to
+	// generate the catalogs.
+	// Threading: Same as end_accumulation(); in addition, no threads can be running in the executor.
+	// The default implementation ignores the executor.
+
+	public default void end_accumulation (AutoExecutorService executor) {
+		end_accumulation();
+		return;
+	}
+
+	// Discard the accumulation, when its results are not needed.
+	// This can be called instead of end_accumulation, and allows the accumulator to
+	// release the resources it holds without finishing its binning.  After this call,
+	// the accumulator contents are undefined until the next begin_accumulation.
+	// Threading: Same as end_accumulation().
+	// The default implementation calls end_accumulation().
+
+	public default void discard_accumulation () {
+		end_accumulation();
+		return;
+	}
+
 }
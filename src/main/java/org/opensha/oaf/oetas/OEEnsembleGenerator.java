@@ -67,6 +67,18 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 
 	private static final String PMFMT_ABORT = "Aborted because of error after generating %C ETAS catalogs in %E seconds";
 
+	// Status message format for convergence, for adaptive generation.
+
+	private static final String PMFMT_CONVERGED = "Converged after generating %d ETAS catalogs in %.1f seconds";
+
+	// Status message format for timeout, for adaptive generation.
+
+	private static final String PMFMT_ROUND_TIMEOUT = "Reached time limit after generating %d ETAS catalogs in %.1f seconds";
+
+	// Status message format for completion without convergence, for adaptive generation.
+
+	private static final String PMFMT_ROUND_DONE = "Finished generating %d ETAS catalogs in %.1f seconds without converging";
+
 	// Message when no message is available yet.
 
 	private static final String PMFMT_NONE = "No status available";
@@ -89,6 +101,14 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 
 	private SimpleThreadLoopResult loop_result = new SimpleThreadLoopResult();
 
+	// The number of catalogs completed in prior rounds, for adaptive generation.
+
+	private int prior_round_completions = 0;
+
+	// All accumulators that receive catalogs, which are the accumulators followed by the carried accumulators.
+
+	private OEEnsembleAccumulator[] all_accumulators = null;
+
 
 
 
@@ -136,9 +156,12 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 	@Override
 	public void thread_entry (SimpleThreadManager thread_manager, int thread_number) throws Exception {
 
-		// Get the random number generator
+		// Get the random number generator, which uses per-catalog streams if there is an ensemble seed
 
-		OERandomGenerator rangen = OERandomGenerator.get_thread_rangen();
+		final long ensemble_seed = ensemble_params.ensemble_seed;
+		final boolean f_streams = (ensemble_seed != 0L);
+
+		OERandomGenerator rangen = (f_streams ? OERandomGenerator.get_thread_stream_rangen() : OERandomGenerator.get_thread_rangen());
 
 		// Create a seeder for our initializer, which we re-use for each catalog
 
@@ -148,15 +171,33 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 
 		OECatalogSeedComm seed_comm = new OECatalogSeedComm();
 
-		// Create a scanner for our accumulators, which we re-use for each catalog
+		// Create a scanner for our accumulators and carried accumulators, which we re-use for each catalog
 		// (the scanner creates the consumers and the scan communication area)
 
 		OECatalogScanner cat_scanner = new OECatalogScanner();
-		cat_scanner.setup (ensemble_params.accumulators);
+		cat_scanner.setup (thread_number, all_accumulators);
 
 		// Allocate the storage (which is also the builder), which we re-use for each catalog
-
-		OECatalogStorage cat_storage = new OECatalogStorage();
+		// (if streaming, use window storage, and a separate random generator for scanning;
+		// otherwise, if requested, use off-heap storage, which trims itself at the start of each catalog)
+
+		final boolean f_stream_scan = (f_streams && ensemble_params.f_stream_scan);
+
+		OECatalogStorageWindow cat_window = null;
+		OERandomGenerator scan_rangen = null;
+		OECatalogStorageArena cat_arena = null;
+		OECatalogBuilder cat_storage;
+
+		if (f_stream_scan) {
+			cat_window = new OECatalogStorageWindow();
+			cat_storage = cat_window;
+			scan_rangen = OERandomGenerator.make_stream_rangen();
+		} else if (ensemble_params.arena_trim_bytes >= 0L) {
+			cat_arena = new OECatalogStorageArena (OECatalogSlabPool.get_singleton(), ensemble_params.arena_trim_bytes);
+			cat_storage = cat_arena;
+		} else {
+			cat_storage = new OECatalogStorage();
+		}
 
 		// Allocate a generator, which we re-use for each catalog
 
@@ -164,47 +205,90 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 
 		// Loop until loop completed or prompt termination is requested
 
-		for (int index = loop_helper.get_loop_index(); index >= 0; index = loop_helper.get_next_index()) {
+		try {
 
-			// Set up the seeder communication area
+			for (int index = loop_helper.get_loop_index(); index >= 0; index = loop_helper.get_next_index()) {
 
-			seed_comm.setup_seed_comm (cat_storage, rangen);
+				// If streaming ...
+
+				if (f_stream_scan) {
+
+					// First pass: Generate the catalog, holding only the last generation,
+					// to find the final stop time and result code which the consumers need up front
+
+					seed_catalog (seeder, seed_comm, cat_window, rangen, ensemble_seed, index);
+
+					cat_generator.setup (rangen, cat_window, false);
+					cat_generator.calc_all_gen_dry_run (cat_window);
+					cat_generator.forget();
 
-			// Open the seeder
+					final double stop_time = cat_window.get_cat_stop_time();
+					final int result_code = cat_window.get_cat_result_code();
 
-			seeder.open();
+					// Second pass: Generate the same catalog again, from the start of the same
+					// random stream, passing each generation to the consumers as it is completed
+					// (the scanner uses its own substream, so it does not disturb the generator)
 
-			// Seed the catalog
+					seed_catalog (seeder, seed_comm, cat_window, rangen, ensemble_seed, index);
+					scan_rangen.set_catalog_stream (ensemble_seed, index, SCAN_SUBSTREAM);
 
-			seeder.seed_catalog (seed_comm);
+					cat_scanner.open();
 
-			// Close the seeder
+					cat_generator.setup (rangen, cat_window, false);
+					cat_generator.calc_all_gen_streaming (cat_window, cat_scanner, scan_rangen, stop_time, result_code);
+					cat_generator.forget();
 
-			seeder.close();
+					cat_scanner.close();
+				}
 
-			// Set up the catalog generator
+				// Otherwise, generate and then scan the whole catalog ...
+
+				else {
+
+					// Seed the catalog, using the random stream if per-catalog
+
+					seed_catalog (seeder, seed_comm, cat_storage, rangen, (f_streams ? ensemble_seed : 0L), index);
+
+					// Set up the catalog generator
 				
-			cat_generator.setup (rangen, cat_storage, false);
+					cat_generator.setup (rangen, cat_storage, false);
 
-			// Calculate all generations and end the catalog
+					// Calculate all generations and end the catalog
 
-			cat_generator.calc_all_gen();
+					cat_generator.calc_all_gen();
 
-			// Tell the generator to forget the catalog
+					// Tell the generator to forget the catalog
 
-			cat_generator.forget();
+					cat_generator.forget();
 		
-			// Open the consumers
+					// Open the consumers
+
+					cat_scanner.open();
+
+					// Scan the catalog
+
+					cat_scanner.scan (cat_storage, rangen);
+
+					// Close the consumers
+
+					cat_scanner.close();
 
-			cat_scanner.open();
+					// If using off-heap storage, report the memory in use, while the catalog is still held
 
-			// Scan the catalog
+					if (cat_arena != null) {
+						loop_helper.update_max_used_memory (cat_arena.get_slab_pool().get_allocated_bytes());
+					}
+				}
+			}
 
-			cat_scanner.scan (cat_storage, rangen);
+		}
 
-			// Close the consumers
+		// Return off-heap storage to the pool
 
-			cat_scanner.close();
+		finally {
+			if (cat_arena != null) {
+				cat_arena.close();
+			}
 		}
 
 		return;
@@ -213,6 +297,54 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 
 
 
+	// Substream of each catalog's random stream that is used for scanning, when streaming.
+
+	private static final int SCAN_SUBSTREAM = 1;
+
+
+
+
+	// Seed a catalog.
+	// Parameters:
+	//  seeder = The seeder.
+	//  seed_comm = Seeder communication area.
+	//  cat_storage = Catalog builder to receive the seeds.
+	//  rangen = Random number generator.
+	//  ensemble_seed = Seed for per-catalog random streams, or 0L if rangen does not use per-catalog streams.
+	//  index = Index of the catalog within the ensemble.
+	// If using per-catalog streams, this selects the start of the catalog's random stream,
+	// so seeding the same catalog again produces the same seeds.
+
+	private static void seed_catalog (OECatalogSeeder seeder, OECatalogSeedComm seed_comm,
+		OECatalogBuilder cat_storage, OERandomGenerator rangen, long ensemble_seed, int index) {
+
+		// Set up the seeder communication area, and the random stream if per-catalog
+
+		if (ensemble_seed != 0L) {
+			rangen.set_catalog_stream (ensemble_seed, index);
+			seed_comm.setup_seed_comm (cat_storage, rangen, index);
+		} else {
+			seed_comm.setup_seed_comm (cat_storage, rangen);
+		}
+
+		// Open the seeder
+
+		seeder.open();
+
+		// Seed the catalog
+
+		seeder.seed_catalog (seed_comm);
+
+		// Close the seeder
+
+		seeder.close();
+
+		return;
+	}
+
+
+
+
 	//----- Service functions -----
 
 
@@ -230,10 +362,20 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 		if (!( the_ensemble_params.num_catalogs > 0 )) {
 			throw new IllegalArgumentException ("OEEnsembleGenerator.pre_launch: Invalid number of catalogs: " + the_ensemble_params.num_catalogs);
 		}
+		if (!( the_ensemble_params.first_catalog >= 0 && the_ensemble_params.first_catalog <= Integer.MAX_VALUE - the_ensemble_params.num_catalogs )) {
+			throw new IllegalArgumentException ("OEEnsembleGenerator.pre_launch: Invalid first catalog: " + the_ensemble_params.first_catalog);
+		}
 
 		// Save the parameters
 
 		ensemble_params = the_ensemble_params;
+		prior_round_completions = 0;
+
+		// The accumulators that receive catalogs, including carried accumulators
+
+		all_accumulators = new OEEnsembleAccumulator[ensemble_params.accumulators.length + ensemble_params.carried_accumulators.length];
+		System.arraycopy (ensemble_params.accumulators, 0, all_accumulators, 0, ensemble_params.accumulators.length);
+		System.arraycopy (ensemble_params.carried_accumulators, 0, all_accumulators, ensemble_params.accumulators.length, ensemble_params.carried_accumulators.length);
 
 		// Begin initialization
 
@@ -255,7 +397,7 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 	// Threading: This function may only be called from the main thread after termination.
 
 	public final int get_catalog_count () {
-		return loop_helper.get_completions();
+		return prior_round_completions + loop_helper.get_completions();
 	}
 
 
@@ -304,9 +446,11 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 
 
 	// Perform post-termination operations.
+	// Parameters:
+	//  executor = The executor that was used for launching the threads.
 	// This must be called after all threads are terminated to finish accumulation.
 
-	private void post_termination () {
+	private void post_termination (AutoExecutorService executor) {
 
 		// End initialization
 
@@ -315,7 +459,7 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 		// End accumulation
 
 		for (OEEnsembleAccumulator accumulator : ensemble_params.accumulators) {
-			accumulator.end_accumulation ();
+			accumulator.end_accumulation (executor);
 		}
 
 		return;
@@ -324,6 +468,63 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 
 
 
+	// Regenerate a single catalog of an ensemble that uses per-catalog random streams.
+	// Parameters:
+	//  the_ensemble_params = The ensemble parameters, which must have a non-zero ensemble seed.
+	//  catalog_index = Index of the catalog within the ensemble.
+	//  examiner = Examiner to receive the catalog.
+	// The catalog is identical to the one generated for catalog_index by generate_all_catalogs,
+	// regardless of the number of threads used for the ensemble.
+	// The ensemble accumulators are not used.
+
+	public static void regen_single_catalog (OEEnsembleParams the_ensemble_params, int catalog_index, OECatalogExaminer examiner) {
+
+		// Validate parameters
+
+		if (the_ensemble_params.ensemble_seed == 0L) {
+			throw new IllegalArgumentException ("OEEnsembleGenerator.regen_single_catalog: Ensemble does not use per-catalog random streams");
+		}
+		if (!( catalog_index >= 0 && catalog_index < the_ensemble_params.num_catalogs )) {
+			throw new IllegalArgumentException ("OEEnsembleGenerator.regen_single_catalog: Invalid catalog index: catalog_index = " + catalog_index + ", num_catalogs = " + the_ensemble_params.num_catalogs);
+		}
+
+		OEEnsembleInitializer initializer = the_ensemble_params.initializer;
+		initializer.begin_initialization();
+
+		// Position the random stream for the catalog
+
+		OERandomGenerator rangen = OERandomGenerator.get_thread_stream_rangen();
+		rangen.set_catalog_stream (the_ensemble_params.ensemble_seed, catalog_index);
+
+		// Seed the catalog
+
+		OECatalogSeeder seeder = initializer.make_seeder();
+		OECatalogSeedComm seed_comm = new OECatalogSeedComm();
+		OECatalogStorage cat_storage = new OECatalogStorage();
+
+		seed_comm.setup_seed_comm (cat_storage, rangen, catalog_index);
+		seeder.open();
+		seeder.seed_catalog (seed_comm);
+		seeder.close();
+
+		// Calculate all generations and end the catalog
+
+		OECatalogGenerator cat_generator = new OECatalogGenerator();
+		cat_generator.setup (rangen, cat_storage, false);
+		cat_generator.calc_all_gen();
+		cat_generator.forget();
+
+		// Examine the catalog
+
+		examiner.examine_cat (cat_storage, rangen);
+
+		initializer.end_initialization();
+		return;
+	}
+
+
+
+
 	// Generate all the catalogs.
 	// Parameters:
 	//  the_ensemble_params = The ensemble parameters.
@@ -352,7 +553,8 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 
 		// Run the loop
 
-		loop_helper.run_loop (this, executor, 0, ensemble_params.num_catalogs, max_runtime, progress_time);
+		final int first_catalog = ensemble_params.first_catalog;
+		loop_helper.run_loop (this, executor, first_catalog, first_catalog + ensemble_params.num_catalogs, max_runtime, progress_time);
 
 		// Capture the result
 
@@ -385,7 +587,7 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 
 		// Post-termination operations
 
-		post_termination();
+		post_termination (executor);
 
 		return ncat_gen;
 	}
@@ -433,6 +635,144 @@ public class OEEnsembleGenerator implements SimpleThreadTarget {
 
 
 
+	// Interface for monitoring adaptive catalog generation.
+	// The monitor is called from the main thread after each round of catalog generation,
+	// when no threads are running, and decides if enough catalogs have been generated.
+
+	public interface RoundMonitor {
+
+		// Return true if generation can stop.
+		// Parameters:
+		//  catalog_count = Total number of catalogs generated so far.
+
+		public boolean is_converged (int catalog_count);
+	}
+
+
+
+
+	// Generate catalogs in rounds, stopping early once the results have converged.
+	// Parameters:
+	//  the_ensemble_params = The ensemble parameters.
+	//  executor = The executor to use for launching the threads.
+	//  max_runtime = Maximum runtime requested, in milliseconds, can be -1L for no limit.
+	//  progress_time = Time interval for progress messages, in milliseconds, can be -1L for no progress messages.
+	//  round_size = Number of catalogs to generate in each round, must be > 0.
+	//  monitor = Monitor that decides, after each round, if generation can stop.
+	// Returns the number of catalogs generated, or -1 if thread abort.
+	// At most the_ensemble_params.num_catalogs catalogs are generated.  Catalogs are generated
+	// in index order, so with per-catalog random streams the first N catalogs are the same as
+	// the first N catalogs produced by generate_all_catalogs.
+	// The accumulators see a single accumulation, begun before the first round and ended
+	// after the last round.
+
+	public int generate_catalogs_adaptive (OEEnsembleParams the_ensemble_params, AutoExecutorService executor,
+			long max_runtime, long progress_time, int round_size, RoundMonitor monitor) {
+
+		// Validate parameters
+
+		if (!( round_size > 0 )) {
+			throw new IllegalArgumentException ("OEEnsembleGenerator.generate_catalogs_adaptive: Invalid round size: round_size = " + round_size);
+		}
+
+		int ncat_gen = 0;
+
+		// No status
+
+		status_msg = PMFMT_NONE;
+
+		// No result
+
+		loop_result.clear();
+		SimpleThreadLoopResult round_result = new SimpleThreadLoopResult();
+	
+		// Pre-launch operations
+
+		pre_launch (the_ensemble_params);
+
+		final long start_time = System.currentTimeMillis();
+		final int num_catalogs = ensemble_params.num_catalogs;
+		final int end_catalog = ensemble_params.first_catalog + num_catalogs;
+
+		// Loop over rounds
+
+		for (int lo = ensemble_params.first_catalog; lo < end_catalog; ) {
+			final int hi = Math.min (end_catalog, lo + round_size);
+
+			// Remaining runtime for this round
+
+			long remaining_runtime = -1L;
+			if (max_runtime >= 0L) {
+				remaining_runtime = Math.max (0L, max_runtime - (System.currentTimeMillis() - start_time));
+			}
+
+			// Run the loop for this round, and capture the result
+
+			loop_helper.run_loop (this, executor, lo, hi, remaining_runtime, progress_time);
+			round_result.accum_loop (loop_helper);
+
+			final double elapsed_secs = ((double)(System.currentTimeMillis() - start_time)) / 1000.0;
+
+			// Check for thread abort
+
+			if (loop_helper.is_abort()) {
+				System.out.println (loop_helper.get_abort_message_string());
+				status_msg = loop_helper.make_progress_message (PMFMT_ABORT);
+				System.out.println (status_msg);
+				ncat_gen = -1;
+				break;
+			}
+
+			// Otherwise, check for timeout
+
+			if (loop_helper.is_incomplete()) {
+				ncat_gen = get_catalog_count();
+				status_msg = String.format (PMFMT_ROUND_TIMEOUT, ncat_gen, elapsed_secs);
+				System.out.println (status_msg);
+				break;
+			}
+
+			// Otherwise, check for convergence
+
+			ncat_gen = get_catalog_count();
+			if (monitor.is_converged (ncat_gen)) {
+				status_msg = String.format (PMFMT_CONVERGED, ncat_gen, elapsed_secs);
+				System.out.println (status_msg);
+				break;
+			}
+
+			// Otherwise, check for end of ensemble
+
+			if (hi >= end_catalog) {
+				status_msg = String.format (PMFMT_ROUND_DONE, ncat_gen, elapsed_secs);
+				System.out.println (status_msg);
+				break;
+			}
+
+			// Advance to next round
+
+			prior_round_completions += loop_helper.get_completions();
+			lo = hi;
+		}
+
+		// Record the rounds as a single loop over the full ensemble
+
+		round_result.result_count = 1;
+		round_result.elapsed_time = System.currentTimeMillis() - start_time;
+		round_result.loop_count = (long)num_catalogs;
+		round_result.incomplete_count = Math.min (1, round_result.incomplete_count);
+		loop_result.accum_from (round_result);
+
+		// Post-termination operations
+
+		post_termination (executor);
+
+		return ncat_gen;
+	}
+
+
+
+
 	//----- Testing -----
 
 
@@ -26,6 +26,37 @@ public class OEEnsembleParams {
 
 	public int num_catalogs;
 
+	// The seed for per-catalog random streams, or 0L to use the per-thread random generators.
+	// If non-zero, each catalog is generated from its own random stream, determined by this
+	// seed and the catalog index, so the catalogs do not depend on the number of threads.
+
+	public long ensemble_seed;
+
+	// The off-heap catalog storage each thread retains between catalogs, in bytes, or -1L to store catalogs on the heap.
+	// If non-negative, each thread holds its catalog in an OECatalogStorageArena drawing slabs from the shared
+	// OECatalogSlabPool, and storage beyond this amount is returned to the pool after a large catalog.
+
+	public long arena_trim_bytes;
+
+	// True to stream each catalog to the accumulators while it is generated, instead of
+	// generating the whole catalog and then scanning it.  Only a few generations are held
+	// in memory, but each catalog is generated twice.  This requires per-catalog random
+	// streams (ensemble_seed != 0L), and is ignored otherwise.  It also takes precedence
+	// over arena_trim_bytes.
+
+	public boolean f_stream_scan;
+
+	// Index of the first catalog, so the catalogs have indexes first_catalog through first_catalog + num_catalogs - 1.
+	// With per-catalog random streams, this lets an ensemble continue where an earlier ensemble left off.
+
+	public int first_catalog;
+
+	// Carried accumulators, which also receive every catalog, but which the caller begins and ends.
+	// The generator does not call begin_accumulation or end_accumulation on these, so they can
+	// accumulate the catalogs of several successive ensembles.
+
+	public OEEnsembleAccumulator[] carried_accumulators;
+
 
 
 
@@ -40,6 +71,11 @@ public class OEEnsembleParams {
 		initializer  = null;
 		accumulators = null;
 		num_catalogs = 0;
+		ensemble_seed = 0L;
+		arena_trim_bytes = -1L;
+		f_stream_scan = false;
+		first_catalog = 0;
+		carried_accumulators = new OEEnsembleAccumulator[0];
 		return;
 	}
 
@@ -65,6 +101,61 @@ public class OEEnsembleParams {
 		this.initializer  = initializer;
 		this.accumulators = accumulators.toArray (new OEEnsembleAccumulator[0]);
 		this.num_catalogs = num_catalogs;
+		this.ensemble_seed = 0L;
+		this.arena_trim_bytes = -1L;
+		this.f_stream_scan = false;
+		this.first_catalog = 0;
+		this.carried_accumulators = new OEEnsembleAccumulator[0];
+		return this;
+	}
+
+
+
+
+	// Set the seed for per-catalog random streams, or 0L to use the per-thread random generators.
+
+	public OEEnsembleParams set_ensemble_seed (long ensemble_seed) {
+		this.ensemble_seed = ensemble_seed;
+		return this;
+	}
+
+
+
+
+	// Set the off-heap catalog storage each thread retains between catalogs, in bytes, or -1L to store catalogs on the heap.
+
+	public OEEnsembleParams set_arena_trim_bytes (long arena_trim_bytes) {
+		this.arena_trim_bytes = arena_trim_bytes;
+		return this;
+	}
+
+
+
+
+	// Set the option to stream each catalog to the accumulators while it is generated.
+
+	public OEEnsembleParams set_stream_scan (boolean f_stream_scan) {
+		this.f_stream_scan = f_stream_scan;
+		return this;
+	}
+
+
+
+
+	// Set the index of the first catalog.
+
+	public OEEnsembleParams set_first_catalog (int first_catalog) {
+		this.first_catalog = first_catalog;
+		return this;
+	}
+
+
+
+
+	// Set the carried accumulators, which the caller begins and ends.
+
+	public OEEnsembleParams set_carried_accumulators (List<OEEnsembleAccumulator> carried_accumulators) {
+		this.carried_accumulators = carried_accumulators.toArray (new OEEnsembleAccumulator[0]);
 		return this;
 	}
 
@@ -77,6 +168,11 @@ public class OEEnsembleParams {
 		this.initializer  = other.initializer;
 		this.accumulators = other.accumulators;
 		this.num_catalogs = other.num_catalogs;
+		this.ensemble_seed = other.ensemble_seed;
+		this.arena_trim_bytes = other.arena_trim_bytes;
+		this.f_stream_scan = other.f_stream_scan;
+		this.first_catalog = other.first_catalog;
+		this.carried_accumulators = other.carried_accumulators;
 		return this;
 	}
 
@@ -560,6 +560,86 @@ public class OEForecastGrid implements USGS_ForecastModel {
 
 
 
+	// Number of standard deviations used for the confidence intervals in calc_convergence_ratio.
+
+	public static final double CONVERGE_Z = 1.96;
+
+
+
+
+	// Calculate how close the results of a partial ensemble are to being stable.
+	// Parameters:
+	//  accum = Accumulator able to supply (possibly interim) results for a time/magnitude grid.
+	//  catalog_count = Number of catalogs accumulated, must be > 0.
+	//  prob_tol = Tolerance for probabilities, must be > 0.0.
+	//  frac_tol = Relative tolerance for fractiles, must be > 0.0.
+	// Returns the largest ratio, over all bins and all reported probabilities and fractiles,
+	// of the half-width of a confidence interval to its tolerance.  The results are stable
+	// once the return value is <= 1.0.
+	// For a probability p, the half-width is CONVERGE_Z * sqrt(p*(1-p)/N), where N = catalog_count,
+	// and the tolerance is prob_tol.
+	// For a fractile q, the confidence interval runs between the values at fractiles q - d and
+	// q + d, where d = CONVERGE_Z * sqrt(q*(1-q)/N), which is the usual order-statistic interval
+	// for a quantile.  The tolerance is frac_tol times the larger of 1 and the value at fractile q.
+
+	public final double calc_convergence_ratio (OEAccumReadoutTimeMag accum, int catalog_count, double prob_tol, double frac_tol) {
+
+		// Check that advisory settings are set up
+
+		if (!( adv_fractile_values != null
+			&& adv_xcount_values != null
+		)) {
+			throw new IllegalStateException ("OEForecastGrid.calc_convergence_ratio: Advisory settings are not set up");
+		}
+
+		if (!( catalog_count > 0 && prob_tol > 0.0 && frac_tol > 0.0 )) {
+			throw new IllegalArgumentException ("OEForecastGrid.calc_convergence_ratio: Invalid argument: catalog_count = " + catalog_count + ", prob_tol = " + prob_tol + ", frac_tol = " + frac_tol);
+		}
+
+		final double n_cat = (double)catalog_count;
+		double max_ratio = 0.0;
+
+		// Probabilities
+
+		for (int xcnt_ix = 0; xcnt_ix < adv_xcount_values.length; ++xcnt_ix) {
+			double[][] prob = accum.get_prob_occur_array (adv_xcount_values[xcnt_ix]);
+			for (int i = 0; i < prob.length; ++i) {
+				for (int j = 0; j < prob[i].length; ++j) {
+					final double p = prob[i][j];
+					final double half_width = CONVERGE_Z * Math.sqrt (Math.max (0.0, p * (1.0 - p)) / n_cat);
+					max_ratio = Math.max (max_ratio, half_width / prob_tol);
+				}
+			}
+		}
+
+		// Fractiles
+
+		for (int frac_ix = 0; frac_ix < adv_fractile_values.length; ++frac_ix) {
+			final double q = adv_fractile_values[frac_ix];
+			final double d = CONVERGE_Z * Math.sqrt (Math.max (0.0, q * (1.0 - q)) / n_cat);
+			if (d == 0.0) {
+				continue;
+			}
+
+			int[][] frac_mid = accum.get_fractile_array (q);
+			int[][] frac_lo = accum.get_fractile_array (Math.max (0.0, q - d));
+			int[][] frac_hi = accum.get_fractile_array (Math.min (1.0, q + d));
+
+			for (int i = 0; i < frac_mid.length; ++i) {
+				for (int j = 0; j < frac_mid[i].length; ++j) {
+					final double half_width = 0.5 * ((double)(frac_hi[i][j] - frac_lo[i][j]));
+					final double scale = Math.max (1.0, (double)(frac_mid[i][j]));
+					max_ratio = Math.max (max_ratio, half_width / (frac_tol * scale));
+				}
+			}
+		}
+
+		return max_ratio;
+	}
+
+
+
+
 	//----- Implementation of USGS_ForecastModel -----
 
 
@@ -27,6 +27,7 @@ import static org.opensha.oaf.oetas.OEConstants.BKGD_TIME_DAYS_CHECK;	// use x <
 // Functions provided by this class:
 // * Holds the underlying pseudo random number generator.
 // * Provides a separate instance for each thread.
+// * Optionally provides a separate random stream for each catalog.
 // * Contains functions to generate the random distributions required for ETAS.
 
 public class OERandomGenerator {
@@ -37,6 +38,11 @@ public class OERandomGenerator {
 
 	DoubleMersenneTwister prng_engine;
 
+	// The underlying PRNG for per-catalog streams, or null if this generator does not support streams.
+	// If non-null, all distributions are obtained from this instead of prng_engine.
+
+	StreamEngine stream_engine;
+
 	// Generates uniformly distributed random numbers.
 
 	DoubleUniform gen_uniform;
@@ -110,6 +116,7 @@ public class OERandomGenerator {
 
 		int mt_seed = (int)seed;
 		prng_engine = new DoubleMersenneTwister (mt_seed);
+		stream_engine = null;
 
 		// Uniform random number generator
 		// (We set limits to 0.0 and 1.0, but these are changed as needed)
@@ -125,6 +132,233 @@ public class OERandomGenerator {
 
 
 
+	// Constructor sets up the generators for per-catalog streams.
+	// The stream must be selected with set_catalog_stream before use.
+
+	private OERandomGenerator (StreamEngine the_stream_engine) {
+
+		// Stream engine (the stream is selected later)
+
+		prng_engine = null;
+		stream_engine = the_stream_engine;
+
+		// Uniform and Poisson random number generators
+
+		gen_uniform = new DoubleUniform (0.0, 1.0, stream_engine);
+		gen_poisson = new Poisson (1.0, stream_engine);
+	}
+
+
+
+
+	//----- Per-catalog streams -----
+
+
+
+
+	// Engine for per-catalog random streams.
+	// This is the SplitMix64 generator: the state is a 64-bit counter that advances
+	// by a fixed odd increment, and each output is a bijective mix of the counter.
+	// Each catalog starts the counter at a position obtained by mixing the ensemble
+	// seed with the catalog index, so any stream can be positioned directly (there
+	// is no need to generate the streams for lower-numbered catalogs), and streams
+	// for different catalogs start at effectively random, widely separated points
+	// of the 2^64 period.
+	// Unlike the Mersenne twister, the full 64 bits of the seed are used, so
+	// distinct catalogs do not collide even in very large ensembles.
+
+	static final class StreamEngine extends DoubleRandomEngine {
+
+		// Counter increment (the 64-bit golden ratio).
+
+		private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+		// Multiplier used to derive substreams (an odd constant unrelated to GOLDEN_GAMMA).
+
+		private static final long SUBSTREAM_GAMMA = 0xD1B54A32D192ED03L;
+
+		// Current counter.
+
+		private long state;
+
+		// Constructor.
+
+		public StreamEngine () {
+			state = 0L;
+		}
+
+		// Mix a 64-bit value (the SplitMix64 finalizer).
+
+		private static long mix64 (long z) {
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
+
+		// Position the engine at the start of the stream for the given catalog.
+
+		public void set_stream (long ensemble_seed, int catalog_index) {
+			state = mix64 (mix64 (ensemble_seed) + (((long)catalog_index) + 1L) * GOLDEN_GAMMA);
+			return;
+		}
+
+		// Position the engine at the start of a substream for the given catalog.
+		// Substream 0 is the same as the stream selected by set_stream.
+
+		public void set_stream (long ensemble_seed, int catalog_index, int substream) {
+			set_stream (ensemble_seed, catalog_index);
+			if (substream != 0) {
+				state = mix64 (state ^ (((long)substream) * SUBSTREAM_GAMMA));
+			}
+			return;
+		}
+
+		// Return the next 64 random bits.
+
+		public long next_bits () {
+			state += GOLDEN_GAMMA;
+			return mix64 (state);
+		}
+
+		// Return 32 random bits, uniformly distributed over all int values.
+		// This is the primitive from which DoubleRandomEngine derives its other outputs.
+
+		@Override
+		public int nextInt () {
+			return (int)(next_bits() >>> 32);
+		}
+	}
+
+
+
+
+	// Holds the per-thread random generator for per-catalog streams.
+
+	private static final ThreadLocal<OERandomGenerator> per_thread_stream_rangen =
+		new ThreadLocal<OERandomGenerator>() {
+			@Override protected OERandomGenerator initialValue () {
+				return null;
+			}
+		};
+
+
+
+
+	// Get the per-thread random generator for per-catalog streams, create it if necessary.
+	// The caller must call set_catalog_stream before generating each catalog.
+	// Note: This is a different object than the one returned by get_thread_rangen.
+
+	public static OERandomGenerator get_thread_stream_rangen () {
+
+		// Get thread-local value
+
+		OERandomGenerator rangen = per_thread_stream_rangen.get();
+
+		// If not created yet ...
+
+		if (rangen == null) {
+
+			// Create the random generator
+
+			rangen = new OERandomGenerator (new StreamEngine());
+
+			// Save the random generator
+		
+			per_thread_stream_rangen.set (rangen);
+		}
+	
+		// Return it
+
+		return rangen;
+	}
+
+
+
+
+	// Make a new random generator for per-catalog streams.
+	// The caller must call set_catalog_stream before generating each catalog.
+	// This is for a thread that needs a second stream, independent of the one
+	// returned by get_thread_stream_rangen (typically selecting a substream).
+
+	public static OERandomGenerator make_stream_rangen () {
+		return new OERandomGenerator (new StreamEngine());
+	}
+
+
+
+
+	// Return true if this generator supports per-catalog streams.
+
+	public final boolean has_catalog_streams () {
+		return stream_engine != null;
+	}
+
+
+
+
+	// Select the random stream for a catalog.
+	// Parameters:
+	//  ensemble_seed = Seed for the ensemble, which can be any value.
+	//  catalog_index = Index of the catalog within the ensemble.
+	// After this call, the random numbers produced depend only on ensemble_seed and
+	// catalog_index, and not on what the generator was used for previously, nor on
+	// which thread generates the catalog.  So, an ensemble is reproducible regardless
+	// of the number of threads, and any single catalog can be regenerated in isolation.
+	// The generator must have been obtained from get_thread_stream_rangen or make_stream_rangen.
+
+	public final void set_catalog_stream (long ensemble_seed, int catalog_index) {
+		if (stream_engine == null) {
+			throw new IllegalStateException ("OERandomGenerator.set_catalog_stream: Generator does not support per-catalog streams");
+		}
+
+		stream_engine.set_stream (ensemble_seed, catalog_index);
+
+		// New Poisson generator, so no cached state carries over from the previous catalog
+
+		gen_poisson = new Poisson (1.0, stream_engine);
+		return;
+	}
+
+
+
+
+	// Select a random substream for a catalog.
+	// Parameters:
+	//  ensemble_seed = Seed for the ensemble, which can be any value.
+	//  catalog_index = Index of the catalog within the ensemble.
+	//  substream = Substream number, 0 is the same as set_catalog_stream (ensemble_seed, catalog_index).
+	// Distinct substreams of the same catalog are independent, so a task that consumes
+	// random numbers in a variable order can use its own substream without disturbing
+	// the catalog's main stream.
+	// The generator must have been obtained from get_thread_stream_rangen or make_stream_rangen.
+
+	public final void set_catalog_stream (long ensemble_seed, int catalog_index, int substream) {
+		if (stream_engine == null) {
+			throw new IllegalStateException ("OERandomGenerator.set_catalog_stream: Generator does not support per-catalog streams");
+		}
+
+		stream_engine.set_stream (ensemble_seed, catalog_index, substream);
+
+		// New Poisson generator, so no cached state carries over from the previous catalog
+
+		gen_poisson = new Poisson (1.0, stream_engine);
+		return;
+	}
+
+
+
+
+	// Get a seed for an ensemble of per-catalog streams.
+	// The seed is taken from the same sequence used to seed the per-thread generators,
+	// so it is reproducible if a test mode random seed is set.
+
+	public static long get_ensemble_seed () {
+		return get_next_seed();
+	}
+
+
+
+
 	//----- Threading -----
 
 
@@ -331,6 +565,45 @@ public class OERandomGenerator {
 
 
 
+	// Sample the number of elements picked by each of n independent cumulative samples.
+	// Parameters:
+	//  x = Array of cumulative probability values, x[i] = P(v <= i).
+	//  len = Length of array (uses x[0] through x[len-1]).
+	//  n = Number of samples to draw, must satisfy n >= 0.
+	//  count = Array of counts, count[v] is incremented each time v is picked.
+	// The result has the same distribution as calling cumulative_sample n times, and
+	// incrementing count[v] for each returned v, that is, a multinomial distribution.
+	// The caller must zero the count array beforehand, if desired.
+
+	// Implementation notes: Rather than doing a binary search for each sample, this
+	// generates the order statistics of n uniform random numbers in decreasing order,
+	// and makes a single downward pass through x.  If u(k) is the k-th smallest of
+	// k uniform random numbers, then u(k-1) = u(k) * v^(1/(k-1)) where v is an
+	// independent uniform random number.  The total cost is O(n + len), and the
+	// comparison against each cut value is the same as in cumulative_pick.
+
+	public void cumulative_multinomial_sample (double[] x, int len, int n, int[] count) {
+		final double x_total = x[len - 1];
+		double u = 1.0;
+		int j = len - 1;
+
+		for (int k = n; k > 0; --k) {
+			u = u * Math.pow (uniform_sample (0.0, 1.0), 1.0 / ((double)k));
+			double cut = x_total * Math.max(u, 1.0e-16);
+
+			while (j > 0 && x[j - 1] >= cut) {
+				--j;
+			}
+
+			count[j]++;
+		}
+
+		return;
+	}
+
+
+
+
 	// Return an Omori expected rate.
 	// Parameters:
 	//  p = Omori p parameter.
@@ -784,6 +1057,74 @@ public class OERandomGenerator {
 	}
 
 
+	// Calculate Omori expected rates, with shifted time, for an array of earthquakes.
+	// Parameters:
+	//  p = Omori p parameter.
+	//  c = Omori c parameter, must satisfy c > 0.
+	//  teps = Time epsilon, the minimum time interval considered, must satisfy teps >= 0.
+	//  t1 = Lower time value in days.
+	//  t2 = Upper time value in days.
+	//  a_t0 = Array of earthquake times, in days.
+	//  a_k = Array of multipliers (typically productivities).
+	//  a_rate = Array to receive the rates, can be the same array as a_k.
+	//  len = Number of earthquakes (uses elements 0 through len-1 of the arrays).
+	// Sets a_rate[j] = a_k[j] * omori_rate_shifted (p, c, a_t0[j], teps, t1, t2),
+	// with a result identical to calling omori_rate_shifted for each earthquake.
+	// The loop only touches primitive arrays, and the loop invariants are hoisted, so
+	// the JIT can keep everything in registers and use conditional moves in place of
+	// the branches of omori_rate_shifted.
+
+	public static void omori_rate_shifted_array (double p, double c, double teps, double t1, double t2,
+		double[] a_t0, double[] a_k, double[] a_rate, int len) {
+
+		// Background rate, and the exponent
+
+		final double bkgd_rate = ((t2 <= t1 + teps) ? 0.0 : (t2 - t1));
+		final double q = 1.0 - p;
+
+		for (int j = 0; j < len; ++j) {
+			final double t0 = a_t0[j];
+
+			// Start of the integration, which is t1 or t0 whichever is later
+
+			final double ts = Math.max (t0, t1);
+
+			double rate;
+
+			// Background source
+
+			if (t0 <= BKGD_TIME_DAYS_CHECK) {
+				rate = bkgd_rate;
+			}
+
+			// Small or degenerate interval, or earthquake is after end of interval
+
+			else if (t2 <= ts + teps) {
+				rate = 0.0;
+			}
+
+			// Otherwise, compute the rate between ts and t2, same as omori_rate_raw
+
+			else {
+				final double w = ts - t0 + c;
+				final double a = Math.log1p((t2 - ts)/w);
+				final double aq = a*q;
+				if (Math.abs(aq) < 1.0e-15) {
+					rate = Math.pow(w, q) * a;
+				} else {
+					rate = Math.pow(w, q) * Math.expm1(aq) / q;
+				}
+			}
+
+			a_rate[j] = a_k[j] * rate;
+		}
+
+		return;
+	}
+
+
+
+
 	// Original version, used omori_rate and did not support background.
 
 	public static double omori_rate_shifted_original (double p, double c, double t0, double teps, double t1, double t2) {
@@ -52,6 +52,50 @@ public class OESimulationParams {
 
 	public double sim_accum_param_1;
 
+	// The seed for per-catalog random streams, for simulations and ranging; or 0L to use per-thread random generators.
+	// If non-zero, each catalog is generated from a random stream determined by the seed and the catalog
+	// index, so the catalogs do not depend on the number of threads or on thread scheduling.
+
+	public long sim_ensemble_seed;
+
+	// The off-heap catalog storage retained by each thread between catalogs, in megabytes, for simulations and ranging.
+	// If positive, catalogs are held in OECatalogStorageArena, which returns storage beyond this amount to a shared
+	// pool after each catalog.  If 0, catalogs are held on the heap in OECatalogStorage.
+
+	public int sim_arena_trim_mb;
+
+	public final long eff_arena_trim_bytes () {
+		if (sim_arena_trim_mb > 0) {
+			return ((long)sim_arena_trim_mb) * 1048576L;
+		}
+		return -1L;
+	}
+
+	// True to stream each catalog to the accumulators while it is generated, for simulations and ranging.
+	// Each catalog is generated twice, but only a few generations are held in memory at once.
+	// This requires sim_ensemble_seed to be non-zero, and is ignored otherwise.
+
+	public boolean sim_stream_scan;
+
+	// The number of catalogs per round for adaptive early stopping, for simulations; or 0 to disable.
+	// If positive, catalogs are generated in rounds of this size, and generation stops once every
+	// reported probability and fractile is stable to the tolerances below (but not before
+	// sim_min_num_catalogs catalogs have been generated).  At most sim_num_catalogs are generated.
+	// This is used only with accumulators that can supply interim results.
+
+	public int sim_adaptive_round;
+
+	// The tolerance for reported probabilities, for adaptive early stopping.
+	// Each probability is stable when the half-width of its confidence interval is at most this value.
+
+	public double sim_adaptive_prob_tol;
+
+	// The tolerance for reported fractiles, for adaptive early stopping.
+	// Each fractile is stable when the half-width of its confidence interval, divided by
+	// the larger of 1 and the fractile, is at most this value.
+
+	public double sim_adaptive_frac_tol;
+
 	//--- Ranging
 
 	// The number of catalogs to generate, for ranging.  If 0, use 10% of sim_num_catalogs.
@@ -254,6 +298,12 @@ public class OESimulationParams {
 		sim_accum_selection    = 0;
 		sim_accum_option       = 0;
 		sim_accum_param_1      = 0.0;
+		sim_ensemble_seed      = 0L;
+		sim_arena_trim_mb      = 0;
+		sim_stream_scan        = false;
+		sim_adaptive_round     = 0;
+		sim_adaptive_prob_tol  = 0.0;
+		sim_adaptive_frac_tol  = 0.0;
 		range_num_catalogs     = 0;
 		range_min_num_catalogs = 0;
 		range_max_runtime      = 0L;
@@ -346,7 +396,13 @@ public class OESimulationParams {
 		double ranv2_direct_fractile ,
 		double ranv2_exceed_fraction ,
 		double ranv2_mag_excess      ,
-		int ranv3_direct_size_hi
+		int ranv3_direct_size_hi     ,
+		long sim_ensemble_seed       ,
+		int sim_arena_trim_mb        ,
+		boolean sim_stream_scan      ,
+		int sim_adaptive_round       ,
+		double sim_adaptive_prob_tol ,
+		double sim_adaptive_frac_tol
 	) {
 		this.sim_num_catalogs       = sim_num_catalogs      ;
 		this.sim_min_num_catalogs   = sim_min_num_catalogs  ;
@@ -390,6 +446,13 @@ public class OESimulationParams {
 		this.ranv2_mag_excess       = ranv2_mag_excess      ;
 
 		this.ranv3_direct_size_hi   = ranv3_direct_size_hi  ;
+
+		this.sim_ensemble_seed      = sim_ensemble_seed     ;
+		this.sim_arena_trim_mb      = sim_arena_trim_mb     ;
+		this.sim_stream_scan        = sim_stream_scan       ;
+		this.sim_adaptive_round     = sim_adaptive_round    ;
+		this.sim_adaptive_prob_tol  = sim_adaptive_prob_tol ;
+		this.sim_adaptive_frac_tol  = sim_adaptive_frac_tol ;
 		return this;
 	}
 
@@ -441,6 +504,13 @@ public class OESimulationParams {
 		this.ranv2_mag_excess       = other.ranv2_mag_excess      ;
 
 		this.ranv3_direct_size_hi   = other.ranv3_direct_size_hi  ;
+
+		this.sim_ensemble_seed      = other.sim_ensemble_seed     ;
+		this.sim_arena_trim_mb      = other.sim_arena_trim_mb     ;
+		this.sim_stream_scan        = other.sim_stream_scan       ;
+		this.sim_adaptive_round     = other.sim_adaptive_round    ;
+		this.sim_adaptive_prob_tol  = other.sim_adaptive_prob_tol ;
+		this.sim_adaptive_frac_tol  = other.sim_adaptive_frac_tol ;
 		return this;
 	}
 
@@ -458,6 +528,12 @@ public class OESimulationParams {
 		result.append ("sim_num_catalogs = "       + sim_num_catalogs       + "\n");
 		result.append ("sim_min_num_catalogs = "   + sim_min_num_catalogs   + "\n");
 		result.append ("sim_max_runtime = "        + sim_max_runtime        + "\n");
+		result.append ("sim_ensemble_seed = "      + sim_ensemble_seed      + "\n");
+		result.append ("sim_arena_trim_mb = "      + sim_arena_trim_mb      + "\n");
+		result.append ("sim_stream_scan = "        + sim_stream_scan        + "\n");
+		result.append ("sim_adaptive_round = "     + sim_adaptive_round     + "\n");
+		result.append ("sim_adaptive_prob_tol = "  + sim_adaptive_prob_tol  + "\n");
+		result.append ("sim_adaptive_frac_tol = "  + sim_adaptive_frac_tol  + "\n");
 		result.append ("sim_progress_time = "      + sim_progress_time      + "\n");
 		result.append ("sim_accum_selection = "    + sim_accum_selection    + "\n");
 		result.append ("sim_accum_option = "       + sim_accum_option       + "\n");
@@ -555,6 +631,13 @@ public class OESimulationParams {
 			ranv2_mag_excess       = OEConstants.ZERO_MAG_EXCESS;
 
 			ranv3_direct_size_hi   = 0;
+
+			sim_ensemble_seed      = 0L;
+			sim_arena_trim_mb      = 0;
+			sim_stream_scan        = false;
+			sim_adaptive_round     = 0;
+			sim_adaptive_prob_tol  = 0.005;
+			sim_adaptive_frac_tol  = 0.05;
 		} else {
 			sim_num_catalogs       = 20000;
 			sim_min_num_catalogs   = 10000;
@@ -601,6 +684,13 @@ public class OESimulationParams {
 			ranv2_mag_excess       = OEConstants.ZERO_MAG_EXCESS;
 
 			ranv3_direct_size_hi   = 0;
+
+			sim_ensemble_seed      = 0L;
+			sim_arena_trim_mb      = 0;
+			sim_stream_scan        = false;
+			sim_adaptive_round     = 0;
+			sim_adaptive_prob_tol  = 0.005;
+			sim_adaptive_frac_tol  = 0.05;
 		}
 		return this;
 	}
@@ -613,6 +703,10 @@ public class OESimulationParams {
 	// Marshal version number.
 
 	private static final int MARSHAL_VER_1 = 102001;
+	private static final int MARSHAL_VER_2 = 102002;
+	private static final int MARSHAL_VER_3 = 102003;
+	private static final int MARSHAL_VER_4 = 102004;
+	private static final int MARSHAL_VER_5 = 102005;
 
 	private static final String M_VERSION_NAME = "OESimulationParams";
 
@@ -622,7 +716,7 @@ public class OESimulationParams {
 
 		// Version
 
-		int ver = MARSHAL_VER_1;
+		int ver = MARSHAL_VER_5;
 
 		writer.marshalInt (M_VERSION_NAME, ver);
 
@@ -678,6 +772,214 @@ public class OESimulationParams {
 		}
 		break;
 
+		case MARSHAL_VER_2: {
+
+			writer.marshalInt    ("sim_num_catalogs"       , sim_num_catalogs      );
+			writer.marshalInt    ("sim_min_num_catalogs"   , sim_min_num_catalogs  );
+			writer.marshalLong   ("sim_max_runtime"        , sim_max_runtime       );
+			writer.marshalLong   ("sim_progress_time"      , sim_progress_time     );
+			writer.marshalInt    ("sim_accum_selection"    , sim_accum_selection   );
+			writer.marshalInt    ("sim_accum_option"       , sim_accum_option      );
+			writer.marshalDouble ("sim_accum_param_1"      , sim_accum_param_1     );
+			writer.marshalInt    ("range_num_catalogs"     , range_num_catalogs    );
+			writer.marshalInt    ("range_min_num_catalogs" , range_min_num_catalogs);
+			writer.marshalLong   ("range_max_runtime"      , range_max_runtime     );
+			writer.marshalLong   ("range_progress_time"    , range_progress_time   );
+			writer.marshalInt    ("range_accum_selection"  , range_accum_selection );
+			writer.marshalInt    ("range_accum_option"     , range_accum_option    );
+			writer.marshalDouble ("range_min_rel_mag"      , range_min_rel_mag     );
+			writer.marshalDouble ("range_max_rel_mag"      , range_max_rel_mag     );
+			writer.marshalDouble ("range_exceed_fraction"  , range_exceed_fraction );
+			writer.marshalInt    ("range_target_size"      , range_target_size     );
+			writer.marshalDouble ("range_target_fractile"  , range_target_fractile );
+			writer.marshalDouble ("range_min_duration"     , range_min_duration    );
+			writer.marshalInt    ("range_max_attempts"     , range_max_attempts    );
+			writer.marshalDouble ("range_mag_lim_fraction" , range_mag_lim_fraction);
+			writer.marshalDouble ("range_mag_lim_time"     , range_mag_lim_time    );
+			writer.marshalDouble ("range_exec_time_frac"   , range_exec_time_frac  );
+
+			writer.marshalInt    ("range_method"           , range_method          );
+			writer.marshalInt    ("ranv2_num_catalogs"     , ranv2_num_catalogs    );
+			writer.marshalInt    ("ranv2_accum_selection"  , ranv2_accum_selection );
+			writer.marshalInt    ("ranv2_accum_option"     , ranv2_accum_option    );
+			writer.marshalDouble ("ranv2_min_rel_mag"      , ranv2_min_rel_mag     );
+			writer.marshalDouble ("ranv2_max_rel_mag"      , ranv2_max_rel_mag     );
+			writer.marshalDouble ("ranv2_min_mag"          , ranv2_min_mag         );
+			writer.marshalDouble ("ranv2_max_mag"          , ranv2_max_mag         );
+			writer.marshalDouble ("ranv2_step_mag"         , ranv2_step_mag        );
+			writer.marshalInt    ("ranv2_gen_br"           , ranv2_gen_br          );
+			writer.marshalDouble ("ranv2_derate_br"        , ranv2_derate_br       );
+			writer.marshalDouble ("ranv2_prob_nonempty"    , ranv2_prob_nonempty   );
+			writer.marshalInt    ("ranv2_direct_size"      , ranv2_direct_size     );
+			writer.marshalDouble ("ranv2_direct_fractile"  , ranv2_direct_fractile );
+			writer.marshalDouble ("ranv2_exceed_fraction"  , ranv2_exceed_fraction );
+			writer.marshalDouble ("ranv2_mag_excess"       , ranv2_mag_excess      );
+
+			writer.marshalInt    ("ranv3_direct_size_hi"   , ranv3_direct_size_hi  );
+
+			writer.marshalLong   ("sim_ensemble_seed"      , sim_ensemble_seed     );
+
+		}
+		break;
+
+		case MARSHAL_VER_3: {
+
+			writer.marshalInt    ("sim_num_catalogs"       , sim_num_catalogs      );
+			writer.marshalInt    ("sim_min_num_catalogs"   , sim_min_num_catalogs  );
+			writer.marshalLong   ("sim_max_runtime"        , sim_max_runtime       );
+			writer.marshalLong   ("sim_progress_time"      , sim_progress_time     );
+			writer.marshalInt    ("sim_accum_selection"    , sim_accum_selection   );
+			writer.marshalInt    ("sim_accum_option"       , sim_accum_option      );
+			writer.marshalDouble ("sim_accum_param_1"      , sim_accum_param_1     );
+			writer.marshalInt    ("range_num_catalogs"     , range_num_catalogs    );
+			writer.marshalInt    ("range_min_num_catalogs" , range_min_num_catalogs);
+			writer.marshalLong   ("range_max_runtime"      , range_max_runtime     );
+			writer.marshalLong   ("range_progress_time"    , range_progress_time   );
+			writer.marshalInt    ("range_accum_selection"  , range_accum_selection );
+			writer.marshalInt    ("range_accum_option"     , range_accum_option    );
+			writer.marshalDouble ("range_min_rel_mag"      , range_min_rel_mag     );
+			writer.marshalDouble ("range_max_rel_mag"      , range_max_rel_mag     );
+			writer.marshalDouble ("range_exceed_fraction"  , range_exceed_fraction );
+			writer.marshalInt    ("range_target_size"      , range_target_size     );
+			writer.marshalDouble ("range_target_fractile"  , range_target_fractile );
+			writer.marshalDouble ("range_min_duration"     , range_min_duration    );
+			writer.marshalInt    ("range_max_attempts"     , range_max_attempts    );
+			writer.marshalDouble ("range_mag_lim_fraction" , range_mag_lim_fraction);
+			writer.marshalDouble ("range_mag_lim_time"     , range_mag_lim_time    );
+			writer.marshalDouble ("range_exec_time_frac"   , range_exec_time_frac  );
+
+			writer.marshalInt    ("range_method"           , range_method          );
+			writer.marshalInt    ("ranv2_num_catalogs"     , ranv2_num_catalogs    );
+			writer.marshalInt    ("ranv2_accum_selection"  , ranv2_accum_selection );
+			writer.marshalInt    ("ranv2_accum_option"     , ranv2_accum_option    );
+			writer.marshalDouble ("ranv2_min_rel_mag"      , ranv2_min_rel_mag     );
+			writer.marshalDouble ("ranv2_max_rel_mag"      , ranv2_max_rel_mag     );
+			writer.marshalDouble ("ranv2_min_mag"          , ranv2_min_mag         );
+			writer.marshalDouble ("ranv2_max_mag"          , ranv2_max_mag         );
+			writer.marshalDouble ("ranv2_step_mag"         , ranv2_step_mag        );
+			writer.marshalInt    ("ranv2_gen_br"           , ranv2_gen_br          );
+			writer.marshalDouble ("ranv2_derate_br"        , ranv2_derate_br       );
+			writer.marshalDouble ("ranv2_prob_nonempty"    , ranv2_prob_nonempty   );
+			writer.marshalInt    ("ranv2_direct_size"      , ranv2_direct_size     );
+			writer.marshalDouble ("ranv2_direct_fractile"  , ranv2_direct_fractile );
+			writer.marshalDouble ("ranv2_exceed_fraction"  , ranv2_exceed_fraction );
+			writer.marshalDouble ("ranv2_mag_excess"       , ranv2_mag_excess      );
+
+			writer.marshalInt    ("ranv3_direct_size_hi"   , ranv3_direct_size_hi  );
+
+			writer.marshalLong   ("sim_ensemble_seed"      , sim_ensemble_seed     );
+			writer.marshalInt    ("sim_arena_trim_mb"      , sim_arena_trim_mb     );
+
+		}
+		break;
+
+		case MARSHAL_VER_4: {
+
+			writer.marshalInt    ("sim_num_catalogs"       , sim_num_catalogs      );
+			writer.marshalInt    ("sim_min_num_catalogs"   , sim_min_num_catalogs  );
+			writer.marshalLong   ("sim_max_runtime"        , sim_max_runtime       );
+			writer.marshalLong   ("sim_progress_time"      , sim_progress_time     );
+			writer.marshalInt    ("sim_accum_selection"    , sim_accum_selection   );
+			writer.marshalInt    ("sim_accum_option"       , sim_accum_option      );
+			writer.marshalDouble ("sim_accum_param_1"      , sim_accum_param_1     );
+			writer.marshalInt    ("range_num_catalogs"     , range_num_catalogs    );
+			writer.marshalInt    ("range_min_num_catalogs" , range_min_num_catalogs);
+			writer.marshalLong   ("range_max_runtime"      , range_max_runtime     );
+			writer.marshalLong   ("range_progress_time"    , range_progress_time   );
+			writer.marshalInt    ("range_accum_selection"  , range_accum_selection );
+			writer.marshalInt    ("range_accum_option"     , range_accum_option    );
+			writer.marshalDouble ("range_min_rel_mag"      , range_min_rel_mag     );
+			writer.marshalDouble ("range_max_rel_mag"      , range_max_rel_mag     );
+			writer.marshalDouble ("range_exceed_fraction"  , range_exceed_fraction );
+			writer.marshalInt    ("range_target_size"      , range_target_size     );
+			writer.marshalDouble ("range_target_fractile"  , range_target_fractile );
+			writer.marshalDouble ("range_min_duration"     , range_min_duration    );
+			writer.marshalInt    ("range_max_attempts"     , range_max_attempts    );
+			writer.marshalDouble ("range_mag_lim_fraction" , range_mag_lim_fraction);
+			writer.marshalDouble ("range_mag_lim_time"     , range_mag_lim_time    );
+			writer.marshalDouble ("range_exec_time_frac"   , range_exec_time_frac  );
+
+			writer.marshalInt    ("range_method"           , range_method          );
+			writer.marshalInt    ("ranv2_num_catalogs"     , ranv2_num_catalogs    );
+			writer.marshalInt    ("ranv2_accum_selection"  , ranv2_accum_selection );
+			writer.marshalInt    ("ranv2_accum_option"     , ranv2_accum_option    );
+			writer.marshalDouble ("ranv2_min_rel_mag"      , ranv2_min_rel_mag     );
+			writer.marshalDouble ("ranv2_max_rel_mag"      , ranv2_max_rel_mag     );
+			writer.marshalDouble ("ranv2_min_mag"          , ranv2_min_mag         );
+			writer.marshalDouble ("ranv2_max_mag"          , ranv2_max_mag         );
+			writer.marshalDouble ("ranv2_step_mag"         , ranv2_step_mag        );
+			writer.marshalInt    ("ranv2_gen_br"           , ranv2_gen_br          );
+			writer.marshalDouble ("ranv2_derate_br"        , ranv2_derate_br       );
+			writer.marshalDouble ("ranv2_prob_nonempty"    , ranv2_prob_nonempty   );
+			writer.marshalInt    ("ranv2_direct_size"      , ranv2_direct_size     );
+			writer.marshalDouble ("ranv2_direct_fractile"  , ranv2_direct_fractile );
+			writer.marshalDouble ("ranv2_exceed_fraction"  , ranv2_exceed_fraction );
+			writer.marshalDouble ("ranv2_mag_excess"       , ranv2_mag_excess      );
+
+			writer.marshalInt    ("ranv3_direct_size_hi"   , ranv3_direct_size_hi  );
+
+			writer.marshalLong   ("sim_ensemble_seed"      , sim_ensemble_seed     );
+			writer.marshalInt    ("sim_arena_trim_mb"      , sim_arena_trim_mb     );
+			writer.marshalBoolean ("sim_stream_scan"       , sim_stream_scan       );
+
+		}
+		break;
+
+		case MARSHAL_VER_5: {
+
+			writer.marshalInt    ("sim_num_catalogs"       , sim_num_catalogs      );
+			writer.marshalInt    ("sim_min_num_catalogs"   , sim_min_num_catalogs  );
+			writer.marshalLong   ("sim_max_runtime"        , sim_max_runtime       );
+			writer.marshalLong   ("sim_progress_time"      , sim_progress_time     );
+			writer.marshalInt    ("sim_accum_selection"    , sim_accum_selection   );
+			writer.marshalInt    ("sim_accum_option"       , sim_accum_option      );
+			writer.marshalDouble ("sim_accum_param_1"      , sim_accum_param_1     );
+			writer.marshalInt    ("range_num_catalogs"     , range_num_catalogs    );
+			writer.marshalInt    ("range_min_num_catalogs" , range_min_num_catalogs);
+			writer.marshalLong   ("range_max_runtime"      , range_max_runtime     );
+			writer.marshalLong   ("range_progress_time"    , range_progress_time   );
+			writer.marshalInt    ("range_accum_selection"  , range_accum_selection );
+			writer.marshalInt    ("range_accum_option"     , range_accum_option    );
+			writer.marshalDouble ("range_min_rel_mag"      , range_min_rel_mag     );
+			writer.marshalDouble ("range_max_rel_mag"      , range_max_rel_mag     );
+			writer.marshalDouble ("range_exceed_fraction"  , range_exceed_fraction );
+			writer.marshalInt    ("range_target_size"      , range_target_size     );
+			writer.marshalDouble ("range_target_fractile"  , range_target_fractile );
+			writer.marshalDouble ("range_min_duration"     , range_min_duration    );
+			writer.marshalInt    ("range_max_attempts"     , range_max_attempts    );
+			writer.marshalDouble ("range_mag_lim_fraction" , range_mag_lim_fraction);
+			writer.marshalDouble ("range_mag_lim_time"     , range_mag_lim_time    );
+			writer.marshalDouble ("range_exec_time_frac"   , range_exec_time_frac  );
+
+			writer.marshalInt    ("range_method"           , range_method          );
+			writer.marshalInt    ("ranv2_num_catalogs"     , ranv2_num_catalogs    );
+			writer.marshalInt    ("ranv2_accum_selection"  , ranv2_accum_selection );
+			writer.marshalInt    ("ranv2_accum_option"     , ranv2_accum_option    );
+			writer.marshalDouble ("ranv2_min_rel_mag"      , ranv2_min_rel_mag     );
+			writer.marshalDouble ("ranv2_max_rel_mag"      , ranv2_max_rel_mag     );
+			writer.marshalDouble ("ranv2_min_mag"          , ranv2_min_mag         );
+			writer.marshalDouble ("ranv2_max_mag"          , ranv2_max_mag         );
+			writer.marshalDouble ("ranv2_step_mag"         , ranv2_step_mag        );
+			writer.marshalInt    ("ranv2_gen_br"           , ranv2_gen_br          );
+			writer.marshalDouble ("ranv2_derate_br"        , ranv2_derate_br       );
+			writer.marshalDouble ("ranv2_prob_nonempty"    , ranv2_prob_nonempty   );
+			writer.marshalInt    ("ranv2_direct_size"      , ranv2_direct_size     );
+			writer.marshalDouble ("ranv2_direct_fractile"  , ranv2_direct_fractile );
+			writer.marshalDouble ("ranv2_exceed_fraction"  , ranv2_exceed_fraction );
+			writer.marshalDouble ("ranv2_mag_excess"       , ranv2_mag_excess      );
+
+			writer.marshalInt    ("ranv3_direct_size_hi"   , ranv3_direct_size_hi  );
+
+			writer.marshalLong   ("sim_ensemble_seed"      , sim_ensemble_seed     );
+			writer.marshalInt    ("sim_arena_trim_mb"      , sim_arena_trim_mb     );
+			writer.marshalBoolean ("sim_stream_scan"       , sim_stream_scan       );
+			writer.marshalInt    ("sim_adaptive_round"     , sim_adaptive_round    );
+			writer.marshalDouble ("sim_adaptive_prob_tol"  , sim_adaptive_prob_tol );
+			writer.marshalDouble ("sim_adaptive_frac_tol"  , sim_adaptive_frac_tol );
+
+		}
+		break;
+
 		}
 
 		return;
@@ -689,7 +991,7 @@ public class OESimulationParams {
 	
 		// Version
 
-		int ver = reader.unmarshalInt (M_VERSION_NAME, MARSHAL_VER_1, MARSHAL_VER_1);
+		int ver = reader.unmarshalInt (M_VERSION_NAME, MARSHAL_VER_1, MARSHAL_VER_5);
 
 		// Contents
 
@@ -740,6 +1042,233 @@ public class OESimulationParams {
 
 			ranv3_direct_size_hi   = reader.unmarshalInt    ("ranv3_direct_size_hi"  );
 
+			sim_ensemble_seed      = 0L;
+			sim_arena_trim_mb      = 0;
+			sim_stream_scan        = false;
+			sim_adaptive_round     = 0;
+			sim_adaptive_prob_tol  = 0.0;
+			sim_adaptive_frac_tol  = 0.0;
+
+		}
+		break;
+
+		case MARSHAL_VER_2: {
+
+			sim_num_catalogs       = reader.unmarshalInt    ("sim_num_catalogs"      );
+			sim_min_num_catalogs   = reader.unmarshalInt    ("sim_min_num_catalogs"  );
+			sim_max_runtime        = reader.unmarshalLong   ("sim_max_runtime"       );
+			sim_progress_time      = reader.unmarshalLong   ("sim_progress_time"     );
+			sim_accum_selection    = reader.unmarshalInt    ("sim_accum_selection"   );
+			sim_accum_option       = reader.unmarshalInt    ("sim_accum_option"      );
+			sim_accum_param_1      = reader.unmarshalDouble ("sim_accum_param_1"     );
+			range_num_catalogs     = reader.unmarshalInt    ("range_num_catalogs"    );
+			range_min_num_catalogs = reader.unmarshalInt    ("range_min_num_catalogs");
+			range_max_runtime      = reader.unmarshalLong   ("range_max_runtime"     );
+			range_progress_time    = reader.unmarshalLong   ("range_progress_time"   );
+			range_accum_selection  = reader.unmarshalInt    ("range_accum_selection" );
+			range_accum_option     = reader.unmarshalInt    ("range_accum_option"    );
+			range_min_rel_mag      = reader.unmarshalDouble ("range_min_rel_mag"     );
+			range_max_rel_mag      = reader.unmarshalDouble ("range_max_rel_mag"     );
+			range_exceed_fraction  = reader.unmarshalDouble ("range_exceed_fraction" );
+			range_target_size      = reader.unmarshalInt    ("range_target_size"     );
+			range_target_fractile  = reader.unmarshalDouble ("range_target_fractile" );
+			range_min_duration     = reader.unmarshalDouble ("range_min_duration"    );
+			range_max_attempts     = reader.unmarshalInt    ("range_max_attempts"    );
+			range_mag_lim_fraction = reader.unmarshalDouble ("range_mag_lim_fraction");
+			range_mag_lim_time     = reader.unmarshalDouble ("range_mag_lim_time"    );
+			range_exec_time_frac   = reader.unmarshalDouble ("range_exec_time_frac"  );
+
+			range_method           = reader.unmarshalInt    ("range_method"          );
+			ranv2_num_catalogs     = reader.unmarshalInt    ("ranv2_num_catalogs"    );
+			ranv2_accum_selection  = reader.unmarshalInt    ("ranv2_accum_selection" );
+			ranv2_accum_option     = reader.unmarshalInt    ("ranv2_accum_option"    );
+			ranv2_min_rel_mag      = reader.unmarshalDouble ("ranv2_min_rel_mag"     );
+			ranv2_max_rel_mag      = reader.unmarshalDouble ("ranv2_max_rel_mag"     );
+			ranv2_min_mag          = reader.unmarshalDouble ("ranv2_min_mag"         );
+			ranv2_max_mag          = reader.unmarshalDouble ("ranv2_max_mag"         );
+			ranv2_step_mag         = reader.unmarshalDouble ("ranv2_step_mag"        );
+			ranv2_gen_br           = reader.unmarshalInt    ("ranv2_gen_br"          );
+			ranv2_derate_br        = reader.unmarshalDouble ("ranv2_derate_br"       );
+			ranv2_prob_nonempty    = reader.unmarshalDouble ("ranv2_prob_nonempty"   );
+			ranv2_direct_size      = reader.unmarshalInt    ("ranv2_direct_size"     );
+			ranv2_direct_fractile  = reader.unmarshalDouble ("ranv2_direct_fractile" );
+			ranv2_exceed_fraction  = reader.unmarshalDouble ("ranv2_exceed_fraction" );
+			ranv2_mag_excess       = reader.unmarshalDouble ("ranv2_mag_excess"      );
+
+			ranv3_direct_size_hi   = reader.unmarshalInt    ("ranv3_direct_size_hi"  );
+
+			sim_ensemble_seed      = reader.unmarshalLong   ("sim_ensemble_seed"     );
+			sim_arena_trim_mb      = 0;
+			sim_stream_scan        = false;
+			sim_adaptive_round     = 0;
+			sim_adaptive_prob_tol  = 0.0;
+			sim_adaptive_frac_tol  = 0.0;
+
+		}
+		break;
+
+		case MARSHAL_VER_3: {
+
+			sim_num_catalogs       = reader.unmarshalInt    ("sim_num_catalogs"      );
+			sim_min_num_catalogs   = reader.unmarshalInt    ("sim_min_num_catalogs"  );
+			sim_max_runtime        = reader.unmarshalLong   ("sim_max_runtime"       );
+			sim_progress_time      = reader.unmarshalLong   ("sim_progress_time"     );
+			sim_accum_selection    = reader.unmarshalInt    ("sim_accum_selection"   );
+			sim_accum_option       = reader.unmarshalInt    ("sim_accum_option"      );
+			sim_accum_param_1      = reader.unmarshalDouble ("sim_accum_param_1"     );
+			range_num_catalogs     = reader.unmarshalInt    ("range_num_catalogs"    );
+			range_min_num_catalogs = reader.unmarshalInt    ("range_min_num_catalogs");
+			range_max_runtime      = reader.unmarshalLong   ("range_max_runtime"     );
+			range_progress_time    = reader.unmarshalLong   ("range_progress_time"   );
+			range_accum_selection  = reader.unmarshalInt    ("range_accum_selection" );
+			range_accum_option     = reader.unmarshalInt    ("range_accum_option"    );
+			range_min_rel_mag      = reader.unmarshalDouble ("range_min_rel_mag"     );
+			range_max_rel_mag      = reader.unmarshalDouble ("range_max_rel_mag"     );
+			range_exceed_fraction  = reader.unmarshalDouble ("range_exceed_fraction" );
+			range_target_size      = reader.unmarshalInt    ("range_target_size"     );
+			range_target_fractile  = reader.unmarshalDouble ("range_target_fractile" );
+			range_min_duration     = reader.unmarshalDouble ("range_min_duration"    );
+			range_max_attempts     = reader.unmarshalInt    ("range_max_attempts"    );
+			range_mag_lim_fraction = reader.unmarshalDouble ("range_mag_lim_fraction");
+			range_mag_lim_time     = reader.unmarshalDouble ("range_mag_lim_time"    );
+			range_exec_time_frac   = reader.unmarshalDouble ("range_exec_time_frac"  );
+
+			range_method           = reader.unmarshalInt    ("range_method"          );
+			ranv2_num_catalogs     = reader.unmarshalInt    ("ranv2_num_catalogs"    );
+			ranv2_accum_selection  = reader.unmarshalInt    ("ranv2_accum_selection" );
+			ranv2_accum_option     = reader.unmarshalInt    ("ranv2_accum_option"    );
+			ranv2_min_rel_mag      = reader.unmarshalDouble ("ranv2_min_rel_mag"     );
+			ranv2_max_rel_mag      = reader.unmarshalDouble ("ranv2_max_rel_mag"     );
+			ranv2_min_mag          = reader.unmarshalDouble ("ranv2_min_mag"         );
+			ranv2_max_mag          = reader.unmarshalDouble ("ranv2_max_mag"         );
+			ranv2_step_mag         = reader.unmarshalDouble ("ranv2_step_mag"        );
+			ranv2_gen_br           = reader.unmarshalInt    ("ranv2_gen_br"          );
+			ranv2_derate_br        = reader.unmarshalDouble ("ranv2_derate_br"       );
+			ranv2_prob_nonempty    = reader.unmarshalDouble ("ranv2_prob_nonempty"   );
+			ranv2_direct_size      = reader.unmarshalInt    ("ranv2_direct_size"     );
+			ranv2_direct_fractile  = reader.unmarshalDouble ("ranv2_direct_fractile" );
+			ranv2_exceed_fraction  = reader.unmarshalDouble ("ranv2_exceed_fraction" );
+			ranv2_mag_excess       = reader.unmarshalDouble ("ranv2_mag_excess"      );
+
+			ranv3_direct_size_hi   = reader.unmarshalInt    ("ranv3_direct_size_hi"  );
+
+			sim_ensemble_seed      = reader.unmarshalLong   ("sim_ensemble_seed"     );
+			sim_arena_trim_mb      = reader.unmarshalInt    ("sim_arena_trim_mb"     );
+			sim_stream_scan        = false;
+			sim_adaptive_round     = 0;
+			sim_adaptive_prob_tol  = 0.0;
+			sim_adaptive_frac_tol  = 0.0;
+
+		}
+		break;
+
+		case MARSHAL_VER_4: {
+
+			sim_num_catalogs       = reader.unmarshalInt    ("sim_num_catalogs"      );
+			sim_min_num_catalogs   = reader.unmarshalInt    ("sim_min_num_catalogs"  );
+			sim_max_runtime        = reader.unmarshalLong   ("sim_max_runtime"       );
+			sim_progress_time      = reader.unmarshalLong   ("sim_progress_time"     );
+			sim_accum_selection    = reader.unmarshalInt    ("sim_accum_selection"   );
+			sim_accum_option       = reader.unmarshalInt    ("sim_accum_option"      );
+			sim_accum_param_1      = reader.unmarshalDouble ("sim_accum_param_1"     );
+			range_num_catalogs     = reader.unmarshalInt    ("range_num_catalogs"    );
+			range_min_num_catalogs = reader.unmarshalInt    ("range_min_num_catalogs");
+			range_max_runtime      = reader.unmarshalLong   ("range_max_runtime"     );
+			range_progress_time    = reader.unmarshalLong   ("range_progress_time"   );
+			range_accum_selection  = reader.unmarshalInt    ("range_accum_selection" );
+			range_accum_option     = reader.unmarshalInt    ("range_accum_option"    );
+			range_min_rel_mag      = reader.unmarshalDouble ("range_min_rel_mag"     );
+			range_max_rel_mag      = reader.unmarshalDouble ("range_max_rel_mag"     );
+			range_exceed_fraction  = reader.unmarshalDouble ("range_exceed_fraction" );
+			range_target_size      = reader.unmarshalInt    ("range_target_size"     );
+			range_target_fractile  = reader.unmarshalDouble ("range_target_fractile" );
+			range_min_duration     = reader.unmarshalDouble ("range_min_duration"    );
+			range_max_attempts     = reader.unmarshalInt    ("range_max_attempts"    );
+			range_mag_lim_fraction = reader.unmarshalDouble ("range_mag_lim_fraction");
+			range_mag_lim_time     = reader.unmarshalDouble ("range_mag_lim_time"    );
+			range_exec_time_frac   = reader.unmarshalDouble ("range_exec_time_frac"  );
+
+			range_method           = reader.unmarshalInt    ("range_method"          );
+			ranv2_num_catalogs     = reader.unmarshalInt    ("ranv2_num_catalogs"    );
+			ranv2_accum_selection  = reader.unmarshalInt    ("ranv2_accum_selection" );
+			ranv2_accum_option     = reader.unmarshalInt    ("ranv2_accum_option"    );
+			ranv2_min_rel_mag      = reader.unmarshalDouble ("ranv2_min_rel_mag"     );
+			ranv2_max_rel_mag      = reader.unmarshalDouble ("ranv2_max_rel_mag"     );
+			ranv2_min_mag          = reader.unmarshalDouble ("ranv2_min_mag"         );
+			ranv2_max_mag          = reader.unmarshalDouble ("ranv2_max_mag"         );
+			ranv2_step_mag         = reader.unmarshalDouble ("ranv2_step_mag"        );
+			ranv2_gen_br           = reader.unmarshalInt    ("ranv2_gen_br"          );
+			ranv2_derate_br        = reader.unmarshalDouble ("ranv2_derate_br"       );
+			ranv2_prob_nonempty    = reader.unmarshalDouble ("ranv2_prob_nonempty"   );
+			ranv2_direct_size      = reader.unmarshalInt    ("ranv2_direct_size"     );
+			ranv2_direct_fractile  = reader.unmarshalDouble ("ranv2_direct_fractile" );
+			ranv2_exceed_fraction  = reader.unmarshalDouble ("ranv2_exceed_fraction" );
+			ranv2_mag_excess       = reader.unmarshalDouble ("ranv2_mag_excess"      );
+
+			ranv3_direct_size_hi   = reader.unmarshalInt    ("ranv3_direct_size_hi"  );
+
+			sim_ensemble_seed      = reader.unmarshalLong   ("sim_ensemble_seed"     );
+			sim_arena_trim_mb      = reader.unmarshalInt    ("sim_arena_trim_mb"     );
+			sim_stream_scan        = reader.unmarshalBoolean ("sim_stream_scan"      );
+			sim_adaptive_round     = 0;
+			sim_adaptive_prob_tol  = 0.0;
+			sim_adaptive_frac_tol  = 0.0;
+
+		}
+		break;
+
+		case MARSHAL_VER_5: {
+
+			sim_num_catalogs       = reader.unmarshalInt    ("sim_num_catalogs"      );
+			sim_min_num_catalogs   = reader.unmarshalInt    ("sim_min_num_catalogs"  );
+			sim_max_runtime        = reader.unmarshalLong   ("sim_max_runtime"       );
+			sim_progress_time      = reader.unmarshalLong   ("sim_progress_time"     );
+			sim_accum_selection    = reader.unmarshalInt    ("sim_accum_selection"   );
+			sim_accum_option       = reader.unmarshalInt    ("sim_accum_option"      );
+			sim_accum_param_1      = reader.unmarshalDouble ("sim_accum_param_1"     );
+			range_num_catalogs     = reader.unmarshalInt    ("range_num_catalogs"    );
+			range_min_num_catalogs = reader.unmarshalInt    ("range_min_num_catalogs");
+			range_max_runtime      = reader.unmarshalLong   ("range_max_runtime"     );
+			range_progress_time    = reader.unmarshalLong   ("range_progress_time"   );
+			range_accum_selection  = reader.unmarshalInt    ("range_accum_selection" );
+			range_accum_option     = reader.unmarshalInt    ("range_accum_option"    );
+			range_min_rel_mag      = reader.unmarshalDouble ("range_min_rel_mag"     );
+			range_max_rel_mag      = reader.unmarshalDouble ("range_max_rel_mag"     );
+			range_exceed_fraction  = reader.unmarshalDouble ("range_exceed_fraction" );
+			range_target_size      = reader.unmarshalInt    ("range_target_size"     );
+			range_target_fractile  = reader.unmarshalDouble ("range_target_fractile" );
+			range_min_duration     = reader.unmarshalDouble ("range_min_duration"    );
+			range_max_attempts     = reader.unmarshalInt    ("range_max_attempts"    );
+			range_mag_lim_fraction = reader.unmarshalDouble ("range_mag_lim_fraction");
+			range_mag_lim_time     = reader.unmarshalDouble ("range_mag_lim_time"    );
+			range_exec_time_frac   = reader.unmarshalDouble ("range_exec_time_frac"  );
+
+			range_method           = reader.unmarshalInt    ("range_method"          );
+			ranv2_num_catalogs     = reader.unmarshalInt    ("ranv2_num_catalogs"    );
+			ranv2_accum_selection  = reader.unmarshalInt    ("ranv2_accum_selection" );
+			ranv2_accum_option     = reader.unmarshalInt    ("ranv2_accum_option"    );
+			ranv2_min_rel_mag      = reader.unmarshalDouble ("ranv2_min_rel_mag"     );
+			ranv2_max_rel_mag      = reader.unmarshalDouble ("ranv2_max_rel_mag"     );
+			ranv2_min_mag          = reader.unmarshalDouble ("ranv2_min_mag"         );
+			ranv2_max_mag          = reader.unmarshalDouble ("ranv2_max_mag"         );
+			ranv2_step_mag         = reader.unmarshalDouble ("ranv2_step_mag"        );
+			ranv2_gen_br           = reader.unmarshalInt    ("ranv2_gen_br"          );
+			ranv2_derate_br        = reader.unmarshalDouble ("ranv2_derate_br"       );
+			ranv2_prob_nonempty    = reader.unmarshalDouble ("ranv2_prob_nonempty"   );
+			ranv2_direct_size      = reader.unmarshalInt    ("ranv2_direct_size"     );
+			ranv2_direct_fractile  = reader.unmarshalDouble ("ranv2_direct_fractile" );
+			ranv2_exceed_fraction  = reader.unmarshalDouble ("ranv2_exceed_fraction" );
+			ranv2_mag_excess       = reader.unmarshalDouble ("ranv2_mag_excess"      );
+
+			ranv3_direct_size_hi   = reader.unmarshalInt    ("ranv3_direct_size_hi"  );
+
+			sim_ensemble_seed      = reader.unmarshalLong   ("sim_ensemble_seed"     );
+			sim_arena_trim_mb      = reader.unmarshalInt    ("sim_arena_trim_mb"     );
+			sim_stream_scan        = reader.unmarshalBoolean ("sim_stream_scan"      );
+			sim_adaptive_round     = reader.unmarshalInt    ("sim_adaptive_round"    );
+			sim_adaptive_prob_tol  = reader.unmarshalDouble ("sim_adaptive_prob_tol" );
+			sim_adaptive_frac_tol  = reader.unmarshalDouble ("sim_adaptive_frac_tol" );
+
 		}
 		break;
 
@@ -840,6 +1369,13 @@ public class OESimulationParams {
 			&& this.ranv2_mag_excess       == other.ranv2_mag_excess
 
 			&& this.ranv3_direct_size_hi   == other.ranv3_direct_size_hi
+
+			&& this.sim_ensemble_seed      == other.sim_ensemble_seed
+			&& this.sim_arena_trim_mb      == other.sim_arena_trim_mb
+			&& this.sim_stream_scan        == other.sim_stream_scan
+			&& this.sim_adaptive_round     == other.sim_adaptive_round
+			&& this.sim_adaptive_prob_tol  == other.sim_adaptive_prob_tol
+			&& this.sim_adaptive_frac_tol  == other.sim_adaptive_frac_tol
 		) {
 			return true;
 		}
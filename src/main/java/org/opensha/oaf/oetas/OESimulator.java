@@ -81,6 +81,20 @@ public class OESimulator {
 
 	public OEEnsembleAccumulator range_accumulator;
 
+	// An accumulator for the simulation, carried over from the final ranging attempt, or null if none.
+	// If non-null, it has begun accumulation and holds carried_count catalogs, and the simulation
+	// continues at catalog index carried_index_base.
+
+	private OEEnsembleAccumulator carried_accumulator;
+	private int carried_count;
+	private int carried_index_base;
+
+	// An accumulator for the simulation that receives the catalogs of the current ranging attempt,
+	// in case it is the final attempt, or null if none.  If non-null, it has begun accumulation.
+	// It either becomes carried_accumulator or is discarded.
+
+	private OEEnsembleAccumulator spec_accumulator;
+
 	// The loop result.
 
 	private SimpleThreadLoopResult loop_result = new SimpleThreadLoopResult();
@@ -107,6 +121,10 @@ public class OESimulator {
 		sim_count = 0;
 
 		range_accumulator = null;
+		carried_accumulator = null;
+		carried_count = 0;
+		carried_index_base = 0;
+		spec_accumulator = null;
 		return;
 	}
 
@@ -142,6 +160,8 @@ public class OESimulator {
 		sim_parameters = the_sim_parameters;
 		sim_executor = the_sim_executor;
 		sim_exec_timer = null;
+		carried_accumulator = null;
+		spec_accumulator = null;
 
 		// Set up the forecast grid, with advisory and mainshock magnitude
 
@@ -182,6 +202,8 @@ public class OESimulator {
 		sim_parameters = the_sim_parameters;
 		sim_executor = the_sim_exec_timer.get_executor();
 		sim_exec_timer = the_sim_exec_timer;
+		carried_accumulator = null;
+		spec_accumulator = null;
 
 		// Set up the forecast grid, with advisory and mainshock magnitude
 
@@ -207,6 +229,71 @@ public class OESimulator {
 
 
 
+	// Make the accumulator for the simulation.
+	// Parameters:
+	//  time_values = Time values that delimit the time bins.
+	//  mag_values = Magnitude values that delimit the magnitude bins.
+	// Returns the accumulator selected by the simulation parameters, which has not begun accumulation.
+
+	private OEEnsembleAccumulator make_sim_accumulator (double[] time_values, double[] mag_values) {
+
+		switch (sim_parameters.sim_accum_selection) {
+
+		default:
+			throw new IllegalArgumentException ("OESimulator.make_sim_accumulator: Invalid accumulator selection: sim_accum_selection = " + sim_parameters.sim_accum_selection);
+
+		case OEConstants.SEL_ACCUM_CUM_TIME_MAG: {
+			System.out.println ("Using accumulator: OEAccumCumTimeMag");
+			System.out.println ("Accumulator option: " + sim_parameters.sim_accum_option + " (" + OEConstants.get_infill_method_as_string(sim_parameters.sim_accum_option) + ")");
+			OEAccumCumTimeMag accum = new OEAccumCumTimeMag();
+			accum.setup (sim_parameters.sim_accum_option, time_values, mag_values);
+			return accum;
+		}
+
+		case OEConstants.SEL_ACCUM_VAR_TIME_MAG: {
+			System.out.println ("Using accumulator: OEAccumVarTimeMag");
+			System.out.println ("Accumulator option: " + sim_parameters.sim_accum_option + " (" + OEConstants.get_infill_method_as_string(sim_parameters.sim_accum_option) + ")");
+			OEAccumVarTimeMag accum = new OEAccumVarTimeMag();
+			accum.setup (sim_parameters.sim_accum_option, time_values, mag_values);
+			return accum;
+		}
+
+		case OEConstants.SEL_ACCUM_CUM_TIME_MAG_SKETCH: {
+			System.out.println ("Using accumulator: OEAccumCumTimeMag (sketch)");
+			System.out.println ("Accumulator option: " + sim_parameters.sim_accum_option + " (" + OEConstants.get_infill_method_as_string(sim_parameters.sim_accum_option) + ")");
+			System.out.println ("Sketch exact limit = " + OEConstants.DEF_SKETCH_EXACT_LIMIT + ", relative error = " + OEConstants.DEF_SKETCH_REL_ERROR);
+			OEAccumCumTimeMag accum = new OEAccumCumTimeMag();
+			accum.setup (sim_parameters.sim_accum_option, time_values, mag_values);
+			accum.setup_sketch (OEConstants.DEF_SKETCH_EXACT_LIMIT, OEConstants.DEF_SKETCH_REL_ERROR);
+			return accum;
+		}
+
+		case OEConstants.SEL_ACCUM_VAR_TIME_MAG_SKETCH: {
+			System.out.println ("Using accumulator: OEAccumVarTimeMag (sketch)");
+			System.out.println ("Accumulator option: " + sim_parameters.sim_accum_option + " (" + OEConstants.get_infill_method_as_string(sim_parameters.sim_accum_option) + ")");
+			System.out.println ("Sketch exact limit = " + OEConstants.DEF_SKETCH_EXACT_LIMIT + ", relative error = " + OEConstants.DEF_SKETCH_REL_ERROR);
+			OEAccumVarTimeMag accum = new OEAccumVarTimeMag();
+			accum.setup (sim_parameters.sim_accum_option, time_values, mag_values);
+			accum.setup_sketch (OEConstants.DEF_SKETCH_EXACT_LIMIT, OEConstants.DEF_SKETCH_REL_ERROR);
+			return accum;
+		}
+
+		case OEConstants.SEL_ACCUM_RATE_TIME_MAG: {
+			System.out.println ("Using accumulator: OEAccumRateTimeMag");
+			System.out.println ("Accumulator option: " + sim_parameters.sim_accum_option + " (" + OEConstants.get_rate_acc_meth_as_string(sim_parameters.sim_accum_option) + ")");
+			System.out.println ("Accumulator parameter (upfill_sec_reduce): " + sim_parameters.sim_accum_param_1);
+			OEAccumRateTimeMag accum = new OEAccumRateTimeMag();
+			accum.setup (null, sim_parameters.sim_accum_option, time_values, mag_values);
+			accum.set_upfill_sec_reduce (sim_parameters.sim_accum_param_1);
+			return accum;
+		}
+
+		}
+	}
+
+
+
+
 	// Run the simulation.
 	// Throws exception in case of failure.
 
@@ -222,12 +309,17 @@ public class OESimulator {
 		final long progress_time = ((sim_exec_timer == null) ? sim_parameters.sim_progress_time : sim_exec_timer.get_progress_time());
 
 		if (SimpleExecTimer.compare_remaining_time (max_runtime, 2000L) < 0) {
+			discard_carried_accumulator();
 			String msg = "Insufficient time remaining to begin simulation";
 			System.out.println ();
 			System.out.println (msg);
 			throw new OESimTimeoutException ("OESimulator.do_run_simulation: " + msg);
 		}
 
+		// Number of catalogs that remain to be generated, after any carried over from ranging
+
+		final int remaining_num_catalogs = Math.max (0, sim_parameters.sim_num_catalogs - ((carried_accumulator == null) ? 0 : carried_count));
+
 		// Say hello
 
 		System.out.println ();
@@ -235,12 +327,15 @@ public class OESimulator {
 		System.out.println ();
 		System.out.println (
 			"Generating "
-			+ sim_parameters.sim_num_catalogs
+			+ remaining_num_catalogs
 			+ " catalogs, using "
 			+ sim_executor.get_num_threads()
 			+ " threads, with "
 			+ ((max_runtime < 0L) ? ("unlimited runtime") : (((max_runtime + 500L) / 1000L) + " seconds maximum runtime"))
 		);
+		if (sim_parameters.sim_ensemble_seed != 0L) {
+			System.out.println ("Using per-catalog random streams, ensemble seed = " + sim_parameters.sim_ensemble_seed);
+		}
 		System.out.println ();
 		System.out.println ("Simulation range:");
 		System.out.println (sim_catalog_range.progress_string());
@@ -255,59 +350,45 @@ public class OESimulator {
 		sim_catalog_range.clip_tend (time_values[time_values.length - 1]);
 		sim_initializer.set_range (sim_catalog_range);
 
-		// Allocate and set up the desired accumulator
-
-		switch (sim_parameters.sim_accum_selection) {
-
-		default:
-			throw new IllegalArgumentException ("OESimulator.do_run_simulation: Invalid accumulator selection: sim_accum_selection = " + sim_parameters.sim_accum_selection);
-
-		case OEConstants.SEL_ACCUM_CUM_TIME_MAG: {
-			System.out.println ("Using accumulator: OEAccumCumTimeMag");
-			System.out.println ("Accumulator option: " + sim_parameters.sim_accum_option + " (" + OEConstants.get_infill_method_as_string(sim_parameters.sim_accum_option) + ")");
-			OEAccumCumTimeMag accum = new OEAccumCumTimeMag();
-			accum.setup (sim_parameters.sim_accum_option, time_values, mag_values);
-			sim_accumulator = accum;
-		}
-		break;
+		// Use the accumulator carried over from ranging if there is one, otherwise make the accumulator
+		// (a carried accumulator has already begun accumulation, so it is passed as a carried accumulator)
 
-		case OEConstants.SEL_ACCUM_VAR_TIME_MAG: {
-			System.out.println ("Using accumulator: OEAccumVarTimeMag");
-			System.out.println ("Accumulator option: " + sim_parameters.sim_accum_option + " (" + OEConstants.get_infill_method_as_string(sim_parameters.sim_accum_option) + ")");
-			OEAccumVarTimeMag accum = new OEAccumVarTimeMag();
-			accum.setup (sim_parameters.sim_accum_option, time_values, mag_values);
-			sim_accumulator = accum;
-		}
-		break;
+		ArrayList<OEEnsembleAccumulator> accumulators = new ArrayList<OEEnsembleAccumulator>();
+		ArrayList<OEEnsembleAccumulator> carried_accumulators = new ArrayList<OEEnsembleAccumulator>();
 
-		case OEConstants.SEL_ACCUM_RATE_TIME_MAG: {
-			System.out.println ("Using accumulator: OEAccumRateTimeMag");
-			System.out.println ("Accumulator option: " + sim_parameters.sim_accum_option + " (" + OEConstants.get_rate_acc_meth_as_string(sim_parameters.sim_accum_option) + ")");
-			System.out.println ("Accumulator parameter (upfill_sec_reduce): " + sim_parameters.sim_accum_param_1);
-			OEAccumRateTimeMag accum = new OEAccumRateTimeMag();
-			accum.setup (null, sim_parameters.sim_accum_option, time_values, mag_values);
-			accum.set_upfill_sec_reduce (sim_parameters.sim_accum_param_1);
-			sim_accumulator = accum;
-		}
-		break;
+		final OEEnsembleAccumulator the_carried_accumulator = carried_accumulator;
+		final int the_carried_count = ((the_carried_accumulator == null) ? 0 : carried_count);
+		carried_accumulator = null;
 
+		if (the_carried_accumulator != null) {
+			System.out.println ("Reusing " + the_carried_count + " catalogs from the final ranging attempt");
+			sim_accumulator = the_carried_accumulator;
+			carried_accumulators.add (sim_accumulator);
+		} else {
+			sim_accumulator = make_sim_accumulator (time_values, mag_values);
+			accumulators.add (sim_accumulator);
 		}
 
-		// Create the list of accumulators
-
-		ArrayList<OEEnsembleAccumulator> accumulators = new ArrayList<OEEnsembleAccumulator>();
-		accumulators.add (sim_accumulator);
-
-		// Set up the ensemble parameters
+		// Set up the ensemble parameters, for the catalogs not carried over
 
 		OEEnsembleParams ensemble_params = new OEEnsembleParams();
 
+		final int gen_num_catalogs = sim_parameters.sim_num_catalogs - the_carried_count;
+
 		ensemble_params.set (
 			sim_initializer,					// initializer
 			accumulators,						// accumulators
-			sim_parameters.sim_num_catalogs		// num_catalogs
+			gen_num_catalogs					// num_catalogs
 		);
 
+		ensemble_params.set_ensemble_seed (sim_parameters.sim_ensemble_seed);
+		ensemble_params.set_arena_trim_bytes (sim_parameters.eff_arena_trim_bytes());
+		ensemble_params.set_stream_scan (sim_parameters.sim_stream_scan);
+		ensemble_params.set_carried_accumulators (carried_accumulators);
+		if (the_carried_accumulator != null) {
+			ensemble_params.set_first_catalog (carried_index_base);
+		}
+
 		// Create the ensemble generator
 
 		OEEnsembleGenerator ensemble_generator = new OEEnsembleGenerator();
@@ -316,9 +397,51 @@ public class OESimulator {
 
 		ensemble_generator.set_upstream_loop_result (loop_result);
 
-		// Generate the catalogs
+		// Generate the catalogs, in rounds if adaptive stopping is enabled and the accumulator supports it
+
+		int catalog_count;
+
+		if (gen_num_catalogs <= 0) {
+			System.out.println ("No further catalogs are needed");
+			catalog_count = 0;
+		}
+		else if (sim_parameters.sim_adaptive_round > 0 && sim_accumulator instanceof OEAccumInterimReadout) {
+			System.out.println ("Adaptive stopping: round = " + sim_parameters.sim_adaptive_round + ", prob_tol = " + sim_parameters.sim_adaptive_prob_tol + ", frac_tol = " + sim_parameters.sim_adaptive_frac_tol);
+
+			final OEAccumInterimReadout interim_accum = (OEAccumInterimReadout)sim_accumulator;
+
+			OEEnsembleGenerator.RoundMonitor monitor = new OEEnsembleGenerator.RoundMonitor() {
+				@Override
+				public boolean is_converged (int gen_count) {
+					final int count = the_carried_count + gen_count;
+					if (count < sim_parameters.sim_min_num_catalogs) {
+						return false;
+					}
+					double ratio = sim_forecast_grid.calc_convergence_ratio (
+						interim_accum.make_interim_readout(),
+						count,
+						sim_parameters.sim_adaptive_prob_tol,
+						sim_parameters.sim_adaptive_frac_tol
+					);
+					System.out.println ("Convergence ratio after " + count + " ETAS catalogs = " + String.format ("%.3f", ratio));
+					return ratio <= 1.0;
+				}
+			};
+
+			catalog_count = ensemble_generator.generate_catalogs_adaptive (ensemble_params, sim_executor, max_runtime, progress_time, sim_parameters.sim_adaptive_round, monitor);
+		} else {
+			catalog_count = ensemble_generator.generate_all_catalogs (ensemble_params, sim_executor, max_runtime, progress_time);
+		}
+
+		// If the accumulator was carried over, end its accumulation, and count the carried catalogs
+
+		if (the_carried_accumulator != null) {
+			the_carried_accumulator.end_accumulation (sim_executor);
+			if (catalog_count >= 0) {
+				catalog_count += the_carried_count;
+			}
+		}
 
-		int catalog_count = ensemble_generator.generate_all_catalogs (ensemble_params, sim_executor, max_runtime, progress_time);
 		sim_count = catalog_count;
 
 		// Accumulate loop results
@@ -381,25 +504,34 @@ public class OESimulator {
 
 	private void do_run_ranging () throws OEException {
 
-		// Switch on ranging method
+		try {
+
+			// Switch on ranging method
 
-		switch (sim_parameters.range_method) {
+			switch (sim_parameters.range_method) {
 
-		default:
-			throw new IllegalArgumentException ("OESimulator.do_run_ranging: Invalid ranging method: range_method = " + sim_parameters.range_method);
+			default:
+				throw new IllegalArgumentException ("OESimulator.do_run_ranging: Invalid ranging method: range_method = " + sim_parameters.range_method);
 
-		case OEConstants.RANGING_METH_SIM:
-			do_run_ranging_v1();
-			break;
+			case OEConstants.RANGING_METH_SIM:
+				do_run_ranging_v1();
+				break;
 
-		case OEConstants.RANGING_METH_SEED_EST:
-			do_run_ranging_v2();
-			break;
+			case OEConstants.RANGING_METH_SEED_EST:
+				do_run_ranging_v2();
+				break;
 
-		case OEConstants.RANGING_METH_VAR_SEED_EST:
-			do_run_ranging_v3();
-			break;
+			case OEConstants.RANGING_METH_VAR_SEED_EST:
+				do_run_ranging_v3();
+				break;
+
+			}
+
+		} finally {
+
+			// If ranging did not complete, or its last attempt was not carried over, discard the speculative accumulator
 
+			discard_spec_accumulator();
 		}
 
 		return;
@@ -408,6 +540,32 @@ public class OESimulator {
 
 
 
+	// Discard the speculative accumulator from a ranging attempt, if there is one.
+
+	private void discard_spec_accumulator () {
+		if (spec_accumulator != null) {
+			spec_accumulator.discard_accumulation();
+			spec_accumulator = null;
+		}
+		return;
+	}
+
+
+
+
+	// Discard the accumulator carried over from ranging, if there is one.
+
+	private void discard_carried_accumulator () {
+		if (carried_accumulator != null) {
+			carried_accumulator.discard_accumulation();
+			carried_accumulator = null;
+		}
+		return;
+	}
+
+
+
+
 	// Run the ranging, version 1.
 	// Throws exception in case of failure.
 
@@ -433,6 +591,11 @@ public class OESimulator {
 
 		final double[] ranging_time_values = sim_forecast_grid.get_ranging_time_values (t_forecast);
 
+		// Get the time and magnitude bins for the simulation, for carrying catalogs over from ranging
+
+		final double[] time_values = sim_forecast_grid.get_time_values (t_forecast);
+		final double[] mag_values = sim_forecast_grid.get_mag_values();
+
 		// Get the b-value and scaling magnitude from the initializer
 
 		final double b_value = sim_initializer.get_b_value();
@@ -471,6 +634,15 @@ public class OESimulator {
 
 		boolean f_ranging = true;
 
+		// The range and number of catalogs for the speculative accumulator (see spec_accumulator)
+
+		OECatalogRange spec_range = null;
+		int spec_count = 0;
+
+		// True if the catalogs of the previous attempt survived to the end of the range
+
+		boolean f_prev_full_survival = false;
+
 		while (f_ranging) {
 
 			// Count the attempt
@@ -537,6 +709,26 @@ public class OESimulator {
 			ArrayList<OEEnsembleAccumulator> accumulators = new ArrayList<OEEnsembleAccumulator>();
 			accumulators.add (range_accumulator);
 
+			// Any attempt after the first can be the last, and if the simulation then uses the same
+			// range, its catalogs are valid simulation catalogs.  The range stays the same only if the
+			// catalogs survive to the end of the range, so if the previous attempt's catalogs did, also
+			// feed this attempt's catalogs to an accumulator for the simulation, which is begun here
+			// and then either carried over to the simulation or discarded
+
+			ArrayList<OEEnsembleAccumulator> carried_accumulators = new ArrayList<OEEnsembleAccumulator>();
+
+			discard_spec_accumulator();
+			spec_range = null;
+			spec_count = 0;
+
+			if (attempt > 1 && f_prev_full_survival) {
+				System.out.println ("Also accumulating for the simulation, in case this is the last attempt");
+				spec_accumulator = make_sim_accumulator (time_values, mag_values);
+				spec_accumulator.begin_accumulation (Math.max (sim_parameters.sim_num_catalogs, sim_parameters.eff_range_num_catalogs()));
+				spec_range = (new OECatalogRange()).copy_from (sim_catalog_range);
+				carried_accumulators.add (spec_accumulator);
+			}
+
 			// Set up the ensemble parameters
 
 			OEEnsembleParams ensemble_params = new OEEnsembleParams();
@@ -547,6 +739,11 @@ public class OESimulator {
 				sim_parameters.eff_range_num_catalogs()	// num_catalogs
 			);
 
+			ensemble_params.set_ensemble_seed (sim_parameters.sim_ensemble_seed);
+			ensemble_params.set_arena_trim_bytes (sim_parameters.eff_arena_trim_bytes());
+			ensemble_params.set_stream_scan (sim_parameters.sim_stream_scan);
+			ensemble_params.set_carried_accumulators (carried_accumulators);
+
 			// Create the ensemble generator
 
 			OEEnsembleGenerator ensemble_generator = new OEEnsembleGenerator();
@@ -558,6 +755,7 @@ public class OESimulator {
 			// Generate the catalogs
 
 			int catalog_count = ensemble_generator.generate_all_catalogs (ensemble_params, sim_executor, max_runtime, progress_time);
+			spec_count = catalog_count;
 
 			// Accumulate loop results
 
@@ -593,6 +791,8 @@ public class OESimulator {
 				// Rescale the range
 
 				sim_catalog_range.set_rescaled_min_mag (b_value, r);
+
+				f_prev_full_survival = false;
 			}
 
 			// Otherwise, there are enough catalogs to examine the results
@@ -611,6 +811,8 @@ public class OESimulator {
 				System.out.println ();
 				System.out.println ("Catalog survival duration = " + survival_duration + " days, with exceedence fraction = " + sim_parameters.range_exceed_fraction);
 
+				f_prev_full_survival = (survival_bins == ranging_time_values.length - 1);
+
 				// Check for minimum required duration
 
 				if (survival_duration + OEConstants.GEN_TIME_EPS < sim_parameters.range_min_duration) {
@@ -712,6 +914,12 @@ public class OESimulator {
 				}
 			}
 
+			// If this is not the last attempt, its catalogs cannot be carried over
+
+			if (f_ranging) {
+				discard_spec_accumulator();
+			}
+
 			// Write the new range into the initializer
 
 			sim_initializer.set_range (sim_catalog_range);
@@ -722,6 +930,25 @@ public class OESimulator {
 
 		//range_accumulator = null;
 
+		// If the simulation will use the same range as the last attempt, carry its catalogs over to the simulation
+		// (the simulation clips the range to the last time value, so compare to the clipped range)
+
+		if (spec_accumulator != null) {
+			OECatalogRange sim_range = (new OECatalogRange()).copy_from (sim_catalog_range);
+			sim_range.clip_tend (time_values[time_values.length - 1]);
+
+			if (sim_range.check_range_equal (spec_range)) {
+				carried_accumulator = spec_accumulator;
+				carried_count = spec_count;
+				carried_index_base = sim_parameters.eff_range_num_catalogs();
+				spec_accumulator = null;
+				System.out.println ();
+				System.out.println ("Carrying " + carried_count + " catalogs from the last ranging attempt over to the simulation");
+			} else {
+				discard_spec_accumulator();
+			}
+		}
+
 		// Say goodbye
 
 		System.out.println ();
@@ -895,6 +1122,10 @@ public class OESimulator {
 			req_catalog_count					// num_catalogs
 		);
 
+		ensemble_params.set_ensemble_seed (sim_parameters.sim_ensemble_seed);
+		ensemble_params.set_arena_trim_bytes (sim_parameters.eff_arena_trim_bytes());
+		ensemble_params.set_stream_scan (sim_parameters.sim_stream_scan);
+
 		// Create the ensemble generator
 
 		OEEnsembleGenerator ensemble_generator = new OEEnsembleGenerator();
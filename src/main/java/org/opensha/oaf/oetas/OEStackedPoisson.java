@@ -2,6 +2,18 @@ package org.opensha.oaf.oetas;
 
 import java.util.Arrays;
 
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
 // For Colt 0.9.4
 import cern.jet.stat.tdouble.Probability;
 import cern.jet.stat.tdouble.Gamma;
@@ -669,6 +681,64 @@ public class OEStackedPoisson {
 
 
 
+	// Load the cached distributions from a table file.
+	// Parameters:
+	//  table = Contents of the table file, positioned just after the header.
+	// The value and mean ranges must already have been made, and the table must
+	// have been written by an object with the same parameters.
+	// Throws IllegalArgumentException if the table is inconsistent with the ranges.
+	// Throws BufferUnderflowException if the table is truncated.
+
+	private void load_cached (ByteBuffer table) {
+
+		// The range lengths recorded in the table must match ours
+
+		int table_value_length = table.getInt();
+		int table_mean_length = table.getInt();
+
+		if (!( table_value_length == value_range.length && table_mean_length == mean_range.length )) {
+			throw new IllegalArgumentException ("OEStackedPoisson.load_cached: Table range length mismatch: value_range.length = " + value_range.length + ", table_value_length = " + table_value_length + ", mean_range.length = " + mean_range.length + ", table_mean_length = " + table_mean_length);
+		}
+
+		// Allocate the cache arrays
+
+		cached_pdf = new double[mean_range.length][];
+		cached_offset = new int[mean_range.length];
+		cached_upper_offset = new int[mean_range.length];
+		cached_total = new double[mean_range.length];
+		cached_words = 0L;
+
+		// Read the per-mean values
+
+		for (int mean_ix = 0; mean_ix < mean_range.length; ++mean_ix) {
+			int off = table.getInt();
+			int upper_off = table.getInt();
+			int len = table.getInt();
+
+			if (!( off >= 0 && len > 0 && off + len <= value_range.length && upper_off >= off && upper_off < off + len )) {
+				throw new IllegalArgumentException ("OEStackedPoisson.load_cached: Invalid table entry: mean_ix = " + mean_ix + ", off = " + off + ", upper_off = " + upper_off + ", len = " + len);
+			}
+
+			cached_offset[mean_ix] = off;
+			cached_upper_offset[mean_ix] = upper_off;
+			cached_total[mean_ix] = table.getDouble();
+			cached_pdf[mean_ix] = new double[len];
+			cached_words += len;
+		}
+
+		// Read the distributions, which are stored consecutively
+
+		DoubleBuffer pdf_data = table.asDoubleBuffer();
+		for (int mean_ix = 0; mean_ix < mean_range.length; ++mean_ix) {
+			pdf_data.get (cached_pdf[mean_ix]);
+		}
+
+		return;
+	}
+
+
+
+
 	// Constructor, specifying all parameters.
 
 	public OEStackedPoisson (
@@ -680,6 +750,36 @@ public class OEStackedPoisson {
 		double the_upper_cdf,
 		double the_max_upper_cdf
 	) {
+		this (
+			the_value_precision,
+			the_value_decades,
+			the_mean_precision,
+			the_mean_decades,
+			the_lower_cdf,
+			the_upper_cdf,
+			the_max_upper_cdf,
+			null
+		);
+	}
+
+
+
+
+	// Constructor, specifying all parameters, and optionally a table file.
+	// If table is null, the cached distributions are computed.
+	// Otherwise, table is the contents of a table file positioned just after the
+	// header, and the cached distributions are read from it (see read_table_file).
+
+	private OEStackedPoisson (
+		double the_value_precision,
+		int the_value_decades,
+		double the_mean_precision,
+		int the_mean_decades,
+		double the_lower_cdf,
+		double the_upper_cdf,
+		double the_max_upper_cdf,
+		ByteBuffer table
+	) {
 
 		// Validate parameters
 
@@ -725,9 +825,13 @@ public class OEStackedPoisson {
 		make_value_range();
 		make_mean_range();
 
-		// Make the cached distributions
+		// Make the cached distributions, or load them from the table
 
-		make_cached();
+		if (table == null) {
+			make_cached();
+		} else {
+			load_cached (table);
+		}
 	}
 
 
@@ -779,10 +883,26 @@ public class OEStackedPoisson {
 
 	// Get the singleton.
 	// If it doesn't exist, create one with default parameters.
+	// If a table directory is configured (see get_table_dir), the singleton is
+	// loaded from a table file in that directory, if possible.
 
 	public static synchronized OEStackedPoisson get_singleton () {
 		if (singleton == null) {
-			singleton = new OEStackedPoisson();
+			Path table_dir = get_table_dir();
+			if (table_dir == null) {
+				singleton = new OEStackedPoisson();
+			} else {
+				singleton = load_or_build (
+					table_dir,
+					DEF_VALUE_PREC,
+					DEF_VALUE_DECADES,
+					DEF_MEAN_PREC,
+					DEF_MEAN_DECADES,
+					DEF_LOWER_CDF,
+					DEF_UPPER_CDF,
+					DEF_MAX_UPPER_CDF
+				);
+			}
 		}
 		return singleton;
 	}
@@ -799,6 +919,347 @@ public class OEStackedPoisson {
 
 
 
+	//----- Table files -----
+
+	// The cached distributions are expensive to compute, so they can be saved in a
+	// binary table file, and loaded by later processes instead of being rebuilt.
+	// A table file is memory-mapped read-only when it is loaded, so all processes on
+	// a host that use the same file share a single copy in the operating system's
+	// page cache.  The distributions are copied out of the mapping into ordinary
+	// arrays, because the accumulators index them in their inner loops.
+	//
+	// Table file format (all values big-endian):
+	//  long magic = TABLE_FILE_MAGIC
+	//  int version = TABLE_FILE_VER_1
+	//  double value_precision, int value_decades,
+	//  double mean_precision, int mean_decades,
+	//  double lower_cdf, double upper_cdf, double max_upper_cdf
+	//  int value_range.length, int mean_range.length
+	//  For each mean: int cached_offset, int cached_upper_offset, int cached_pdf length, double cached_total
+	//  For each mean: the elements of cached_pdf
+	//
+	// A table file is identified by its parameters, which are encoded in its filename
+	// (see make_table_filename).  The parameters are also stored in the file, and
+	// checked when it is loaded.
+
+	// Magic number at the start of a table file (ASCII "OESPTABL").
+
+	private static final long TABLE_FILE_MAGIC = 0x4F4553505441424CL;
+
+	// Table file format version.
+
+	private static final int TABLE_FILE_VER_1 = 115001;
+
+	// Environment variable which contains the directory that holds table files.
+	// If defined, get_singleton() loads its table from that directory when possible,
+	// and writes the table there after building it.
+
+	public static final String TABLE_DIR_ENV_VAR = "AAFS_POISSON_TABLE_DIR";
+
+
+
+
+	// Make the filename of the table file for the given parameters.
+
+	public static String make_table_filename (
+		double the_value_precision,
+		int the_value_decades,
+		double the_mean_precision,
+		int the_mean_decades,
+		double the_lower_cdf,
+		double the_upper_cdf,
+		double the_max_upper_cdf
+	) {
+		return "oesp_" + the_value_precision
+			+ "_" + the_value_decades
+			+ "_" + the_mean_precision
+			+ "_" + the_mean_decades
+			+ "_" + the_lower_cdf
+			+ "_" + the_upper_cdf
+			+ "_" + the_max_upper_cdf
+			+ ".bin";
+	}
+
+
+
+
+	// Return true if this object was created with the given parameters.
+
+	public final boolean has_params (
+		double the_value_precision,
+		int the_value_decades,
+		double the_mean_precision,
+		int the_mean_decades,
+		double the_lower_cdf,
+		double the_upper_cdf,
+		double the_max_upper_cdf
+	) {
+		return value_precision == the_value_precision
+			&& value_decades == the_value_decades
+			&& mean_precision == the_mean_precision
+			&& mean_decades == the_mean_decades
+			&& lower_cdf == the_lower_cdf
+			&& upper_cdf == the_upper_cdf
+			&& max_upper_cdf == the_max_upper_cdf;
+	}
+
+
+
+
+	// Write the table file.
+	// Parameters:
+	//  file = File to write.  If it exists, it is replaced.
+	// The file is written under a temporary name and then renamed, so that another
+	// process never sees a partially-written file.
+
+	public void write_table_file (Path file) throws IOException {
+
+		// Compute the file size
+
+		long file_size = 8L + 4L + 8L + 4L + 8L + 4L + 8L + 8L + 8L + 4L + 4L;
+		file_size += ((long)mean_range.length) * (4L + 4L + 4L + 8L);
+		file_size += cached_words * 8L;
+
+		if (file_size > (long)Integer.MAX_VALUE) {
+			throw new IOException ("OEStackedPoisson.write_table_file: Table too large: file_size = " + file_size);
+		}
+
+		// Fill a buffer with the file contents
+
+		ByteBuffer buf = ByteBuffer.allocate ((int)file_size);
+
+		buf.putLong (TABLE_FILE_MAGIC);
+		buf.putInt (TABLE_FILE_VER_1);
+
+		buf.putDouble (value_precision);
+		buf.putInt (value_decades);
+		buf.putDouble (mean_precision);
+		buf.putInt (mean_decades);
+		buf.putDouble (lower_cdf);
+		buf.putDouble (upper_cdf);
+		buf.putDouble (max_upper_cdf);
+
+		buf.putInt (value_range.length);
+		buf.putInt (mean_range.length);
+
+		for (int mean_ix = 0; mean_ix < mean_range.length; ++mean_ix) {
+			buf.putInt (cached_offset[mean_ix]);
+			buf.putInt (cached_upper_offset[mean_ix]);
+			buf.putInt (cached_pdf[mean_ix].length);
+			buf.putDouble (cached_total[mean_ix]);
+		}
+
+		for (int mean_ix = 0; mean_ix < mean_range.length; ++mean_ix) {
+			for (int j = 0; j < cached_pdf[mean_ix].length; ++j) {
+				buf.putDouble (cached_pdf[mean_ix][j]);
+			}
+		}
+
+		buf.flip();
+
+		// Write to a temporary file in the same directory, then rename it
+
+		Path dir = file.toAbsolutePath().getParent();
+		Path temp_file = Files.createTempFile (dir, "oesp_", ".tmp");
+
+		try {
+			try (
+				FileChannel channel = FileChannel.open (temp_file, StandardOpenOption.WRITE);
+			){
+				while (buf.hasRemaining()) {
+					channel.write (buf);
+				}
+				channel.force (false);
+			}
+
+			try {
+				Files.move (temp_file, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move (temp_file, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists (temp_file);
+		}
+
+		return;
+	}
+
+
+
+
+	// Read a table file.
+	// Parameters:
+	//  file = File to read.
+	// Returns a new object, with the parameters and cached distributions from the file.
+	// The file is memory-mapped read-only.
+	// Throws IOException if the file cannot be read, or is not a valid table file.
+
+	public static OEStackedPoisson read_table_file (Path file) throws IOException {
+
+		// Map the file
+
+		ByteBuffer table;
+		try (
+			FileChannel channel = FileChannel.open (file, StandardOpenOption.READ);
+		){
+			table = channel.map (FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+		}
+
+		// Parse it
+
+		try {
+
+			// Check magic number and version
+
+			long magic = table.getLong();
+			if (magic != TABLE_FILE_MAGIC) {
+				throw new IOException ("OEStackedPoisson.read_table_file: Not a table file: " + file);
+			}
+
+			int ver = table.getInt();
+			if (ver != TABLE_FILE_VER_1) {
+				throw new IOException ("OEStackedPoisson.read_table_file: Unsupported table file version: ver = " + ver + ", file = " + file);
+			}
+
+			// Read the parameters
+
+			double the_value_precision = table.getDouble();
+			int the_value_decades = table.getInt();
+			double the_mean_precision = table.getDouble();
+			int the_mean_decades = table.getInt();
+			double the_lower_cdf = table.getDouble();
+			double the_upper_cdf = table.getDouble();
+			double the_max_upper_cdf = table.getDouble();
+
+			// Construct the object, which reads the rest of the table
+
+			return new OEStackedPoisson (
+				the_value_precision,
+				the_value_decades,
+				the_mean_precision,
+				the_mean_decades,
+				the_lower_cdf,
+				the_upper_cdf,
+				the_max_upper_cdf,
+				table
+			);
+		}
+		catch (BufferUnderflowException e) {
+			throw new IOException ("OEStackedPoisson.read_table_file: Table file is truncated: " + file, e);
+		}
+		catch (IllegalArgumentException e) {
+			throw new IOException ("OEStackedPoisson.read_table_file: Invalid table file: " + file, e);
+		}
+	}
+
+
+
+
+	// Load an object from a table file in the given directory, or build it if needed.
+	// Parameters:
+	//  table_dir = Directory that holds table files.
+	//  the_xxxx = Parameters, as for the constructor.
+	// If the directory contains a valid table file for the parameters, the object is
+	// loaded from it.  Otherwise, the object is built and then written to the directory,
+	// so that later processes can load it.
+	// Note: Failure to read or write the table file is not an error, because the object
+	// can always be built.
+
+	public static OEStackedPoisson load_or_build (
+		Path table_dir,
+		double the_value_precision,
+		int the_value_decades,
+		double the_mean_precision,
+		int the_mean_decades,
+		double the_lower_cdf,
+		double the_upper_cdf,
+		double the_max_upper_cdf
+	) {
+		Path file = table_dir.resolve (make_table_filename (
+			the_value_precision,
+			the_value_decades,
+			the_mean_precision,
+			the_mean_decades,
+			the_lower_cdf,
+			the_upper_cdf,
+			the_max_upper_cdf
+		));
+
+		// Try to load from the table file
+
+		if (Files.isRegularFile (file)) {
+			try {
+				OEStackedPoisson result = read_table_file (file);
+				if (result.has_params (
+					the_value_precision,
+					the_value_decades,
+					the_mean_precision,
+					the_mean_decades,
+					the_lower_cdf,
+					the_upper_cdf,
+					the_max_upper_cdf
+				)) {
+					return result;
+				}
+			}
+			catch (IOException e) {
+				// fall thru
+			}
+		}
+
+		// Build the object
+
+		OEStackedPoisson result = new OEStackedPoisson (
+			the_value_precision,
+			the_value_decades,
+			the_mean_precision,
+			the_mean_decades,
+			the_lower_cdf,
+			the_upper_cdf,
+			the_max_upper_cdf
+		);
+
+		// Try to write the table file
+
+		try {
+			result.write_table_file (file);
+		}
+		catch (IOException e) {
+			// fall thru
+		}
+
+		return result;
+	}
+
+
+
+
+	// Get the directory that holds table files, from the environment variable TABLE_DIR_ENV_VAR.
+	// Returns null if the environment variable is not defined, or is not an existing directory.
+
+	public static Path get_table_dir () {
+		try {
+			String var = System.getenv (TABLE_DIR_ENV_VAR);
+			if (var != null) {
+				var = var.trim();
+				if (var.length() > 0) {
+					Path table_dir = Paths.get (var);
+					if (Files.isDirectory (table_dir)) {
+						return table_dir;
+					}
+				}
+			}
+		}
+		catch (Exception e) {
+			// fall thru
+		}
+		return null;
+	}
+
+
+
+
 	// Produce a summary string.
 
 	public String summary_string () {
@@ -934,10 +1395,21 @@ public class OEStackedPoisson {
 		//--- The distribution ---
 
 		// The probability distribution.
-		// Dimension: prob_dist[value_range.length]
+		// Dimension: prob_dist[dist_base + value_range.length]
+		// The distribution occupies the segment of prob_dist beginning at dist_base.
+		// If the accumulator is part of an AccumulatorBlock, then prob_dist is the
+		// flat array shared by all accumulators in the block.
 
 		private double[] prob_dist;
 
+		// The index in prob_dist where the distribution begins.
+
+		private int dist_base;
+
+		// The length of the distribution, equal to value_range.length.
+
+		private int dist_length;
+
 		// The probability of occurrence (the complement of the probability of zero).
 
 		private double prob_occur;
@@ -956,7 +1428,7 @@ public class OEStackedPoisson {
 		private int support_size;
 
 		// The size of the initial segment of prob_dist being used for the current operation.
-		// Must satisfy: 1 <= active_size <= prob_dist.length
+		// Must satisfy: 1 <= active_size <= dist_length
 
 		private int active_size;
 
@@ -996,7 +1468,7 @@ public class OEStackedPoisson {
 			// If within the active range, add to probability distribution
 
 			if (value_ix < active_size) {
-				prob_dist[value_ix] += weight;
+				prob_dist[dist_base + value_ix] += weight;
 
 				// Adjust support if needed
 
@@ -1032,7 +1504,7 @@ public class OEStackedPoisson {
 			// If within the active range, add to probability distribution
 
 			if (value_ix < active_size) {
-				prob_dist[value_ix] += 1.0;
+				prob_dist[dist_base + value_ix] += 1.0;
 
 				// Adjust support if needed
 
@@ -1073,7 +1545,7 @@ public class OEStackedPoisson {
 			// If rounded mean is zero, just add probability to zero value
 
 			if (mean_ix < 0) {
-				prob_dist[0] += weight;
+				prob_dist[dist_base + 0] += weight;
 
 				if (support_size == 0) {
 					support_size = 1;
@@ -1099,7 +1571,7 @@ public class OEStackedPoisson {
 				// Add the cached distribution, with weight
 
 				for (int ix = 0; value_ix < value_ix_top; ++ix, ++value_ix) {
-					prob_dist[value_ix] += (cached_dist[ix] * weight);
+					prob_dist[dist_base + value_ix] += (cached_dist[ix] * weight);
 				}
 
 				// Adjust support if needed
@@ -1134,7 +1606,7 @@ public class OEStackedPoisson {
 			// If rounded mean is zero, just add probability to zero value
 
 			if (mean_ix < 0) {
-				prob_dist[0] += 1.0;
+				prob_dist[dist_base + 0] += 1.0;
 
 				if (support_size == 0) {
 					support_size = 1;
@@ -1160,7 +1632,7 @@ public class OEStackedPoisson {
 				// Add the cached distribution, with weight
 
 				for (int ix = 0; value_ix < value_ix_top; ++ix, ++value_ix) {
-					prob_dist[value_ix] += cached_dist[ix];
+					prob_dist[dist_base + value_ix] += cached_dist[ix];
 				}
 
 				// Adjust support if needed
@@ -1251,7 +1723,7 @@ public class OEStackedPoisson {
 
 				// Add the first element of cached distribution
 
-				prob_dist[value_ix] += (cached_dist[0] * weight);
+				prob_dist[dist_base + value_ix] += (cached_dist[0] * weight);
 
 				// Loop over remaining elements of cached distribution
 
@@ -1282,7 +1754,7 @@ public class OEStackedPoisson {
 
 					// Add element of cached distribution
 
-					prob_dist[value_ix] += (cached_dist[ix] * weight);
+					prob_dist[dist_base + value_ix] += (cached_dist[ix] * weight);
 				}
 
 				// Adjust support if needed, value_ix contains the last element we wrote into
@@ -1351,7 +1823,7 @@ public class OEStackedPoisson {
 
 				// Add the first element of cached distribution
 
-				prob_dist[value_ix] += cached_dist[0];
+				prob_dist[dist_base + value_ix] += cached_dist[0];
 
 				// Loop over remaining elements of cached distribution
 
@@ -1382,7 +1854,7 @@ public class OEStackedPoisson {
 
 					// Add element of cached distribution
 
-					prob_dist[value_ix] += cached_dist[ix];
+					prob_dist[dist_base + value_ix] += cached_dist[ix];
 				}
 
 				// Adjust support if needed, value_ix contains the last element we wrote into
@@ -1425,7 +1897,7 @@ public class OEStackedPoisson {
 			// If rounded mean is zero, just add probability to zero value
 
 			if (mean_ix < 0) {
-				prob_dist[0] += weight;
+				prob_dist[dist_base + 0] += weight;
 
 				if (support_size == 0) {
 					support_size = 1;
@@ -1451,7 +1923,7 @@ public class OEStackedPoisson {
 				// Add the cached distribution, with weight
 
 				for (int ix = 0; value_ix < value_ix_top; ++ix, ++value_ix) {
-					prob_dist[value_ix] += (cached_dist[ix] * weight);
+					prob_dist[dist_base + value_ix] += (cached_dist[ix] * weight);
 				}
 
 				// Adjust support if needed
@@ -1486,7 +1958,7 @@ public class OEStackedPoisson {
 			// If rounded mean is zero, just add probability to zero value
 
 			if (mean_ix < 0) {
-				prob_dist[0] += 1.0;
+				prob_dist[dist_base + 0] += 1.0;
 
 				if (support_size == 0) {
 					support_size = 1;
@@ -1512,7 +1984,7 @@ public class OEStackedPoisson {
 				// Add the cached distribution, with weight
 
 				for (int ix = 0; value_ix < value_ix_top; ++ix, ++value_ix) {
-					prob_dist[value_ix] += cached_dist[ix];
+					prob_dist[dist_base + value_ix] += cached_dist[ix];
 				}
 
 				// Adjust support if needed
@@ -1604,7 +2076,7 @@ public class OEStackedPoisson {
 
 				// Add the first element of cached distribution
 
-				prob_dist[value_ix] += (cached_dist[0] * weight);
+				prob_dist[dist_base + value_ix] += (cached_dist[0] * weight);
 
 				// Loop over remaining elements of cached distribution
 
@@ -1635,7 +2107,7 @@ public class OEStackedPoisson {
 
 					// Add element of cached distribution
 
-					prob_dist[value_ix] += (cached_dist[ix] * weight);
+					prob_dist[dist_base + value_ix] += (cached_dist[ix] * weight);
 				}
 
 				// Adjust support if needed, value_ix contains the last element we wrote into
@@ -1704,7 +2176,7 @@ public class OEStackedPoisson {
 
 				// Add the first element of cached distribution
 
-				prob_dist[value_ix] += cached_dist[0];
+				prob_dist[dist_base + value_ix] += cached_dist[0];
 
 				// Loop over remaining elements of cached distribution
 
@@ -1735,7 +2207,7 @@ public class OEStackedPoisson {
 
 					// Add element of cached distribution
 
-					prob_dist[value_ix] += cached_dist[ix];
+					prob_dist[dist_base + value_ix] += cached_dist[ix];
 				}
 
 				// Adjust support if needed, value_ix contains the last element we wrote into
@@ -1760,6 +2232,8 @@ public class OEStackedPoisson {
 
 		public Accumulator () {
 			prob_dist = new double[value_range.length];
+			dist_base = 0;
+			dist_length = value_range.length;
 			OEArraysCalc.zero_array (prob_dist);
 
 			prob_occur = 0.0;
@@ -1767,24 +2241,47 @@ public class OEStackedPoisson {
 			total_mean = 0.0;
 
 			support_size = 1;
-			active_size = prob_dist.length;
+			active_size = dist_length;
+		}
+
+
+
+
+		// Constructor, using a segment of a flat array to hold the distribution.
+		// Parameters:
+		//  the_prob_dist = Flat array, which must be zero-initialized in the range
+		//    the_dist_base through the_dist_base + value_range.length - 1.
+		//  the_dist_base = Index in the_prob_dist where the distribution begins.
+		// Note: This is used by AccumulatorBlock.
+
+		private Accumulator (double[] the_prob_dist, int the_dist_base) {
+			prob_dist = the_prob_dist;
+			dist_base = the_dist_base;
+			dist_length = value_range.length;
+
+			prob_occur = 0.0;
+			total_weight = 0.0;
+			total_mean = 0.0;
+
+			support_size = 1;
+			active_size = dist_length;
 		}
 
 
 
 
 		// Clear the accumulator to zero.
-		// This implictly sets that active region to the entire prob_dist array.
+		// This implictly sets that active region to the entire distribution.
 
 		public final void clear () {
-			OEArraysCalc.zero_array (prob_dist, 0, support_size);
+			OEArraysCalc.zero_array (prob_dist, dist_base, dist_base + support_size);
 
 			prob_occur = 0.0;
 			total_weight = 0.0;
 			total_mean = 0.0;
 
 			support_size = 1;
-			active_size = prob_dist.length;
+			active_size = dist_length;
 
 			return;
 		}
@@ -1798,7 +2295,7 @@ public class OEStackedPoisson {
 		//  max_value = The largest value of any point mass, must be >= 0.
 
 		public final void clear (double max_lambda, int max_shift, int max_value) {
-			OEArraysCalc.zero_array (prob_dist, 0, support_size);
+			OEArraysCalc.zero_array (prob_dist, dist_base, dist_base + support_size);
 
 			prob_occur = 0.0;
 			total_weight = 0.0;
@@ -1826,7 +2323,7 @@ public class OEStackedPoisson {
 
 			// The active region extends to that index, inclusive (note it is at least 1)
 
-			active_size = Math.min (prob_dist.length, value_ix + 1);
+			active_size = Math.min (dist_length, value_ix + 1);
 
 			return;
 		}
@@ -1838,8 +2335,9 @@ public class OEStackedPoisson {
 		// Note that only the support is converted.
 
 		public final void cumulate () {
-			double total = prob_dist[0];
-			for (int ix = 1; ix < support_size; ++ix) {
+			final int ix_top = dist_base + support_size;
+			double total = prob_dist[dist_base];
+			for (int ix = dist_base + 1; ix < ix_top; ++ix) {
 				total += prob_dist[ix];
 				prob_dist[ix] = total;
 			}
@@ -1857,7 +2355,7 @@ public class OEStackedPoisson {
 			// Variable summary
 
 			result.append ("OEStackedPoisson.Accumulator:" + "\n");
-			result.append ("prob_dist.length = " + prob_dist.length + "\n");
+			result.append ("dist_length = " + dist_length + "\n");
 			result.append ("prob_occur = " + prob_occur + "\n");
 			result.append ("total_weight = " + total_weight + "\n");
 			result.append ("total_mean = " + total_mean + "\n");
@@ -1871,7 +2369,7 @@ public class OEStackedPoisson {
 
 
 		// Produce a detail string.
-		// If f_full is true, display the entirety of prob_dist instead of just the support.
+		// If f_full is true, display the entirety of the distribution instead of just the support.
 
 		public String detail_acc_string (boolean f_full) {
 			StringBuilder result = new StringBuilder();
@@ -1879,7 +2377,7 @@ public class OEStackedPoisson {
 			// Variable summary
 
 			result.append ("OEStackedPoisson.Accumulator:" + "\n");
-			result.append ("prob_dist.length = " + prob_dist.length + "\n");
+			result.append ("dist_length = " + dist_length + "\n");
 			result.append ("prob_occur = " + prob_occur + "\n");
 			result.append ("total_weight = " + total_weight + "\n");
 			result.append ("total_mean = " + total_mean + "\n");
@@ -1896,7 +2394,7 @@ public class OEStackedPoisson {
 					value_ix,
 					value_range[value_ix],
 					value_split[value_ix],
-					prob_dist[value_ix]
+					prob_dist[dist_base + value_ix]
 				));
 			}
 
@@ -1916,8 +2414,10 @@ public class OEStackedPoisson {
 			support_size = Math.max (support_size, other.support_size);
 			active_size = Math.max (active_size, other.active_size);
 
+			final double[] other_dist = other.prob_dist;
+			final int other_base = other.dist_base;
 			for (int ix = 0; ix < other.support_size; ++ix) {
-				prob_dist[ix] += other.prob_dist[ix];
+				prob_dist[dist_base + ix] += other_dist[other_base + ix];
 			}
 
 			return;
@@ -1965,7 +2465,7 @@ public class OEStackedPoisson {
 		// Note: The cumulate() function must have been called.
 
 		public final int get_fractile (double frac) {
-			int value_ix = Math.min (OEArraysCalc.bsearch_array (prob_dist, frac * total_weight, 0, support_size), prob_dist.length - 1);
+			int value_ix = Math.min (OEArraysCalc.bsearch_array (prob_dist, frac * total_weight, dist_base, dist_base + support_size) - dist_base, dist_length - 1);
 			return value_range[value_ix];
 		}
 
@@ -1994,7 +2494,7 @@ public class OEStackedPoisson {
 				return 1.0;
 			}
 
-			return prob_dist[value_ix] / total_weight;
+			return prob_dist[dist_base + value_ix] / total_weight;
 		}
 
 
@@ -2030,7 +2530,7 @@ public class OEStackedPoisson {
 				return 0.0;
 			}
 
-			return 1.0 - (prob_dist[value_ix] / total_weight);
+			return 1.0 - (prob_dist[dist_base + value_ix] / total_weight);
 		}
 
 
@@ -2056,6 +2556,126 @@ public class OEStackedPoisson {
 
 
 
+	// The AccumulatorBlock class holds a fixed number of accumulators (cells),
+	// whose distributions are stored consecutively in a single flat array.
+	// Cell c occupies the segment beginning at c * value_range.length.
+	// This keeps the distributions of a grid of accumulators contiguous in memory,
+	// so that combining and cumulating a block runs sequentially through one array,
+	// rather than chasing a separate array for each accumulator.
+	// Each cell is an ordinary Accumulator, so distributions are added to a cell
+	// exactly as they are added to a stand-alone accumulator.
+	// Threading: An individual block can only be used by one thread, but multiple
+	// threads can each have their own block for the same OEStackedPoisson object.
+
+	public class AccumulatorBlock {
+
+		// The number of cells.
+
+		private int cell_count;
+
+		// The flat array holding the distributions of all cells.
+		// Dimension: block_dist[cell_count * value_range.length]
+
+		private double[] block_dist;
+
+		// The accumulators for the cells, each of which refers to a segment of block_dist.
+		// Dimension: cells[cell_count]
+
+		private Accumulator[] cells;
+
+
+
+
+		// Constructor.
+		// Parameters:
+		//  the_cell_count = Number of cells, must be >= 0.
+		// Note: The accumulators are initially clear.
+
+		public AccumulatorBlock (int the_cell_count) {
+			if (!( the_cell_count >= 0 )) {
+				throw new IllegalArgumentException ("OEStackedPoisson.AccumulatorBlock.AccumulatorBlock: Invalid cell count: the_cell_count = " + the_cell_count);
+			}
+			final long total_length = ((long)the_cell_count) * ((long)value_range.length);
+			if (!( total_length <= (long)Integer.MAX_VALUE )) {
+				throw new IllegalArgumentException ("OEStackedPoisson.AccumulatorBlock.AccumulatorBlock: Block too large: the_cell_count = " + the_cell_count + ", value_range.length = " + value_range.length);
+			}
+
+			cell_count = the_cell_count;
+			block_dist = new double[(int)total_length];
+			OEArraysCalc.zero_array (block_dist);
+
+			cells = new Accumulator[cell_count];
+			for (int c = 0; c < cell_count; ++c) {
+				cells[c] = new Accumulator (block_dist, c * value_range.length);
+			}
+		}
+
+
+
+
+		// Get the number of cells.
+
+		public final int get_cell_count () {
+			return cell_count;
+		}
+
+
+
+
+		// Get the accumulator for a cell.
+		// Parameters:
+		//  c = Cell index, 0 <= c < cell_count.
+
+		public final Accumulator get_cell (int c) {
+			return cells[c];
+		}
+
+
+
+
+		// Clear all the accumulators to zero.
+
+		public final void clear () {
+			for (int c = 0; c < cell_count; ++c) {
+				cells[c].clear();
+			}
+			return;
+		}
+
+
+
+
+		// Combine this block with another block.
+		// All probabilities from each cell of the other block are added to the corresponding cell of this block.
+		// The other block must have the same number of cells, and come from the same OEStackedPoisson object.
+
+		public final void combine_with (AccumulatorBlock other) {
+			if (!( other.cell_count == cell_count && other.block_dist.length == block_dist.length )) {
+				throw new IllegalArgumentException ("OEStackedPoisson.AccumulatorBlock.combine_with: Block size mismatch: cell_count = " + cell_count + ", other.cell_count = " + other.cell_count);
+			}
+			for (int c = 0; c < cell_count; ++c) {
+				cells[c].combine_with (other.cells[c]);
+			}
+			return;
+		}
+
+
+
+
+		// Convert the probability distribution of each cell to a cumulative distribution.
+
+		public final void cumulate () {
+			for (int c = 0; c < cell_count; ++c) {
+				cells[c].cumulate();
+			}
+			return;
+		}
+
+	}
+
+
+
+
 	//----- Accumulator creation -----
 
 
@@ -2094,6 +2714,18 @@ public class OEStackedPoisson {
 
 
 
+	// Make a block of accumulators.
+	// Parameters:
+	//  cell_count = Number of accumulators in the block, must be >= 0.
+	// Note: The accumulators are initially clear.
+
+	public final AccumulatorBlock make_acc_block (int cell_count) {
+		return new AccumulatorBlock (cell_count);
+	}
+
+
+
+
 	//----- Accumulator arrays -----
 
 
@@ -3127,6 +3759,102 @@ public class OEStackedPoisson {
 
 
 
+		// Subcommand : Test #6
+		// Command format:
+		//  test6  table_dir  value_precision  mean_precision
+		// Create a OEStackedPoisson object with the specified precisions, and write it
+		// to a table file in the given directory.  Then read the table file, and check
+		// that the loaded object agrees with the original.  Display the time to build,
+		// write, and read the table.
+
+		if (args[0].equalsIgnoreCase ("test6")) {
+
+			// 3 additional arguments
+
+			if (!( args.length == 4 )) {
+				System.err.println ("OEStackedPoisson : Invalid 'test6' subcommand");
+				return;
+			}
+
+			try {
+
+				Path table_dir = Paths.get (args[1]);
+				double the_value_precision = Double.parseDouble (args[2]);
+				double the_mean_precision = Double.parseDouble (args[3]);
+
+				// Say hello
+
+				System.out.println ("Writing and reading a stacked Poisson table file");
+				System.out.println ("table_dir = " + table_dir.toString());
+				System.out.println ("value_precision = " + the_value_precision);
+				System.out.println ("mean_precision = " + the_mean_precision);
+
+				// Create the object
+
+				long time_build = System.currentTimeMillis();
+				OEStackedPoisson stkpois = new OEStackedPoisson (the_value_precision, the_mean_precision);
+				time_build = System.currentTimeMillis() - time_build;
+
+				// Write the table file
+
+				Path file = table_dir.resolve (make_table_filename (
+					stkpois.value_precision,
+					stkpois.value_decades,
+					stkpois.mean_precision,
+					stkpois.mean_decades,
+					stkpois.lower_cdf,
+					stkpois.upper_cdf,
+					stkpois.max_upper_cdf
+				));
+
+				long time_write = System.currentTimeMillis();
+				stkpois.write_table_file (file);
+				time_write = System.currentTimeMillis() - time_write;
+
+				// Read the table file
+
+				long time_read = System.currentTimeMillis();
+				OEStackedPoisson loaded = read_table_file (file);
+				time_read = System.currentTimeMillis() - time_read;
+
+				// Compare
+
+				boolean f_match = loaded.has_params (
+					stkpois.value_precision,
+					stkpois.value_decades,
+					stkpois.mean_precision,
+					stkpois.mean_decades,
+					stkpois.lower_cdf,
+					stkpois.upper_cdf,
+					stkpois.max_upper_cdf
+				)
+				&& Arrays.equals (loaded.value_range, stkpois.value_range)
+				&& Arrays.equals (loaded.mean_range, stkpois.mean_range)
+				&& Arrays.equals (loaded.cached_offset, stkpois.cached_offset)
+				&& Arrays.equals (loaded.cached_upper_offset, stkpois.cached_upper_offset)
+				&& Arrays.equals (loaded.cached_total, stkpois.cached_total)
+				&& Arrays.deepEquals (loaded.cached_pdf, stkpois.cached_pdf)
+				&& loaded.cached_words == stkpois.cached_words;
+
+				System.out.println ();
+				System.out.println ("file = " + file.toString());
+				System.out.println ("file size = " + Files.size (file));
+				System.out.println ("cached_words = " + loaded.cached_words);
+				System.out.println ("match = " + f_match);
+				System.out.println ("build time = " + time_build + " ms");
+				System.out.println ("write time = " + time_write + " ms");
+				System.out.println ("read time = " + time_read + " ms");
+
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+
+			return;
+		}
+
+
+
+
 
 		// Unrecognized subcommand.
 
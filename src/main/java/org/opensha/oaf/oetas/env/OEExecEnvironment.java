@@ -3,6 +3,9 @@ package org.opensha.oaf.oetas.env;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import java.io.IOException;
 
@@ -36,6 +39,7 @@ import org.opensha.oaf.oetas.bay.OEBayPrior;
 import org.opensha.oaf.oetas.bay.OEBayPriorParams;
 
 import org.opensha.oaf.oetas.fit.OEDisc2ExtFit;
+import org.opensha.oaf.oetas.fit.OEOmoriRowCache;
 import org.opensha.oaf.oetas.fit.OEDisc2Grouping;
 import org.opensha.oaf.oetas.fit.OEDisc2History;
 import org.opensha.oaf.oetas.fit.OEDisc2InitFitInfo;
@@ -250,6 +254,12 @@ public class OEExecEnvironment {
 
 	public SimpleExecTimer exec_timer = null;
 
+	// Key that identifies the timeline being forecast, typically the timeline ID, or null if none.
+	// If non-null, the Omori row cache (if enabled) is kept from one forecast of the timeline
+	// to the next; if null, the Omori row cache lasts only for one fit.
+
+	public String omori_cache_key = null;
+
 
 	//--- Outputs to external environment
 
@@ -1320,6 +1330,26 @@ public class OEExecEnvironment {
 
 		fitter.dfit_build (history, fit_params_mags, f_intervals, f_likelihood, lmr_opt, f_background);
 
+		// Optionally hold the Omori matrices in single precision
+
+		fitter.set_omat_float (etas_params.get_fit_omat_float());
+
+		// Optionally re-use Omori matrix rows, from earlier fits of the same timeline if known
+
+		OEOmoriRowCache omori_cache = null;
+		if (etas_params.get_fit_omori_cache()) {
+			if (omori_cache_key != null) {
+				omori_cache = OEOmoriRowCache.get_timeline_cache (omori_cache_key, etas_params.get_fit_omori_cache_max());
+			} else {
+				omori_cache = new OEOmoriRowCache (etas_params.get_fit_omori_cache_max());
+			}
+			fitter.set_omori_cache (omori_cache);
+		}
+
+		// Select the kernel for the rupture-source Omori matrix (exact, approximate, or validation)
+
+		fitter.set_omat_kernel (etas_params.get_fit_omat_kernel(), etas_params.get_fit_omat_approx_tol());
+
 		// Set up grouping
 
 		OEDisc2Grouping.SpanWidthFcn span_width_fcn = etas_params.get_span_width_fcn ();
@@ -1398,6 +1428,14 @@ public class OEExecEnvironment {
 
 		voxel_builder.build_voxels (exec_timer);
 
+		// In validation mode, display the error of the approximate Omori matrix kernel
+
+		if (fitter.get_omat_kernel() == OEConstants.OMAT_KERNEL_VALIDATE) {
+			System.out.println();
+			System.out.println ("Omori matrix approximation: tolerance = " + fitter.get_omat_approx_tol()
+								+ ", maximum relative error = " + fitter.get_omat_approx_max_error());
+		}
+
 		// Get and display the performance data
 
 		//fit_perf_data = voxel_builder.get_loop_result();
@@ -1455,7 +1493,8 @@ public class OEExecEnvironment {
 			etas_params.get_density_bin_count(),	// density_bin_count
 			etas_params.get_prob_tail_trim(),		// prob_tail_trim
 			etas_params.get_seed_subvox_count(),	// the_seed_subvox_count
-			stat_accum								// stat_accum
+			stat_accum,								// stat_accum
+			exec_timer								// exec_timer
 		);
 
 		// Display voxel set results
@@ -1534,7 +1573,15 @@ public class OEExecEnvironment {
 			System.out.println ("Wrote interated intensity function to file: " + filename_intensity_calc);
 		}
 
-		// Discard the fitter
+		// Discard the fitter, and release the Omori row cache unless it is kept for the timeline
+
+		if (omori_cache != null) {
+			fitter.set_omori_cache (null);
+			if (!( omori_cache.is_timeline_active() )) {
+				omori_cache.clear();
+			}
+			omori_cache = null;
+		}
 
 		voxel_builder = null;
 		fitter = null;
@@ -1662,6 +1709,155 @@ public class OEExecEnvironment {
 
 
 
+	//----- Batch execution -----
+
+
+
+
+	// Driver that runs one forecast of a batch, on a thread of its own.
+
+	private static class BatchDriver implements Runnable {
+
+		// The execution environment for the forecast.
+
+		private final OEExecEnvironment exec_env;
+
+		// The share of the batch thread pool used by the forecast.
+
+		private final AutoExecutorService pool_share;
+
+		// The number of forecasts currently running.
+
+		private final AtomicInteger running_count;
+
+		// Constructor.
+
+		public BatchDriver (OEExecEnvironment exec_env, AutoExecutorService pool_share, AtomicInteger running_count) {
+			this.exec_env = exec_env;
+			this.pool_share = pool_share;
+			this.running_count = running_count;
+		}
+
+		// Run the forecast, starting its timer now so it has its own deadline.
+
+		@Override
+		public void run () {
+			running_count.incrementAndGet();
+			try {
+				exec_env.exec_timer.set_executor (pool_share);
+				exec_env.exec_timer.start_timer();
+				try {
+					exec_env.run_etas();
+				}
+				catch (Exception e) {
+					exec_env.report_exception (e);
+				}
+				exec_env.exec_timer.stop_timer();
+			}
+			finally {
+				running_count.decrementAndGet();
+			}
+			return;
+		}
+	}
+
+
+
+
+	// Run the ETAS system for a batch of independent forecasts, sharing one thread pool.
+	// Parameters:
+	//  batch = The execution environments, one for each forecast.
+	//  num_threads = Number of threads in the shared pool, must be > 0, or AutoExecutorService.AESNUM_DEFAULT.
+	//  max_concurrent = Maximum number of forecasts to run at once, must be > 0.
+	// Returns the number of forecasts that completed successfully.
+	// Before calling this function, for each execution environment you must:
+	// - Call setup_comm_area to supply an execution timer, which contains the maximum run time
+	//   and progress report time for that forecast.  The timer must not be started, and its
+	//   executor is replaced by a share of the pool.
+	// - Supply filenames, and call one of the setup_input_area_xxxx functions, as for run_etas.
+	// Forecasts start in list order, up to max_concurrent at a time, and each forecast's timer is
+	// started when the forecast starts.  While several forecasts are running, each multi-threaded
+	// fitting or simulation loop launches an equal share of the pool's threads, so the work units
+	// of all running forecasts are interleaved on the pool.
+	// On return, each execution environment holds its own result code and outputs, as if run_etas
+	// had been called for it, with any exception passed to report_exception.
+	// Note: Console output from forecasts that run at the same time is interleaved.
+
+	public static int run_etas_batch (List<OEExecEnvironment> batch, int num_threads, int max_concurrent) {
+
+		// Validate parameters
+
+		if (!( num_threads > 0 || num_threads == AutoExecutorService.AESNUM_DEFAULT )) {
+			throw new IllegalArgumentException ("OEExecEnvironment.run_etas_batch: Invalid number of threads: num_threads = " + num_threads);
+		}
+		if (!( max_concurrent > 0 )) {
+			throw new IllegalArgumentException ("OEExecEnvironment.run_etas_batch: Invalid maximum concurrent forecasts: max_concurrent = " + max_concurrent);
+		}
+		for (OEExecEnvironment exec_env : batch) {
+			if (!( exec_env.exec_timer != null && exec_env.etas_rescode == ETAS_RESCODE_IN_PROGRESS )) {
+				throw new IllegalArgumentException ("OEExecEnvironment.run_etas_batch: Communication area is not set up");
+			}
+		}
+
+		if (batch.isEmpty()) {
+			return 0;
+		}
+
+		// Run the forecasts, with one driver thread for each forecast that can run at once
+
+		final AtomicInteger running_count = new AtomicInteger (0);
+
+		try (
+			AutoExecutorService pool = new AutoExecutorService (num_threads);
+			AutoExecutorService drivers = new AutoExecutorService (Math.min (max_concurrent, batch.size()), AutoExecutorService.AESTO_FOREVER, AutoExecutorService.AESTO_NO_WAIT);
+		){
+			ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+			for (OEExecEnvironment exec_env : batch) {
+				futures.add (drivers.get_executor().submit (new BatchDriver (exec_env, pool.make_share (running_count), running_count)));
+			}
+
+			// Wait for all forecasts to finish (each driver reports its own exceptions)
+
+			for (Future<?> future : futures) {
+				boolean f_waiting = true;
+				while (f_waiting) {
+					try {
+						future.get();
+						f_waiting = false;
+					}
+					catch (InterruptedException e) {
+						f_waiting = true;
+					}
+					catch (ExecutionException e) {
+						throw new RuntimeException ("OEExecEnvironment.run_etas_batch: Unexpected error in forecast driver", e);
+					}
+				}
+			}
+		}
+
+		// Report per-forecast results
+
+		int success_count = 0;
+
+		System.out.println ();
+		System.out.println ("ETAS batch results:");
+
+		for (int n = 0; n < batch.size(); ++n) {
+			OEExecEnvironment exec_env = batch.get(n);
+			if (exec_env.is_etas_successful()) {
+				++success_count;
+			}
+			System.out.println (n + ": " + exec_env.get_rescode_as_string() + ", elapsed time = " + ((exec_env.exec_timer.get_total_runtime() + 500L) / 1000L) + " seconds");
+		}
+
+		System.out.println ("Succeeded: " + success_count + " of " + batch.size());
+
+		return success_count;
+	}
+
+
+
+
 	//----- Testing -----
 
 
@@ -617,6 +617,27 @@ public class OEtasParameters implements Marshalable {
 
 	public int fit_lmr_opt = OEConstants.LMR_OPT_MCT_INFINITY;
 
+	// Option to select the kernel used to apply the rupture-source Omori matrix (OMAT_KERNEL_XXXX).
+
+	public int fit_omat_kernel = OEConstants.OMAT_KERNEL_EXACT;
+
+	// Relative error tolerance for the approximate Omori matrix kernel.
+
+	public double fit_omat_approx_tol = OEConstants.DEF_OMAT_APPROX_TOL;
+
+	// True to hold the Omori matrices in single precision.
+
+	public boolean fit_omat_float = false;
+
+	// True to use an Omori row cache, which is kept between fits of the same timeline.
+
+	public boolean fit_omori_cache = false;
+
+	// Maximum number of Omori matrix elements held in the Omori row cache.
+	// When the cache is kept between fits, this limits the total held for all timelines.
+
+	public long fit_omori_cache_max = OEConstants.DEF_OMORI_CACHE_MAX_ELEMENTS;
+
 	// Clear fitting parameters.
 
 	public final void clear_fit_params () {
@@ -624,6 +645,11 @@ public class OEtasParameters implements Marshalable {
 
 		fit_f_intervals = false;
 		fit_lmr_opt = OEConstants.LMR_OPT_MCT_INFINITY;
+		fit_omat_kernel = OEConstants.OMAT_KERNEL_EXACT;
+		fit_omat_approx_tol = OEConstants.DEF_OMAT_APPROX_TOL;
+		fit_omat_float = false;
+		fit_omori_cache = false;
+		fit_omori_cache_max = OEConstants.DEF_OMORI_CACHE_MAX_ELEMENTS;
 		return;
 	}
 
@@ -634,6 +660,11 @@ public class OEtasParameters implements Marshalable {
 
 		fit_f_intervals = OEConstants.DEF_F_INTERVALS;
 		fit_lmr_opt = OEConstants.DEF_LMR_OPT;
+		fit_omat_kernel = OEConstants.DEF_OMAT_KERNEL;
+		fit_omat_approx_tol = OEConstants.DEF_OMAT_APPROX_TOL;
+		fit_omat_float = OEConstants.DEF_OMAT_FLOAT;
+		fit_omori_cache = OEConstants.DEF_OMORI_CACHE;
+		fit_omori_cache_max = OEConstants.DEF_OMORI_CACHE_MAX_ELEMENTS;
 		return;
 	}
 
@@ -644,6 +675,11 @@ public class OEtasParameters implements Marshalable {
 
 		fit_f_intervals = other.fit_f_intervals;
 		fit_lmr_opt = other.fit_lmr_opt;
+		fit_omat_kernel = other.fit_omat_kernel;
+		fit_omat_approx_tol = other.fit_omat_approx_tol;
+		fit_omat_float = other.fit_omat_float;
+		fit_omori_cache = other.fit_omori_cache;
+		fit_omori_cache_max = other.fit_omori_cache_max;
 		return;
 	}
 
@@ -652,11 +688,21 @@ public class OEtasParameters implements Marshalable {
 	public final void set_fit_params_to_analyst (
 		boolean fit_params_avail,
 		boolean fit_f_intervals,
-		int fit_lmr_opt
+		int fit_lmr_opt,
+		int fit_omat_kernel,
+		double fit_omat_approx_tol,
+		boolean fit_omat_float,
+		boolean fit_omori_cache,
+		long fit_omori_cache_max
 	) {
 		this.fit_params_avail = fit_params_avail;
 		this.fit_f_intervals = fit_f_intervals;
 		this.fit_lmr_opt = fit_lmr_opt;
+		this.fit_omat_kernel = fit_omat_kernel;
+		this.fit_omat_approx_tol = fit_omat_approx_tol;
+		this.fit_omat_float = fit_omat_float;
+		this.fit_omori_cache = fit_omori_cache;
+		this.fit_omori_cache_max = fit_omori_cache_max;
 		return;
 	}
 
@@ -679,6 +725,15 @@ public class OEtasParameters implements Marshalable {
 			if (!( fit_lmr_opt >= OEConstants.LMR_OPT_MIN && fit_lmr_opt <= OEConstants.LMR_OPT_MAX )) {
 				return "Invalid fitting parameter: fit_lmr_opt = " + fit_lmr_opt;
 			}
+			if (!( fit_omat_kernel >= OEConstants.OMAT_KERNEL_MIN && fit_omat_kernel <= OEConstants.OMAT_KERNEL_MAX )) {
+				return "Invalid fitting parameter: fit_omat_kernel = " + fit_omat_kernel;
+			}
+			if (!( fit_omat_approx_tol > 0.0 && fit_omat_approx_tol < 1.0 )) {
+				return "Invalid fitting parameter: fit_omat_approx_tol = " + fit_omat_approx_tol;
+			}
+			if (!( fit_omori_cache_max > 0L )) {
+				return "Invalid fitting parameter: fit_omori_cache_max = " + fit_omori_cache_max;
+			}
 		}
 		return null;
 	}
@@ -690,6 +745,11 @@ public class OEtasParameters implements Marshalable {
 		if (fit_params_avail) {
 			sb.append ("fit_f_intervals = " + fit_f_intervals + "\n");
 			sb.append ("fit_lmr_opt = " + fit_lmr_opt + "\n");
+			sb.append ("fit_omat_kernel = " + fit_omat_kernel + "\n");
+			sb.append ("fit_omat_approx_tol = " + fit_omat_approx_tol + "\n");
+			sb.append ("fit_omat_float = " + fit_omat_float + "\n");
+			sb.append ("fit_omori_cache = " + fit_omori_cache + "\n");
+			sb.append ("fit_omori_cache_max = " + fit_omori_cache_max + "\n");
 		}
 		return sb;
 	}
@@ -725,6 +785,119 @@ public class OEtasParameters implements Marshalable {
 		return;
 	}
 
+	// Marshal fitting parameters.
+
+	private void marshal_fit_params_v2 (MarshalWriter writer) {
+		writer.marshalBoolean ("fit_params_avail", fit_params_avail);
+		if (fit_params_avail) {
+			writer.marshalBoolean ("fit_f_intervals", fit_f_intervals);
+			writer.marshalInt ("fit_lmr_opt", fit_lmr_opt);
+			writer.marshalInt ("fit_omat_kernel", fit_omat_kernel);
+			writer.marshalDouble ("fit_omat_approx_tol", fit_omat_approx_tol);
+		}
+		return;
+	}
+
+	// Unmarshal fitting parameters.
+
+	private void unmarshal_fit_params_v2 (MarshalReader reader) {
+		fit_params_avail = reader.unmarshalBoolean ("fit_params_avail");
+		if (fit_params_avail) {
+			fit_f_intervals = reader.unmarshalBoolean ("fit_f_intervals");
+			fit_lmr_opt = reader.unmarshalInt ("fit_lmr_opt");
+			fit_omat_kernel = reader.unmarshalInt ("fit_omat_kernel");
+			fit_omat_approx_tol = reader.unmarshalDouble ("fit_omat_approx_tol");
+		} else {
+			clear_fit_params();
+		}
+
+		// Check the invariant
+
+		String inv = check_fit_params_invariant();
+		if (inv != null) {
+			throw new MarshalException ("OEtasParameters.unmarshal_fit_params_v2: " + inv);
+		}
+		return;
+	}
+
+	// Marshal fitting parameters.
+
+	private void marshal_fit_params_v3 (MarshalWriter writer) {
+		writer.marshalBoolean ("fit_params_avail", fit_params_avail);
+		if (fit_params_avail) {
+			writer.marshalBoolean ("fit_f_intervals", fit_f_intervals);
+			writer.marshalInt ("fit_lmr_opt", fit_lmr_opt);
+			writer.marshalInt ("fit_omat_kernel", fit_omat_kernel);
+			writer.marshalDouble ("fit_omat_approx_tol", fit_omat_approx_tol);
+			writer.marshalBoolean ("fit_omat_float", fit_omat_float);
+		}
+		return;
+	}
+
+	// Unmarshal fitting parameters.
+
+	private void unmarshal_fit_params_v3 (MarshalReader reader) {
+		fit_params_avail = reader.unmarshalBoolean ("fit_params_avail");
+		if (fit_params_avail) {
+			fit_f_intervals = reader.unmarshalBoolean ("fit_f_intervals");
+			fit_lmr_opt = reader.unmarshalInt ("fit_lmr_opt");
+			fit_omat_kernel = reader.unmarshalInt ("fit_omat_kernel");
+			fit_omat_approx_tol = reader.unmarshalDouble ("fit_omat_approx_tol");
+			fit_omat_float = reader.unmarshalBoolean ("fit_omat_float");
+		} else {
+			clear_fit_params();
+		}
+
+		// Check the invariant
+
+		String inv = check_fit_params_invariant();
+		if (inv != null) {
+			throw new MarshalException ("OEtasParameters.unmarshal_fit_params_v3: " + inv);
+		}
+		return;
+	}
+
+	// Marshal fitting parameters.
+
+	private void marshal_fit_params_v4 (MarshalWriter writer) {
+		writer.marshalBoolean ("fit_params_avail", fit_params_avail);
+		if (fit_params_avail) {
+			writer.marshalBoolean ("fit_f_intervals", fit_f_intervals);
+			writer.marshalInt ("fit_lmr_opt", fit_lmr_opt);
+			writer.marshalInt ("fit_omat_kernel", fit_omat_kernel);
+			writer.marshalDouble ("fit_omat_approx_tol", fit_omat_approx_tol);
+			writer.marshalBoolean ("fit_omat_float", fit_omat_float);
+			writer.marshalBoolean ("fit_omori_cache", fit_omori_cache);
+			writer.marshalLong ("fit_omori_cache_max", fit_omori_cache_max);
+		}
+		return;
+	}
+
+	// Unmarshal fitting parameters.
+
+	private void unmarshal_fit_params_v4 (MarshalReader reader) {
+		fit_params_avail = reader.unmarshalBoolean ("fit_params_avail");
+		if (fit_params_avail) {
+			fit_f_intervals = reader.unmarshalBoolean ("fit_f_intervals");
+			fit_lmr_opt = reader.unmarshalInt ("fit_lmr_opt");
+			fit_omat_kernel = reader.unmarshalInt ("fit_omat_kernel");
+			fit_omat_approx_tol = reader.unmarshalDouble ("fit_omat_approx_tol");
+			fit_omat_float = reader.unmarshalBoolean ("fit_omat_float");
+			fit_omori_cache = reader.unmarshalBoolean ("fit_omori_cache");
+			fit_omori_cache_max = reader.unmarshalLong ("fit_omori_cache_max");
+		} else {
+			clear_fit_params();
+		}
+
+		// Check the invariant
+
+		String inv = check_fit_params_invariant();
+		if (inv != null) {
+			throw new MarshalException ("OEtasParameters.unmarshal_fit_params_v4: " + inv);
+		}
+		return;
+	}
+
 	// Get the fitting parameter f_interval.
 	// Note: Caller must check the fitting parameters are available.
 
@@ -745,6 +918,56 @@ public class OEtasParameters implements Marshalable {
 		return fit_lmr_opt;
 	}
 
+	// Get the fitting parameter omat_kernel.
+	// Note: Caller must check the fitting parameters are available.
+
+	public final int get_fit_omat_kernel () {
+		if (!( fit_params_avail )) {
+			throw new InvariantViolationException ("OEtasParameters.get_fit_omat_kernel: Fitting parameters not available");
+		}
+		return fit_omat_kernel;
+	}
+
+	// Get the fitting parameter omat_approx_tol.
+	// Note: Caller must check the fitting parameters are available.
+
+	public final double get_fit_omat_approx_tol () {
+		if (!( fit_params_avail )) {
+			throw new InvariantViolationException ("OEtasParameters.get_fit_omat_approx_tol: Fitting parameters not available");
+		}
+		return fit_omat_approx_tol;
+	}
+
+	// Get the fitting parameter omat_float.
+	// Note: Caller must check the fitting parameters are available.
+
+	public final boolean get_fit_omat_float () {
+		if (!( fit_params_avail )) {
+			throw new InvariantViolationException ("OEtasParameters.get_fit_omat_float: Fitting parameters not available");
+		}
+		return fit_omat_float;
+	}
+
+	// Get the fitting parameter omori_cache.
+	// Note: Caller must check the fitting parameters are available.
+
+	public final boolean get_fit_omori_cache () {
+		if (!( fit_params_avail )) {
+			throw new InvariantViolationException ("OEtasParameters.get_fit_omori_cache: Fitting parameters not available");
+		}
+		return fit_omori_cache;
+	}
+
+	// Get the fitting parameter omori_cache_max.
+	// Note: Caller must check the fitting parameters are available.
+
+	public final long get_fit_omori_cache_max () {
+		if (!( fit_params_avail )) {
+			throw new InvariantViolationException ("OEtasParameters.get_fit_omori_cache_max: Fitting parameters not available");
+		}
+		return fit_omori_cache_max;
+	}
+
 
 
 
@@ -3019,6 +3242,9 @@ public class OEtasParameters implements Marshalable {
 	private static final int MARSHAL_VER_1 = 121001;
 	private static final int MARSHAL_VER_2 = 121002;
 	private static final int MARSHAL_VER_3 = 121003;
+	private static final int MARSHAL_VER_4 = 121004;
+	private static final int MARSHAL_VER_5 = 121005;
+	private static final int MARSHAL_VER_6 = 121006;
 
 	private static final String M_VERSION_NAME = "OEtasParameters";
 
@@ -3028,7 +3254,7 @@ public class OEtasParameters implements Marshalable {
 
 		// Version
 
-		int ver = MARSHAL_VER_3;
+		int ver = MARSHAL_VER_6;
 
 		writer.marshalInt (M_VERSION_NAME, ver);
 
@@ -3090,6 +3316,60 @@ public class OEtasParameters implements Marshalable {
 		}
 		break;
 
+		case MARSHAL_VER_4: {
+
+			marshal_hist_params_v1 (writer);
+			marshal_group_params_v1 (writer);
+			marshal_fit_params_v2 (writer);
+			marshal_fmag_range_v1 (writer);
+			marshal_tint_br_v1 (writer);
+			marshal_range_v2 (writer);
+			marshal_bay_prior_v2 (writer);
+			marshal_bay_weight_v1 (writer);
+			marshal_grid_post_v1 (writer);
+			marshal_num_catalogs_v1 (writer);
+			marshal_sim_params_v1 (writer);
+			marshal_eligible_params_v3 (writer);
+
+		}
+		break;
+
+		case MARSHAL_VER_5: {
+
+			marshal_hist_params_v1 (writer);
+			marshal_group_params_v1 (writer);
+			marshal_fit_params_v3 (writer);
+			marshal_fmag_range_v1 (writer);
+			marshal_tint_br_v1 (writer);
+			marshal_range_v2 (writer);
+			marshal_bay_prior_v2 (writer);
+			marshal_bay_weight_v1 (writer);
+			marshal_grid_post_v1 (writer);
+			marshal_num_catalogs_v1 (writer);
+			marshal_sim_params_v1 (writer);
+			marshal_eligible_params_v3 (writer);
+
+		}
+		break;
+
+		case MARSHAL_VER_6: {
+
+			marshal_hist_params_v1 (writer);
+			marshal_group_params_v1 (writer);
+			marshal_fit_params_v4 (writer);
+			marshal_fmag_range_v1 (writer);
+			marshal_tint_br_v1 (writer);
+			marshal_range_v2 (writer);
+			marshal_bay_prior_v2 (writer);
+			marshal_bay_weight_v1 (writer);
+			marshal_grid_post_v1 (writer);
+			marshal_num_catalogs_v1 (writer);
+			marshal_sim_params_v1 (writer);
+			marshal_eligible_params_v3 (writer);
+
+		}
+		break;
+
 		}
 
 		return;
@@ -3101,7 +3381,7 @@ public class OEtasParameters implements Marshalable {
 	
 		// Version
 
-		int ver = reader.unmarshalInt (M_VERSION_NAME, MARSHAL_VER_1, MARSHAL_VER_3);
+		int ver = reader.unmarshalInt (M_VERSION_NAME, MARSHAL_VER_1, MARSHAL_VER_6);
 
 		// Contents
 
@@ -3167,6 +3447,66 @@ public class OEtasParameters implements Marshalable {
 		}
 		break;
 
+		case MARSHAL_VER_4: {
+
+			clear();	// for fields that are not marshaled
+
+			unmarshal_hist_params_v1 (reader);
+			unmarshal_group_params_v1 (reader);
+			unmarshal_fit_params_v2 (reader);
+			unmarshal_fmag_range_v1 (reader);
+			unmarshal_tint_br_v1 (reader);
+			unmarshal_range_v2 (reader);
+			unmarshal_bay_prior_v2 (reader);
+			unmarshal_bay_weight_v1 (reader);
+			unmarshal_grid_post_v1 (reader);
+			unmarshal_num_catalogs_v1 (reader);
+			unmarshal_sim_params_v1 (reader);
+			unmarshal_eligible_params_v3 (reader);
+
+		}
+		break;
+
+		case MARSHAL_VER_5: {
+
+			clear();	// for fields that are not marshaled
+
+			unmarshal_hist_params_v1 (reader);
+			unmarshal_group_params_v1 (reader);
+			unmarshal_fit_params_v3 (reader);
+			unmarshal_fmag_range_v1 (reader);
+			unmarshal_tint_br_v1 (reader);
+			unmarshal_range_v2 (reader);
+			unmarshal_bay_prior_v2 (reader);
+			unmarshal_bay_weight_v1 (reader);
+			unmarshal_grid_post_v1 (reader);
+			unmarshal_num_catalogs_v1 (reader);
+			unmarshal_sim_params_v1 (reader);
+			unmarshal_eligible_params_v3 (reader);
+
+		}
+		break;
+
+		case MARSHAL_VER_6: {
+
+			clear();	// for fields that are not marshaled
+
+			unmarshal_hist_params_v1 (reader);
+			unmarshal_group_params_v1 (reader);
+			unmarshal_fit_params_v4 (reader);
+			unmarshal_fmag_range_v1 (reader);
+			unmarshal_tint_br_v1 (reader);
+			unmarshal_range_v2 (reader);
+			unmarshal_bay_prior_v2 (reader);
+			unmarshal_bay_weight_v1 (reader);
+			unmarshal_grid_post_v1 (reader);
+			unmarshal_num_catalogs_v1 (reader);
+			unmarshal_sim_params_v1 (reader);
+			unmarshal_eligible_params_v3 (reader);
+
+		}
+		break;
+
 		}
 
 		return;
@@ -7,6 +7,7 @@ import java.util.Deque;
 import java.util.Collection;
 import java.util.Arrays;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opensha.oaf.oetas.OERupture;
 import org.opensha.oaf.oetas.OEOmoriCalc;
@@ -30,6 +31,12 @@ import static org.opensha.oaf.oetas.OEConstants.LMR_OPT_MCT_MAG_MAX;		// 2 = Fro
 import static org.opensha.oaf.oetas.OEConstants.LMR_OPT_MAGCAT_INFINITY;	// 3 = From catalog magnitude of completeness to infinity.
 import static org.opensha.oaf.oetas.OEConstants.LMR_OPT_MAGCAT_MAG_MAX;		// 4 = From catalog magnitude of completeness to maximum simulation magnitude.
 
+import static org.opensha.oaf.oetas.OEConstants.OMAT_KERNEL_MIN;			// 1 = Minimum value.
+import static org.opensha.oaf.oetas.OEConstants.OMAT_KERNEL_EXACT;			// 1 = Exact dense matrix.
+import static org.opensha.oaf.oetas.OEConstants.OMAT_KERNEL_APPROX;			// 2 = Hierarchical approximation.
+import static org.opensha.oaf.oetas.OEConstants.OMAT_KERNEL_VALIDATE;		// 3 = Both, using the exact result and recording the error.
+import static org.opensha.oaf.oetas.OEConstants.OMAT_KERNEL_MAX;			// 3 = Maximum value.
+
 
 // Discretized rupture history, parameter fitting with extended sources.
 // Author: Michael Barall 11/15/2022.
@@ -1215,6 +1222,31 @@ public class OEDisc2ExtFit {
 
 
 
+	// Produce a summary string describing a single-precision triangular matrix.
+
+	public static String tri_mat_summary_string (final float[][] m) {
+		if (m == null) {
+			return "null";
+		}
+		if (m.length == 0) {
+			return "rows = 0";
+		}
+		int min_cols = m[0].length;
+		int max_cols = m[0].length;
+		for (int i = 1; i < m.length; ++i) {
+			if (m[i].length < min_cols) {
+				min_cols = m[i].length;
+			}
+			else if (m[i].length > max_cols) {
+				max_cols = m[i].length;
+			}
+		}
+		return ("rows = " + m.length + ", cols = " + min_cols + " - " + max_cols);
+	}
+
+
+
+
 	// True to build Omori matrix for rupture target and rupture source.
 
 	private boolean f_omat_rup_targ_rup_src;
@@ -1231,6 +1263,51 @@ public class OEDisc2ExtFit {
 
 	private boolean f_omat_int_targ_int_src;
 
+	// True to hold the Omori matrices in single precision.
+	// This halves the memory used by each OmoriMatrix.  Each element is rounded to the nearest
+	// float, which (since all elements are well inside the normal float range) introduces a
+	// relative error of at most 2^-24 (about 6e-8) per element.  Because the matrix elements and
+	// the vectors they are applied to are non-negative, every sum formed by the apply_omat_XXXX
+	// functions then has relative error at most 2^-24 plus the usual double-precision rounding,
+	// except in the interval-source recurrence, where the bound grows to about
+	// interval_count * 2^-24 for the last interval.  The log-likelihood is a sum of the logs of
+	// the per-rupture intensities minus the integrated intensity, so its absolute error is at
+	// most about  (target rupture count + integrated intensity) * interval_count * 2^-24,
+	// and typically far smaller.  The Omori row cache is not used in single precision.
+
+	private boolean f_omat_float;
+
+	// Cache of Omori matrix rows, or null if none.
+
+	private OEOmoriRowCache omori_cache;
+
+	// Rupture times for the cache, a_t_day[n] == history.a_rupture_obj[n].t_day, or null if no cache.
+
+	private double[] omori_cache_a_t_day;
+
+	// Kernel used to apply the rupture-target rupture-source Omori matrix (OMAT_KERNEL_XXXX).
+	// With OMAT_KERNEL_APPROX, the dense matrix is not formed, and OEOmoriTreeKernel is used instead.
+	// With OMAT_KERNEL_VALIDATE, both are formed, the exact result is used, and the largest
+	// relative difference is recorded.
+
+	private int omat_kernel;
+
+	// Relative error tolerance for the approximate kernel.
+
+	private double omat_approx_tol;
+
+	// Rupture times and source counts for the approximate kernel, or null if not used.
+	// omat_tree_a_time[n] == history.a_rupture_obj[n].t_day, and omat_tree_row_len[n] is the
+	// row length of the dense matrix.
+
+	private double[] omat_tree_a_time;
+	private int[] omat_tree_row_len;
+
+	// Largest relative error seen in validation mode, as the bits of a double.
+	// This is updated by OmoriMatrix objects, possibly in multiple threads.
+
+	private AtomicLong omat_approx_max_error;
+
 
 
 
@@ -1238,8 +1315,9 @@ public class OEDisc2ExtFit {
 	// It contains matrices for values of the Omori function and integrals, so those values
 	// can be re-used with multiple productivity parameters.
 	// The memory requirements of this class are large.
-	// Note: This class never modifies anything in the outer class, and so it is possible for
-	// different threads to simultaneously use different objects.
+	// Note: This class never modifies anything in the outer class (except for the thread-safe
+	// omat_approx_max_error), and so it is possible for different threads to simultaneously
+	// use different objects.
 
 	public class OmoriMatrix {
 
@@ -1261,6 +1339,54 @@ public class OEDisc2ExtFit {
 
 
 
+		// Scratch row, used to build a row of a matrix held in single precision.
+
+		private double[] build_scratch;
+
+
+		// Get the array in which to build row i of a matrix, held either in double precision (m)
+		// or in single precision (m_f, which is non-null if so).  In single precision, the row is
+		// built in the scratch array and then stored by calling put_build_row.
+
+		private double[] get_build_row (double[][] m, float[][] m_f, int i) {
+			if (m_f == null) {
+				return m[i];
+			}
+			final int len = m_f[i].length;
+			if (build_scratch == null || build_scratch.length < len) {
+				build_scratch = new double[len];
+			}
+			return build_scratch;
+		}
+
+
+		// Get the length of row i of a matrix, held either in double precision (m)
+		// or in single precision (m_f, which is non-null if so).
+
+		private int get_build_row_len (double[][] m, float[][] m_f, int i) {
+			if (m_f == null) {
+				return m[i].length;
+			}
+			return m_f[i].length;
+		}
+
+
+		// Store a row built with get_build_row, if the matrix is held in single precision (m_f non-null).
+
+		private void put_build_row (float[][] m_f, int i, double[] row) {
+			if (m_f != null) {
+				final float[] row_f = m_f[i];
+				final int len = row_f.length;
+				for (int j = 0; j < len; ++j) {
+					row_f[j] = (float)(row[j]);
+				}
+			}
+			return;
+		}
+
+
+
+
 		// Matrix of Omori values for a rupture target and rupture source.
 		// omat_rup_targ_rup_src[i_t_rup][i_s_rup] is the Omori function for the source rupture
 		// selected by index i_s_rup, acting on the target rupture selected by index i_t_rup,
@@ -1283,6 +1409,25 @@ public class OEDisc2ExtFit {
 
 		private double[][] omat_rup_targ_rup_src;
 
+		// Single-precision storage of the same matrix, used in place of omat_rup_targ_rup_src if f_omat_float is set.
+
+		private float[][] omat_rup_targ_rup_src_f;
+
+		// True if the rows of omat_rup_targ_rup_src may be shared with the Omori row cache,
+		// in which case they must not be written (or may not yet be allocated).
+
+		private boolean f_shared_omat_rup_targ_rup_src;
+
+		// Approximate kernel, used in place of omat_rup_targ_rup_src for OMAT_KERNEL_APPROX,
+		// or in addition to it for OMAT_KERNEL_VALIDATE; null for OMAT_KERNEL_EXACT.
+
+		private OEOmoriTreeKernel omat_tree_rup_targ_rup_src;
+
+		// Scratch vectors to hold the approximate results for OMAT_KERNEL_VALIDATE.
+
+		private double[] validate_y1;
+		private double[] validate_y2;
+
 
 		// Function to allocate the matrix of Omori values for a rupture target and rupture source.
 
@@ -1290,6 +1435,44 @@ public class OEDisc2ExtFit {
 
 			final int rupture_count = history.rupture_count;
 
+			// Approximate kernel, which replaces the dense matrix unless validating
+
+			if (omat_kernel != OMAT_KERNEL_EXACT && omat_tree_rup_targ_rup_src == null) {
+				omat_tree_rup_targ_rup_src = new OEOmoriTreeKernel (omat_tree_a_time, omat_tree_row_len, rupture_count);
+			}
+			if (omat_kernel == OMAT_KERNEL_APPROX) {
+				f_shared_omat_rup_targ_rup_src = false;
+				return;
+			}
+
+			// If there is a cache, allocate only the array of rows, which is filled in when
+			// the matrix is built, with rows that are either taken from the cache or new
+
+			if (is_omori_cache_used()) {
+				omat_rup_targ_rup_src = new double[rupture_count][];
+				f_shared_omat_rup_targ_rup_src = true;
+				return;
+			}
+
+			// Single-precision storage
+
+			if (f_omat_float) {
+
+				// Allocate the triangular array
+
+				omat_rup_targ_rup_src_f = new float[rupture_count][];
+				for (int i_t_rup = 0; i_t_rup < rupture_count; ++i_t_rup) {
+					if (i_t_rup >= targ_rup_begin && i_t_rup < targ_rup_end) {
+						omat_rup_targ_rup_src_f[i_t_rup] = new float[i_t_rup];
+					} else {
+						omat_rup_targ_rup_src_f[i_t_rup] = new float[0];
+					}
+				}
+
+				f_shared_omat_rup_targ_rup_src = false;
+				return;
+			}
+
 			// Allocate the triangular array
 
 			omat_rup_targ_rup_src = new double[rupture_count][];
@@ -1301,6 +1484,7 @@ public class OEDisc2ExtFit {
 				}
 			}
 
+			f_shared_omat_rup_targ_rup_src = false;
 			return;
 		}
 
@@ -1309,6 +1493,28 @@ public class OEDisc2ExtFit {
 
 		private void build_omat_rup_targ_rup_src () {
 
+			// Approximate kernel, which replaces the dense matrix unless validating
+
+			if (omat_tree_rup_targ_rup_src != null) {
+				omat_tree_rup_targ_rup_src.build (p, c, omat_approx_tol);
+				if (omat_kernel == OMAT_KERNEL_APPROX) {
+					return;
+				}
+			}
+
+			// If there is a cache, build using the cache (only for double-precision storage)
+
+			if (is_omori_cache_used()) {
+				build_omat_rup_targ_rup_src_cached();
+				return;
+			}
+
+			// If the rows were shared with the cache, allocate new rows
+
+			if (f_shared_omat_rup_targ_rup_src) {
+				alloc_omat_rup_targ_rup_src();
+			}
+
 			final int rupture_count = history.rupture_count;
 			final OERupture[] a_rupture_obj = history.a_rupture_obj;
 
@@ -1322,8 +1528,8 @@ public class OEDisc2ExtFit {
 
 				// Build the row containing all sources for this target
 
-				final double[] omat_row = omat_rup_targ_rup_src[i_t_rup];
-				final int row_len = omat_row.length;
+				final double[] omat_row = get_build_row (omat_rup_targ_rup_src, omat_rup_targ_rup_src_f, i_t_rup);
+				final int row_len = get_build_row_len (omat_rup_targ_rup_src, omat_rup_targ_rup_src_f, i_t_rup);
 
 				for (int i_s_rup = 0; i_s_rup < row_len; ++i_s_rup) {
 
@@ -1335,12 +1541,88 @@ public class OEDisc2ExtFit {
 				
 					omat_row[i_s_rup] = Math.pow(t_plus_c - s, -p);
 				}
+
+				put_build_row (omat_rup_targ_rup_src_f, i_t_rup, omat_row);
 			}
 
 			return;
 		}
 
 
+		// Function to build the matrix of Omori values for a rupture target and rupture source,
+		// re-using rows from the Omori row cache.
+		// Rows are taken from the cache entry for (p, c) if the entry was built for the same
+		// rupture times through the target rupture, and the row has the required length.
+		// Other rows are newly allocated and computed.  The resulting rows are then stored
+		// in the cache, so none of the rows may be written after this function returns.
+
+		private void build_omat_rup_targ_rup_src_cached () {
+
+			final int rupture_count = history.rupture_count;
+			final OERupture[] a_rupture_obj = history.a_rupture_obj;
+
+			// Find the number of leading ruptures that match the cache entry
+
+			final OEOmoriRowCache.Entry entry = omori_cache.lookup (p, c);
+			final int n_match = ((entry == null) ? 0 : entry.match_count (a_rupture_obj, rupture_count));
+			int n_reused = 0;
+
+			// Build the triangular array
+
+			final double[] empty_row = new double[0];
+
+			for (int i_t_rup = 0; i_t_rup < rupture_count; ++i_t_rup) {
+
+				// Length of the row containing all sources for this target
+
+				final int row_len = ((i_t_rup >= targ_rup_begin && i_t_rup < targ_rup_end) ? i_t_rup : 0);
+
+				if (row_len == 0) {
+					omat_rup_targ_rup_src[i_t_rup] = empty_row;
+					continue;
+				}
+
+				// Re-use the row if it is in the matching portion of the cache entry
+
+				if (i_t_rup < n_match) {
+					final double[] cached_row = entry.get_row (i_t_rup);
+					if (cached_row.length == row_len) {
+						omat_rup_targ_rup_src[i_t_rup] = cached_row;
+						++n_reused;
+						continue;
+					}
+				}
+
+				// Get the time for this target
+
+				final double t_plus_c = a_rupture_obj[i_t_rup].t_day + c;
+
+				// Build the row containing all sources for this target
+
+				final double[] omat_row = new double[row_len];
+
+				for (int i_s_rup = 0; i_s_rup < row_len; ++i_s_rup) {
+
+					// Get the time for this source
+
+					final double s = a_rupture_obj[i_s_rup].t_day;
+
+					// Omori value
+				
+					omat_row[i_s_rup] = Math.pow(t_plus_c - s, -p);
+				}
+
+				omat_rup_targ_rup_src[i_t_rup] = omat_row;
+			}
+
+			// Save the rows in the cache
+
+			f_shared_omat_rup_targ_rup_src = true;
+			omori_cache.store (p, c, omori_cache_a_t_day, omat_rup_targ_rup_src.clone(), n_reused);
+			return;
+		}
+
+
 		// Function to apply the matrix.
 		// Parameters:
 		//  y1 = Target vector #1, length = rupture_count.
@@ -1364,9 +1646,57 @@ public class OEDisc2ExtFit {
 				final double[] x2,
 				final double[] d ) {
 
+			// Exact kernel
+
+			if (omat_tree_rup_targ_rup_src == null) {
+				apply_omat_rup_targ_rup_src_exact (y1, y2, x1, x2, d);
+				return;
+			}
+
+			// Approximate kernel
+
+			if (omat_kernel == OMAT_KERNEL_APPROX) {
+				omat_tree_rup_targ_rup_src.apply (y1, y2, x1, x2, d);
+				return;
+			}
+
+			// Validation, use the exact result and record the largest relative difference
+
+			final int rupture_count = history.rupture_count;
+			if (validate_y1 == null || validate_y1.length < rupture_count) {
+				validate_y1 = new double[rupture_count];
+				validate_y2 = new double[rupture_count];
+			}
+
+			omat_tree_rup_targ_rup_src.apply (validate_y1, validate_y2, x1, x2, d);
+			apply_omat_rup_targ_rup_src_exact (y1, y2, x1, x2, d);
+
+			double max_error = 0.0;
+			for (int i = 0; i < rupture_count; ++i) {
+				if (y1[i] != 0.0) {
+					max_error = Math.max (max_error, Math.abs ((validate_y1[i] - y1[i]) / y1[i]));
+				}
+				if (y2[i] != 0.0) {
+					max_error = Math.max (max_error, Math.abs ((validate_y2[i] - y2[i]) / y2[i]));
+				}
+			}
+			record_omat_approx_error (max_error);
+			return;
+		}
+
+
+		// Apply the dense matrix, see apply_omat_rup_targ_rup_src.
+
+		private void apply_omat_rup_targ_rup_src_exact (
+				final double[] y1,
+				final double[] y2,
+				final double[] x1,
+				final double[] x2,
+				final double[] d ) {
+
 			// Zero-matrix case
 
-			if (omat_rup_targ_rup_src == null) {
+			if (omat_rup_targ_rup_src == null && omat_rup_targ_rup_src_f == null) {
 				final int ii_top = history.rupture_count;
 				for (int ii = 0; ii < ii_top; ++ii) {
 					y1[ii] = 0.0;
@@ -1375,6 +1705,25 @@ public class OEDisc2ExtFit {
 				return;
 			}
 
+			// Single-precision matrix
+
+			if (omat_rup_targ_rup_src_f != null) {
+				final int i_top = omat_rup_targ_rup_src_f.length;
+				for (int i = 0; i < i_top; ++i) {
+					double sum1 = 0.0;
+					double sum2 = 0.0;
+					final float[] row = omat_rup_targ_rup_src_f[i];
+					final int j_top = row.length;
+					for (int j = 0; j < j_top; ++j) {
+						sum1 += (row[j] * x1[j]);
+						sum2 += (row[j] * x2[j]);
+					}
+					y1[i] = sum1 * d[i];
+					y2[i] = sum2 * d[i];
+				}
+				return;
+			}
+
 			// Non-zero matrix
 
 			final int i_top = omat_rup_targ_rup_src.length;
@@ -1419,6 +1768,10 @@ public class OEDisc2ExtFit {
 
 		private double[][] omat_rup_targ_int_src;
 
+		// Single-precision storage of the same matrix, used in place of omat_rup_targ_int_src if f_omat_float is set.
+
+		private float[][] omat_rup_targ_int_src_f;
+
 
 		// Function to allocate the matrix of Omori values for a rupture target and interval source.
 
@@ -1427,6 +1780,24 @@ public class OEDisc2ExtFit {
 			final int rupture_count = history.rupture_count;
 			final int[] a_rupture_int_time_index = history.a_rupture_int_time_index;
 
+			// Single-precision storage
+
+			if (f_omat_float) {
+
+				// Allocate the triangular array
+
+				omat_rup_targ_int_src_f = new float[rupture_count][];
+				for (int i_t_rup = 0; i_t_rup < rupture_count; ++i_t_rup) {
+					if (i_t_rup >= targ_rup_begin && i_t_rup < targ_rup_end) {
+						omat_rup_targ_int_src_f[i_t_rup] = new float[a_rupture_int_time_index[i_t_rup]];
+					} else {
+						omat_rup_targ_int_src_f[i_t_rup] = new float[0];
+					}
+				}
+
+				return;
+			}
+
 			// Allocate the triangular array
 
 			omat_rup_targ_int_src = new double[rupture_count][];
@@ -1456,8 +1827,8 @@ public class OEDisc2ExtFit {
 
 				// Get the time for this target, using the matching interval time
 
-				final double[] omat_row = omat_rup_targ_int_src[i_t_rup];
-				final int row_len = omat_row.length;
+				final double[] omat_row = get_build_row (omat_rup_targ_int_src, omat_rup_targ_int_src_f, i_t_rup);
+				final int row_len = get_build_row_len (omat_rup_targ_int_src, omat_rup_targ_int_src_f, i_t_rup);
 				final double t_plus_c = a_rupture_int_time_value[i_t_rup] + c;
 
 				// Build the row containing all sources for this target
@@ -1473,6 +1844,8 @@ public class OEDisc2ExtFit {
 				
 					omat_row[i_s_int] = OEOmoriCalc.omext_single_integral (p, t_plus_c - s2, s2 - s1);
 				}
+
+				put_build_row (omat_rup_targ_int_src_f, i_t_rup, omat_row);
 			}
 
 			return;
@@ -1508,7 +1881,7 @@ public class OEDisc2ExtFit {
 
 			// Zero-matrix case
 
-			if (omat_rup_targ_int_src == null) {
+			if (omat_rup_targ_int_src == null && omat_rup_targ_int_src_f == null) {
 				final int ii_top = history.rupture_count;
 				for (int ii = 0; ii < ii_top; ++ii) {
 					y1[ii] = o1[ii];
@@ -1517,6 +1890,25 @@ public class OEDisc2ExtFit {
 				return;
 			}
 
+			// Single-precision matrix
+
+			if (omat_rup_targ_int_src_f != null) {
+				final int i_top = omat_rup_targ_int_src_f.length;
+				for (int i = 0; i < i_top; ++i) {
+					double sum1 = 0.0;
+					double sum2 = 0.0;
+					final float[] row = omat_rup_targ_int_src_f[i];
+					final int j_top = row.length;
+					for (int j = 0; j < j_top; ++j) {
+						sum1 += (row[j] * x1[j]);
+						sum2 += (row[j] * x2[j]);
+					}
+					y1[i] = sum1 * d[i] + o1[i];
+					y2[i] = sum2 * d[i] + o2[i];
+				}
+				return;
+			}
+
 			// Non-zero matrix
 
 			final int i_top = omat_rup_targ_int_src.length;
@@ -1573,7 +1965,7 @@ public class OEDisc2ExtFit {
 
 			// Zero-matrix case
 
-			if (omat_rup_targ_int_src == null) {
+			if (omat_rup_targ_int_src == null && omat_rup_targ_int_src_f == null) {
 				final int ii_top = history.rupture_count;
 				for (int ii = 0; ii < ii_top; ++ii) {
 					y1[ii] = o1[ii];
@@ -1583,6 +1975,28 @@ public class OEDisc2ExtFit {
 				return;
 			}
 
+			// Single-precision matrix
+
+			if (omat_rup_targ_int_src_f != null) {
+				final int i_top = omat_rup_targ_int_src_f.length;
+				for (int i = 0; i < i_top; ++i) {
+					double sum1 = 0.0;
+					double sum2 = 0.0;
+					double sum3 = 0.0;
+					final float[] row = omat_rup_targ_int_src_f[i];
+					final int j_top = row.length;
+					for (int j = 0; j < j_top; ++j) {
+						sum1 += (row[j] * x1[j]);
+						sum2 += (row[j] * x2[j]);
+						sum3 += (row[j] * x3[j]);
+					}
+					y1[i] = sum1 * d[i] + o1[i];
+					y2[i] = sum2 * d[i] + o2[i];
+					y3[i] = sum3 * d[i] + o3[i];
+				}
+				return;
+			}
+
 			// Non-zero matrix
 
 			final int i_top = omat_rup_targ_int_src.length;
@@ -1630,6 +2044,10 @@ public class OEDisc2ExtFit {
 
 		private double[][] omat_int_targ_rup_src;
 
+		// Single-precision storage of the same matrix, used in place of omat_int_targ_rup_src if f_omat_float is set.
+
+		private float[][] omat_int_targ_rup_src_f;
+
 
 		// Function to allocate the matrix of Omori values for an interval target and rupture source.
 
@@ -1639,6 +2057,24 @@ public class OEDisc2ExtFit {
 			final int[] a_rupture_int_time_index = history.a_rupture_int_time_index;
 			final int interval_count = history.interval_count;
 
+			// Single-precision storage
+
+			if (f_omat_float) {
+
+				// Allocate the triangular array
+
+				omat_int_targ_rup_src_f = new float[interval_count][];
+				int n = 0;
+				for (int i_t_int = 0; i_t_int < interval_count; ++i_t_int) {
+					while (n < rupture_count && a_rupture_int_time_index[n] <= i_t_int) {
+						++n;
+					}
+					omat_int_targ_rup_src_f[i_t_int] = new float[n];
+				}
+
+				return;
+			}
+
 			// Allocate the triangular array
 
 			omat_int_targ_rup_src = new double[interval_count][];
@@ -1668,8 +2104,8 @@ public class OEDisc2ExtFit {
 
 				// Get the time for this target, using the matching interval time
 
-				final double[] omat_row = omat_int_targ_rup_src[i_t_int];
-				final int row_len = omat_row.length;
+				final double[] omat_row = get_build_row (omat_int_targ_rup_src, omat_int_targ_rup_src_f, i_t_int);
+				final int row_len = get_build_row_len (omat_int_targ_rup_src, omat_int_targ_rup_src_f, i_t_int);
 
 				final double t1 = a_interval_time[i_t_int];
 				final double t1_plus_c = t1 + c;
@@ -1701,6 +2137,8 @@ public class OEDisc2ExtFit {
 						}
 					}
 				}
+
+				put_build_row (omat_int_targ_rup_src_f, i_t_int, omat_row);
 			}
 
 			return;
@@ -1742,7 +2180,7 @@ public class OEDisc2ExtFit {
 
 			// Zero-matrix case
 
-			if (omat_int_targ_rup_src == null) {
+			if (omat_int_targ_rup_src == null && omat_int_targ_rup_src_f == null) {
 				final int ii_top = history.interval_count;
 				for (int ii = 0; ii < ii_top; ++ii) {
 					y1[ii] = 0.0;
@@ -1753,6 +2191,31 @@ public class OEDisc2ExtFit {
 				return;
 			}
 
+			// Single-precision matrix
+
+			if (omat_int_targ_rup_src_f != null) {
+				final int i_top = omat_int_targ_rup_src_f.length;
+				double total1 = 0.0;
+				double total2 = 0.0;
+				for (int i = 0; i < i_top; ++i) {
+					double sum1 = 0.0;
+					double sum2 = 0.0;
+					final float[] row = omat_int_targ_rup_src_f[i];
+					final int j_top = row.length;
+					for (int j = 0; j < j_top; ++j) {
+						sum1 += (row[j] * x1[j]);
+						sum2 += (row[j] * x2[j]);
+					}
+					y1[i] = sum1 * dy[i];
+					y2[i] = sum2 * dy[i];
+					total1 += (sum1 * dz[i]);
+					total2 += (sum2 * dz[i]);
+				}
+				z1[0] = total1;
+				z2[0] = total2;
+				return;
+			}
+
 			// Non-zero matrix
 
 			final int i_top = omat_int_targ_rup_src.length;
@@ -1811,6 +2274,10 @@ public class OEDisc2ExtFit {
 
 		private double[][] omat_int_targ_int_src;
 
+		// Single-precision storage of the same matrix, used in place of omat_int_targ_int_src if f_omat_float is set.
+
+		private float[][] omat_int_targ_int_src_f;
+
 		private double[] omat_self_int_src;
 
 
@@ -1820,6 +2287,24 @@ public class OEDisc2ExtFit {
 
 			final int interval_count = history.interval_count;
 
+			// Single-precision storage
+
+			if (f_omat_float) {
+
+				// Allocate the triangular array
+
+				omat_int_targ_int_src_f = new float[interval_count][];
+				for (int i_t_int = 0; i_t_int < interval_count; ++i_t_int) {
+					omat_int_targ_int_src_f[i_t_int] = new float[i_t_int];
+				}
+
+				// Allocate the self array
+
+				omat_self_int_src = new double[interval_count];
+
+				return;
+			}
+
 			// Allocate the triangular array
 
 			omat_int_targ_int_src = new double[interval_count][];
@@ -1848,8 +2333,8 @@ public class OEDisc2ExtFit {
 
 				// Get the time for this target, using the matching interval time
 
-				final double[] omat_row = omat_int_targ_int_src[i_t_int];
-				final int row_len = omat_row.length;
+				final double[] omat_row = get_build_row (omat_int_targ_int_src, omat_int_targ_int_src_f, i_t_int);
+				final int row_len = get_build_row_len (omat_int_targ_int_src, omat_int_targ_int_src_f, i_t_int);
 
 				final double t1_plus_c = a_interval_time[i_t_int] + c;
 				final double t2_minus_t1 = a_interval_time[i_t_int + 1] - a_interval_time[i_t_int];
@@ -1868,6 +2353,8 @@ public class OEDisc2ExtFit {
 					omat_row[i_s_int] = OEOmoriCalc.omext_double_density_integral (p, t1_plus_c - s2, s2 - s1, t2_minus_t1);
 				}
 
+				put_build_row (omat_int_targ_int_src_f, i_t_int, omat_row);
+
 				// Build the self entry
 
 				omat_self_int_src[i_t_int] = OEOmoriCalc.omext_self_double_density_integral (p, c, t2_minus_t1);
@@ -1916,7 +2403,7 @@ public class OEDisc2ExtFit {
 
 			// Zero-matrix case
 
-			if (omat_int_targ_int_src == null) {
+			if (omat_int_targ_int_src == null && omat_int_targ_int_src_f == null) {
 				final int ii_top = history.interval_count;
 				for (int ii = 0; ii < ii_top; ++ii) {
 					y1[ii] = x1[ii] * s;
@@ -1927,6 +2414,53 @@ public class OEDisc2ExtFit {
 				return;
 			}
 
+			// Single-precision matrix
+
+			if (omat_int_targ_int_src_f != null) {
+				final int i_top = omat_int_targ_int_src_f.length;
+
+				// Accumulators across all targets for scalar output
+
+				double total1 = 0.0;
+				double total2 = 0.0;
+
+				// For each target...
+
+				for (int i = 0; i < i_top; ++i) {
+
+					// Propagate from prior outputs
+
+					double sum1 = 0.0;
+					double sum2 = 0.0;
+
+					final float[] row = omat_int_targ_int_src_f[i];
+					final int j_top = row.length;
+
+					for (int j = 0; j < j_top; ++j) {
+						sum1 += (row[j] * y1[j]);
+						sum2 += (row[j] * y2[j]);
+					}
+
+					// Vector output
+
+					final double self = omat_self_int_src[i];
+
+					y1[i] = (sum1 * dy[i] + x1[i]) * s * (self * dy[i] * s + 1.0);
+					y2[i] = (sum2 * dy[i] + x2[i]) * s * (self * dy[i] * s + 1.0);
+
+					// Scalar output
+
+					total1 += ((y1[i] * self + sum1) * dz[i]);
+					total2 += ((y2[i] * self + sum2) * dz[i]);
+				}
+
+				// Total scalar output
+
+				z1[0] = total1 + o1[0];
+				z2[0] = total2 + o2[0];
+				return;
+			}
+
 			// Non-zero matrix
 
 			final int i_top = omat_int_targ_int_src.length;
@@ -2023,7 +2557,7 @@ public class OEDisc2ExtFit {
 
 			// Zero-matrix case
 
-			if (omat_int_targ_int_src == null) {
+			if (omat_int_targ_int_src == null && omat_int_targ_int_src_f == null) {
 				final int ii_top = history.interval_count;
 				for (int ii = 0; ii < ii_top; ++ii) {
 					y1[ii] = x1[ii] * s;
@@ -2036,6 +2570,60 @@ public class OEDisc2ExtFit {
 				return;
 			}
 
+			// Single-precision matrix
+
+			if (omat_int_targ_int_src_f != null) {
+				final int i_top = omat_int_targ_int_src_f.length;
+
+				// Accumulators across all targets for scalar output
+
+				double total1 = 0.0;
+				double total2 = 0.0;
+				double total3 = 0.0;
+
+				// For each target...
+
+				for (int i = 0; i < i_top; ++i) {
+
+					// Propagate from prior outputs
+
+					double sum1 = 0.0;
+					double sum2 = 0.0;
+					double sum3 = 0.0;
+
+					final float[] row = omat_int_targ_int_src_f[i];
+					final int j_top = row.length;
+
+					for (int j = 0; j < j_top; ++j) {
+						sum1 += (row[j] * y1[j]);
+						sum2 += (row[j] * y2[j]);
+						sum3 += (row[j] * y3[j]);
+					}
+
+					// Vector output
+
+					final double self = omat_self_int_src[i];
+					final double r = s * (self * dy[i] * s + 1.0);
+
+					y1[i] = (sum1 * dy[i] + x1[i]) * r;
+					y2[i] = (sum2 * dy[i] + x2[i]) * r;
+					y3[i] = (sum3 * dy[i] + x3[i]) * r;
+
+					// Scalar output
+
+					total1 += ((y1[i] * self + sum1) * dz[i]);
+					total2 += ((y2[i] * self + sum2) * dz[i]);
+					total3 += ((y3[i] * self + sum3) * dz[i]);
+				}
+
+				// Total scalar output
+
+				z1[0] = total1 + o1[0];
+				z2[0] = total2 + o2[0];
+				z3[0] = total3 + o3[0];
+				return;
+			}
+
 			// Non-zero matrix
 
 			final int i_top = omat_int_targ_int_src.length;
@@ -2104,11 +2692,21 @@ public class OEDisc2ExtFit {
 			c = 0.0;
 
 			omat_rup_targ_rup_src = null;
+			f_shared_omat_rup_targ_rup_src = false;
+			omat_tree_rup_targ_rup_src = null;
+			validate_y1 = null;
+			validate_y2 = null;
 			omat_rup_targ_int_src = null;
 			omat_int_targ_rup_src = null;
 			omat_int_targ_int_src = null;
 			omat_self_int_src = null;
 
+			omat_rup_targ_rup_src_f = null;
+			omat_rup_targ_int_src_f = null;
+			omat_int_targ_rup_src_f = null;
+			omat_int_targ_int_src_f = null;
+			build_scratch = null;
+
 			return;
 		}
 
@@ -2204,6 +2802,17 @@ public class OEDisc2ExtFit {
 			result.append ("omat_int_targ_rup_src: " + tri_mat_summary_string(omat_int_targ_rup_src) + "\n");
 			result.append ("omat_int_targ_int_src: " + tri_mat_summary_string(omat_int_targ_int_src) + "\n");
 			result.append ("omat_self_int_src: "     + vec_summary_string(omat_self_int_src)         + "\n");
+			if (omat_tree_rup_targ_rup_src != null) {
+				result.append ("omat_tree_rup_targ_rup_src: order = " + omat_tree_rup_targ_rup_src.get_order()
+								+ ", error_bound = " + omat_tree_rup_targ_rup_src.get_error_bound()
+								+ ", interactions = " + omat_tree_rup_targ_rup_src.get_interaction_count() + "\n");
+			}
+			if (f_omat_float) {
+				result.append ("omat_rup_targ_rup_src_f: " + tri_mat_summary_string(omat_rup_targ_rup_src_f) + "\n");
+				result.append ("omat_rup_targ_int_src_f: " + tri_mat_summary_string(omat_rup_targ_int_src_f) + "\n");
+				result.append ("omat_int_targ_rup_src_f: " + tri_mat_summary_string(omat_int_targ_rup_src_f) + "\n");
+				result.append ("omat_int_targ_int_src_f: " + tri_mat_summary_string(omat_int_targ_int_src_f) + "\n");
+			}
 
 			return result.toString();
 		}
@@ -4003,6 +4612,17 @@ public class OEDisc2ExtFit {
 		f_omat_int_targ_rup_src = true;
 		f_omat_int_targ_int_src = true;
 
+		f_omat_float = false;
+
+		omori_cache = null;
+		omori_cache_a_t_day = null;
+
+		omat_kernel = OMAT_KERNEL_EXACT;
+		omat_approx_tol = 0.0;
+		omat_tree_a_time = null;
+		omat_tree_row_len = null;
+		omat_approx_max_error = new AtomicLong (Double.doubleToLongBits (0.0));
+
 		mexp_list = new ConcurrentLinkedDeque<MagExponent>();
 		omat_list = new ConcurrentLinkedDeque<OmoriMatrix>();
 		pmom_list = new ConcurrentLinkedDeque<PairMagOmori>();
@@ -4095,6 +4715,127 @@ public class OEDisc2ExtFit {
 
 
 
+	// Set whether to hold the Omori matrices in single precision (see f_omat_float).
+	// This must be called after dfit_build, and before any OmoriMatrix objects are created.
+
+	public final void set_omat_float (boolean f_omat_float) {
+		this.f_omat_float = f_omat_float;
+		return;
+	}
+
+	public final boolean get_omat_float () {
+		return f_omat_float;
+	}
+
+
+
+
+	// Set the cache to use for Omori matrix rows, or null for no cache.
+	// This must be called after dfit_build, and before any OmoriMatrix objects are built.
+	// When fits are repeated for histories that extend earlier ones, as happens when a
+	// forecast is re-issued after new aftershocks arrive, the rows of the rupture-target
+	// rupture-source Omori matrix for the earlier ruptures are taken from the cache, and
+	// only the rows for the new ruptures are computed.
+
+	public final void set_omori_cache (OEOmoriRowCache omori_cache) {
+		this.omori_cache = omori_cache;
+		if (omori_cache == null) {
+			this.omori_cache_a_t_day = null;
+		} else {
+			final int rupture_count = history.rupture_count;
+			this.omori_cache_a_t_day = new double[rupture_count];
+			for (int n = 0; n < rupture_count; ++n) {
+				this.omori_cache_a_t_day[n] = history.a_rupture_obj[n].t_day;
+			}
+		}
+		return;
+	}
+
+	public final OEOmoriRowCache get_omori_cache () {
+		return omori_cache;
+	}
+
+	// Return true if the Omori row cache is used to build the rupture-source Omori matrix.
+	// The cache is only used for double-precision storage.
+
+	public final boolean is_omori_cache_used () {
+		return omori_cache != null && omori_cache.is_enabled() && !( f_omat_float );
+	}
+
+
+
+
+	// Set the kernel used to apply the rupture-target rupture-source Omori matrix.
+	// Parameters:
+	//  omat_kernel = Kernel option (OMAT_KERNEL_XXXX).
+	//  omat_approx_tol = Relative error tolerance for the approximate kernel, must be > 0.
+	// This must be called after dfit_build, and before any OmoriMatrix objects are created.
+	// The approximate kernel needs O(N log N) time and memory for N ruptures, instead of O(N^2),
+	// and the relative error in each per-rupture intensity is at most omat_approx_tol.
+	// Only the rupture-source product is approximated; the interval-source matrices hold
+	// integrals over intervals and are always exact.
+
+	public final void set_omat_kernel (int omat_kernel, double omat_approx_tol) {
+		if (!( omat_kernel >= OMAT_KERNEL_MIN && omat_kernel <= OMAT_KERNEL_MAX )) {
+			throw new IllegalArgumentException ("OEDisc2ExtFit.set_omat_kernel: Invalid kernel option: omat_kernel = " + omat_kernel);
+		}
+		if (omat_kernel != OMAT_KERNEL_EXACT && !( omat_approx_tol > 0.0 )) {
+			throw new IllegalArgumentException ("OEDisc2ExtFit.set_omat_kernel: Invalid tolerance: omat_approx_tol = " + omat_approx_tol);
+		}
+
+		this.omat_kernel = omat_kernel;
+		this.omat_approx_tol = omat_approx_tol;
+		this.omat_approx_max_error.set (Double.doubleToLongBits (0.0));
+
+		if (omat_kernel == OMAT_KERNEL_EXACT) {
+			this.omat_tree_a_time = null;
+			this.omat_tree_row_len = null;
+		} else {
+			final int rupture_count = history.rupture_count;
+			this.omat_tree_a_time = new double[rupture_count];
+			this.omat_tree_row_len = new int[rupture_count];
+			for (int n = 0; n < rupture_count; ++n) {
+				this.omat_tree_a_time[n] = history.a_rupture_obj[n].t_day;
+				this.omat_tree_row_len[n] = ((n >= targ_rup_begin && n < targ_rup_end) ? n : 0);
+			}
+		}
+		return;
+	}
+
+	public final int get_omat_kernel () {
+		return omat_kernel;
+	}
+
+	public final double get_omat_approx_tol () {
+		return omat_approx_tol;
+	}
+
+
+
+
+	// Get the largest relative error of the approximate kernel seen so far in validation mode.
+
+	public final double get_omat_approx_max_error () {
+		return Double.longBitsToDouble (omat_approx_max_error.get());
+	}
+
+	// Record a relative error of the approximate kernel.
+
+	private void record_omat_approx_error (double error) {
+		for (;;) {
+			final long bits = omat_approx_max_error.get();
+			if (!( error > Double.longBitsToDouble (bits) )) {
+				return;
+			}
+			if (omat_approx_max_error.compareAndSet (bits, Double.doubleToLongBits (error))) {
+				return;
+			}
+		}
+	}
+
+
+
+
 	// Set up the grouping.
 	// Parameters:
 	//  span_width_fcn = Span width function, which gives the maximum width of a span.
@@ -18,6 +18,9 @@ import org.opensha.oaf.util.Marshalable;
 import org.opensha.oaf.util.InvariantViolationException;
 import org.opensha.oaf.util.SimpleUtils;
 import org.opensha.oaf.util.SimpleExecTimer;
+import org.opensha.oaf.util.SimpleThreadLoopHelper;
+import org.opensha.oaf.util.SimpleThreadManager;
+import org.opensha.oaf.util.SimpleThreadTarget;
 import static org.opensha.oaf.util.SimpleUtils.rndd;
 
 import org.opensha.oaf.oetas.OEStatsCalc;
@@ -39,6 +42,8 @@ import org.opensha.oaf.oetas.OEGenerationInfo;
 import org.opensha.oaf.oetas.util.OEArraysCalc;
 
 import org.opensha.oaf.oetas.except.OEException;
+import org.opensha.oaf.oetas.except.OEFitThreadAbortException;
+import org.opensha.oaf.oetas.except.OEFitTimeoutException;
 
 
 // Operational ETAS catalog initializer for fitted parameters.
@@ -245,6 +250,20 @@ public class OEDisc2InitVoxSet implements OEEnsembleInitializer, OEDisc2InitVoxC
 
 	private int[] a_seed_subvox;
 
+	// The seeding table, which is a_seed_subvox with the voxels and statistical catalog parameters
+	// looked up in advance, and excluding voxels with too large a branch ratio; length = seed_table_count.
+	// Entry i is derived from a_seed_subvox[i], skipping excluded entries.
+	// Note: The seeding table is not marshaled; it is rebuilt after unmarshaling.
+
+	private int seed_table_count;
+	private int[] a_seed_table_voxel;
+	private int[] a_seed_table_subvox;
+	private double[] a_seed_table_a;
+	private double[] a_seed_table_p;
+	private double[] a_seed_table_c;
+	private double[] a_seed_table_b;
+	private double[] a_seed_table_alpha;
+
 
 	//--- Output statistics
 
@@ -312,6 +331,177 @@ public class OEDisc2InitVoxSet implements OEEnsembleInitializer, OEDisc2InitVoxC
 
 
 
+	// Progress message format while running.
+
+	private static final String PMFMT_RUNNING = "Completed %C of %L steps (%P%%) in %E seconds using %U";
+
+	// Progress message format after completion.
+
+	private static final String PMFMT_DONE = "Completed all %L steps in %E seconds";
+
+	// Progress message format for timeout.
+
+	private static final String PMFMT_TIMEOUT = "Stopped after completing %C of %L steps in %E seconds";
+
+	// Progress message format for abort.
+
+	private static final String PMFMT_ABORT = "Aborted after completing %C of %L steps in %E seconds";
+
+
+
+
+	// Class to get the probabilities and density bins of all sub-voxels, using one thread loop iteration per voxel.
+	// Each thread accumulates statistics into its own fork of the statistics accumulator, which is
+	// merged into the caller's accumulator when the thread finishes.
+	// Note: The threads do not accumulate the bin probabilities and tallies, because the floating-point
+	// result would depend on the order in which voxels are processed.  Instead, the caller computes
+	// them afterwards from the per-sub-voxel probabilities and bins.
+
+	private class TM_prob_bin_scan implements SimpleThreadTarget {
+
+		// The loop helper.
+
+		private SimpleThreadLoopHelper loop_helper = new SimpleThreadLoopHelper (PMFMT_RUNNING);
+
+		// Parameters for get_probabilities_and_bin (the arrays receive results in disjoint ranges).
+
+		private double scan_bay_weight;
+		private double scan_max_log_density;
+		private double[] a_subvox_prob;
+		private int[] a_density_bin;
+		private double density_bin_size_lnu;
+		private int density_bin_count;
+
+		// The statistics accumulator, which receives the merged data from all threads.
+		// Access must be synchronized on this object.
+
+		private OEDisc2VoxStatAccum stat_accum;
+
+		// Entry point for a thread.
+		// Parameters:
+		//  thread_manager = The thread manager.
+		//  thread_number = The thread number, which ranges from 0 to the number of
+		//                  threads in the pool minus 1.
+		// Threading: This function is called by all the threads in the pool, and
+		// so must be thread-safe and use any needed synchronization.
+
+		@Override
+		public void thread_entry (SimpleThreadManager thread_manager, int thread_number) throws Exception {
+
+			// Make our own statistics accumulator
+
+			OEDisc2VoxStatAccum fork_accum;
+			synchronized (this) {
+				fork_accum = stat_accum.vsaccum_fork();
+			}
+
+			// Bin accumulators, which are required by get_probabilities_and_bin but not used
+
+			double[] a_prob_accum = new double[density_bin_count];
+			OEArraysCalc.zero_array (a_prob_accum);
+
+			int[] a_tally_accum = new int[density_bin_count];
+			OEArraysCalc.zero_array (a_tally_accum);
+
+			// Loop until loop completed or prompt termination is requested
+
+			for (int index = loop_helper.get_loop_index(); index >= 0; index = loop_helper.get_next_index()) {
+				a_voxel_list[index].get_probabilities_and_bin (
+					scan_bay_weight,
+					scan_max_log_density,
+					a_subvox_prob,
+					a_density_bin,
+					cum_subvox_count[index],	// dest_index
+					density_bin_size_lnu,		// bin_size_lnu
+					a_prob_accum,
+					a_tally_accum,
+					fork_accum
+				);
+			}
+
+			// Merge our statistics into the caller's accumulator
+
+			synchronized (this) {
+				stat_accum.vsaccum_merge (fork_accum);
+			}
+
+			return;
+		}
+
+		// Get the probabilities and density bins of all sub-voxels.
+		// Parameters:
+		//  exec_timer = Execution timer, provides executor, time limit, and progress message interval.
+		//  the_bay_weight = Bayesian prior weight.
+		//  the_max_log_density = Maximum log-density, for the given Bayesian prior weight.
+		//  the_a_subvox_prob = Receives the probability of each sub-voxel.
+		//  the_a_density_bin = Receives the bin for the log-density of each sub-voxel.
+		//  the_density_bin_size_lnu = The size of each log-density bin, in natural log units.
+		//  the_density_bin_count = The number of log-density bins.
+		//  the_stat_accum = Statistics accumulator, vsaccum_begin must already have been called.
+
+		public void scan_prob_bin (
+			SimpleExecTimer exec_timer,
+			double the_bay_weight,
+			double the_max_log_density,
+			double[] the_a_subvox_prob,
+			int[] the_a_density_bin,
+			double the_density_bin_size_lnu,
+			int the_density_bin_count,
+			OEDisc2VoxStatAccum the_stat_accum
+		) throws OEException {
+
+			// Save the parameters
+
+			scan_bay_weight = the_bay_weight;
+			scan_max_log_density = the_max_log_density;
+			a_subvox_prob = the_a_subvox_prob;
+			a_density_bin = the_a_density_bin;
+			density_bin_size_lnu = the_density_bin_size_lnu;
+			density_bin_count = the_density_bin_count;
+			stat_accum = the_stat_accum;
+
+			// Say hello
+
+			System.out.println ("Start computing sub-voxel probabilities and statistics");
+
+			// Run the loop
+
+			loop_helper.run_loop (this, exec_timer, 0, voxel_count);
+
+			// Check for thread abort
+
+			if (loop_helper.is_abort()) {
+				System.out.println (loop_helper.get_abort_message_string());
+				String loop_stat = loop_helper.make_progress_message (PMFMT_ABORT);
+				String msg = "Abort computing sub-voxel probabilities and statistics because of thread abort";
+				System.out.println (loop_stat);
+				System.out.println (msg);
+				throw new OEFitThreadAbortException (msg + ": " + loop_stat);
+			}
+
+			// Otherwise, check for timeout
+
+			if (loop_helper.is_incomplete()) {
+				String loop_stat = loop_helper.make_progress_message (PMFMT_TIMEOUT);
+				String msg = "Abort computing sub-voxel probabilities and statistics because of timeout";
+				System.out.println (loop_stat);
+				System.out.println (msg);
+				throw new OEFitTimeoutException (msg + ": " + loop_stat);
+			}
+
+			// Otherwise, normal termination
+
+			System.out.println (loop_helper.make_progress_message (PMFMT_DONE));
+			System.out.println ("Finish computing sub-voxel probabilities and statistics");
+
+			return;
+		}
+
+	}
+
+
+
+
 	// Set up for initialization, post fitting.
 	// Parameters:
 	//  the_cat_params = Catalog parameters to use.
@@ -326,6 +516,7 @@ public class OEDisc2InitVoxSet implements OEEnsembleInitializer, OEDisc2InitVoxC
 	// i*density_bin_size_lnu and (i+1)*density_bin_size_lnu.  The last bin contains all sub-voxels whose negative
 	// normalized log-density is greater than (density_bin_count-1)*density_bin_size_lnu.  The density bins are
 	// used for trimming the tail of the probability distribution.
+	// Note: This version performs all calculations in the current thread.
 
 	public final void setup_post_fitting (
 		OECatalogParams the_cat_params,
@@ -337,6 +528,59 @@ public class OEDisc2InitVoxSet implements OEEnsembleInitializer, OEDisc2InitVoxC
 		int the_seed_subvox_count,
 		OEDisc2VoxStatAccum stat_accum
 	) {
+		try {
+			setup_post_fitting (
+				the_cat_params,
+				the_t_forecast,
+				the_bay_weight,
+				density_bin_size_lnu,
+				density_bin_count,
+				prob_tail_trim,
+				the_seed_subvox_count,
+				stat_accum,
+				null
+			);
+		} catch (OEException e) {
+			throw new InvariantViolationException ("OEDisc2InitVoxSet.setup_post_fitting: Unexpected exception during single-threaded setup", e);
+		}
+		return;
+	}
+
+
+
+
+	// Set up for initialization, post fitting.
+	// Parameters:
+	//  the_cat_params = Catalog parameters to use.
+	//  the_t_forecast = The time at which the forecast begins, in days.  (Should be >= the_cat_params.tbegin.)
+	//  the_bay_weight = Bayesian prior weight (1 = Bayesian, 0 = Sequence-specific, 2 = Generic, see OEConstants.BAY_WT_XXX).
+	//  density_bin_size_lnu = Size of each bin for binning sub-voxels according to log-density, in natural log units.
+	//  density_bin_count = Number of bins for binning sub-voxels according to log-density; must be >= 2.
+	//  prob_tail_trim = Fraction of the probability distribution to trim.
+	//  the_seed_subvox_count = Number of sub-voxels to use for seeding, must be a power of 2.
+	//  stat_accum = Statistics accumulator.
+	//  exec_timer = Execution timer for multi-threading, can be null to use single-threading.
+	// Throws exception if multi-threading error or timeout.
+	// Note: The i-th density bin contains sub-voxels whose negative normalized log-density lies between
+	// i*density_bin_size_lnu and (i+1)*density_bin_size_lnu.  The last bin contains all sub-voxels whose negative
+	// normalized log-density is greater than (density_bin_count-1)*density_bin_size_lnu.  The density bins are
+	// used for trimming the tail of the probability distribution.
+	// Note: With multi-threading, the per-voxel work of computing probabilities and accumulating statistics
+	// is divided among the threads, each of which accumulates into a fork of stat_accum.  The bin probabilities
+	// and tallies are then computed in the current thread, in voxel order, so the tail trimming and seeding
+	// are the same as with single-threading.
+
+	public final void setup_post_fitting (
+		OECatalogParams the_cat_params,
+		double the_t_forecast,
+		double the_bay_weight,
+		double density_bin_size_lnu,
+		int density_bin_count,
+		double prob_tail_trim,
+		int the_seed_subvox_count,
+		OEDisc2VoxStatAccum stat_accum,
+		SimpleExecTimer exec_timer
+	) throws OEException {
 
 		// Save the parameters
 
@@ -443,21 +687,45 @@ public class OEDisc2InitVoxSet implements OEEnsembleInitializer, OEDisc2InitVoxC
 			bay_max_log_density
 		);
 
-		// Second scan, get the probabilities and density bins
+		// Second scan, get the probabilities and density bins, multi-threaded
 
-		for (int j = 0; j < voxel_count; ++j) {
-			final OEDisc2InitStatVox voxel = a_voxel_list[j];
-			voxel.get_probabilities_and_bin (
+		if (exec_timer != null) {
+			(new TM_prob_bin_scan()).scan_prob_bin (
+				exec_timer,
 				bay_weight,
 				max_log_density,
 				a_subvox_prob,
 				a_density_bin,
-				cum_subvox_count[j],	// dest_index
-				density_bin_size_lnu,	// bin_size_lnu
-				a_prob_accum,
-				a_tally_accum,
+				density_bin_size_lnu,
+				density_bin_count,
 				stat_accum
 			);
+
+			// Accumulate the bin probabilities and tallies, in sub-voxel order
+
+			for (int j = 0; j < total_subvox_count; ++j) {
+				a_prob_accum[a_density_bin[j]] += a_subvox_prob[j];
+				a_tally_accum[a_density_bin[j]]++;
+			}
+		}
+
+		// Second scan, get the probabilities and density bins, single-threaded
+
+		else {
+			for (int j = 0; j < voxel_count; ++j) {
+				final OEDisc2InitStatVox voxel = a_voxel_list[j];
+				voxel.get_probabilities_and_bin (
+					bay_weight,
+					max_log_density,
+					a_subvox_prob,
+					a_density_bin,
+					cum_subvox_count[j],	// dest_index
+					density_bin_size_lnu,	// bin_size_lnu
+					a_prob_accum,
+					a_tally_accum,
+					stat_accum
+				);
+			}
 		}
 
 		// Finish the statistics accumulator
@@ -616,6 +884,67 @@ public class OEDisc2InitVoxSet implements OEEnsembleInitializer, OEDisc2InitVoxC
 
 		// Here there could be computation of parameter statistics...
 
+		// Build the seeding table
+
+		build_seed_table();
+
+		return;
+	}
+
+
+
+
+	// Build the seeding table from the seeding sub-voxels.
+	// Each entry of a_seed_subvox is mapped to its voxel and local sub-voxel, and the voxel's statistical
+	// catalog parameters are computed, so that seeding a catalog requires only array reads.
+	// Entries whose voxel has branch ratio above EXCLUDE_DITHERING_BR_FOR_SIM are left out.
+
+	private void build_seed_table () {
+		final OECatalogParams tmp_cat_params = new OECatalogParams();
+
+		int[] t_voxel = new int[seed_subvox_count];
+		int[] t_subvox = new int[seed_subvox_count];
+		double[] t_a = new double[seed_subvox_count];
+		double[] t_p = new double[seed_subvox_count];
+		double[] t_c = new double[seed_subvox_count];
+		double[] t_b = new double[seed_subvox_count];
+		double[] t_alpha = new double[seed_subvox_count];
+
+		int n = 0;
+		for (int ix_seed = 0; ix_seed < seed_subvox_count; ++ix_seed) {
+			final int global_subvox_index = a_seed_subvox[ix_seed];
+			final int voxel_index = get_voxel_for_subvox (global_subvox_index);
+
+			final double cat_br = a_voxel_list[voxel_index].get_vox_cat_params (
+				fit_info,
+				proto_cat_params,
+				tmp_cat_params
+			);
+
+			if (cat_br <= OEConstants.EXCLUDE_DITHERING_BR_FOR_SIM) {
+				t_voxel[n] = voxel_index;
+				t_subvox[n] = get_local_for_global_subvox (global_subvox_index, voxel_index);
+				t_a[n] = tmp_cat_params.a;
+				t_p[n] = tmp_cat_params.p;
+				t_c[n] = tmp_cat_params.c;
+				t_b[n] = tmp_cat_params.b;
+				t_alpha[n] = tmp_cat_params.alpha;
+				++n;
+			}
+		}
+
+		if (n == 0) {
+			throw new InvariantViolationException ("OEDisc2InitVoxSet.build_seed_table: All seeding sub-voxels are excluded by branch ratio: seed_subvox_count = " + seed_subvox_count);
+		}
+
+		seed_table_count = n;
+		a_seed_table_voxel = Arrays.copyOf (t_voxel, n);
+		a_seed_table_subvox = Arrays.copyOf (t_subvox, n);
+		a_seed_table_a = Arrays.copyOf (t_a, n);
+		a_seed_table_p = Arrays.copyOf (t_p, n);
+		a_seed_table_c = Arrays.copyOf (t_c, n);
+		a_seed_table_b = Arrays.copyOf (t_b, n);
+		a_seed_table_alpha = Arrays.copyOf (t_alpha, n);
 		return;
 	}
 
@@ -762,6 +1091,14 @@ public class OEDisc2InitVoxSet implements OEEnsembleInitializer, OEDisc2InitVoxC
 		bay_mle_subvox_index = 0;
 		bay_mle_grid_point = null;
 		a_seed_subvox = null;
+		seed_table_count = 0;
+		a_seed_table_voxel = null;
+		a_seed_table_subvox = null;
+		a_seed_table_a = null;
+		a_seed_table_p = null;
+		a_seed_table_c = null;
+		a_seed_table_b = null;
+		a_seed_table_alpha = null;
 
 		dither_mismatch = 0;
 		clip_log_density_prob = 0.0;
@@ -856,6 +1193,7 @@ public class OEDisc2InitVoxSet implements OEEnsembleInitializer, OEDisc2InitVoxC
 		if (bay_mle_grid_point != null) {
 			result.append ("bay_mle_grid_point = {" + bay_mle_grid_point.toString() + "}\n");
 		}
+		result.append ("seed_table_count = " + seed_table_count + "\n");
 		if (a_seed_subvox != null) {
 			result.append ("a_seed_subvox.length = " + a_seed_subvox.length + "\n");
 			if (a_seed_subvox.length >= 4) {
@@ -1000,10 +1338,15 @@ public class OEDisc2InitVoxSet implements OEEnsembleInitializer, OEDisc2InitVoxC
 
 
 
-	// The current index into the seeding array.
+	// The current index into the seeding table.
+	// Seeders that do not know the catalog index claim blocks of SEED_BLOCK_SIZE entries from this.
 
 	private final AtomicInteger seeding_index = new AtomicInteger();
 
+	// Number of seeding table entries claimed at once by a seeder.
+
+	private static final int SEED_BLOCK_SIZE = 32;
+
 
 
 
@@ -1023,6 +1366,11 @@ public class OEDisc2InitVoxSet implements OEEnsembleInitializer, OEDisc2InitVoxC
 		private final OECatalogParams local_cat_params = new OECatalogParams();
 		private final OERupture local_rup = new OERupture();
 
+		// The next seeding index to use, and the end of the claimed block, when the catalog index is not known.
+
+		private int block_next;
+		private int block_end;
+
 
 		//----- Construction -----
 
@@ -1030,6 +1378,8 @@ public class OEDisc2InitVoxSet implements OEEnsembleInitializer, OEDisc2InitVoxC
 
 		public SeederVoxSet () {
 			f_open = false;
+			block_next = 0;
+			block_end = 0;
 		}
 
 		//----- Open/Close methods (Implementation of OECatalogSeeder) -----
@@ -1085,43 +1435,45 @@ public class OEDisc2InitVoxSet implements OEEnsembleInitializer, OEDisc2InitVoxC
 		@Override
 		public void seed_catalog (OECatalogSeedComm comm) {
 
-			boolean f_loop = true;
-			while (f_loop) {
-
-				// Get the voxel and sub-voxel indexes
-
-				final int local_seed_index = seeding_index.incrementAndGet();		// a different index for each catalog, first index we use is 1
-				final int global_subvox_index = a_seed_subvox[local_seed_index % seed_subvox_count];	// wrap if number of catalogs exceeds number of seeds
-				final int voxel_index = get_voxel_for_subvox (global_subvox_index);
-				final int local_subvox_index = get_local_for_global_subvox (global_subvox_index, voxel_index);
-
-				// Let the voxel make the catalog parameters
-
-				final double cat_br = a_voxel_list[voxel_index].get_vox_cat_params (
-					fit_info,
-					proto_cat_params,
-					local_cat_params
-				);
-
-				// If branch ratio does not exceed maximum ...
+			// Get the seeding index; if the catalog index is known, derive it from the catalog index,
+			// so the choice of sub-voxel does not depend on which catalogs other threads have seeded,
+			// otherwise take the next index from our block, claiming a new block if needed
+
+			final int local_seed_index;
+			if (comm.catalog_index >= 0) {
+				local_seed_index = comm.catalog_index + 1;		// first index we use is 1, as below
+			} else {
+				if (block_next >= block_end) {
+					block_next = seeding_index.getAndAdd (SEED_BLOCK_SIZE) + 1;		// first index we use is 1
+					block_end = block_next + SEED_BLOCK_SIZE;
+				}
+				local_seed_index = block_next;
+				++block_next;
+			}
 
-				if (cat_br <= OEConstants.EXCLUDE_DITHERING_BR_FOR_SIM) {
+			final int ix_table = local_seed_index % seed_table_count;	// wrap if number of catalogs exceeds number of seeds
+			final int voxel_index = a_seed_table_voxel[ix_table];
 
-					// Stop looping
+			// Make the catalog parameters from the table
 
-					f_loop = false;
+			local_cat_params.set_stat_and_copy_from (
+				a_seed_table_a[ix_table],
+				a_seed_table_p[ix_table],
+				a_seed_table_c[ix_table],
+				a_seed_table_b[ix_table],
+				a_seed_table_alpha[ix_table],
+				proto_cat_params
+			);
 
-					// Let the voxel seed the catalog
+			// Let the voxel seed the catalog
 
-					a_voxel_list[voxel_index].seed_catalog (
-						fit_info,
-						local_subvox_index,
-						local_cat_params,
-						comm,
-						local_rup
-					);
-				}
-			}
+			a_voxel_list[voxel_index].seed_catalog (
+				fit_info,
+				a_seed_table_subvox[ix_table],
+				local_cat_params,
+				comm,
+				local_rup
+			);
 		
 			return;
 		}
@@ -1494,6 +1846,12 @@ public class OEDisc2InitVoxSet implements OEEnsembleInitializer, OEDisc2InitVoxC
 			seed_b_value           = reader.unmarshalDouble              (        "seed_b_value"          );
 			ranging_b_value        = reader.unmarshalDouble              (        "ranging_b_value"       );
 
+			// Rebuild the seeding table, if post-fitting data is present
+
+			if (a_seed_subvox != null) {
+				build_seed_table();
+			}
+
 		}
 		break;
 
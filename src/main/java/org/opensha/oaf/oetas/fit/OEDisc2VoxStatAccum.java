@@ -68,4 +68,35 @@ public interface OEDisc2VoxStatAccum {
 
 	public void vsaccum_end ();
 
+
+
+
+	//----- Fork and merge -----
+
+
+
+
+	// Make a fork of this accumulator, for use by another thread.
+	// The fork is ready to receive data, as if vsaccum_begin had been called on it
+	// with the same parameters that were passed to this accumulator.
+	// Threading: This function can be called by any thread, after vsaccum_begin and
+	// before vsaccum_end, provided that calls to vsaccum_fork and vsaccum_merge on this
+	// object are synchronized, and no data is being added to this object.  Each fork
+	// can then be used by one thread, independently of this accumulator and any other fork.
+
+	public OEDisc2VoxStatAccum vsaccum_fork ();
+
+
+
+
+	// Merge data from a fork into this accumulator.
+	// Parameters:
+	//  fork = Accumulator previously obtained by calling vsaccum_fork on this object.
+	// After this call, the fork should not be used again.
+	// Threading: This function can be called by any thread, after all data has been
+	// added to the fork, and before vsaccum_end is called on this object, provided that
+	// calls to vsaccum_fork and vsaccum_merge on this object are synchronized.
+
+	public void vsaccum_merge (OEDisc2VoxStatAccum fork);
+
 }
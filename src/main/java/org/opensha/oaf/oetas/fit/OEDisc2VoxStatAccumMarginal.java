@@ -371,4 +371,43 @@ public class OEDisc2VoxStatAccumMarginal implements OEDisc2VoxStatAccum {
 		return;
 	}
 
+
+
+
+	//----- Fork and merge -----
+
+
+
+
+	// Make a fork of this accumulator, for use by another thread.
+	// The fork has its own marginal distribution set builder, which is set up the same as ours.
+
+	@Override
+	public OEDisc2VoxStatAccum vsaccum_fork () {
+		OEDisc2VoxStatAccumMarginal fork = new OEDisc2VoxStatAccumMarginal (grid_params, f_full, f_out);
+		fork.vsaccum_begin (
+			act_bay_weight,
+			act_max_log_density,
+			gen_max_log_density,
+			seq_max_log_density,
+			bay_max_log_density
+		);
+		return fork;
+	}
+
+
+
+
+	// Merge data from a fork into this accumulator.
+	// The fork's accumulated marginal distributions are added to ours.
+
+	@Override
+	public void vsaccum_merge (OEDisc2VoxStatAccum fork) {
+		if (!( fork instanceof OEDisc2VoxStatAccumMarginal )) {
+			throw new IllegalArgumentException ("OEDisc2VoxStatAccumMarginal.vsaccum_merge: Fork has wrong type: " + fork.getClass().getName());
+		}
+		dist_set_builder.merge_accum (((OEDisc2VoxStatAccumMarginal)fork).dist_set_builder);
+		return;
+	}
+
 }
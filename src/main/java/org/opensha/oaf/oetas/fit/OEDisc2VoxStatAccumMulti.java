@@ -163,4 +163,45 @@ public class OEDisc2VoxStatAccumMulti implements OEDisc2VoxStatAccum {
 		return;
 	}
 
+
+
+
+	//----- Fork and merge -----
+
+
+
+
+	// Make a fork of this accumulator, for use by another thread.
+	// The fork is a multi-accumulator whose targets are forks of our targets, in the same order.
+
+	@Override
+	public OEDisc2VoxStatAccum vsaccum_fork () {
+		OEDisc2VoxStatAccum[] forks = new OEDisc2VoxStatAccum[stat_accums.length];
+		for (int i = 0; i < stat_accums.length; ++i) {
+			forks[i] = stat_accums[i].vsaccum_fork ();
+		}
+		return new OEDisc2VoxStatAccumMulti (forks);
+	}
+
+
+
+
+	// Merge data from a fork into this accumulator.
+	// Each target of the fork is merged into the corresponding target of this accumulator.
+
+	@Override
+	public void vsaccum_merge (OEDisc2VoxStatAccum fork) {
+		if (!( fork instanceof OEDisc2VoxStatAccumMulti )) {
+			throw new IllegalArgumentException ("OEDisc2VoxStatAccumMulti.vsaccum_merge: Fork has wrong type: " + fork.getClass().getName());
+		}
+		OEDisc2VoxStatAccum[] forks = ((OEDisc2VoxStatAccumMulti)fork).stat_accums;
+		if (forks.length != stat_accums.length) {
+			throw new IllegalArgumentException ("OEDisc2VoxStatAccumMulti.vsaccum_merge: Target count mismatch: expected " + stat_accums.length + ", got " + forks.length);
+		}
+		for (int i = 0; i < stat_accums.length; ++i) {
+			stat_accums[i].vsaccum_merge (forks[i]);
+		}
+		return;
+	}
+
 }
@@ -80,4 +80,29 @@ public class OEDisc2VoxStatAccumNull implements OEDisc2VoxStatAccum {
 		return;
 	}
 
+
+
+
+	//----- Fork and merge -----
+
+
+
+
+	// Make a fork of this accumulator, for use by another thread.
+
+	@Override
+	public OEDisc2VoxStatAccum vsaccum_fork () {
+		return new OEDisc2VoxStatAccumNull();
+	}
+
+
+
+
+	// Merge data from a fork into this accumulator.
+
+	@Override
+	public void vsaccum_merge (OEDisc2VoxStatAccum fork) {
+		return;
+	}
+
 }
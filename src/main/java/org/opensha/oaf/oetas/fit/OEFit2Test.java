@@ -174,6 +174,126 @@ public class OEFit2Test {
 
 
 
+	// Calculate the log-likelihood for the given history and parameters, as in fit_smoke_test.
+	// If omori_cache is non-null, it is used to build the Omori matrix.
+
+	public static double calc_log_like_with_cache (OEDisc2History history, OECatalogParamsStats cat_params, OESeedParamsStats seed_params,
+		boolean f_intervals, int lmr_opt, OEOmoriRowCache omori_cache) {
+
+		// Create the fitter
+
+		OEDisc2ExtFit fitter = new OEDisc2ExtFit();
+
+		boolean f_likelihood = true;
+		boolean f_background = seed_params.has_background_rate();
+		fitter.dfit_build (history, cat_params.get_params_mags(), f_intervals, f_likelihood, lmr_opt, f_background);
+
+		if (omori_cache != null) {
+			fitter.set_omori_cache (omori_cache);
+		}
+
+		double loglike;
+
+		// Allocate and build the data structures, and calculate the likelihood
+
+		try (
+			OEDisc2ExtFit.MagExponentHandle mexp = fitter.make_MagExponentHandle();
+			OEDisc2ExtFit.OmoriMatrixHandle omat = fitter.make_OmoriMatrixHandle();
+			OEDisc2ExtFit.PairMagOmoriHandle pmom = fitter.make_PairMagOmoriHandle();
+			OEDisc2ExtFit.AValueProdHandle avpr = fitter.make_AValueProdHandle();
+		) {
+			mexp.mexp_build (cat_params.b, cat_params.alpha);
+			omat.omat_build (cat_params.p, cat_params.c);
+			pmom.pmom_build (mexp, omat);
+
+			double ten_aint_q = Math.pow(10.0, cat_params.a) * mexp.get_q_correction();
+			avpr.avpr_build (pmom, ten_aint_q);
+
+			double ten_a_q = Math.pow(10.0, cat_params.a) * mexp.get_q_correction();
+			double ten_ams_q = Math.pow(10.0, seed_params.ams);
+
+			if (f_background) {
+				loglike = avpr.avpr_calc_log_like (ten_a_q, ten_ams_q, seed_params.mu);
+			} else {
+				loglike = avpr.avpr_calc_log_like (ten_a_q, ten_ams_q);
+			}
+		}
+
+		fitter.set_omori_cache (null);
+		return loglike;
+	}
+
+
+
+
+	// Test re-use of Omori matrix rows when a timeline is re-fit with an extended history.
+	// Parameters:
+	//  history_1 = History for the earlier forecast.
+	//  history_2 = History for the later forecast, which extends history_1 with later ruptures.
+	//  cache_max = Maximum number of elements to hold in the timeline caches.
+	// Each history is fit using the timeline cache, and again with no cache, and the
+	// two log-likelihoods are compared.  The refit of history_2 should re-use the rows
+	// for the ruptures in history_1.
+
+	public static void test_omori_cache_refit (OEDisc2History history_1, OEDisc2History history_2,
+		OECatalogParamsStats cat_params, OESeedParamsStats seed_params, boolean f_intervals, int lmr_opt, long cache_max) {
+
+		final String timeline_key = "test_omori_cache_refit";
+
+		OEOmoriRowCache.discard_timeline_cache (timeline_key);
+
+		OEDisc2History[] histories = new OEDisc2History[2];
+		histories[0] = history_1;
+		histories[1] = history_2;
+
+		boolean f_all_match = true;
+
+		for (int nfit = 0; nfit < histories.length; ++nfit) {
+			OEDisc2History history = histories[nfit];
+
+			// Fit using the timeline cache, which must be obtained again for each fit, as a forecast would
+
+			OEOmoriRowCache omori_cache = OEOmoriRowCache.get_timeline_cache (timeline_key, cache_max);
+			long rows_reused_before = omori_cache.get_rows_reused();
+			long rows_built_before = omori_cache.get_rows_built();
+
+			double loglike_cached = calc_log_like_with_cache (history, cat_params, seed_params, f_intervals, lmr_opt, omori_cache);
+
+			long rows_reused = omori_cache.get_rows_reused() - rows_reused_before;
+			long rows_built = omori_cache.get_rows_built() - rows_built_before;
+
+			// Fit with no cache
+
+			double loglike_uncached = calc_log_like_with_cache (history, cat_params, seed_params, f_intervals, lmr_opt, null);
+
+			boolean f_match = (Double.doubleToLongBits (loglike_cached) == Double.doubleToLongBits (loglike_uncached));
+			if (!( f_match )) {
+				f_all_match = false;
+			}
+
+			System.out.println();
+			System.out.println ("Fit " + (nfit + 1) + ": rupture_count = " + history.rupture_count);
+			System.out.println ("rows_reused = " + rows_reused + ", rows_built = " + rows_built);
+			System.out.println ("loglike_cached = " + loglike_cached);
+			System.out.println ("loglike_uncached = " + loglike_uncached);
+			System.out.println ("match = " + f_match);
+			System.out.println ("timeline_cache_count = " + OEOmoriRowCache.get_timeline_cache_count() + ", timeline_elements = " + OEOmoriRowCache.get_timeline_elements());
+			System.out.println (omori_cache.toString());
+		}
+
+		// End the timeline, which should release the cache
+
+		OEOmoriRowCache.discard_timeline_cache (timeline_key);
+
+		System.out.println();
+		System.out.println ("After discard: timeline_cache_count = " + OEOmoriRowCache.get_timeline_cache_count() + ", timeline_elements = " + OEOmoriRowCache.get_timeline_elements());
+		System.out.println ("All log-likelihoods match = " + f_all_match);
+		return;
+	}
+
+
+
+
 	// Lay out an a/ams likelihood grid.
 	// grid[i][j] contains the likelihood value for a_range[i] and ams_range[j].
 
@@ -9674,6 +9794,160 @@ public class OEFit2Test {
 
 
 
+		// Subcommand : Test #36
+		// Command format:
+		//  test36  zams  n  p  c  b  alpha  mref  msup  tbegin  tend
+		//          magCat  helm_param  disc_delta  mag_cat_count  eligible_mag  eligible_count
+		//          durlim_ratio  durlim_min  durlim_max  t_interval_begin  before_max_count  mag_cat_int_join
+		//          f_intervals  lmr_opt  tend_1  cache_max
+		//          t_day  rup_mag  [t_day  rup_mag]...
+		// Generate a catalog with the given parameters.
+		// The catalog is seeded with ruptures at the given times and magnitudes.
+		// Then construct two histories, one ending at tend_1 and one ending at tend,
+		// as for two successive forecasts of one timeline.
+		// Then fit both histories with a timeline Omori row cache holding up to cache_max
+		// elements, and check that the second fit re-uses rows from the first, and that
+		// the log-likelihoods are the same as without the cache.
+		// Notes:
+		// [tbegin, tend] is the range of times for which simulation is performed.
+		// [t_interval_begin, tend] is the range of times for which intervals are constructed
+		//  in the history and should satisfy t_interval_begin >= tbegin.
+		// tend_1 should satisfy t_interval_begin < tend_1 < tend.
+
+		if (testargs.is_test ("test36")) {
+			try {
+
+				System.out.println ("Generating catalog and two histories, and testing Omori row cache re-use on refit");
+				double zams = testargs.get_double ("zams");
+				double n = testargs.get_double ("n");
+				double p = testargs.get_double ("p");
+				double c = testargs.get_double ("c");
+				double b = testargs.get_double ("b");
+				double alpha = testargs.get_double ("alpha");
+				double mref = testargs.get_double ("mref");
+				double msup = testargs.get_double ("msup");
+				double tbegin = testargs.get_double ("tbegin");
+				double tend = testargs.get_double ("tend");
+
+				double magCat = testargs.get_double ("magCat");
+				int helm_param = testargs.get_int ("helm_param");
+				double disc_delta = testargs.get_double ("disc_delta");
+				int mag_cat_count = testargs.get_int ("mag_cat_count");
+				double eligible_mag = testargs.get_double ("eligible_mag");
+				int eligible_count = testargs.get_int ("eligible_count");
+
+				double durlim_ratio = testargs.get_double ("durlim_ratio");
+				double durlim_min = testargs.get_double ("durlim_min");
+				double durlim_max = testargs.get_double ("durlim_max");
+				double t_interval_begin = testargs.get_double ("t_interval_begin");
+				int before_max_count = testargs.get_int ("before_max_count");
+				int mag_cat_int_join = testargs.get_int ("mag_cat_int_join");
+
+				boolean f_intervals = testargs.get_boolean ("f_intervals");
+				int lmr_opt = testargs.get_int ("lmr_opt");
+				double tend_1 = testargs.get_double ("tend_1");
+				long cache_max = testargs.get_long ("cache_max");
+
+				double[] time_mag_array = testargs.get_double_tuple_array ("time_mag_array", -1, 2, 2, "time", "mag");
+				testargs.end_test();
+
+				// Make the catalog parameters
+
+				OECatalogParams cat_params = (new OECatalogParams()).set_to_fixed_mag_br (
+					n,		// n
+					p,		// p
+					c,		// c
+					b,		// b
+					alpha,	// alpha
+					mref,	// mref
+					msup,	// msup
+					tbegin,	// tbegin
+					tend	// tend
+				);
+
+				// Make the seed parameters
+
+				OESeedParams seed_params = (new OESeedParams()).set_from_zams (zams, cat_params);
+
+				// Make the catalog initializer
+
+				OEEnsembleInitializer initializer = (new OEInitFixedState()).setup_time_mag_list (cat_params, seed_params, time_mag_array, true);
+
+				// Make the catalog examiner
+
+				ArrayList<OERupture> rup_list = new ArrayList<OERupture>();
+				OEExaminerSaveList examiner = new OEExaminerSaveList (rup_list, true);
+
+				// Generate a catalog
+
+				OESimulator.gen_single_catalog (initializer, examiner);
+
+				// The ruptures known at the time of the earlier forecast
+
+				ArrayList<OERupture> rup_list_1 = new ArrayList<OERupture>();
+				for (OERupture rup : rup_list) {
+					if (rup.t_day <= tend_1) {
+						rup_list_1.add (rup);
+					}
+				}
+
+				System.out.println ();
+				System.out.println ("Catalog size = " + rup_list.size() + ", ruptures before tend_1 = " + rup_list_1.size());
+
+				// Make time-splitting function
+
+				OEMagCompFnDisc.SplitFn split_fn = new OEMagCompFnDisc.SplitFnRatio (durlim_ratio, durlim_min, durlim_max);
+
+				// Make the history parameters, and the histories, for the two forecasts
+
+				double t_range_begin = Math.min (tbegin, t_interval_begin);
+				for (int itm = 0; itm < time_mag_array.length; itm += 2) {
+					t_range_begin = Math.min (t_range_begin, time_mag_array[itm]);
+				}
+
+				OEDisc2History[] histories = new OEDisc2History[2];
+
+				for (int nfc = 0; nfc < 2; ++nfc) {
+					double t_range_end = ((nfc == 0) ? tend_1 : tend);
+
+					OEDiscFGHParams hist_params = new OEDiscFGHParams();
+
+					hist_params.set_sim_history_typical (
+						magCat,				// magCat
+						helm_param,			// helm_param
+						t_range_begin,		// t_range_begin
+						t_range_end,		// t_range_end
+						disc_delta,			// disc_delta
+						mag_cat_count,		// mag_cat_count
+						eligible_mag,		// eligible_mag
+						eligible_count,		// eligible_count
+						split_fn,			// split_fn
+						t_interval_begin,	// t_interval_begin
+						before_max_count,	// before_max_count
+						mag_cat_int_join	// mag_cat_int_join
+					);
+
+					histories[nfc] = new OEDisc2History();
+					histories[nfc].build_from_fgh (hist_params, ((nfc == 0) ? rup_list_1 : rup_list));
+
+					System.out.println ();
+					System.out.println ("History " + (nfc + 1) + ": t_range_end = " + t_range_end + ", rupture_count = " + histories[nfc].rupture_count);
+				}
+
+				// Run the refit test
+
+				test_omori_cache_refit (histories[0], histories[1], cat_params.get_params_stats(), seed_params.get_params_stats(), f_intervals, lmr_opt, cache_max);
+
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+
+			return;
+		}
+
+
+
+
 		// Unrecognized subcommand.
 
 		System.err.println ("OEFit2Test : Unrecognized subcommand : " + args[0]);
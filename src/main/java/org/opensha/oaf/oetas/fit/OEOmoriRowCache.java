@@ -0,0 +1,477 @@
+package org.opensha.oaf.oetas.fit;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opensha.oaf.oetas.OERupture;
+
+
+// Cache of Omori matrix rows, for re-use among the Omori matrices built for one timeline.
+//
+// Each entry holds the rows of the rupture-target rupture-source Omori matrix for one
+// pair of (p, c) values, together with the rupture times they were computed for.  Row
+// i_t_rup of that matrix depends only on p, c, and the times of ruptures 0 through i_t_rup.
+// So when a new history has the same rupture times as a cached one up to some rupture m
+// (as happens when a forecast is re-issued after new aftershocks are appended), rows
+// 0 through m-1 can be taken from the cache and only the remaining rows need to be built.
+//
+// Rows stored in the cache are never modified, and may be shared by any number of
+// OmoriMatrix objects.  Each (p, c) pair holds at most one entry, which is replaced
+// when a matrix is built for a different history.
+//
+// There are two kinds of cache:
+//
+// - A timeline cache is obtained from get_timeline_cache(), and is kept in a registry
+//   so that it survives from one fit to the next fit for the same timeline.  The total
+//   number of elements held by all timeline caches is limited.  When the limit would
+//   be exceeded, the least-recently-used other timeline caches are evicted; if that is
+//   not enough, the entry is not stored.  A timeline cache is discarded by calling
+//   discard_timeline_cache() when its timeline ends.
+//
+// - A fit cache is created with the constructor, and is owned by whoever performs the
+//   fit, which calls clear() when the fit ends.  Its element limit applies to it alone.
+//
+// Each element is a double, so the memory held is 8 bytes times the number of elements.
+//
+// Threading: This object may be accessed simultaneously from multiple threads.
+
+public class OEOmoriRowCache {
+
+	//----- Entries -----
+
+
+	// Cache key, which is the pair of Omori parameters.
+
+	private static class CacheKey {
+		private final double p;
+		private final double c;
+
+		public CacheKey (double p, double c) {
+			this.p = p;
+			this.c = c;
+		}
+
+		@Override
+		public boolean equals (Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!( obj instanceof CacheKey )) {
+				return false;
+			}
+			CacheKey other = (CacheKey)obj;
+			return Double.doubleToLongBits (p) == Double.doubleToLongBits (other.p)
+				&& Double.doubleToLongBits (c) == Double.doubleToLongBits (other.c);
+		}
+
+		@Override
+		public int hashCode () {
+			return Double.hashCode (p) * 31 + Double.hashCode (c);
+		}
+	}
+
+
+	// Cache entry.
+	// a_t_day[n] is the time of rupture n, for 0 <= n < a_t_day.length.
+	// rows[n] is row n of the Omori matrix, which is either of length n or of length 0 (if
+	// rupture n was not a target), for 0 <= n < rows.length == a_t_day.length.
+	// element_count is the total number of elements in all rows.
+
+	public static class Entry {
+		private final double[] a_t_day;
+		private final double[][] rows;
+		private final long element_count;
+
+		private Entry (double[] a_t_day, double[][] rows) {
+			this.a_t_day = a_t_day;
+			this.rows = rows;
+			long n = 0L;
+			for (double[] row : rows) {
+				n += row.length;
+			}
+			this.element_count = n;
+		}
+
+		// Get the number of leading ruptures whose times match the given rupture list.
+		// Rows 0 through the returned value minus 1 can be re-used.
+
+		public final int match_count (OERupture[] a_rupture_obj, int rupture_count) {
+			final int n_top = Math.min (rupture_count, a_t_day.length);
+			int n = 0;
+			while (n < n_top && Double.doubleToLongBits (a_rupture_obj[n].t_day) == Double.doubleToLongBits (a_t_day[n])) {
+				++n;
+			}
+			return n;
+		}
+
+		// Get a cached row.  The caller must not modify it.
+
+		public final double[] get_row (int i_t_rup) {
+			return rows[i_t_rup];
+		}
+	}
+
+
+
+
+	//----- Cache -----
+
+
+	// The map from (p, c) to entry.
+
+	private final ConcurrentHashMap<CacheKey, Entry> cache_map;
+
+	// Maximum number of elements to hold, or 0 if the cache is disabled.
+	// For a timeline cache, this is the limit on the total held by all timeline caches.
+
+	private final long max_elements;
+
+	// Current number of elements held by this cache.
+
+	private final AtomicLong total_elements;
+
+	// Statistics: number of rows re-used from the cache, and number of rows built.
+
+	private final AtomicLong rows_reused;
+	private final AtomicLong rows_built;
+
+	// The timeline key, or null if this is a fit cache.
+
+	private final String timeline_key;
+
+	// True if this timeline cache has been removed from the registry, after which it holds no entries.
+
+	private volatile boolean f_evicted;
+
+
+
+
+	// Make a fit cache that holds up to the given number of elements (0 to disable).
+
+	public OEOmoriRowCache (long max_elements) {
+		this (max_elements, null);
+	}
+
+
+
+
+	// Make a cache that holds up to the given number of elements (0 to disable).
+	// If timeline_key is non-null, the cache is a timeline cache.
+
+	private OEOmoriRowCache (long max_elements, String timeline_key) {
+		this.cache_map = new ConcurrentHashMap<CacheKey, Entry>();
+		this.max_elements = Math.max (0L, max_elements);
+		this.total_elements = new AtomicLong (0L);
+		this.rows_reused = new AtomicLong (0L);
+		this.rows_built = new AtomicLong (0L);
+		this.timeline_key = timeline_key;
+		this.f_evicted = false;
+	}
+
+
+
+
+	// Return true if the cache is enabled.
+
+	public final boolean is_enabled () {
+		return max_elements > 0L;
+	}
+
+
+
+
+	// Look up the entry for the given (p, c), or null if none.
+
+	public final Entry lookup (double p, double c) {
+		if (max_elements <= 0L) {
+			return null;
+		}
+		return cache_map.get (new CacheKey (p, c));
+	}
+
+
+
+
+	// Store the rows for the given (p, c) and rupture times, replacing any existing entry.
+	// Parameters:
+	//  p, c = Omori parameters.
+	//  a_t_day = Rupture times.  The cache retains this array, so the caller must not modify it.
+	//  rows = Matrix rows, with rows.length == a_t_day.length.  The cache retains these arrays,
+	//         so neither the caller nor anyone else may modify them after this call.
+	//  n_reused = Number of rows that were taken from the cache.
+	// If storing the entry would exceed the element limit, the existing entry is removed
+	// and the new one is not stored.
+
+	public final void store (double p, double c, double[] a_t_day, double[][] rows, int n_reused) {
+		rows_reused.addAndGet (n_reused);
+		rows_built.addAndGet (rows.length - n_reused);
+
+		if (max_elements <= 0L) {
+			return;
+		}
+
+		final Entry entry = new Entry (a_t_day, rows);
+		final CacheKey key = new CacheKey (p, c);
+
+		// Remove the old entry, then add the new one if there is room
+
+		Entry old_entry = cache_map.remove (key);
+		if (old_entry != null) {
+			add_elements (-old_entry.element_count);
+		}
+
+		if (f_evicted || !reserve_elements (entry.element_count)) {
+			return;
+		}
+
+		old_entry = cache_map.put (key, entry);
+		if (old_entry != null) {
+			add_elements (-old_entry.element_count);
+		}
+
+		// If we were evicted while storing, the evicting thread may have missed the new entry
+
+		if (f_evicted) {
+			if (cache_map.remove (key, entry)) {
+				add_elements (-entry.element_count);
+			}
+		}
+		return;
+	}
+
+
+
+
+	// Remove all entries.
+
+	public final void clear () {
+		for (CacheKey key : cache_map.keySet()) {
+			Entry entry = cache_map.remove (key);
+			if (entry != null) {
+				add_elements (-entry.element_count);
+			}
+		}
+		return;
+	}
+
+
+
+
+	// Get the statistics: number of rows re-used from the cache, and number of rows built.
+
+	public final long get_rows_reused () {
+		return rows_reused.get();
+	}
+
+	public final long get_rows_built () {
+		return rows_built.get();
+	}
+
+
+
+
+	// Return true if this is a timeline cache that has not been evicted or discarded.
+
+	public final boolean is_timeline_active () {
+		return timeline_key != null && !( f_evicted );
+	}
+
+
+
+
+	// Adjust the element counts by the given amount, which may be negative.
+
+	private void add_elements (long delta) {
+		total_elements.addAndGet (delta);
+		if (timeline_key != null) {
+			timeline_elements.addAndGet (delta);
+		}
+		return;
+	}
+
+
+
+
+	// Reserve room for the given number of elements, and add them to the element counts.
+	// Return false if there is no room, in which case the counts are unchanged.
+	// For a timeline cache, other timeline caches are evicted if needed to make room.
+
+	private boolean reserve_elements (long n) {
+
+		// Fit cache, the limit applies to this cache alone
+
+		if (timeline_key == null) {
+			if (total_elements.addAndGet (n) > max_elements) {
+				total_elements.addAndGet (-n);
+				return false;
+			}
+			return true;
+		}
+
+		// Timeline cache, the limit applies to all timeline caches together
+
+		if (timeline_elements.get() + n > max_elements) {
+			evict_timeline_caches (this, max_elements - n);
+		}
+
+		if (timeline_elements.addAndGet (n) > max_elements) {
+			timeline_elements.addAndGet (-n);
+			return false;
+		}
+		total_elements.addAndGet (n);
+		return true;
+	}
+
+
+
+
+	//----- Timeline registry -----
+
+
+	// The timeline caches, in order from least to most recently used.
+	// Threading: Access is synchronized on the map.
+
+	private static final LinkedHashMap<String, OEOmoriRowCache> timeline_caches = new LinkedHashMap<String, OEOmoriRowCache> (16, 0.75f, true);
+
+	// Total number of elements held by all timeline caches.
+
+	private static final AtomicLong timeline_elements = new AtomicLong (0L);
+
+
+
+
+	// Get the timeline cache for the given timeline key, creating it if needed.
+	// Parameters:
+	//  timeline_key = Key that identifies the timeline, typically the timeline ID.
+	//  max_elements = Maximum number of elements to hold in all timeline caches (0 to disable).
+	// If max_elements is 0, return a disabled fit cache and leave the registry unchanged.
+
+	public static OEOmoriRowCache get_timeline_cache (String timeline_key, long max_elements) {
+		if (timeline_key == null) {
+			throw new IllegalArgumentException ("OEOmoriRowCache.get_timeline_cache: No timeline key supplied");
+		}
+		if (max_elements <= 0L) {
+			return new OEOmoriRowCache (0L);
+		}
+
+		synchronized (timeline_caches) {
+			OEOmoriRowCache omori_cache = timeline_caches.get (timeline_key);
+			if (omori_cache == null || omori_cache.max_elements != max_elements) {
+				if (omori_cache != null) {
+					omori_cache.evict();
+				}
+				omori_cache = new OEOmoriRowCache (max_elements, timeline_key);
+				timeline_caches.put (timeline_key, omori_cache);
+			}
+			return omori_cache;
+		}
+	}
+
+
+
+
+	// Discard the timeline cache for the given timeline key, if there is one.
+	// This should be called when the timeline ends.
+
+	public static void discard_timeline_cache (String timeline_key) {
+		synchronized (timeline_caches) {
+			OEOmoriRowCache omori_cache = timeline_caches.remove (timeline_key);
+			if (omori_cache != null) {
+				omori_cache.evict();
+			}
+		}
+		return;
+	}
+
+
+
+
+	// Discard all timeline caches.
+
+	public static void discard_all_timeline_caches () {
+		synchronized (timeline_caches) {
+			for (OEOmoriRowCache omori_cache : timeline_caches.values()) {
+				omori_cache.evict();
+			}
+			timeline_caches.clear();
+		}
+		return;
+	}
+
+
+
+
+	// Get the number of timeline caches, and the total number of elements they hold.
+
+	public static int get_timeline_cache_count () {
+		synchronized (timeline_caches) {
+			return timeline_caches.size();
+		}
+	}
+
+	public static long get_timeline_elements () {
+		return timeline_elements.get();
+	}
+
+
+
+
+	// Mark this timeline cache as evicted, and release its entries.
+	// The caller must remove it from the registry, and must hold the registry lock.
+
+	private void evict () {
+		f_evicted = true;
+		clear();
+		return;
+	}
+
+
+
+
+	// Evict the least-recently-used timeline caches, other than the given one, until
+	// the total held by all timeline caches is at most target_elements.
+
+	private static void evict_timeline_caches (OEOmoriRowCache keep_cache, long target_elements) {
+		synchronized (timeline_caches) {
+			Iterator<OEOmoriRowCache> it = timeline_caches.values().iterator();
+			while (timeline_elements.get() > target_elements && it.hasNext()) {
+				OEOmoriRowCache omori_cache = it.next();
+				if (omori_cache != keep_cache) {
+					it.remove();
+					omori_cache.evict();
+				}
+			}
+		}
+		return;
+	}
+
+
+
+
+	// Display our contents.
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+
+		result.append ("OEOmoriRowCache:" + "\n");
+
+		if (timeline_key != null) {
+			result.append ("timeline_key = " + timeline_key + "\n");
+			result.append ("f_evicted = " + f_evicted + "\n");
+		}
+
+		result.append ("max_elements = " + max_elements + "\n");
+		result.append ("total_elements = " + total_elements.get() + "\n");
+		result.append ("entries = " + cache_map.size() + "\n");
+		result.append ("rows_reused = " + rows_reused.get() + "\n");
+		result.append ("rows_built = " + rows_built.get() + "\n");
+
+		return result.toString();
+	}
+
+
+
+}
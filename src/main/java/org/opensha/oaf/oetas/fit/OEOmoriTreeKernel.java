@@ -0,0 +1,513 @@
+package org.opensha.oaf.oetas.fit;
+
+
+// Hierarchical approximation of a rupture-target rupture-source Omori matrix product.
+//
+// The exact product, as performed by OEDisc2ExtFit.OmoriMatrix.apply_omat_rup_targ_rup_src, is
+//
+//   y[i] = SUM( (t[i] - s[j] + c)^(-p) * x[j] ) * d[i]
+//
+// where the sum runs over sources 0 <= j < row_len[i], and the source and target times are both
+// the rupture times, s[j] == t[j].  Forming it densely costs O(N^2) for N ruptures, both to build
+// the matrix and to apply it.
+//
+// Here the sources are arranged in a binary tree over index ranges, each node covering sources
+// whose times lie within a radius R of the node center s0.  For a target at time t, with
+// T = t + c - s0  and  delta = s0 - s,  the kernel has the convergent expansion
+//
+//   (T + delta)^(-p) = T^(-p) * SUM( C(-p, k) * (delta/T)^k )      k = 0, 1, 2, ...
+//
+// where C(-p, k) is the binomial coefficient.  When a node is well separated from the target,
+// meaning R <= theta*T, the node's contribution is computed from the truncated expansion and the
+// node's moments  SUM( x[j] * (delta_j/R)^k ),  instead of source by source.  Nodes that are not
+// well separated are opened, down to leaves which are computed directly.  Each target then visits
+// O(log N) nodes, so after the moments are formed, the product costs O(N log N).
+//
+// The far/near decision and the kernel values needed for each target are computed once for each
+// (p, c) by build(), and re-used for each call to apply().  The moments depend on the source
+// vectors, and are formed in each call to apply().
+//
+// ERROR BOUND
+//
+// With  r = R/T <= theta,  the truncation error of the expansion after order K is at most
+//
+//   T^(-p) * SUM( |C(-p, k)| * theta^k )      k = K+1, K+2, ...
+//
+// while the node's exact contribution is at least  T^(-p) * (1 + theta)^(-p)  times the sum of
+// its source values.  So if the source vectors are non-negative (as they are in the fitter), the
+// relative error of every y[i] is at most
+//
+//   (1 + theta)^p * SUM( |C(-p, k)| * theta^k )      k = K+1, K+2, ...
+//
+// and K is chosen as the smallest order that brings this below the requested tolerance.
+//
+// Threading: An object may be used by only one thread at a time.
+
+public class OEOmoriTreeKernel {
+
+	//----- Constants -----
+
+	// Maximum number of sources in a leaf.
+
+	private static final int LEAF_SIZE = 16;
+
+	// Separation ratio theta.
+
+	private static final double THETA = 0.25;
+
+	// Maximum expansion order.
+
+	private static final int MAX_ORDER = 40;
+
+
+
+
+	//----- Tree -----
+
+	// Number of ruptures (sources and targets).
+
+	private int rupture_count;
+
+	// Rupture times.
+
+	private double[] a_time;
+
+	// Number of sources for each target, row_len[i] <= i.
+
+	private int[] row_len;
+
+	// Nodes.  Node n covers sources node_lo[n] <= j < node_hi[n], with children node_left[n]
+	// and node_right[n] (or -1 for a leaf).  The times of its sources are within node_radius[n]
+	// of node_center[n].  Node 0 is the root.
+
+	private int node_count;
+	private int[] node_lo;
+	private int[] node_hi;
+	private int[] node_left;
+	private int[] node_right;
+	private double[] node_center;
+	private double[] node_radius;
+
+
+
+
+	//----- Per-(p, c) data -----
+
+	// Omori parameters.
+
+	private double p;
+	private double c;
+
+	// Expansion order, and coefficients coef[k] = C(-p, k) for 0 <= k <= order.
+
+	private int order;
+	private double[] coef;
+
+	// The error bound for the chosen order.
+
+	private double error_bound;
+
+	// Far-field interactions.  For target i, they are indexes far_start[i] <= m < far_start[i+1],
+	// with far_node[m] the node, far_tp[m] = T^(-p), and far_w[m] = R/T.
+
+	private int[] far_start;
+	private int[] far_node;
+	private double[] far_tp;
+	private double[] far_w;
+	private int far_count;
+
+	// Near-field interactions.  For target i, they are ranges near_start[i] <= m < near_start[i+1],
+	// covering sources near_lo[m] <= j < near_hi[m], with kernel values near_val[near_val_start[m] + j - near_lo[m]].
+
+	private int[] near_start;
+	private int[] near_lo;
+	private int[] near_hi;
+	private int[] near_val_start;
+	private double[] near_val;
+	private int near_count;
+	private int near_val_count;
+
+
+
+
+	//----- Scratch -----
+
+	// Moments for each node, mom[n*(order+1) + k].
+
+	private double[] mom1;
+	private double[] mom2;
+
+
+
+
+	//----- Construction -----
+
+
+
+
+	// Constructor sets up the tree.
+	// Parameters:
+	//  a_time = Rupture times, in non-decreasing order, length >= rupture_count.  Retained, not copied.
+	//  row_len = Number of sources for each target, row_len[i] <= i, length >= rupture_count.  Retained, not copied.
+	//  rupture_count = Number of ruptures.
+
+	public OEOmoriTreeKernel (double[] a_time, int[] row_len, int rupture_count) {
+		this.rupture_count = rupture_count;
+		this.a_time = a_time;
+		this.row_len = row_len;
+
+		// Allocate nodes, at most 2 * ceil(N/LEAF_SIZE) - 1 but allow for uneven splits
+
+		int max_nodes = 2 * ((rupture_count + LEAF_SIZE - 1) / LEAF_SIZE) * 2 + 1;
+		node_lo = new int[max_nodes];
+		node_hi = new int[max_nodes];
+		node_left = new int[max_nodes];
+		node_right = new int[max_nodes];
+		node_center = new double[max_nodes];
+		node_radius = new double[max_nodes];
+		node_count = 0;
+
+		make_node (0, rupture_count);
+
+		p = 0.0;
+		c = 0.0;
+		order = -1;
+		coef = null;
+		error_bound = 0.0;
+		far_start = new int[rupture_count + 1];
+		near_start = new int[rupture_count + 1];
+		far_node = new int[16];
+		far_tp = new double[16];
+		far_w = new double[16];
+		near_lo = new int[16];
+		near_hi = new int[16];
+		near_val_start = new int[16];
+		near_val = new double[16];
+		mom1 = null;
+		mom2 = null;
+	}
+
+
+
+
+	// Make a node covering sources lo <= j < hi, and its descendants.
+	// Returns the node index.
+
+	private int make_node (int lo, int hi) {
+		final int n = node_count++;
+		node_lo[n] = lo;
+		node_hi[n] = hi;
+
+		double t_min = 0.0;
+		double t_max = 0.0;
+		if (hi > lo) {
+			t_min = a_time[lo];
+			t_max = a_time[lo];
+			for (int j = lo + 1; j < hi; ++j) {
+				t_min = Math.min (t_min, a_time[j]);
+				t_max = Math.max (t_max, a_time[j]);
+			}
+		}
+		node_center[n] = 0.5 * (t_min + t_max);
+		node_radius[n] = 0.5 * (t_max - t_min);
+
+		if (hi - lo <= LEAF_SIZE) {
+			node_left[n] = -1;
+			node_right[n] = -1;
+		} else {
+			final int mid = (lo + hi) >>> 1;
+			node_left[n] = make_node (lo, mid);
+			node_right[n] = make_node (mid, hi);
+		}
+		return n;
+	}
+
+
+
+
+	// Choose the expansion order for the given tolerance, and compute the coefficients.
+
+	private void setup_expansion (double tol) {
+
+		// Terms |C(-p, k)| * theta^k, and their total
+
+		final int k_top = 4000;
+		final double[] term = new double[k_top];
+		term[0] = 1.0;
+		for (int k = 1; k < k_top; ++k) {
+			term[k] = term[k-1] * ((p + k - 1.0) / k) * THETA;
+		}
+		double tail = 0.0;
+		for (int k = k_top - 1; k > MAX_ORDER; --k) {
+			tail += term[k];
+		}
+		final double[] a_tail = new double[MAX_ORDER + 1];		// a_tail[K] = SUM(term[k]) for k > K
+		for (int k = MAX_ORDER; k >= 0; --k) {
+			a_tail[k] = tail;
+			tail += term[k];
+		}
+
+		// Smallest order whose tail is within tolerance, or the maximum order if none
+
+		final double scale = Math.pow (1.0 + THETA, p);
+		order = MAX_ORDER;
+		error_bound = scale * a_tail[MAX_ORDER];
+		for (int k = 0; k <= MAX_ORDER; ++k) {
+			if (scale * a_tail[k] <= tol) {
+				order = k;
+				error_bound = scale * a_tail[k];
+				break;
+			}
+		}
+
+		// Signed coefficients C(-p, k)
+
+		coef = new double[order + 1];
+		coef[0] = 1.0;
+		for (int k = 1; k <= order; ++k) {
+			coef[k] = -coef[k-1] * (p + k - 1.0) / k;
+		}
+		return;
+	}
+
+
+
+
+	// Build the interactions for the given Omori parameters.
+	// Parameters:
+	//  p, c = Omori parameters.
+	//  tol = Relative error tolerance, must be > 0.
+
+	public void build (double p, double c, double tol) {
+		this.p = p;
+		this.c = c;
+
+		setup_expansion (tol);
+
+		far_count = 0;
+		near_count = 0;
+		near_val_count = 0;
+
+		for (int i = 0; i < rupture_count; ++i) {
+			far_start[i] = far_count;
+			near_start[i] = near_count;
+			if (row_len[i] > 0) {
+				collect (0, a_time[i] + c, row_len[i]);
+			}
+		}
+		far_start[rupture_count] = far_count;
+		near_start[rupture_count] = near_count;
+
+		final int mom_len = node_count * (order + 1);
+		if (mom1 == null || mom1.length < mom_len) {
+			mom1 = new double[mom_len];
+			mom2 = new double[mom_len];
+		}
+		return;
+	}
+
+
+
+
+	// Collect the interactions of node n with a target at time t (where t_plus_c = t + c),
+	// for sources with index less than n_src.
+
+	private void collect (int n, double t_plus_c, int n_src) {
+		final int lo = node_lo[n];
+		final int hi = node_hi[n];
+		if (lo >= n_src) {
+			return;
+		}
+
+		// Far field, if the node is entirely included, well separated, and large enough to benefit
+
+		final boolean f_small = (node_left[n] < 0 || hi - lo <= order + 1);
+		if (hi <= n_src && !( f_small )) {
+			final double t_rel = t_plus_c - node_center[n];
+			if (t_rel > 0.0 && node_radius[n] <= THETA * t_rel) {
+				if (far_count == far_node.length) {
+					final int len = far_count * 2;
+					far_node = java.util.Arrays.copyOf (far_node, len);
+					far_tp = java.util.Arrays.copyOf (far_tp, len);
+					far_w = java.util.Arrays.copyOf (far_w, len);
+				}
+				far_node[far_count] = n;
+				far_tp[far_count] = Math.pow (t_rel, -p);
+				far_w[far_count] = node_radius[n] / t_rel;
+				++far_count;
+				return;
+			}
+		}
+
+		// Near field for a leaf or small node
+
+		if (f_small) {
+			final int top = Math.min (hi, n_src);
+			if (near_count == near_lo.length) {
+				final int len = near_count * 2;
+				near_lo = java.util.Arrays.copyOf (near_lo, len);
+				near_hi = java.util.Arrays.copyOf (near_hi, len);
+				near_val_start = java.util.Arrays.copyOf (near_val_start, len);
+			}
+			if (near_val_count + (top - lo) > near_val.length) {
+				near_val = java.util.Arrays.copyOf (near_val, Math.max (near_val.length * 2, near_val_count + (top - lo)));
+			}
+			near_lo[near_count] = lo;
+			near_hi[near_count] = top;
+			near_val_start[near_count] = near_val_count;
+			for (int j = lo; j < top; ++j) {
+				near_val[near_val_count++] = Math.pow (t_plus_c - a_time[j], -p);
+			}
+			++near_count;
+			return;
+		}
+
+		// Otherwise, open the node
+
+		collect (node_left[n], t_plus_c, n_src);
+		collect (node_right[n], t_plus_c, n_src);
+		return;
+	}
+
+
+
+
+	// Form the moments of every node for the source vector x.
+
+	private void make_moments (double[] mom, double[] x) {
+		final int k_len = order + 1;
+		for (int n = 0; n < node_count; ++n) {
+			final int base = n * k_len;
+			for (int k = 0; k < k_len; ++k) {
+				mom[base + k] = 0.0;
+			}
+			final double center = node_center[n];
+			final double radius = node_radius[n];
+			final double inv_r = ((radius > 0.0) ? (1.0 / radius) : 0.0);
+			final int hi = node_hi[n];
+			for (int j = node_lo[n]; j < hi; ++j) {
+				final double u = (center - a_time[j]) * inv_r;
+				double v = x[j];
+				for (int k = 0; k < k_len; ++k) {
+					mom[base + k] += v;
+					v *= u;
+				}
+			}
+		}
+		return;
+	}
+
+
+
+
+	// Evaluate the far-field sum for interaction m, using the given moments.
+
+	private double far_value (double[] mom, int m) {
+		final int base = far_node[m] * (order + 1);
+		final double w = far_w[m];
+		double sum = 0.0;
+		for (int k = order; k >= 0; --k) {
+			sum = sum * w + coef[k] * mom[base + k];
+		}
+		return sum * far_tp[m];
+	}
+
+
+
+
+	// Apply the approximate matrix.
+	// Parameters:
+	//  y1 = Target vector #1, length = rupture_count.
+	//  y2 = Target vector #2, length = rupture_count.
+	//  x1 = Source vector #1, length = rupture_count.
+	//  x2 = Source vector #2, length = rupture_count.
+	//  d = Target scaling vector, length = rupture_count.
+	// Performs the same operation as OEDisc2ExtFit.OmoriMatrix.apply_omat_rup_targ_rup_src.
+
+	public void apply (
+			final double[] y1,
+			final double[] y2,
+			final double[] x1,
+			final double[] x2,
+			final double[] d ) {
+
+		make_moments (mom1, x1);
+		make_moments (mom2, x2);
+
+		for (int i = 0; i < rupture_count; ++i) {
+			double sum1 = 0.0;
+			double sum2 = 0.0;
+
+			final int m_far_top = far_start[i+1];
+			for (int m = far_start[i]; m < m_far_top; ++m) {
+				sum1 += far_value (mom1, m);
+				sum2 += far_value (mom2, m);
+			}
+
+			final int m_near_top = near_start[i+1];
+			for (int m = near_start[i]; m < m_near_top; ++m) {
+				final int j_top = near_hi[m];
+				int v = near_val_start[m];
+				for (int j = near_lo[m]; j < j_top; ++j) {
+					sum1 += (near_val[v] * x1[j]);
+					sum2 += (near_val[v] * x2[j]);
+					++v;
+				}
+			}
+
+			y1[i] = sum1 * d[i];
+			y2[i] = sum2 * d[i];
+		}
+		return;
+	}
+
+
+
+
+	//----- Access -----
+
+
+	// Get the expansion order chosen by the last build.
+
+	public final int get_order () {
+		return order;
+	}
+
+	// Get the relative error bound for the last build, assuming non-negative source vectors.
+
+	public final double get_error_bound () {
+		return error_bound;
+	}
+
+	// Get the number of far-field and near-field kernel values, which is the storage used
+	// in place of the rupture_count*(rupture_count-1)/2 values of the dense matrix.
+
+	public final long get_interaction_count () {
+		return (long)far_count + (long)near_val_count;
+	}
+
+
+
+
+	// Display our contents.
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+
+		result.append ("OEOmoriTreeKernel:" + "\n");
+
+		result.append ("rupture_count = " + rupture_count + "\n");
+		result.append ("node_count = " + node_count + "\n");
+		result.append ("p = " + p + "\n");
+		result.append ("c = " + c + "\n");
+		result.append ("order = " + order + "\n");
+		result.append ("error_bound = " + error_bound + "\n");
+		result.append ("far_count = " + far_count + "\n");
+		result.append ("near_count = " + near_count + "\n");
+		result.append ("near_val_count = " + near_val_count + "\n");
+
+		return result.toString();
+	}
+
+}
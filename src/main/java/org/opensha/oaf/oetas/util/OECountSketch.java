@@ -0,0 +1,803 @@
+package org.opensha.oaf.oetas.util;
+
+import java.util.Arrays;
+
+import org.opensha.oaf.util.MarshalReader;
+import org.opensha.oaf.util.MarshalWriter;
+import org.opensha.oaf.util.MarshalException;
+import org.opensha.oaf.util.InvariantViolationException;
+
+
+// Mergeable sketch of the distribution of integer counts, for a 2D array of bins.
+//
+// Each bin holds a histogram of the non-negative integer values that have been
+// added to it (typically, one rupture count per catalog).  The histogram uses
+// exact buckets for values less than exact_limit, so that small counts are
+// represented exactly.  Values greater than or equal to exact_limit are placed
+// into logarithmically-spaced buckets, each spanning a factor of gamma, where
+//
+//   gamma = (1 + rel_error) / (1 - rel_error)
+//
+// Each logarithmic bucket is represented by a single value, chosen so that the
+// relative difference between the representative value and any value in the
+// bucket is at most rel_error (plus 0.5 due to rounding to an integer).
+//
+// Because the bucketing is monotonic, ranks are preserved.  So if v is the exact
+// value at a given rank (in sorted order) within a bin, then the value reported
+// by the sketch at that rank is exactly v if v < exact_limit, and otherwise is
+// within a relative error of rel_error of v.  Probabilities of exceedence are
+// exact for any threshold less than exact_limit.
+//
+// Memory usage is independent of the number of values added.  The histogram for
+// each bin is allocated on demand, just large enough to cover the largest bucket
+// seen, and so is bounded by get_bucket_count() elements.
+//
+// Sketches with the same dimensions and parameters can be merged by adding their
+// histograms, which makes it possible to accumulate separately in each thread
+// and then combine the results.
+//
+// Threading: A sketch is not synchronized.  Each thread should use its own sketch.
+
+public class OECountSketch {
+
+	//----- Parameters -----
+
+	// The number of bins in the first dimension.
+
+	private int dim_1;
+
+	// The number of bins in the second dimension.
+
+	private int dim_2;
+
+	// Values less than this are stored exactly, must be >= 1.
+
+	private int exact_limit;
+
+	// The maximum relative error for values >= exact_limit, must satisfy 0 < rel_error < 1.
+
+	private double rel_error;
+
+	// The reciprocal of the log of gamma.
+
+	private double inv_log_gamma;
+
+	// The total number of buckets, enough to hold any non-negative int.
+
+	private int bucket_count;
+
+	// The value that represents each bucket.
+	// Dimension: bucket_value[bucket_count]
+	// This array is shared between sketches with the same parameters, and is not modified.
+
+	private int[] bucket_value;
+
+
+
+
+	//----- Contents -----
+
+	// The histogram for each bin.
+	// Dimension: sk_hist[dim_1][dim_2][], where the last dimension is at most bucket_count.
+	// The last dimension grows as needed, and may be zero if the bin is empty.
+
+	private int[][][] sk_hist;
+
+	// The number of values in each bin.
+	// Dimension: sk_total[dim_1][dim_2]
+
+	private int[][] sk_total;
+
+	// Minimum allocation when growing a histogram.
+
+	private static final int MIN_HIST_ALLOC = 16;
+
+
+
+
+	//----- Construction -----
+
+
+
+
+	// Erase the contents, leaving the sketch empty but retaining the dimensions and parameters.
+
+	public final void clear_counts () {
+		for (int i = 0; i < dim_1; ++i) {
+			for (int j = 0; j < dim_2; ++j) {
+				sk_hist[i][j] = new int[0];
+				sk_total[i][j] = 0;
+			}
+		}
+		return;
+	}
+
+
+
+
+	// Make the table of bucket values.
+
+	private void make_bucket_table () {
+		if (!( exact_limit >= 1 )) {
+			throw new IllegalArgumentException ("OECountSketch.make_bucket_table: Invalid exact limit: exact_limit = " + exact_limit);
+		}
+		if (!( rel_error > 0.0 && rel_error < 1.0 )) {
+			throw new IllegalArgumentException ("OECountSketch.make_bucket_table: Invalid relative error: rel_error = " + rel_error);
+		}
+
+		final double gamma = (1.0 + rel_error) / (1.0 - rel_error);
+		inv_log_gamma = 1.0 / Math.log (gamma);
+
+		bucket_count = calc_bucket (Integer.MAX_VALUE) + 1;
+		bucket_value = new int[bucket_count];
+
+		// Exact buckets
+
+		for (int k = 0; k < exact_limit; ++k) {
+			bucket_value[k] = k;
+		}
+
+		// Logarithmic buckets, the representative value is the harmonic mean of the bucket limits
+
+		final double rep_factor = 2.0 * gamma / (1.0 + gamma);
+		int prev = exact_limit;
+
+		for (int k = exact_limit; k < bucket_count; ++k) {
+			double lower = ((double)exact_limit) * Math.pow (gamma, (double)(k - exact_limit));
+			double rep = Math.rint (lower * rep_factor);
+			int v;
+			if (rep >= (double)Integer.MAX_VALUE) {
+				v = Integer.MAX_VALUE;
+			} else {
+				v = (int)rep;
+			}
+			if (v < prev) {
+				v = prev;
+			}
+			bucket_value[k] = v;
+			prev = v;
+		}
+
+		return;
+	}
+
+
+
+
+	// Calculate the bucket for a value, without clipping to the bucket count.
+
+	private int calc_bucket (int v) {
+		if (v < exact_limit) {
+			return Math.max (v, 0);
+		}
+		return exact_limit + (int)(Math.floor (Math.log (((double)v) / ((double)exact_limit)) * inv_log_gamma));
+	}
+
+
+
+
+	// Construct an empty sketch.
+	// Parameters:
+	//  the_dim_1 = Number of bins in the first dimension.
+	//  the_dim_2 = Number of bins in the second dimension.
+	//  the_exact_limit = Values less than this are stored exactly, must be >= 1.
+	//  the_rel_error = Maximum relative error for larger values, must satisfy 0 < rel_error < 1.
+
+	public OECountSketch (int the_dim_1, int the_dim_2, int the_exact_limit, double the_rel_error) {
+		if (!( the_dim_1 >= 0 && the_dim_2 >= 0 )) {
+			throw new IllegalArgumentException ("OECountSketch: Invalid dimensions: dim_1 = " + the_dim_1 + ", dim_2 = " + the_dim_2);
+		}
+
+		dim_1 = the_dim_1;
+		dim_2 = the_dim_2;
+		exact_limit = the_exact_limit;
+		rel_error = the_rel_error;
+		make_bucket_table();
+
+		sk_hist = new int[dim_1][dim_2][];
+		sk_total = new int[dim_1][dim_2];
+		clear_counts();
+	}
+
+
+
+
+	// Construct an empty sketch with the same dimensions and parameters as another sketch.
+
+	private OECountSketch (OECountSketch other) {
+		dim_1 = other.dim_1;
+		dim_2 = other.dim_2;
+		exact_limit = other.exact_limit;
+		rel_error = other.rel_error;
+		inv_log_gamma = other.inv_log_gamma;
+		bucket_count = other.bucket_count;
+		bucket_value = other.bucket_value;
+
+		sk_hist = new int[dim_1][dim_2][];
+		sk_total = new int[dim_1][dim_2];
+		clear_counts();
+	}
+
+
+
+
+	// Make an empty sketch with the same dimensions and parameters as this sketch.
+	// This is the usual way to create per-thread sketches that are later merged.
+
+	public final OECountSketch make_empty_copy () {
+		return new OECountSketch (this);
+	}
+
+
+
+
+	// Return true if the other sketch has the same dimensions and parameters.
+
+	public final boolean is_compatible (OECountSketch other) {
+		return dim_1 == other.dim_1
+			&& dim_2 == other.dim_2
+			&& exact_limit == other.exact_limit
+			&& rel_error == other.rel_error;
+	}
+
+
+
+
+	//----- Accumulation -----
+
+
+
+
+	// Get the bucket for a value.
+
+	public final int value_to_bucket (int v) {
+		return Math.min (calc_bucket (v), bucket_count - 1);
+	}
+
+
+
+
+	// Add a value to a bin.
+	// Parameters:
+	//  i = First index of bin.
+	//  j = Second index of bin.
+	//  v = Value to add, should be >= 0.
+
+	public final void add_value (int i, int j, int v) {
+		final int k = value_to_bucket (v);
+		int[] hist = sk_hist[i][j];
+		if (k >= hist.length) {
+			hist = Arrays.copyOf (hist, Math.min (Math.max (k + 1, Math.max (hist.length * 2, MIN_HIST_ALLOC)), bucket_count));
+			sk_hist[i][j] = hist;
+		}
+		++hist[k];
+		++sk_total[i][j];
+		return;
+	}
+
+
+
+
+	// Add one value to each bin.
+	// Parameters:
+	//  v = Values to add, with dimension v[dim_1][dim_2].
+
+	public final void add_values (int[][] v) {
+		for (int i = 0; i < dim_1; ++i) {
+			final int[] vi = v[i];
+			for (int j = 0; j < dim_2; ++j) {
+				add_value (i, j, vi[j]);
+			}
+		}
+		return;
+	}
+
+
+
+
+	// Add one value to each bin, skipping bins whose value is omit_value.
+	// Parameters:
+	//  v = Values to add, with dimension v[dim_1][dim_2].
+	//  omit_value = Value that indicates the bin should not be updated.
+
+	public final void add_values (int[][] v, int omit_value) {
+		for (int i = 0; i < dim_1; ++i) {
+			final int[] vi = v[i];
+			for (int j = 0; j < dim_2; ++j) {
+				if (vi[j] != omit_value) {
+					add_value (i, j, vi[j]);
+				}
+			}
+		}
+		return;
+	}
+
+
+
+
+	// Merge another sketch into this sketch.
+	// Parameters:
+	//  other = Sketch to merge, must have the same dimensions and parameters.
+
+	public final void merge_from (OECountSketch other) {
+		if (!( is_compatible (other) )) {
+			throw new IllegalArgumentException ("OECountSketch.merge_from: Incompatible sketch");
+		}
+
+		for (int i = 0; i < dim_1; ++i) {
+			for (int j = 0; j < dim_2; ++j) {
+				final int[] other_hist = other.sk_hist[i][j];
+				if (other.sk_total[i][j] > 0) {
+					int[] hist = sk_hist[i][j];
+					if (other_hist.length > hist.length) {
+						hist = Arrays.copyOf (hist, other_hist.length);
+						sk_hist[i][j] = hist;
+					}
+					for (int k = 0; k < other_hist.length; ++k) {
+						hist[k] += other_hist[k];
+					}
+					sk_total[i][j] += other.sk_total[i][j];
+				}
+			}
+		}
+		return;
+	}
+
+
+
+
+	//----- Readout -----
+
+
+
+
+	// Get the number of bins in the first dimension.
+
+	public final int get_dim_1 () {
+		return dim_1;
+	}
+
+
+	// Get the number of bins in the second dimension.
+
+	public final int get_dim_2 () {
+		return dim_2;
+	}
+
+
+	// Get the exact limit.
+
+	public final int get_exact_limit () {
+		return exact_limit;
+	}
+
+
+	// Get the maximum relative error.
+
+	public final double get_rel_error () {
+		return rel_error;
+	}
+
+
+	// Get the total number of buckets, which bounds the size of each bin's histogram.
+
+	public final int get_bucket_count () {
+		return bucket_count;
+	}
+
+
+	// Get the number of values in a bin.
+
+	public final int get_bin_size (int i, int j) {
+		return sk_total[i][j];
+	}
+
+
+	// Get the number of values in each bin.
+	// The returned array is newly-allocated.
+
+	public final int[][] get_bin_size_array () {
+		int[][] result = new int[dim_1][];
+		for (int i = 0; i < dim_1; ++i) {
+			result[i] = Arrays.copyOf (sk_total[i], dim_2);
+		}
+		return result;
+	}
+
+
+	// Get the total number of histogram elements currently allocated.
+
+	public final long get_storage_size () {
+		long result = 0L;
+		for (int i = 0; i < dim_1; ++i) {
+			for (int j = 0; j < dim_2; ++j) {
+				result += (long)(sk_hist[i][j].length);
+			}
+		}
+		return result;
+	}
+
+
+
+
+	// Get the value at the given rank within a bin.
+	// Parameters:
+	//  i = First index of bin.
+	//  j = Second index of bin.
+	//  rank = Rank, 0 for the smallest value; it is clipped to the range of the bin.
+	// Returns the value that would be at index rank if the values in the bin were sorted
+	// into increasing order (subject to the error bound described above).
+	// If the bin is empty, the return value is zero.
+
+	public final int get_rank_value (int i, int j, int rank) {
+		final int total = sk_total[i][j];
+		if (total <= 0) {
+			return 0;
+		}
+		final int n = Math.max (0, Math.min (rank, total - 1));
+		final int[] hist = sk_hist[i][j];
+		int cum = 0;
+		for (int k = 0; k < hist.length; ++k) {
+			cum += hist[k];
+			if (cum > n) {
+				return bucket_value[k];
+			}
+		}
+		throw new InvariantViolationException ("OECountSketch.get_rank_value: Histogram total mismatch: total = " + total + ", cum = " + cum);
+	}
+
+
+
+
+	// Get the value at the given rank within each bin.
+	// Parameters:
+	//  rank = Rank, 0 for the smallest value; it is clipped to the range of each bin.
+	// Returns an array with dimension r[dim_1][dim_2].
+	// This matches OEArraysCalc.get_each_array_column applied to sorted columns.
+
+	public final int[][] get_rank_array (int rank) {
+		int[][] result = new int[dim_1][dim_2];
+		for (int i = 0; i < dim_1; ++i) {
+			for (int j = 0; j < dim_2; ++j) {
+				result[i][j] = get_rank_value (i, j, rank);
+			}
+		}
+		return result;
+	}
+
+
+
+
+	// Get a fractile within each bin.
+	// Parameters:
+	//  frac = Fractile to find, should be between 0.0 and 1.0.
+	// Returns an array with dimension r[dim_1][dim_2].
+	// Each element is a value v such that the probability that a value in the bin
+	// is less than or equal to v is approximately equal to frac.
+	// If the bin is empty, the value is zero.
+	// This uses the same choice of rank as OEArraysCalc.fractile_array.
+
+	public final int[][] get_fractile_array (double frac) {
+		int[][] result = new int[dim_1][dim_2];
+		for (int i = 0; i < dim_1; ++i) {
+			for (int j = 0; j < dim_2; ++j) {
+				final int total = sk_total[i][j];
+				if (total > 0) {
+					result[i][j] = get_rank_value (i, j, (int)Math.round (((double)total) * frac - 0.5));
+				}
+			}
+		}
+		return result;
+	}
+
+
+
+
+	// Get the probability of exceedence within each bin.
+	// Parameters:
+	//  v = Value to check.
+	// Returns an array with dimension r[dim_1][dim_2].
+	// Each element is the fraction of values in the bin that are greater than v.
+	// If the bin is empty, the value is zero.
+	// The result is exact if v < exact_limit; otherwise each bucket is treated
+	// as if all its values equal its representative value.
+
+	public final double[][] get_probex_array (int v) {
+
+		// Find the first bucket whose representative value exceeds v
+
+		int kv = 0;
+		if (v >= 0) {
+			kv = value_to_bucket (v);
+			while (kv < bucket_count && bucket_value[kv] <= v) {
+				++kv;
+			}
+		}
+
+		// Count values in that bucket and above
+
+		double[][] result = new double[dim_1][dim_2];
+		for (int i = 0; i < dim_1; ++i) {
+			for (int j = 0; j < dim_2; ++j) {
+				final int total = sk_total[i][j];
+				if (total > 0) {
+					final int[] hist = sk_hist[i][j];
+					int below = 0;
+					for (int k = 0; k < kv && k < hist.length; ++k) {
+						below += hist[k];
+					}
+					result[i][j] = ((double)(total - below)) / ((double)total);
+				}
+			}
+		}
+		return result;
+	}
+
+
+
+
+	//----- Marshaling -----
+
+	// Marshal version number.
+
+	private static final int MARSHAL_VER_1 = 149001;
+
+	private static final String M_VERSION_NAME = "OECountSketch";
+
+	// Marshal object, internal.
+	// Only the non-empty prefix of each histogram is written.
+
+	private void do_marshal (MarshalWriter writer) {
+
+		// Version
+
+		int ver = MARSHAL_VER_1;
+
+		writer.marshalInt (M_VERSION_NAME, ver);
+
+		// Contents
+
+		switch (ver) {
+
+		case MARSHAL_VER_1: {
+
+			writer.marshalInt         ("dim_1"      , dim_1      );
+			writer.marshalInt         ("dim_2"      , dim_2      );
+			writer.marshalInt         ("exact_limit", exact_limit);
+			writer.marshalDouble      ("rel_error"  , rel_error  );
+
+			int[][][] x = new int[dim_1][dim_2][];
+			for (int i = 0; i < dim_1; ++i) {
+				for (int j = 0; j < dim_2; ++j) {
+					final int[] hist = sk_hist[i][j];
+					int len = hist.length;
+					while (len > 0 && hist[len - 1] == 0) {
+						--len;
+					}
+					x[i][j] = Arrays.copyOf (hist, len);
+				}
+			}
+
+			writer.marshalInt3DArray  ("sk_hist"    , x          );
+		}
+		break;
+
+		}
+
+		return;
+	}
+
+	// Unmarshal object, internal.
+
+	private void do_umarshal (MarshalReader reader) {
+
+		// Version
+
+		int ver = reader.unmarshalInt (M_VERSION_NAME, MARSHAL_VER_1, MARSHAL_VER_1);
+
+		// Contents
+
+		switch (ver) {
+
+		case MARSHAL_VER_1: {
+
+			dim_1       = reader.unmarshalInt         ("dim_1"      );
+			dim_2       = reader.unmarshalInt         ("dim_2"      );
+			exact_limit = reader.unmarshalInt         ("exact_limit");
+			rel_error   = reader.unmarshalDouble      ("rel_error"  );
+
+			try {
+				make_bucket_table();
+			} catch (IllegalArgumentException e) {
+				throw new MarshalException ("OECountSketch.do_umarshal: Invalid sketch parameters", e);
+			}
+
+			sk_hist     = reader.unmarshalInt3DArray  ("sk_hist"    );
+
+			if (!( sk_hist.length == dim_1 )) {
+				throw new MarshalException ("OECountSketch.do_umarshal: Histogram dimension mismatch");
+			}
+			sk_total = new int[dim_1][dim_2];
+			for (int i = 0; i < dim_1; ++i) {
+				if (!( sk_hist[i].length == dim_2 )) {
+					throw new MarshalException ("OECountSketch.do_umarshal: Histogram dimension mismatch");
+				}
+				for (int j = 0; j < dim_2; ++j) {
+					if (!( sk_hist[i][j].length <= bucket_count )) {
+						throw new MarshalException ("OECountSketch.do_umarshal: Histogram too long");
+					}
+					int total = 0;
+					for (int k = 0; k < sk_hist[i][j].length; ++k) {
+						total += sk_hist[i][j][k];
+					}
+					sk_total[i][j] = total;
+				}
+			}
+		}
+		break;
+
+		}
+
+		return;
+	}
+
+	// Marshal object.
+
+	public void marshal (MarshalWriter writer, String name) {
+		writer.marshalMapBegin (name);
+		do_marshal (writer);
+		writer.marshalMapEnd ();
+		return;
+	}
+
+	// Unmarshal object.
+
+	public OECountSketch unmarshal (MarshalReader reader, String name) {
+		reader.unmarshalMapBegin (name);
+		do_umarshal (reader);
+		reader.unmarshalMapEnd ();
+		return this;
+	}
+
+	// Marshal object.
+
+	public static void static_marshal (MarshalWriter writer, String name, OECountSketch sketch) {
+		writer.marshalMapBegin (name);
+		sketch.do_marshal (writer);
+		writer.marshalMapEnd ();
+		return;
+	}
+
+	// Unmarshal object.
+
+	public static OECountSketch static_unmarshal (MarshalReader reader, String name) {
+		OECountSketch sketch = new OECountSketch (0, 0, 1, 0.5);
+		reader.unmarshalMapBegin (name);
+		sketch.do_umarshal (reader);
+		reader.unmarshalMapEnd ();
+		return sketch;
+	}
+
+
+
+
+	//----- Testing -----
+
+
+
+
+	public static void main(String[] args) {
+
+		// There needs to be at least one argument, which is the subcommand
+
+		if (args.length < 1) {
+			System.err.println ("OECountSketch : Missing subcommand");
+			return;
+		}
+
+
+
+
+		// Subcommand : Test #1
+		// Command format:
+		//  test1  num_values  max_log10  exact_limit  rel_error  num_threads  seed
+		// Generate random values, log-uniformly distributed between 1 and 10^max_log10,
+		// and add them to a 1x1 sketch, splitting the values among num_threads partial
+		// sketches which are then merged.  Compare fractiles and probabilities of
+		// exceedence to the exact values obtained by sorting, and display the largest
+		// relative error in the fractiles.
+
+		if (args[0].equalsIgnoreCase ("test1")) {
+
+			// 6 additional arguments
+
+			if (args.length != 7) {
+				System.err.println ("OECountSketch : Invalid 'test1' subcommand");
+				return;
+			}
+
+			try {
+
+				int num_values = Integer.parseInt (args[1]);
+				double max_log10 = Double.parseDouble (args[2]);
+				int exact_limit = Integer.parseInt (args[3]);
+				double rel_error = Double.parseDouble (args[4]);
+				int num_threads = Integer.parseInt (args[5]);
+				long seed = Long.parseLong (args[6]);
+
+				// Say hello
+
+				System.out.println ("Comparing sketch to exact fractiles");
+				System.out.println ("num_values = " + num_values);
+				System.out.println ("max_log10 = " + max_log10);
+				System.out.println ("exact_limit = " + exact_limit);
+				System.out.println ("rel_error = " + rel_error);
+				System.out.println ("num_threads = " + num_threads);
+				System.out.println ("seed = " + seed);
+
+				// Generate values, and accumulate into partial sketches
+
+				java.util.Random rand = new java.util.Random (seed);
+				int[] values = new int[num_values];
+				OECountSketch sketch = new OECountSketch (1, 1, exact_limit, rel_error);
+				OECountSketch[] partials = new OECountSketch[num_threads];
+				for (int t = 0; t < num_threads; ++t) {
+					partials[t] = sketch.make_empty_copy();
+				}
+				for (int n = 0; n < num_values; ++n) {
+					values[n] = (int)Math.round (Math.pow (10.0, rand.nextDouble() * max_log10)) - 1;
+					partials[n % num_threads].add_value (0, 0, values[n]);
+				}
+				for (int t = 0; t < num_threads; ++t) {
+					sketch.merge_from (partials[t]);
+				}
+				Arrays.sort (values);
+
+				System.out.println ();
+				System.out.println ("bucket_count = " + sketch.get_bucket_count());
+				System.out.println ("storage_size = " + sketch.get_storage_size());
+				System.out.println ("bin_size = " + sketch.get_bin_size (0, 0));
+
+				// Compare fractiles
+
+				System.out.println ();
+				double max_err = 0.0;
+				for (int i = 0; i <= 100; ++i) {
+					double frac = ((double)i) / 100.0;
+					int exact = OEArraysCalc.fractile_array (values, frac, 0, num_values);
+					int approx = sketch.get_fractile_array (frac)[0][0];
+					double err = ((double)(Math.abs (approx - exact))) / Math.max (1.0, (double)exact);
+					max_err = Math.max (max_err, err);
+					if (i % 10 == 0) {
+						System.out.println ("frac = " + frac + ", exact = " + exact + ", sketch = " + approx + ", rel_err = " + err);
+					}
+				}
+				System.out.println ("max_rel_err = " + max_err);
+
+				// Compare probabilities of exceedence
+
+				System.out.println ();
+				for (int v = 1; v < num_values && v <= 1000000000; v *= 10) {
+					double exact = ((double)(num_values - OEArraysCalc.bsearch_array (values, v, 0, num_values))) / ((double)num_values);
+					double approx = sketch.get_probex_array (v)[0][0];
+					System.out.println ("v = " + v + ", exact = " + exact + ", sketch = " + approx);
+				}
+
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+
+			return;
+		}
+
+
+
+
+		// Unrecognized subcommand.
+
+		System.err.println ("OECountSketch : Unrecognized subcommand : " + args[0]);
+		return;
+
+	}
+
+}
@@ -210,6 +210,46 @@ public class OEMarginalDistBi implements Marshalable {
 
 
 
+	// Merge another accumulation into this one.
+	// Parameters:
+	//  other = Distribution to merge, which must have been set up identically to this one.
+	// Both distributions must be in the accumulating state, that is, after begin_accum
+	// but before end_accum.  The weights accumulated in the other distribution are added
+	// to the weights in this distribution.  This allows separate threads to accumulate
+	// into separate distributions, which are merged before calling end_accum.
+
+	public final void merge_accum (OEMarginalDistBi other) {
+		if (!( dist.length == other.dist.length && dist[0].length == other.dist[0].length )) {
+			throw new IllegalArgumentException ("OEMarginalDistBi.merge_accum: Distribution extent mismatch");
+		}
+		OEArraysCalc.array_add (dist, other.dist);
+		//data_count += other.data_count;
+		return;
+	}
+
+
+
+
+	// Merge each accumulation in the y array into the corresponding accumulation in the x array.
+	// Parameters:
+	//  x = Array of distributions being accumulated.
+	//  y = Array of distributions to merge.
+	// Note: Throws exception if the arrays have different length.
+
+	public static void array_merge_accum (final OEMarginalDistBi[] x, final OEMarginalDistBi[] y) {
+		final int c0 = x.length;
+		if (c0 != y.length) {
+			throw new IllegalArgumentException ("OEMarginalDistBi.array_merge_accum: Array length mismatch: x.length = " + x.length + ", y.length = " + y.length);
+		}
+		for (int m0 = 0; m0 < c0; ++m0) {
+			x[m0].merge_accum (y[m0]);
+		}
+		return;
+	}
+
+
+
+
 	//----- Stacking functions -----
 
 
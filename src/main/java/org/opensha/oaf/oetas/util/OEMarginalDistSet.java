@@ -197,6 +197,22 @@ public class OEMarginalDistSet implements Marshalable {
 
 
 
+	// Merge another accumulation into this one.
+	// Parameters:
+	//  other = Distribution set to merge, which must have been set up identically to this one.
+	// Both distribution sets must be in the accumulating state, that is, after begin_accum
+	// but before end_accum.  The weights accumulated in the other distribution set are added
+	// to the weights in this one.
+
+	public final void merge_accum (OEMarginalDistSet other) {
+		OEMarginalDistUni.array_merge_accum (univar, other.univar);
+		OEMarginalDistBi.array_merge_accum (bivar, other.bivar);
+		return;
+	}
+
+
+
+
 	// Erase the bivariate distributions.
 
 	public final void erase_bivar_dist () {
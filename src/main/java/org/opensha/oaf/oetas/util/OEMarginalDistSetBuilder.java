@@ -347,6 +347,20 @@ public class OEMarginalDistSetBuilder {
 
 
 
+	// Merge the data accumulated by another builder into this builder.
+	// Parameters:
+	//  other = Builder to merge, which must have been set up identically to this one.
+	// Both builders must be in the accumulating state, that is, after begin_accum but before
+	// end_accum.  This allows separate threads to accumulate into separate builders.
+
+	public final void merge_accum (OEMarginalDistSetBuilder other) {
+		dist_set.merge_accum (other.dist_set);
+		return;
+	}
+
+
+
+
 	// Finish accumulation.
 	// Parameters:
 	//  norm_uni = Desired total weight for univariate marginals, use a negative value for no normalization.
@@ -3,6 +3,7 @@ package org.opensha.oaf.util;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -56,6 +57,12 @@ public class AutoExecutorService implements AutoCloseable {
 	public static final long AESTO_NO_WAIT = -2L;		// perform shutdown and then continue with no wait, assuming it will succeed
 	public static final long AESTO_NO_SHUT = -3L;		// do not issue the shutdown command
 
+	// For an object that shares the executor service of another object, the number of objects
+	// currently sharing it, otherwise null.  A sharing object reports an equal share of the
+	// shared executor's threads as its number of threads.
+
+	private AtomicInteger share_count;
+
 
 
 
@@ -220,6 +227,7 @@ public class AutoExecutorService implements AutoCloseable {
 		this.num_threads = num_threads;
 		this.timeout_orderly = timeout_orderly;
 		this.timeout_abrupt = timeout_abrupt;
+		this.share_count = null;
 
 		if (!( is_valid_num_threads (num_threads) )) {
 			throw new IllegalArgumentException ("AutoExecutorService: Invalid number of threads: " + num_threads);
@@ -290,6 +298,40 @@ public class AutoExecutorService implements AutoCloseable {
 	}
 
 
+	// Make an object that shares the executor service of another object.
+	// Parameters:
+	//  the_executor_service = The executor service to share.
+	//  the_num_threads = Number of threads in the shared executor service, must be > 0.
+	//  the_share_count = Number of objects currently sharing the executor service.
+	// The shutdown is disabled, so closing this object does not affect the shared executor service.
+
+	private AutoExecutorService (ExecutorService the_executor_service, int the_num_threads, AtomicInteger the_share_count) {
+		this.executor_service = the_executor_service;
+		this.num_threads = the_num_threads;
+		this.timeout_orderly = AESTO_NO_SHUT;
+		this.timeout_abrupt = AESTO_NO_SHUT;
+		this.share_count = the_share_count;
+	}
+
+
+	// Make an object that runs work on the executor service of this object, using a share of its threads.
+	// Parameters:
+	//  the_share_count = Number of objects currently sharing the executor service.  The caller
+	//    adjusts this as work starts and finishes, and each sharing object reports an equal share
+	//    of the threads (but at least 1) as its number of threads.
+	// This object must have a fixed number of threads.
+	// Closing the returned object does not shut down the executor service.
+	// This is used to run several independent multi-threaded computations at once on one thread
+	// pool, where each computation launches as many worker threads as the configured number.
+
+	public AutoExecutorService make_share (AtomicInteger the_share_count) {
+		if (!( executor_service != null && num_threads > 0 && share_count == null )) {
+			throw new IllegalStateException ("AutoExecutorService.make_share: Executor service cannot be shared");
+		}
+		return new AutoExecutorService (executor_service, num_threads, the_share_count);
+	}
+
+
 	// Change the timeouts.
 	// Parameters:
 	//  the_timeout_orderly = Timeout for orderly shutdown, in milliseconds; must be > 0L or one of the special values above.
@@ -329,8 +371,12 @@ public class AutoExecutorService implements AutoCloseable {
 
 
 	// Get the configured number of threads.
+	// If this object shares another object's executor service, this is the current share of its threads.
 
 	public int get_num_threads () {
+		if (share_count != null) {
+			return Math.max (1, num_threads / Math.max (1, share_count.get()));
+		}
 		return num_threads;
 	}
 
@@ -343,7 +389,7 @@ public class AutoExecutorService implements AutoCloseable {
 		if (num_threads == 0) {
 			return default_num_threads;
 		}
-		return num_threads;
+		return get_num_threads();
 	}
 
 	
@@ -357,10 +403,7 @@ public class AutoExecutorService implements AutoCloseable {
 		if (num_threads == 0) {
 			return default_num_threads;
 		}
-		if (num_threads > max_num_threads) {
-			return max_num_threads;
-		}
-		return num_threads;
+		return Math.min (get_num_threads(), max_num_threads);
 	}
 
 
@@ -490,6 +533,10 @@ public class AutoExecutorService implements AutoCloseable {
 
 		result.append ("num_threads = " + num_threads_to_string (num_threads) + "\n");
 
+		if (share_count != null) {
+			result.append ("share_count = " + share_count.get() + "\n");
+		}
+
 		result.append ("timeout_orderly = " + timeout_to_string (timeout_orderly) + "\n");
 
 		result.append ("timeout_abrupt = " + timeout_to_string (timeout_abrupt) + "\n");
@@ -0,0 +1,993 @@
+package org.opensha.oaf.util;
+
+import java.util.Set;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Collection;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONValue;
+
+import org.bson.types.Binary;
+
+
+/**
+ * Class for unmarshaling parameters/data from BSON data structures.
+ *
+ * This reads the tree of objects produced by MarshalImpBsonWriter, or the same tree
+ * after a round trip through MongoDB.  Maps are java.util.Map (normally org.bson.Document),
+ * arrays are java.util.List or BSON binary data holding a typed array, and scalars
+ * are Number, String, Boolean, or null.
+ */
+public class MarshalImpBsonReader implements MarshalReader {
+
+	//----- Binary array decoding -----
+
+
+
+
+	// Get the byte buffer holding binary data, checking the element size.
+
+	private static ByteBuffer get_binary_buffer (Binary b, int element_size) {
+		byte[] data = b.getData();
+		if (data.length % element_size != 0) {
+			throw new MarshalException ("Binary array has invalid length: subtype = " + b.getType() + ", length = " + data.length);
+		}
+		return ByteBuffer.wrap (data).order (ByteOrder.LITTLE_ENDIAN);
+	}
+
+
+
+
+	// Return true if the object is binary data holding a typed array.
+
+	public static boolean is_binary_array (Object o) {
+		if (o instanceof Binary) {
+			byte subtype = ((Binary)o).getType();
+			if (subtype == MarshalImpBsonWriter.BIN_SUBTYPE_LONG_ARRAY
+				|| subtype == MarshalImpBsonWriter.BIN_SUBTYPE_DOUBLE_ARRAY
+				|| subtype == MarshalImpBsonWriter.BIN_SUBTYPE_INT_ARRAY) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+
+
+	// Decode binary data holding a long or int array, into a long array.
+
+	public static long[] decode_long_array (Binary b) {
+		long[] r;
+		ByteBuffer buf;
+		switch (b.getType()) {
+
+		case MarshalImpBsonWriter.BIN_SUBTYPE_LONG_ARRAY:
+			buf = get_binary_buffer (b, 8);
+			r = new long[buf.remaining() / 8];
+			buf.asLongBuffer().get (r);
+			break;
+
+		case MarshalImpBsonWriter.BIN_SUBTYPE_INT_ARRAY:
+			buf = get_binary_buffer (b, 4);
+			r = new long[buf.remaining() / 4];
+			for (int i = 0; i < r.length; ++i) {
+				r[i] = (long)(buf.getInt());
+			}
+			break;
+
+		default:
+			throw new MarshalException ("Binary array has wrong subtype, expecting long array: subtype = " + b.getType());
+		}
+		return r;
+	}
+
+
+
+
+	// Decode binary data holding a double array, into a double array.
+
+	public static double[] decode_double_array (Binary b) {
+		double[] r;
+		ByteBuffer buf;
+		switch (b.getType()) {
+
+		case MarshalImpBsonWriter.BIN_SUBTYPE_DOUBLE_ARRAY:
+			buf = get_binary_buffer (b, 8);
+			r = new double[buf.remaining() / 8];
+			buf.asDoubleBuffer().get (r);
+			break;
+
+		default:
+			throw new MarshalException ("Binary array has wrong subtype, expecting double array: subtype = " + b.getType());
+		}
+		return r;
+	}
+
+
+
+
+	// Decode binary data holding an int array, into an int array.
+
+	public static int[] decode_int_array (Binary b) {
+		int[] r;
+		ByteBuffer buf;
+		switch (b.getType()) {
+
+		case MarshalImpBsonWriter.BIN_SUBTYPE_INT_ARRAY:
+			buf = get_binary_buffer (b, 4);
+			r = new int[buf.remaining() / 4];
+			buf.asIntBuffer().get (r);
+			break;
+
+		default:
+			throw new MarshalException ("Binary array has wrong subtype, expecting int array: subtype = " + b.getType());
+		}
+		return r;
+	}
+
+
+
+
+	// Decode binary data holding any typed array, into a list of Long or Double.
+	// This is used when a typed array is read element by element.
+
+	public static List<Object> decode_binary_array (Binary b) {
+		List<Object> result;
+		switch (b.getType()) {
+
+		case MarshalImpBsonWriter.BIN_SUBTYPE_LONG_ARRAY:
+		case MarshalImpBsonWriter.BIN_SUBTYPE_INT_ARRAY: {
+			long[] x = decode_long_array (b);
+			result = new ArrayList<Object>(x.length);
+			for (long v : x) {
+				result.add (Long.valueOf (v));
+			}
+		}
+		break;
+
+		case MarshalImpBsonWriter.BIN_SUBTYPE_DOUBLE_ARRAY: {
+			double[] x = decode_double_array (b);
+			result = new ArrayList<Object>(x.length);
+			for (double v : x) {
+				result.add (Double.valueOf (v));
+			}
+		}
+		break;
+
+		default:
+			throw new MarshalException ("Binary data is not a recognized typed array: subtype = " + b.getType());
+		}
+		return result;
+	}
+
+
+
+
+	//----- Context management -----
+
+	// Class to hold current context.
+
+	private static abstract class Context {
+
+		// The previous context, null if this is the root context.
+
+		protected Context previous;
+
+		// The next context, null if this is the current context.
+
+		protected Context next;
+
+		// check_name - Check a name, and return the named object.
+
+		public abstract Object check_name (String name);
+
+		// peek_name - Check a name, and return the named object, without consuming it.
+
+		public abstract Object peek_name (String name);
+
+		// notify_child_begin - Notification that a child is beginning, and return the child object.
+
+		public abstract Object notify_child_begin (String name, Context child);
+
+		// notify_child_end - Notification that a child is ending.
+
+		public abstract void notify_child_end ();
+
+		// close_map - Close a map context, return the previous context.
+
+		public abstract Context close_map (boolean f_check_keys);
+
+		// close_array - Close an array context, return the previous context.
+
+		public abstract Context close_array ();
+
+		// Constructor.
+
+		public Context (Context previous) {
+			this.previous = previous;
+			this.next = null;
+		}
+	}
+
+	// Class to hold map context.
+
+	private static class ContextMap extends Context {
+
+		// The map.
+
+		private Map<?, ?> bson_map;
+
+		// Names currently in use.
+
+		private Set<String> names;
+
+		// Name of current child.
+
+		private String child_name;
+
+		// check_name - Check a name, and return the named object.
+
+		@Override
+		public Object check_name (String name) {
+
+			// Find the named object, and throw exception if none
+
+			if (name == null) {
+				throw new MarshalException ("No name specified for element in map context");
+			}
+			if (!( names.add (name) )) {
+				throw new MarshalException ("Duplicate element name in map context: name = " + name);
+			}
+			Object result = bson_map.get (name);
+			if (result == null) {
+				if (!( bson_map.containsKey (name) )) {
+					throw new MarshalException ("Element not found in map context: name = " + name);
+				}
+			}
+
+			return result;
+		}
+
+		// peek_name - Check a name, and return the named object, without consuming it.
+
+		@Override
+		public Object peek_name (String name) {
+
+			// Find the named object, and throw exception if none
+
+			if (name == null) {
+				throw new MarshalException ("No name specified for element in map context");
+			}
+			if (names.contains (name)) {
+				throw new MarshalException ("Duplicate element name in map context: name = " + name);
+			}
+			Object result = bson_map.get (name);
+			if (result == null) {
+				if (!( bson_map.containsKey (name) )) {
+					throw new MarshalException ("Element not found in map context: name = " + name);
+				}
+			}
+
+			return result;
+		}
+
+		// notify_child_begin - Notification that a child is beginning, and return the child object.
+
+		@Override
+		public Object notify_child_begin (String name, Context child) {
+			Object result = check_name (name);
+			child_name = name;
+			next = child;
+			return result;
+		}
+
+		// notify_child_end - Notification that a child is ending.
+
+		@Override
+		public void notify_child_end () {
+			child_name = null;
+			next = null;
+			return;
+		}
+
+		// close_map - Close a map context, return the previous context.
+
+		@Override
+		public Context close_map (boolean f_check_keys) {
+
+			// Check if all names were used
+
+			for (Object o : bson_map.keySet()) {
+				if (!( o instanceof String )) {
+					throw new MarshalException ("Non-string key found in map context");
+				}
+				if (f_check_keys) {
+					String name = (String)o;
+					if (!( names.contains(name) )) {
+						throw new MarshalException ("Unused element name in map context: name = " + name);
+					}
+				}
+			}
+
+			previous.notify_child_end();
+			return previous;
+		}
+
+		// close_array - Close an array context, return the previous context.
+
+		@Override
+		public Context close_array () {
+			throw new MarshalException ("Attempt to end array context when in map context");
+		}
+
+		// Constructor.
+
+		public ContextMap (String name, Context previous, Collection<String> keys) {
+			super (previous);
+			this.names = new HashSet<String>();
+			this.child_name = null;
+			Object o = this.previous.notify_child_begin (name, this);
+			if (o == null) {
+				throw new MarshalException ("Found null, expecting map context: name = " + ((name == null) ? "null" : name));
+			}
+			if (!( o instanceof Map )) {
+				throw new MarshalException ("Wrong element type, expecting map context: name = " + ((name == null) ? "null" : name));
+			}
+			this.bson_map = (Map<?, ?>)o;
+			if (keys != null) {
+				for (Object x : this.bson_map.keySet()) {
+					if (!( x instanceof String )) {
+						throw new MarshalException ("Non-string key found in map context");
+					}
+					keys.add ((String)x);
+				}
+			}
+		}
+	}
+
+	// Class to hold array context.
+
+	private static class ContextArray extends Context {
+
+		// The array.
+		// A typed array stored as binary data is decoded into a list.
+
+		private List<?> bson_array;
+
+		// The current index.
+
+		private int array_index;
+
+		// get_array_size - Get the array size.
+
+		public int get_array_size () {
+			return bson_array.size();
+		}
+
+		// check_name - Check a name, and return the named object.
+
+		@Override
+		public Object check_name (String name) {
+
+			// Increment the index and check for overrun
+
+			if (name != null) {
+				throw new MarshalException ("Name specified for element in array context: name = " + name);
+			}
+			if (array_index == bson_array.size()) {
+				throw new MarshalException ("Exceeded declared array size in array context: declared size = " + bson_array.size());
+			}
+
+			return bson_array.get(array_index++);
+		}
+
+		// peek_name - Check a name, and return the named object, without consuming it.
+
+		@Override
+		public Object peek_name (String name) {
+
+			// Check for overrun
+
+			if (name != null) {
+				throw new MarshalException ("Name specified for element in array context: name = " + name);
+			}
+			if (array_index == bson_array.size()) {
+				throw new MarshalException ("Exceeded declared array size in array context: declared size = " + bson_array.size());
+			}
+
+			return bson_array.get(array_index);
+		}
+
+		// notify_child_begin - Notification that a child is beginning, and return the child object.
+
+		@Override
+		public Object notify_child_begin (String name, Context child) {
+			Object result = check_name (name);
+			next = child;
+			return result;
+		}
+
+		// notify_child_end - Notification that a child is ending.
+
+		@Override
+		public void notify_child_end () {
+			next = null;
+			return;
+		}
+
+		// close_map - Close a map context, return the previous context.
+
+		@Override
+		public Context close_map (boolean f_check_keys) {
+			throw new MarshalException ("Attempt to end map context when in array context");
+		}
+
+		// close_array - Close an array context, return the previous context.
+
+		@Override
+		public Context close_array () {
+			if (array_index != bson_array.size()) {
+				throw new MarshalException ("Array size mismatch in array context: declared size = " + bson_array.size() + ", actual size = " + array_index);
+			}
+			previous.notify_child_end();
+			return previous;
+		}
+
+		// Constructor.
+
+		public ContextArray (String name, Context previous) {
+			super (previous);
+			this.array_index = 0;
+			Object o = this.previous.notify_child_begin (name, this);
+			if (o == null) {
+				throw new MarshalException ("Found null, expecting array context: name = " + ((name == null) ? "null" : name));
+			}
+			if (o instanceof List) {
+				this.bson_array = (List<?>)o;
+			}
+			else if (is_binary_array (o)) {
+				this.bson_array = decode_binary_array ((Binary)o);
+			}
+			else {
+				throw new MarshalException ("Wrong element type, expecting array context: name = " + ((name == null) ? "null" : name));
+			}
+		}
+	}
+
+	// Class to hold root context.
+
+	private static class ContextRoot extends Context {
+
+		// The BSON container, can be either Map or List, or null.
+
+		private Object bson_container;
+
+		// True if a child of the root has been created.
+
+		private boolean f_root_done;
+
+		// Return true if a complete child has been processed, false if nothing processed, exception if in progress.
+
+		public boolean get_root_status () {
+			if (next != null) {
+				throw new MarshalException ("Unmarshal is incomplete");
+			}
+			return f_root_done;
+		}
+
+		// check_name - Check a name, and return the named object.
+
+		@Override
+		public Object check_name (String name) {
+
+			// Throw exception
+
+			if (name == null) {
+				throw new MarshalException ("Attempt to read element in root context: name = null");
+			}
+			throw new MarshalException ("Attempt to read element in root context: name = " + name);
+		}
+
+		// peek_name - Check a name, and return the named object, without consuming it.
+
+		@Override
+		public Object peek_name (String name) {
+
+			// Throw exception
+
+			if (name == null) {
+				throw new MarshalException ("Attempt to peek element in root context: name = null");
+			}
+			throw new MarshalException ("Attempt to peek element in root context: name = " + name);
+		}
+
+		// notify_child_begin - Notification that a child is beginning, and return the child object.
+
+		@Override
+		public Object notify_child_begin (String name, Context child) {
+			if (next != null) {
+				if (name == null) {
+					throw new MarshalException ("Attempt to begin second child context when in root context: name = null");
+				}
+				throw new MarshalException ("Attempt to begin second child context when in root context: name = " + name);
+			}
+			if (f_root_done) {
+				if (name == null) {
+					throw new MarshalException ("Attempt to begin child context when in already-used root context: name = null");
+				}
+				throw new MarshalException ("Attempt to begin child context when in already-used root context: name = " + name);
+			}
+			if (name != null) {
+				throw new MarshalException ("Attempt to add named child context when in root context: name = " + name);
+			}
+			if (bson_container == null) {
+				throw new MarshalException ("Attempt to begin child context when in empty root context");
+			}
+			next = child;
+			return bson_container;
+		}
+
+		// notify_child_end - Notification that a child is ending.
+
+		@Override
+		public void notify_child_end () {
+			if (next == null) {
+				throw new MarshalException ("Attempt to end non-existent child context in root context");
+			}
+			next = null;
+			f_root_done = true;
+			return;
+		}
+
+		// close_map - Close a map context, return the previous context.
+
+		@Override
+		public Context close_map (boolean f_check_keys) {
+			throw new MarshalException ("Attempt to end map context when in root context");
+		}
+
+		// close_array - Close an array context, return the previous context.
+
+		@Override
+		public Context close_array () {
+			throw new MarshalException ("Attempt to end array context when in root context");
+		}
+
+		// Constructor.
+
+		public ContextRoot (Object bson_container) {
+			super (null);
+			if (bson_container != null) {
+				if (!( bson_container instanceof Map || bson_container instanceof List )) {
+					throw new MarshalException ("Supplied BSON container is of unrecognized type");
+				}
+			}
+			this.bson_container = bson_container;
+			f_root_done = false;
+		}
+	}
+
+	// Root and current context for reading.
+
+	private ContextRoot root_context_read;
+	private Context current_context_read;
+
+	//----- Implementation of MarshalReader -----
+
+	/**
+	 * Begin a map context.
+	 */
+	@Override
+	public void unmarshalMapBegin (String name) {
+		current_context_read = new ContextMap (name, current_context_read, null);
+		return;
+	}
+
+	/**
+	 * End a map context.
+	 */
+	@Override
+	public void unmarshalMapEnd () {
+		current_context_read = current_context_read.close_map (true);
+		return;
+	}
+
+	/**
+	 * Begin an array context, return the array size.
+	 */
+	@Override
+	public int unmarshalArrayBegin (String name) {
+		ContextArray context_array = new ContextArray (name, current_context_read);
+		current_context_read = context_array;
+		return context_array.get_array_size();
+	}
+
+	/**
+	 * End an array context.
+	 */
+	@Override
+	public void unmarshalArrayEnd () {
+		current_context_read = current_context_read.close_array();
+		return;
+	}
+
+	/**
+	 * Unmarshal a long.
+	 */
+	@Override
+	public long unmarshalLong (String name) {
+		Object o = current_context_read.check_name (name);
+		if (o == null) {
+			throw new MarshalException ("Unmarshal long found null data: name = " + ((name == null) ? "null" : name));
+		}
+		if (!( o instanceof Number )) {
+			throw new MarshalException ("Unmarshal long found non-numeric data type: name = " + ((name == null) ? "null" : name));
+		}
+		if (o instanceof Double || o instanceof Float) {
+			throw new MarshalException ("Unmarshal long found floating-point data type: name = " + ((name == null) ? "null" : name));
+		}
+		return ((Number)o).longValue();
+	}
+
+	/**
+	 * Unmarshal a double.
+	 */
+	@Override
+	public double unmarshalDouble (String name) {
+		Object o = current_context_read.check_name (name);
+		if (o == null) {
+			throw new MarshalException ("Unmarshal double found null data: name = " + ((name == null) ? "null" : name));
+		}
+		if (!( o instanceof Number )) {
+			throw new MarshalException ("Unmarshal double found non-numeric data type: name = " + ((name == null) ? "null" : name));
+		}
+		return ((Number)o).doubleValue();
+	}
+
+	/**
+	 * Unmarshal a string.  (Null strings are not allowed.)
+	 */
+	@Override
+	public String unmarshalString (String name) {
+		Object o = current_context_read.check_name (name);
+		if (o == null) {
+			throw new MarshalException ("Unmarshal string found null data: name = " + ((name == null) ? "null" : name));
+		}
+		if (!( o instanceof String )) {
+			throw new MarshalException ("Unmarshal string found non-string data type: name = " + ((name == null) ? "null" : name));
+		}
+		return ((String)o);
+	}
+
+	/**
+	 * Unmarshal a boolean.
+	 */
+	@Override
+	public boolean unmarshalBoolean (String name) {
+		Object o = current_context_read.check_name (name);
+		if (o == null) {
+			throw new MarshalException ("Unmarshal boolean found null data: name = " + ((name == null) ? "null" : name));
+		}
+		if (!( o instanceof Boolean )) {
+			throw new MarshalException ("Unmarshal boolean found non-boolean data type: name = " + ((name == null) ? "null" : name));
+		}
+		return ((Boolean)o).booleanValue();
+	}
+
+	/**
+	 * Unmarshal a float.
+	 */
+	@Override
+	public float unmarshalFloat (String name) {
+		Object o = current_context_read.check_name (name);
+		if (o == null) {
+			throw new MarshalException ("Unmarshal float found null data: name = " + ((name == null) ? "null" : name));
+		}
+		if (!( o instanceof Number )) {
+			throw new MarshalException ("Unmarshal float found non-numeric data type: name = " + ((name == null) ? "null" : name));
+		}
+		return ((Number)o).floatValue();
+	}
+
+	/**
+	 * Unmarshal a JSON string.  (Null strings are not allowed.)
+	 * The string must contain a JSON object or array, or be an empty string.
+	 * For BSON storage, the string is stored as a BSON document or array instead
+	 * of being embedded as string-valued data.  (An empty string becomes a BSON null.)
+	 * The unmarshaled string may differ from the marshaled string due to JSON parsing.
+	 * (Named element ordering, numeric formats, and spacing may be changed).
+	 */
+	@Override
+	public String unmarshalJsonString (String name) {
+		Object o = current_context_read.check_name (name);
+		String result;
+		if (o == null) {
+			result = "";
+		}
+		else {
+			if (!( o instanceof Map || o instanceof List || is_binary_array (o) )) {
+				throw new MarshalException ("Unmarshal JSON string did not find a BSON document or BSON array: name = " + ((name == null) ? "null" : name));
+			}
+			try {
+				result = JSONValue.toJSONString (bson_to_json (o));
+			}
+			catch (Exception e) {
+				throw new MarshalException ("Unmarshal JSON string encountered an exception while constructing string: name = " + ((name == null) ? "null" : name), e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Unmarshal a long array.
+	 */
+	@Override
+	public long[] unmarshalLongArray (String name) {
+		if (current_context_read != root_context_read) {
+			Object o = current_context_read.peek_name (name);
+			if (o instanceof Binary) {
+				byte subtype = ((Binary)o).getType();
+				if (subtype == MarshalImpBsonWriter.BIN_SUBTYPE_LONG_ARRAY || subtype == MarshalImpBsonWriter.BIN_SUBTYPE_INT_ARRAY) {
+					current_context_read.check_name (name);
+					return decode_long_array ((Binary)o);
+				}
+			}
+		}
+		return MarshalReader.super.unmarshalLongArray (name);
+	}
+
+	/**
+	 * Unmarshal a double array.
+	 */
+	@Override
+	public double[] unmarshalDoubleArray (String name) {
+		if (current_context_read != root_context_read) {
+			Object o = current_context_read.peek_name (name);
+			if (o instanceof Binary) {
+				byte subtype = ((Binary)o).getType();
+				if (subtype == MarshalImpBsonWriter.BIN_SUBTYPE_DOUBLE_ARRAY) {
+					current_context_read.check_name (name);
+					return decode_double_array ((Binary)o);
+				}
+			}
+		}
+		return MarshalReader.super.unmarshalDoubleArray (name);
+	}
+
+	/**
+	 * Unmarshal an int array.
+	 */
+	@Override
+	public int[] unmarshalIntArray (String name) {
+		if (current_context_read != root_context_read) {
+			Object o = current_context_read.peek_name (name);
+			if (o instanceof Binary) {
+				byte subtype = ((Binary)o).getType();
+				if (subtype == MarshalImpBsonWriter.BIN_SUBTYPE_INT_ARRAY) {
+					current_context_read.check_name (name);
+					return decode_int_array ((Binary)o);
+				}
+			}
+		}
+		return MarshalReader.super.unmarshalIntArray (name);
+	}
+
+	//----- Extended JSON support -----
+
+	// Begin a map context.
+	// If keys is non-null, then all the JSON keys are added to the collection.
+
+	@Override
+	public void  unmarshalJsonMapBegin (String name, Collection<String> keys) {
+		current_context_read = new ContextMap (name, current_context_read, keys);
+		return;
+	}
+
+	// End a map context.
+	// If f_check_keys is true, then throw an exception if any keys were not used.
+	// Note that f_check_keys = true gives the same behavior as unmarshalMapEnd.
+
+	@Override
+	public void unmarshalJsonMapEnd (boolean f_check_keys) {
+		current_context_read = current_context_read.close_map (f_check_keys);
+		return;
+	}
+
+	// Unmarshal a JSON null value.
+
+	@Override
+	public void unmarshalJsonNull (String name) {
+		Object o = current_context_read.check_name (name);
+		if (o != null) {
+			throw new MarshalException ("Unmarshal null found non-null data: name = " + ((name == null) ? "null" : name));
+		}
+		return;
+	}
+
+	// Get the type of the next object to be read.
+	// This function does not consume the next object.
+
+	@Override
+	public int unmarshalJsonPeekType (String name) {
+		Object o = current_context_read.peek_name (name);
+		int jpt = -1;
+
+		if (o == null) {
+			jpt = JPT_NULL;
+		}
+		else if (o instanceof Number) {
+			if (o instanceof Double) {
+				jpt =  JPT_DOUBLE;
+			}
+			else if (o instanceof Float) {
+				jpt = JPT_FLOAT;
+			}
+			else {
+				long x = ((Number)o).longValue();
+				if (x < (long)Integer.MIN_VALUE || x > (long)Integer.MAX_VALUE) {
+					jpt = JPT_LONG;
+				}
+				else {
+					jpt = JPT_INTEGER;
+				}
+			}
+		}
+		else if (o instanceof Boolean) {
+			jpt = JPT_BOOLEAN;
+		}
+		else if (o instanceof String) {
+			jpt = JPT_STRING;
+		}
+		else if (o instanceof Map) {
+			jpt = JPT_MAP;
+		}
+		else if (o instanceof List || is_binary_array (o)) {
+			jpt = JPT_ARRAY;
+		}
+		else {
+			throw new MarshalException ("unmarshalJsonPeekType found element of unknown type");
+		}
+
+		return jpt;
+	}
+
+	//----- Construction -----
+
+	/**
+	 * Create an object that reads from the source, which can be one of:
+	 *  null, Map (normally org.bson.Document), List, or String.
+	 * A String is taken to be JSON, and is converted to BSON;
+	 * an empty string is the same as null.
+	 */
+	public MarshalImpBsonReader (Object bson_source) {
+		Object bson_container;
+
+		if (bson_source == null) {
+			bson_container = null;
+		}
+		else if (bson_source instanceof String) {
+			bson_container = MarshalImpBsonWriter.json_string_to_bson ((String)bson_source);
+		}
+		else {
+			bson_container = bson_source;
+		}
+
+		root_context_read = new ContextRoot (bson_container);
+		current_context_read = root_context_read;
+	}
+
+	//----- Control -----
+
+	/**
+	 * Check read status, return true if read complete, false if nothing read, exception if in progress.
+	 */
+	public boolean check_read_complete () {
+		return root_context_read.get_root_status();
+	}
+
+
+
+
+	//----- JSON conversion -----
+
+
+
+
+	// Convert a BSON object into a JSON object, suitable for JSONValue.toJSONString.
+	// Maps become JSONOrderedObject, lists and typed binary arrays become JSONArray,
+	// and scalars are passed through.
+
+	@SuppressWarnings("unchecked")
+	public static Object bson_to_json (Object o) {
+		if (o == null) {
+			return null;
+		}
+		if (o instanceof Map) {
+			JSONOrderedObject result = new JSONOrderedObject();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>)o).entrySet()) {
+				if (!( entry.getKey() instanceof String )) {
+					throw new MarshalException ("MarshalImpBsonReader.bson_to_json: Non-string key found in BSON document");
+				}
+				result.put (entry.getKey(), bson_to_json (entry.getValue()));
+			}
+			return result;
+		}
+		if (o instanceof List) {
+			JSONArray result = new JSONArray();
+			for (Object x : (List<?>)o) {
+				result.add (bson_to_json (x));
+			}
+			return result;
+		}
+		if (is_binary_array (o)) {
+			JSONArray result = new JSONArray();
+			result.addAll (decode_binary_array ((Binary)o));
+			return result;
+		}
+		if (o instanceof Number || o instanceof String || o instanceof Boolean) {
+			return o;
+		}
+		throw new MarshalException ("MarshalImpBsonReader.bson_to_json: Unrecognized BSON object type: " + o.getClass().getName());
+	}
+
+
+
+
+	// Convert a BSON container into a JSON string.
+	// Returns an empty string if the container is null.
+
+	public static String bson_to_json_string (Object bson_container) {
+		if (bson_container == null) {
+			return "";
+		}
+		String result;
+		try {
+			result = JSONValue.toJSONString (bson_to_json (bson_container));
+		}
+		catch (MarshalException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new MarshalException ("MarshalImpBsonReader.bson_to_json_string: Exception while writing JSON string", e);
+		}
+		return result;
+	}
+
+
+
+
+	//----- Testing -----
+
+
+
+
+	public static void main(String[] args) {
+
+		// There needs to be at least one argument, which is the subcommand
+
+		if (args.length < 1) {
+			System.err.println ("MarshalImpBsonReader : Missing subcommand");
+			return;
+		}
+
+
+
+
+		// Unrecognized subcommand.
+
+		System.err.println ("MarshalImpBsonReader : Unrecognized subcommand : " + args[0]);
+		return;
+
+	}
+
+
+
+
+}
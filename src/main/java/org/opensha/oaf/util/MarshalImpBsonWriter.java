@@ -0,0 +1,729 @@
+package org.opensha.oaf.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.json.simple.parser.ParseException;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+
+
+/**
+ * Class for marshaling parameters/data to BSON data structures.
+ *
+ * The marshaled data is built as a tree of objects that the MongoDB driver stores
+ * natively, so it can be placed directly into a database document without going
+ * through JSON.  Maps become org.bson.Document, arrays become java.util.List, and
+ * scalars become Long, Double, String, Boolean, or null.
+ *
+ * Arrays of long, int, and double are stored as BSON binary data with a user-defined
+ * subtype (see the BIN_SUBTYPE_XXX constants), which is much more compact and faster
+ * than a BSON array with one element per value.  MarshalImpBsonReader accepts a binary
+ * array wherever an array is expected, so the data can be read back either with the
+ * array functions or element by element.
+ */
+public class MarshalImpBsonWriter implements MarshalWriter {
+
+	//----- Binary array encoding -----
+
+	// Binary subtypes for typed arrays.
+	// These are in the user-defined range 0x80 - 0xFF.
+	// Values are stored little-endian, as in BSON.
+
+	public static final byte BIN_SUBTYPE_LONG_ARRAY = (byte)0x80;
+	public static final byte BIN_SUBTYPE_DOUBLE_ARRAY = (byte)0x81;
+	public static final byte BIN_SUBTYPE_INT_ARRAY = (byte)0x82;
+
+
+	// Encode a long array as binary data.
+
+	public static Binary encode_long_array (long[] x) {
+		ByteBuffer buf = ByteBuffer.allocate (x.length * 8).order (ByteOrder.LITTLE_ENDIAN);
+		buf.asLongBuffer().put (x);
+		return new Binary (BIN_SUBTYPE_LONG_ARRAY, buf.array());
+	}
+
+
+	// Encode a double array as binary data.
+
+	public static Binary encode_double_array (double[] x) {
+		ByteBuffer buf = ByteBuffer.allocate (x.length * 8).order (ByteOrder.LITTLE_ENDIAN);
+		buf.asDoubleBuffer().put (x);
+		return new Binary (BIN_SUBTYPE_DOUBLE_ARRAY, buf.array());
+	}
+
+
+	// Encode an int array as binary data.
+
+	public static Binary encode_int_array (int[] x) {
+		ByteBuffer buf = ByteBuffer.allocate (x.length * 4).order (ByteOrder.LITTLE_ENDIAN);
+		buf.asIntBuffer().put (x);
+		return new Binary (BIN_SUBTYPE_INT_ARRAY, buf.array());
+	}
+
+
+
+
+	//----- Context management -----
+
+	// Class to hold current context.
+
+	private static abstract class Context {
+
+		// The previous context, null if this is the root context.
+
+		protected Context previous;
+
+		// The next context, null if this is the current context.
+
+		protected Context next;
+
+		// check_name - Check a name, and supply the named object.
+
+		public abstract void check_name (String name, Object o);
+
+		// notify_child_begin - Notification that a child is beginning.
+
+		public abstract void notify_child_begin (String name, Context child);
+
+		// notify_child_end - Notification that a child is ending, and supply the child object.
+
+		public abstract void notify_child_end (Object o);
+
+		// close_map - Close a map context, return the previous context.
+
+		public abstract Context close_map ();
+
+		// close_array - Close an array context, return the previous context.
+
+		public abstract Context close_array ();
+
+		// Constructor.
+
+		public Context (Context previous) {
+			this.previous = previous;
+			this.next = null;
+		}
+	}
+
+	// Class to hold map context.
+
+	private static class ContextMap extends Context {
+
+		// The map.
+
+		private Document bson_map;
+
+		// Name of current child.
+
+		private String child_name;
+
+		// check_name - Check a name, and supply the named object.
+
+		@Override
+		public void check_name (String name, Object o) {
+
+			// Add the name, and throw exception if already in use
+
+			if (name == null) {
+				throw new MarshalException ("No name specified for element in map context");
+			}
+			if (bson_map.containsKey (name)) {
+				throw new MarshalException ("Duplicate element name in map context: name = " + name);
+			}
+			bson_map.put (name, o);
+
+			return;
+		}
+
+		// notify_child_begin - Notification that a child is beginning.
+
+		@Override
+		public void notify_child_begin (String name, Context child) {
+			child_name = name;
+			next = child;
+			return;
+		}
+
+		// notify_child_end - Notification that a child is ending, and supply the child object.
+
+		@Override
+		public void notify_child_end (Object o) {
+			check_name (child_name, o);
+			child_name = null;
+			next = null;
+			return;
+		}
+
+		// close_map - Close a map context, return the previous context.
+
+		@Override
+		public Context close_map () {
+			previous.notify_child_end (bson_map);
+			return previous;
+		}
+
+		// close_array - Close an array context, return the previous context.
+
+		@Override
+		public Context close_array () {
+			throw new MarshalException ("Attempt to end array context when in map context");
+		}
+
+		// Constructor.
+
+		public ContextMap (String name, Context previous) {
+			super (previous);
+			this.bson_map = new Document();
+			this.child_name = null;
+			this.previous.notify_child_begin (name, this);
+		}
+	}
+
+	// Class to hold array context.
+
+	private static class ContextArray extends Context {
+
+		// The array.
+
+		private List<Object> bson_array;
+
+		// The array size.
+
+		private int array_size;
+
+		// check_name - Check a name, and supply the named object.
+
+		@Override
+		public void check_name (String name, Object o) {
+
+			// Add to the array and check for overrun
+
+			if (name != null) {
+				throw new MarshalException ("Name specified for element in array context: name = " + name);
+			}
+			if (bson_array.size() == array_size) {
+				throw new MarshalException ("Exceeded declared array size in array context: declared size = " + array_size);
+			}
+			bson_array.add (o);
+
+			return;
+		}
+
+		// notify_child_begin - Notification that a child is beginning.
+
+		@Override
+		public void notify_child_begin (String name, Context child) {
+			if (name != null) {
+				throw new MarshalException ("Name specified for element in array context: name = " + name);
+			}
+			next = child;
+			return;
+		}
+
+		// notify_child_end - Notification that a child is ending, and supply the child object.
+
+		@Override
+		public void notify_child_end (Object o) {
+			check_name (null, o);
+			next = null;
+			return;
+		}
+
+		// close_map - Close a map context, return the previous context.
+
+		@Override
+		public Context close_map () {
+			throw new MarshalException ("Attempt to end map context when in array context");
+		}
+
+		// close_array - Close an array context, return the previous context.
+
+		@Override
+		public Context close_array () {
+			if (bson_array.size() != array_size) {
+				throw new MarshalException ("Array size mismatch in array context: declared size = " + array_size + ", actual size = " + bson_array.size());
+			}
+			previous.notify_child_end (bson_array);
+			return previous;
+		}
+
+		// Constructor, specifies array size.
+
+		public ContextArray (String name, Context previous, int array_size) {
+			super (previous);
+			if (array_size < 0) {
+				throw new MarshalException ("Negative array size in array context: size = " + array_size);
+			}
+			this.bson_array = new ArrayList<Object>(array_size);
+			this.array_size = array_size;
+			this.previous.notify_child_begin (name, this);
+		}
+	}
+
+	// Class to hold root context.
+
+	private static class ContextRoot extends Context {
+
+		// The BSON container, can be either Document or List, or null.
+
+		private Object bson_container;
+
+		// True if a child of the root has been created.
+
+		private boolean f_root_done;
+
+		// Return true if a complete child has been processed, false if nothing processed, exception if in progress.
+
+		public boolean get_root_status () {
+			if (next != null) {
+				throw new MarshalException ("Marshal is incomplete");
+			}
+			return f_root_done;
+		}
+
+		// Get the BSON container.
+
+		public Object get_bson_container () {
+			return bson_container;
+		}
+
+		// check_name - Check a name, and supply the named object.
+
+		@Override
+		public void check_name (String name, Object o) {
+
+			// Throw exception
+
+			if (name == null) {
+				throw new MarshalException ("Attempt to add element in root context: name = null");
+			}
+			throw new MarshalException ("Attempt to add element in root context: name = " + name);
+		}
+
+		// notify_child_begin - Notification that a child is beginning.
+
+		@Override
+		public void notify_child_begin (String name, Context child) {
+			if (next != null) {
+				if (name == null) {
+					throw new MarshalException ("Attempt to begin second child context when in root context: name = null");
+				}
+				throw new MarshalException ("Attempt to begin second child context when in root context: name = " + name);
+			}
+			if (f_root_done) {
+				if (name == null) {
+					throw new MarshalException ("Attempt to begin child context when in already-used root context: name = null");
+				}
+				throw new MarshalException ("Attempt to begin child context when in already-used root context: name = " + name);
+			}
+			if (name != null) {
+				throw new MarshalException ("Attempt to add named child context when in root context: name = " + name);
+			}
+			next = child;
+			return;
+		}
+
+		// notify_child_end - Notification that a child is ending, and supply the child object.
+
+		@Override
+		public void notify_child_end (Object o) {
+			if (next == null) {
+				throw new MarshalException ("Attempt to end non-existent child context in root context");
+			}
+			next = null;
+			bson_container = o;
+			f_root_done = true;
+			return;
+		}
+
+		// close_map - Close a map context, return the previous context.
+
+		@Override
+		public Context close_map () {
+			throw new MarshalException ("Attempt to end map context when in root context");
+		}
+
+		// close_array - Close an array context, return the previous context.
+
+		@Override
+		public Context close_array () {
+			throw new MarshalException ("Attempt to end array context when in root context");
+		}
+
+		// Constructor.
+
+		public ContextRoot () {
+			super (null);
+			bson_container = null;
+			f_root_done = false;
+		}
+	}
+
+	// Root and current context for writing.
+
+	private ContextRoot root_context_write;
+	private Context current_context_write;
+
+	//----- Implementation of MarshalWriter -----
+
+	/**
+	 * Begin a map context.
+	 */
+	@Override
+	public void marshalMapBegin (String name) {
+		current_context_write = new ContextMap (name, current_context_write);
+		return;
+	}
+
+	/**
+	 * End a map context.
+	 */
+	@Override
+	public void marshalMapEnd () {
+		current_context_write = current_context_write.close_map();
+		return;
+	}
+
+	/**
+	 * Begin an array context, specify the array size.
+	 */
+	@Override
+	public void marshalArrayBegin (String name, int array_size) {
+		current_context_write = new ContextArray (name, current_context_write, array_size);
+		return;
+	}
+
+	/**
+	 * End an array context.
+	 */
+	@Override
+	public void marshalArrayEnd () {
+		current_context_write = current_context_write.close_array();
+		return;
+	}
+
+	/**
+	 * Marshal a long.
+	 */
+	@Override
+	public void marshalLong (String name, long x) {
+		current_context_write.check_name (name, Long.valueOf(x));
+		return;
+	}
+
+	/**
+	 * Marshal a double.
+	 */
+	@Override
+	public void marshalDouble (String name, double x) {
+		current_context_write.check_name (name, Double.valueOf(x));
+		return;
+	}
+
+	/**
+	 * Marshal a string.  (Null strings are not allowed.)
+	 */
+	@Override
+	public void marshalString (String name, String x) {
+		if (x == null) {
+			throw new MarshalException ("Null string: name = " + ((name == null) ? "null" : name));
+		}
+		current_context_write.check_name (name, x);
+		return;
+	}
+
+	/**
+	 * Marshal a boolean.
+	 */
+	@Override
+	public void marshalBoolean (String name, boolean x) {
+		current_context_write.check_name (name, Boolean.valueOf(x));
+		return;
+	}
+
+	/**
+	 * Marshal a float.
+	 * (BSON has no single-precision type, so it is stored as a double.  The double is the
+	 * decimal value of the float, rather than its exact binary value, so that it converts
+	 * to JSON the same way as with MarshalImpJsonWriter, for example 0.1 rather than
+	 * 0.10000000149011612.  Converting the double back to float gives the original value.)
+	 */
+	@Override
+	public void marshalFloat (String name, float x) {
+		current_context_write.check_name (name, Double.valueOf(Double.parseDouble(Float.toString(x))));
+		return;
+	}
+
+	/**
+	 * Marshal a JSON string.  (Null strings are not allowed.)
+	 * The string must contain a JSON object or array, or be an empty string.
+	 * For BSON storage, the string is converted to a BSON document or array instead
+	 * of being embedded as string-valued data.  (An empty string becomes a BSON null.)
+	 * The unmarshaled string may differ from the marshaled string due to JSON parsing.
+	 * (Named element ordering, numeric formats, and spacing may be changed).
+	 */
+	@Override
+	public void marshalJsonString (String name, String x) {
+		Object bson_container;
+		try {
+			bson_container = json_string_to_bson (x);
+		}
+		catch (MarshalException e) {
+			throw new MarshalException ("Error while converting JSON string: name = " + ((name == null) ? "null" : name), e);
+		}
+		current_context_write.check_name (name, bson_container);
+		return;
+	}
+
+	/**
+	 * Marshal a long array.
+	 * (An array at the root is written element by element, since the root must be a map or array.)
+	 */
+	@Override
+	public void marshalLongArray (String name, long[] x) {
+		if (current_context_write == root_context_write) {
+			MarshalWriter.super.marshalLongArray (name, x);
+			return;
+		}
+		current_context_write.check_name (name, encode_long_array (x));
+		return;
+	}
+
+	/**
+	 * Marshal a double array.
+	 */
+	@Override
+	public void marshalDoubleArray (String name, double[] x) {
+		if (current_context_write == root_context_write) {
+			MarshalWriter.super.marshalDoubleArray (name, x);
+			return;
+		}
+		current_context_write.check_name (name, encode_double_array (x));
+		return;
+	}
+
+	/**
+	 * Marshal an int array.
+	 */
+	@Override
+	public void marshalIntArray (String name, int[] x) {
+		if (current_context_write == root_context_write) {
+			MarshalWriter.super.marshalIntArray (name, x);
+			return;
+		}
+		current_context_write.check_name (name, encode_int_array (x));
+		return;
+	}
+
+	//----- Extended JSON support -----
+
+	// Marshal a JSON null value.
+
+	@Override
+	public void marshalJsonNull (String name) {
+		current_context_write.check_name (name, null);
+		return;
+	}
+
+	//----- Construction -----
+
+	/**
+	 * Create an empty object, suitable for writing.
+	 */
+	public MarshalImpBsonWriter () {
+		root_context_write = new ContextRoot();
+		current_context_write = root_context_write;
+	}
+
+	//----- Control -----
+
+	/**
+	 * Check write status, return true if write complete, false if nothing written, exception if in progress.
+	 */
+	public boolean check_write_complete () {
+		return root_context_write.get_root_status();
+	}
+
+	/**
+	 * Get the BSON container.
+	 * It can be either Document or List, or null.
+	 */
+	public Object get_bson_container () {
+		return root_context_write.get_bson_container();
+	}
+
+
+
+
+	//----- JSON conversion -----
+
+
+
+
+	// Convert a JSON object, as produced by JSONOrderedObject parsing, into a BSON object.
+	// JSON maps become Document, JSON arrays become List, and scalars are passed through.
+
+	public static Object json_to_bson (Object o) {
+		if (o == null) {
+			return null;
+		}
+		if (o instanceof Map) {
+			Document result = new Document();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>)o).entrySet()) {
+				if (!( entry.getKey() instanceof String )) {
+					throw new MarshalException ("MarshalImpBsonWriter.json_to_bson: Non-string key found in JSON object");
+				}
+				result.put ((String)(entry.getKey()), json_to_bson (entry.getValue()));
+			}
+			return result;
+		}
+		if (o instanceof List) {
+			List<?> w = (List<?>)o;
+			List<Object> result = new ArrayList<Object>(w.size());
+			for (Object x : w) {
+				result.add (json_to_bson (x));
+			}
+			return result;
+		}
+		if (o instanceof Float) {
+			return Double.valueOf (((Float)o).doubleValue());
+		}
+		if (o instanceof Integer) {
+			return Long.valueOf (((Integer)o).longValue());
+		}
+		if (o instanceof Long || o instanceof Double || o instanceof String || o instanceof Boolean) {
+			return o;
+		}
+		throw new MarshalException ("MarshalImpBsonWriter.json_to_bson: Unrecognized JSON object type: " + o.getClass().getName());
+	}
+
+
+
+
+	// Convert a JSON string into a BSON container.
+	// The string must contain a JSON object or array, or be empty or null.
+	// Returns a Document or List, or null if the string is empty or null.
+
+	public static Object json_string_to_bson (String json_string) {
+		if (json_string == null || json_string.isEmpty()) {
+			return null;
+		}
+		Object json_container;
+		try {
+			json_container = JSONOrderedObject.parseWithException (json_string);
+		}
+		catch (ParseException e) {
+			throw new MarshalException ("MarshalImpBsonWriter.json_string_to_bson: Parsing error while parsing JSON string", e);
+		}
+		catch (Exception e) {
+			throw new MarshalException ("MarshalImpBsonWriter.json_string_to_bson: Exception while parsing JSON string", e);
+		}
+		if (json_container == null) {
+			return null;
+		}
+		if (!( json_container instanceof Map || json_container instanceof List )) {
+			throw new MarshalException ("MarshalImpBsonWriter.json_string_to_bson: JSON string does not contain a JSON object or JSON array");
+		}
+		return json_to_bson (json_container);
+	}
+
+
+
+
+	//----- Testing -----
+
+
+
+
+	public static void main(String[] args) {
+
+		// There needs to be at least one argument, which is the subcommand
+
+		if (args.length < 1) {
+			System.err.println ("MarshalImpBsonWriter : Missing subcommand");
+			return;
+		}
+
+
+
+
+		// Subcommand : Test #1
+		// Command format:
+		//  test1  json_string
+		// Convert the JSON string to BSON, marshal it with marshalJsonString, and then
+		// unmarshal it and display the result as JSON.
+		// Also marshal and unmarshal a few typed arrays.
+
+		if (args[0].equalsIgnoreCase ("test1")) {
+
+			// One additional argument
+
+			if (args.length != 2) {
+				System.err.println ("MarshalImpBsonWriter : Invalid 'test1' subcommand");
+				return;
+			}
+
+			String json_string = args[1];
+
+			// Marshal
+
+			long[] la = {1L, -2L, Long.MAX_VALUE};
+			double[] da = {0.5, -1.25e10, Double.NaN};
+			int[] ia = {7, -8, Integer.MIN_VALUE};
+
+			MarshalImpBsonWriter writer = new MarshalImpBsonWriter();
+			writer.marshalMapBegin (null);
+			writer.marshalLong ("long", 123L);
+			writer.marshalDouble ("double", 4.5);
+			writer.marshalString ("string", "text");
+			writer.marshalBoolean ("boolean", true);
+			writer.marshalJsonString ("json", json_string);
+			writer.marshalLongArray ("la", la);
+			writer.marshalDoubleArray ("da", da);
+			writer.marshalIntArray ("ia", ia);
+			writer.marshalMapEnd ();
+			writer.check_write_complete ();
+
+			Object bson_container = writer.get_bson_container();
+			System.out.println ("BSON = " + bson_container.toString());
+			System.out.println ("JSON = " + MarshalImpBsonReader.bson_to_json_string (bson_container));
+
+			// Unmarshal
+
+			MarshalImpBsonReader reader = new MarshalImpBsonReader (bson_container);
+			reader.unmarshalMapBegin (null);
+			System.out.println ("long = " + reader.unmarshalLong ("long"));
+			System.out.println ("double = " + reader.unmarshalDouble ("double"));
+			System.out.println ("string = " + reader.unmarshalString ("string"));
+			System.out.println ("boolean = " + reader.unmarshalBoolean ("boolean"));
+			System.out.println ("json = " + reader.unmarshalJsonString ("json"));
+			System.out.println ("la = " + Arrays.toString (reader.unmarshalLongArray ("la")));
+			System.out.println ("da = " + Arrays.toString (reader.unmarshalDoubleArray ("da")));
+			System.out.println ("ia (as long) = " + Arrays.toString (reader.unmarshalLongArray ("ia")));
+			reader.unmarshalMapEnd ();
+			reader.check_read_complete ();
+
+			return;
+		}
+
+
+
+
+		// Unrecognized subcommand.
+
+		System.err.println ("MarshalImpBsonWriter : Unrecognized subcommand : " + args[0]);
+		return;
+
+	}
+
+
+
+
+}
@@ -0,0 +1,1032 @@
+package org.opensha.oaf.util;
+
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.Collection;
+
+import java.io.Reader;
+import java.io.IOException;
+
+import org.json.simple.JSONValue;
+
+
+/**
+ * Class for unmarshaling parameters/data directly from JSON text.
+ *
+ * This accepts the same JSON text as MarshalImpJsonReader, and produces the same results,
+ * but it does not build a tree of JSONOrderedObject and JSONArray objects.  Instead, values
+ * are decoded directly from the text when they are unmarshaled.
+ *
+ * The text is held in memory, because unmarshaling needs to know the size of each array
+ * before reading its elements, and because JSON permits the elements of a map to appear in
+ * any order.  When a map or array is begun, its contents are scanned (without creating any
+ * objects) to find the array size or the position of each map value.
+ */
+public class MarshalImpJsonStreamReader implements MarshalReader {
+
+	//----- Text -----
+
+	// The JSON text.
+
+	private CharSequence text;
+
+	// Length of the text.
+
+	private int text_len;
+
+	// Throw an exception for a parsing error at the given position.
+
+	private MarshalException parse_error (int pos, String msg) {
+		return new MarshalException ("Parsing error while parsing JSON text: " + msg + ": position = " + pos);
+	}
+
+	// Return the character at the given position, or -1 if at end of text.
+
+	private int char_at (int pos) {
+		if (pos >= text_len) {
+			return -1;
+		}
+		return text.charAt (pos);
+	}
+
+	// Skip whitespace, return the position of the next non-whitespace character (or end of text).
+
+	private int skip_ws (int pos) {
+		while (pos < text_len) {
+			switch (text.charAt (pos)) {
+			case ' ':
+			case '\t':
+			case '\n':
+			case '\r':
+			case '\f':
+				++pos;
+				break;
+			default:
+				return pos;
+			}
+		}
+		return pos;
+	}
+
+	// Check for the expected character at the given position, return the following position.
+
+	private int expect_char (int pos, char c) {
+		if (char_at (pos) != c) {
+			throw parse_error (pos, "Expecting '" + c + "'");
+		}
+		return pos + 1;
+	}
+
+	// Check for the expected literal at the given position, return the following position.
+
+	private int expect_literal (int pos, String lit) {
+		final int n = lit.length();
+		if (pos + n > text_len) {
+			throw parse_error (pos, "Expecting " + lit);
+		}
+		for (int i = 0; i < n; ++i) {
+			if (text.charAt (pos + i) != lit.charAt (i)) {
+				throw parse_error (pos, "Expecting " + lit);
+			}
+		}
+		return pos + n;
+	}
+
+	// Skip a string literal, given the position of the opening quote, return the position after the closing quote.
+
+	private int skip_string (int pos) {
+		int p = expect_char (pos, '"');
+		while (p < text_len) {
+			final char c = text.charAt (p);
+			if (c == '"') {
+				return p + 1;
+			}
+			if (c == '\\') {
+				p += 2;
+			} else {
+				++p;
+			}
+		}
+		throw parse_error (pos, "Unterminated string");
+	}
+
+	// Skip a number, return the position after the number.
+
+	private int skip_number (int pos) {
+		int p = pos;
+		while (p < text_len) {
+			final char c = text.charAt (p);
+			if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+				++p;
+			} else {
+				break;
+			}
+		}
+		if (p == pos) {
+			throw parse_error (pos, "Unexpected character");
+		}
+		return p;
+	}
+
+	// Skip a value, given the position of its first character, return the position after the value.
+
+	private int skip_value (int pos) {
+		switch (char_at (pos)) {
+
+		case '{': {
+			int p = skip_ws (pos + 1);
+			if (char_at (p) == '}') {
+				return p + 1;
+			}
+			for (;;) {
+				p = skip_ws (skip_string (p));
+				p = skip_ws (expect_char (p, ':'));
+				p = skip_ws (skip_value (p));
+				if (char_at (p) == '}') {
+					return p + 1;
+				}
+				p = skip_ws (expect_char (p, ','));
+			}
+		}
+
+		case '[': {
+			int p = skip_ws (pos + 1);
+			if (char_at (p) == ']') {
+				return p + 1;
+			}
+			for (;;) {
+				p = skip_ws (skip_value (p));
+				if (char_at (p) == ']') {
+					return p + 1;
+				}
+				p = skip_ws (expect_char (p, ','));
+			}
+		}
+
+		case '"':
+			return skip_string (pos);
+
+		case 't':
+			return expect_literal (pos, "true");
+
+		case 'f':
+			return expect_literal (pos, "false");
+
+		case 'n':
+			return expect_literal (pos, "null");
+
+		case -1:
+			throw parse_error (pos, "Unexpected end of text");
+		}
+
+		return skip_number (pos);
+	}
+
+	// Skip a value and any following comma, return the position of the next value (or closing bracket).
+
+	private int skip_value_and_comma (int pos) {
+		int p = skip_ws (skip_value (pos));
+		if (char_at (p) == ',') {
+			p = skip_ws (p + 1);
+		}
+		return p;
+	}
+
+	// Decode a string literal, given the position of the opening quote.
+
+	private String parse_string (int pos) {
+		final int end = skip_string (pos);
+
+		// Fast path if there are no escapes
+
+		boolean f_escape = false;
+		for (int p = pos + 1; p < end - 1; ++p) {
+			if (text.charAt (p) == '\\') {
+				f_escape = true;
+				break;
+			}
+		}
+		if (!( f_escape )) {
+			return text.subSequence (pos + 1, end - 1).toString();
+		}
+
+		// Decode escapes
+
+		StringBuilder sb = new StringBuilder (end - pos);
+		int p = pos + 1;
+		while (p < end - 1) {
+			final char c = text.charAt (p);
+			if (c != '\\') {
+				sb.append (c);
+				++p;
+				continue;
+			}
+			final char e = text.charAt (p + 1);
+			p += 2;
+			switch (e) {
+			case '"':  sb.append ('"'); break;
+			case '\\': sb.append ('\\'); break;
+			case '/':  sb.append ('/'); break;
+			case 'b':  sb.append ('\b'); break;
+			case 'f':  sb.append ('\f'); break;
+			case 'n':  sb.append ('\n'); break;
+			case 'r':  sb.append ('\r'); break;
+			case 't':  sb.append ('\t'); break;
+			case 'u':
+				if (p + 4 > end - 1) {
+					throw parse_error (p - 2, "Invalid unicode escape");
+				}
+				try {
+					sb.append ((char)(Integer.parseInt (text.subSequence (p, p + 4).toString(), 16)));
+				}
+				catch (NumberFormatException x) {
+					throw parse_error (p - 2, "Invalid unicode escape");
+				}
+				p += 4;
+				break;
+			default:
+				throw parse_error (p - 2, "Invalid escape sequence");
+			}
+		}
+		return sb.toString();
+	}
+
+	// Decode a number, given the position of its first character.
+	// As in json-simple, the result is a Double if the number has a fraction or exponent, otherwise a Long.
+
+	private Number parse_number (int pos) {
+		final int end = skip_number (pos);
+		final String s = text.subSequence (pos, end).toString();
+		try {
+			for (int i = 0; i < s.length(); ++i) {
+				final char c = s.charAt (i);
+				if (c == '.' || c == 'e' || c == 'E') {
+					return Double.valueOf (s);
+				}
+			}
+			return Long.valueOf (s);
+		}
+		catch (NumberFormatException e) {
+			throw parse_error (pos, "Invalid number");
+		}
+	}
+
+	// Return true if the value at the given position is null.
+
+	private boolean is_null_value (int pos) {
+		return char_at (pos) == 'n';
+	}
+
+	// Return true if the value at the given position is a number.
+
+	private boolean is_number_value (int pos) {
+		final int c = char_at (pos);
+		return (c >= '0' && c <= '9') || c == '-';
+	}
+
+	//----- Context management -----
+
+	// Class to hold current context.
+	// Each context supplies values as a position within the text.
+
+	private static abstract class Context {
+
+		// The previous context, null if this is the root context.
+
+		protected Context previous;
+
+		// The next context, null if this is the current context.
+
+		protected Context next;
+
+		// check_name - Check a name, and return the position of the named value.
+
+		public abstract int check_name (String name);
+
+		// peek_name - Check a name, and return the position of the named value, without consuming it.
+
+		public abstract int peek_name (String name);
+
+		// notify_child_begin - Notification that a child is beginning, and return the position of the child value.
+
+		public abstract int notify_child_begin (String name, Context child);
+
+		// notify_child_end - Notification that a child is ending.
+
+		public abstract void notify_child_end ();
+
+		// close_map - Close a map context, return the previous context.
+
+		public abstract Context close_map (boolean f_check_keys);
+
+		// close_array - Close an array context, return the previous context.
+
+		public abstract Context close_array ();
+
+		// Constructor.
+
+		public Context (Context previous) {
+			this.previous = previous;
+			this.next = null;
+		}
+	}
+
+	// Class to hold map context.
+
+	private class ContextMap extends Context {
+
+		// Map from each key to the position of its value, in the order they appear in the text.
+		// If a key appears more than once, the last value is used, as in json-simple.
+
+		private Map<String, Integer> key_map;
+
+		// Names currently in use.
+
+		private Set<String> names;
+
+		// check_name - Check a name, and return the position of the named value.
+
+		@Override
+		public int check_name (String name) {
+
+			// Find the named value, and throw exception if none
+
+			if (name == null) {
+				throw new MarshalException ("No name specified for element in map context");
+			}
+			if (!( names.add (name) )) {
+				throw new MarshalException ("Duplicate element name in map context: name = " + name);
+			}
+			Integer pos = key_map.get (name);
+			if (pos == null) {
+				throw new MarshalException ("Element not found in map context: name = " + name);
+			}
+			return pos.intValue();
+		}
+
+		// peek_name - Check a name, and return the position of the named value, without consuming it.
+
+		@Override
+		public int peek_name (String name) {
+
+			// Find the named value, and throw exception if none
+
+			if (name == null) {
+				throw new MarshalException ("No name specified for element in map context");
+			}
+			if (names.contains (name)) {
+				throw new MarshalException ("Duplicate element name in map context: name = " + name);
+			}
+			Integer pos = key_map.get (name);
+			if (pos == null) {
+				throw new MarshalException ("Element not found in map context: name = " + name);
+			}
+			return pos.intValue();
+		}
+
+		// notify_child_begin - Notification that a child is beginning, and return the position of the child value.
+
+		@Override
+		public int notify_child_begin (String name, Context child) {
+			int result = check_name (name);
+			next = child;
+			return result;
+		}
+
+		// notify_child_end - Notification that a child is ending.
+
+		@Override
+		public void notify_child_end () {
+			next = null;
+			return;
+		}
+
+		// close_map - Close a map context, return the previous context.
+
+		@Override
+		public Context close_map (boolean f_check_keys) {
+
+			// Check if all names were used
+
+			if (f_check_keys) {
+				for (String name : key_map.keySet()) {
+					if (!( names.contains(name) )) {
+						throw new MarshalException ("Unused element name in map context: name = " + name);
+					}
+				}
+			}
+
+			previous.notify_child_end();
+			return previous;
+		}
+
+		// close_array - Close an array context, return the previous context.
+
+		@Override
+		public Context close_array () {
+			throw new MarshalException ("Attempt to end array context when in map context");
+		}
+
+		// Constructor.
+
+		public ContextMap (String name, Context previous, Collection<String> keys) {
+			super (previous);
+			this.names = new HashSet<String>();
+			int pos = this.previous.notify_child_begin (name, this);
+			if (is_null_value (pos)) {
+				throw new MarshalException ("Found null, expecting map context: name = " + ((name == null) ? "null" : name));
+			}
+			if (char_at (pos) != '{') {
+				throw new MarshalException ("Wrong element type, expecting map context: name = " + ((name == null) ? "null" : name));
+			}
+
+			// Scan the keys, and record the position of each value
+
+			this.key_map = new LinkedHashMap<String, Integer>();
+			int p = skip_ws (pos + 1);
+			if (char_at (p) != '}') {
+				for (;;) {
+					String key = parse_string (p);
+					p = skip_ws (skip_string (p));
+					p = skip_ws (expect_char (p, ':'));
+					this.key_map.put (key, p);
+					p = skip_ws (skip_value (p));
+					if (char_at (p) == '}') {
+						break;
+					}
+					p = skip_ws (expect_char (p, ','));
+				}
+			}
+
+			if (keys != null) {
+				keys.addAll (this.key_map.keySet());
+			}
+		}
+	}
+
+	// Class to hold array context.
+
+	private class ContextArray extends Context {
+
+		// The array size.
+
+		private int array_size;
+
+		// The current index.
+
+		private int array_index;
+
+		// Position of the next element.
+
+		private int array_pos;
+
+		// get_array_size - Get the array size.
+
+		public int get_array_size () {
+			return array_size;
+		}
+
+		// check_name - Check a name, and return the position of the named value.
+
+		@Override
+		public int check_name (String name) {
+
+			// Increment the index and check for overrun
+
+			if (name != null) {
+				throw new MarshalException ("Name specified for element in array context: name = " + name);
+			}
+			if (array_index == array_size) {
+				throw new MarshalException ("Exceeded declared array size in array context: declared size = " + array_size);
+			}
+			int result = array_pos;
+			++array_index;
+			if (array_index < array_size) {
+				array_pos = skip_value_and_comma (array_pos);
+			}
+			return result;
+		}
+
+		// peek_name - Check a name, and return the position of the named value, without consuming it.
+
+		@Override
+		public int peek_name (String name) {
+
+			// Check for overrun
+
+			if (name != null) {
+				throw new MarshalException ("Name specified for element in array context: name = " + name);
+			}
+			if (array_index == array_size) {
+				throw new MarshalException ("Exceeded declared array size in array context: declared size = " + array_size);
+			}
+			return array_pos;
+		}
+
+		// notify_child_begin - Notification that a child is beginning, and return the position of the child value.
+
+		@Override
+		public int notify_child_begin (String name, Context child) {
+			int result = check_name (name);
+			next = child;
+			return result;
+		}
+
+		// notify_child_end - Notification that a child is ending.
+
+		@Override
+		public void notify_child_end () {
+			next = null;
+			return;
+		}
+
+		// close_map - Close a map context, return the previous context.
+
+		@Override
+		public Context close_map (boolean f_check_keys) {
+			throw new MarshalException ("Attempt to end map context when in array context");
+		}
+
+		// close_array - Close an array context, return the previous context.
+
+		@Override
+		public Context close_array () {
+			if (array_index != array_size) {
+				throw new MarshalException ("Array size mismatch in array context: declared size = " + array_size + ", actual size = " + array_index);
+			}
+			previous.notify_child_end();
+			return previous;
+		}
+
+		// Constructor.
+
+		public ContextArray (String name, Context previous) {
+			super (previous);
+			int pos = this.previous.notify_child_begin (name, this);
+			if (is_null_value (pos)) {
+				throw new MarshalException ("Found null, expecting array context: name = " + ((name == null) ? "null" : name));
+			}
+			if (char_at (pos) != '[') {
+				throw new MarshalException ("Wrong element type, expecting array context: name = " + ((name == null) ? "null" : name));
+			}
+
+			// Count the elements
+
+			this.array_pos = skip_ws (pos + 1);
+			this.array_index = 0;
+			this.array_size = 0;
+			int p = this.array_pos;
+			if (char_at (p) != ']') {
+				for (;;) {
+					++this.array_size;
+					p = skip_ws (skip_value (p));
+					if (char_at (p) == ']') {
+						break;
+					}
+					p = skip_ws (expect_char (p, ','));
+				}
+			}
+		}
+	}
+
+	// Class to hold root context.
+
+	private static class ContextRoot extends Context {
+
+		// Position of the root container, or -1 if none.
+
+		private int root_pos;
+
+		// True if a child of the root has been created.
+
+		private boolean f_root_done;
+
+		// Return true if a complete child has been processed, false if nothing processed, exception if in progress.
+
+		public boolean get_root_status () {
+			if (next != null) {
+				throw new MarshalException ("Unmarshal is incomplete");
+			}
+			return f_root_done;
+		}
+
+		// check_name - Check a name, and return the position of the named value.
+
+		@Override
+		public int check_name (String name) {
+
+			// Throw exception
+
+			if (name == null) {
+				throw new MarshalException ("Attempt to read element in root context: name = null");
+			}
+			throw new MarshalException ("Attempt to read element in root context: name = " + name);
+		}
+
+		// peek_name - Check a name, and return the position of the named value, without consuming it.
+
+		@Override
+		public int peek_name (String name) {
+
+			// Throw exception
+
+			if (name == null) {
+				throw new MarshalException ("Attempt to peek element in root context: name = null");
+			}
+			throw new MarshalException ("Attempt to peek element in root context: name = " + name);
+		}
+
+		// notify_child_begin - Notification that a child is beginning, and return the position of the child value.
+
+		@Override
+		public int notify_child_begin (String name, Context child) {
+			if (next != null) {
+				if (name == null) {
+					throw new MarshalException ("Attempt to begin second child context when in root context: name = null");
+				}
+				throw new MarshalException ("Attempt to begin second child context when in root context: name = " + name);
+			}
+			if (f_root_done) {
+				if (name == null) {
+					throw new MarshalException ("Attempt to begin child context when in already-used root context: name = null");
+				}
+				throw new MarshalException ("Attempt to begin child context when in already-used root context: name = " + name);
+			}
+			if (name != null) {
+				throw new MarshalException ("Attempt to add named child context when in root context: name = " + name);
+			}
+			if (root_pos < 0) {
+				throw new MarshalException ("Attempt to begin child context when in empty root context");
+			}
+			next = child;
+			return root_pos;
+		}
+
+		// notify_child_end - Notification that a child is ending.
+
+		@Override
+		public void notify_child_end () {
+			if (next == null) {
+				throw new MarshalException ("Attempt to end non-existent child context in root context");
+			}
+			next = null;
+			f_root_done = true;
+			return;
+		}
+
+		// close_map - Close a map context, return the previous context.
+
+		@Override
+		public Context close_map (boolean f_check_keys) {
+			throw new MarshalException ("Attempt to end map context when in root context");
+		}
+
+		// close_array - Close an array context, return the previous context.
+
+		@Override
+		public Context close_array () {
+			throw new MarshalException ("Attempt to end array context when in root context");
+		}
+
+		// Constructor.
+
+		public ContextRoot (int root_pos) {
+			super (null);
+			this.root_pos = root_pos;
+			f_root_done = false;
+		}
+	}
+
+	// Root and current context for reading.
+
+	private ContextRoot root_context_read;
+	private Context current_context_read;
+
+	//----- Implementation of MarshalReader -----
+
+	/**
+	 * Begin a map context.
+	 */
+	@Override
+	public void unmarshalMapBegin (String name) {
+		current_context_read = new ContextMap (name, current_context_read, null);
+		return;
+	}
+
+	/**
+	 * End a map context.
+	 */
+	@Override
+	public void unmarshalMapEnd () {
+		current_context_read = current_context_read.close_map (true);
+		return;
+	}
+
+	/**
+	 * Begin an array context, return the array size.
+	 */
+	@Override
+	public int unmarshalArrayBegin (String name) {
+		ContextArray context_array = new ContextArray (name, current_context_read);
+		current_context_read = context_array;
+		return context_array.get_array_size();
+	}
+
+	/**
+	 * End an array context.
+	 */
+	@Override
+	public void unmarshalArrayEnd () {
+		current_context_read = current_context_read.close_array();
+		return;
+	}
+
+	/**
+	 * Unmarshal a long.
+	 */
+	@Override
+	public long unmarshalLong (String name) {
+		int pos = current_context_read.check_name (name);
+		if (is_null_value (pos)) {
+			throw new MarshalException ("Unmarshal long found null data: name = " + ((name == null) ? "null" : name));
+		}
+		if (!( is_number_value (pos) )) {
+			throw new MarshalException ("Unmarshal long found non-numeric data type: name = " + ((name == null) ? "null" : name));
+		}
+		Number o = parse_number (pos);
+		if (o instanceof Double) {
+			throw new MarshalException ("Unmarshal long found floating-point data type: name = " + ((name == null) ? "null" : name));
+		}
+		return o.longValue();
+	}
+
+	/**
+	 * Unmarshal a double.
+	 */
+	@Override
+	public double unmarshalDouble (String name) {
+		int pos = current_context_read.check_name (name);
+		if (is_null_value (pos)) {
+			throw new MarshalException ("Unmarshal double found null data: name = " + ((name == null) ? "null" : name));
+		}
+		if (!( is_number_value (pos) )) {
+			throw new MarshalException ("Unmarshal double found non-numeric data type: name = " + ((name == null) ? "null" : name));
+		}
+		return parse_number (pos).doubleValue();
+	}
+
+	/**
+	 * Unmarshal a string.  (Null strings are not allowed.)
+	 */
+	@Override
+	public String unmarshalString (String name) {
+		int pos = current_context_read.check_name (name);
+		if (is_null_value (pos)) {
+			throw new MarshalException ("Unmarshal string found null data: name = " + ((name == null) ? "null" : name));
+		}
+		if (char_at (pos) != '"') {
+			throw new MarshalException ("Unmarshal string found non-string data type: name = " + ((name == null) ? "null" : name));
+		}
+		return parse_string (pos);
+	}
+
+	/**
+	 * Unmarshal a boolean.
+	 */
+	@Override
+	public boolean unmarshalBoolean (String name) {
+		int pos = current_context_read.check_name (name);
+		if (is_null_value (pos)) {
+			throw new MarshalException ("Unmarshal boolean found null data: name = " + ((name == null) ? "null" : name));
+		}
+		switch (char_at (pos)) {
+		case 't':
+			return true;
+		case 'f':
+			return false;
+		}
+		throw new MarshalException ("Unmarshal boolean found non-boolean data type: name = " + ((name == null) ? "null" : name));
+	}
+
+	/**
+	 * Unmarshal a float.
+	 */
+	@Override
+	public float unmarshalFloat (String name) {
+		int pos = current_context_read.check_name (name);
+		if (is_null_value (pos)) {
+			throw new MarshalException ("Unmarshal float found null data: name = " + ((name == null) ? "null" : name));
+		}
+		if (!( is_number_value (pos) )) {
+			throw new MarshalException ("Unmarshal float found non-numeric data type: name = " + ((name == null) ? "null" : name));
+		}
+		return parse_number (pos).floatValue();
+	}
+
+	/**
+	 * Unmarshal a JSON string.  (Null strings are not allowed.)
+	 * The string must contain a JSON object or array, or be an empty string.
+	 * For JSON storage, the string is merged into the JSON instead of being
+	 * embedded as string-valued data.  (An empty string becomes a JSON null.)
+	 * The unmarshaled string may differ from the marshaled string due to JSON parsing.
+	 * (Named element ordering, numeric formats, and spacing may be changed).
+	 */
+	@Override
+	public String unmarshalJsonString (String name) {
+		int pos = current_context_read.check_name (name);
+		String result;
+		if (is_null_value (pos)) {
+			result = "";
+		}
+		else {
+			if (!( char_at (pos) == '{' || char_at (pos) == '[' )) {
+				throw new MarshalException ("Unmarshal JSON string did not find a JSON object or JSON array: name = " + ((name == null) ? "null" : name));
+			}
+
+			// Parse and re-write the embedded JSON, so the result is the same as from MarshalImpJsonReader
+
+			try {
+				Object o = JSONOrderedObject.parseWithException (text.subSequence (pos, skip_value (pos)).toString());
+				result = JSONValue.toJSONString(o);
+			}
+			catch (Exception e) {
+				throw new MarshalException ("Unmarshal JSON string encountered an exception while constructing string: name = " + ((name == null) ? "null" : name), e);
+			}
+		}
+		return result;
+	}
+
+	//----- Extended JSON support -----
+
+	// Begin a map context.
+	// If keys is non-null, then all the JSON keys are added to the collection.
+
+	@Override
+	public void  unmarshalJsonMapBegin (String name, Collection<String> keys) {
+		current_context_read = new ContextMap (name, current_context_read, keys);
+		return;
+	}
+
+	// End a map context.
+	// If f_check_keys is true, then throw an exception if any keys were not used.
+	// Note that f_check_keys = true gives the same behavior as unmarshalMapEnd.
+
+	@Override
+	public void unmarshalJsonMapEnd (boolean f_check_keys) {
+		current_context_read = current_context_read.close_map (f_check_keys);
+		return;
+	}
+
+	// Unmarshal a JSON null value.
+
+	@Override
+	public void unmarshalJsonNull (String name) {
+		int pos = current_context_read.check_name (name);
+		if (!( is_null_value (pos) )) {
+			throw new MarshalException ("Unmarshal null found non-null data: name = " + ((name == null) ? "null" : name));
+		}
+		return;
+	}
+
+	// Get the type of the next object to be read.
+	// This function does not consume the next object.
+
+	@Override
+	public int unmarshalJsonPeekType (String name) {
+		int pos = current_context_read.peek_name (name);
+		int jpt = -1;
+		switch (char_at (pos)) {
+		case 'n':
+			jpt = JPT_NULL;
+			break;
+		case 't':
+		case 'f':
+			jpt = JPT_BOOLEAN;
+			break;
+		case '"':
+			jpt = JPT_STRING;
+			break;
+		case '{':
+			jpt = JPT_MAP;
+			break;
+		case '[':
+			jpt = JPT_ARRAY;
+			break;
+		default:
+			if (is_number_value (pos)) {
+				Number o = parse_number (pos);
+				if (o instanceof Double) {
+					jpt = JPT_DOUBLE;
+				}
+				else {
+					long x = o.longValue();
+					if (x < (long)Integer.MIN_VALUE || x > (long)Integer.MAX_VALUE) {
+						jpt = JPT_LONG;
+					}
+					else {
+						jpt = JPT_INTEGER;
+					}
+				}
+			}
+			else {
+				throw new MarshalException ("unmarshalJsonPeekType found element of unknown type");
+			}
+			break;
+		}
+		return jpt;
+	}
+
+	//----- Construction -----
+
+	/**
+	 * Create an object that reads from the source, which can be one of:
+	 *  null, String, or java.io.Reader.
+	 * A Reader is read to the end, but not closed.
+	 * The entire text is checked for valid JSON syntax during construction.
+	 */
+	public MarshalImpJsonStreamReader (Object json_source) {
+		if (json_source == null) {
+			text = "";
+		}
+		else if (json_source instanceof String) {
+			text = (String)json_source;
+		}
+		else if (json_source instanceof Reader) {
+			try {
+				StringBuilder sb = new StringBuilder();
+				char[] buf = new char[8192];
+				int n;
+				while ((n = ((Reader)json_source).read (buf)) >= 0) {
+					sb.append (buf, 0, n);
+				}
+				text = sb;
+			}
+			catch (IOException e) {
+				throw new MarshalException ("I/O error while reading JSON file", e);
+			}
+		}
+		else {
+			throw new MarshalException ("Supplied JSON source is of unrecognized type");
+		}
+		text_len = text.length();
+
+		// Check syntax, and locate the root container
+
+		int root_pos = -1;
+		int p = skip_ws (0);
+		if (p < text_len) {
+			int end = skip_ws (skip_value (p));
+			if (end < text_len) {
+				throw parse_error (end, "Unexpected text after end of JSON value");
+			}
+			if (!( is_null_value (p) )) {
+				if (!( char_at (p) == '{' || char_at (p) == '[' )) {
+					throw new MarshalException ("Supplied JSON container is of unrecognized type");
+				}
+				root_pos = p;
+			}
+		}
+
+		root_context_read = new ContextRoot (root_pos);
+		current_context_read = root_context_read;
+	}
+
+	//----- Control -----
+
+	/**
+	 * Check read status, return true if read complete, false if nothing read, exception if in progress.
+	 */
+	public boolean check_read_complete () {
+		return root_context_read.get_root_status();
+	}
+
+
+
+
+	//----- Testing -----
+
+
+
+
+	public static void main(String[] args) {
+
+		// There needs to be at least one argument, which is the subcommand
+
+		if (args.length < 1) {
+			System.err.println ("MarshalImpJsonStreamReader : Missing subcommand");
+			return;
+		}
+
+
+
+
+		// Unrecognized subcommand.
+
+		System.err.println ("MarshalImpJsonStreamReader : Unrecognized subcommand : " + args[0]);
+		return;
+
+	}
+
+}
@@ -0,0 +1,808 @@
+package org.opensha.oaf.util;
+
+import java.util.Set;
+import java.util.HashSet;
+
+import java.io.Writer;
+import java.io.StringWriter;
+import java.io.IOException;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONValue;
+
+import org.json.simple.parser.ParseException;
+
+import org.apache.commons.math3.distribution.UniformRealDistribution;
+
+/**
+ * Class for marshaling parameters/data directly to a JSON character stream.
+ *
+ * This produces exactly the same JSON text as MarshalImpJsonWriter.get_json_string(),
+ * but it writes each token as soon as it is marshaled, instead of first building a
+ * tree of JSONOrderedObject and JSONArray objects.  So the memory required does not
+ * grow with the size of the data (except for the output, if it is written to a string).
+ */
+public class MarshalImpJsonStreamWriter implements MarshalWriter {
+
+	//----- Output -----
+
+	// The destination for the JSON text.
+
+	private Writer out;
+
+	// The string writer, if we are writing to a string, or null if not.
+
+	private StringWriter string_out;
+
+	// Write a string to the output.
+
+	private void write_text (String s) {
+		try {
+			out.write (s);
+		}
+		catch (IOException e) {
+			throw new MarshalException ("I/O error while writing JSON stream", e);
+		}
+		return;
+	}
+
+	// Write a character to the output.
+
+	private void write_char (char c) {
+		try {
+			out.write (c);
+		}
+		catch (IOException e) {
+			throw new MarshalException ("I/O error while writing JSON stream", e);
+		}
+		return;
+	}
+
+	// Write a string as a JSON string literal.
+	// Uses the json-simple escaping rules, so the output matches MarshalImpJsonWriter.
+
+	private void write_string_literal (String s) {
+		write_char ('"');
+		write_text (JSONValue.escape (s));
+		write_char ('"');
+		return;
+	}
+
+	//----- Context management -----
+
+	// Class to hold current context.
+	// Each element is written by first calling begin_element, which checks the name and
+	// writes the separator and (for a map) the key.  Then the element's value is written.
+
+	private static abstract class Context {
+
+		// The previous context, null if this is the root context.
+
+		protected Context previous;
+
+		// The next context, null if this is the current context.
+
+		protected Context next;
+
+		// begin_element - Check a name, and write any separator and key that precede the element.
+
+		public abstract void begin_element (MarshalImpJsonStreamWriter w, String name);
+
+		// notify_child_begin - Notification that a child is beginning.
+
+		public abstract void notify_child_begin (MarshalImpJsonStreamWriter w, String name, Context child);
+
+		// notify_child_end - Notification that a child is ending.
+
+		public abstract void notify_child_end ();
+
+		// close_map - Close a map context, return the previous context.
+
+		public abstract Context close_map (MarshalImpJsonStreamWriter w);
+
+		// close_array - Close an array context, return the previous context.
+
+		public abstract Context close_array (MarshalImpJsonStreamWriter w);
+
+		// Constructor.
+
+		public Context (Context previous) {
+			this.previous = previous;
+			this.next = null;
+		}
+	}
+
+	// Class to hold map context.
+
+	private static class ContextMap extends Context {
+
+		// Names currently in use.
+
+		private Set<String> names;
+
+		// begin_element - Check a name, and write any separator and key that precede the element.
+
+		@Override
+		public void begin_element (MarshalImpJsonStreamWriter w, String name) {
+
+			// Add the name, and throw exception if already in use
+
+			if (name == null) {
+				throw new MarshalException ("No name specified for element in map context");
+			}
+			if (!( names.add (name) )) {
+				throw new MarshalException ("Duplicate element name in map context: name = " + name);
+			}
+
+			// Write separator and key
+
+			if (names.size() > 1) {
+				w.write_char (',');
+			}
+			w.write_string_literal (name);
+			w.write_char (':');
+			return;
+		}
+
+		// notify_child_begin - Notification that a child is beginning.
+
+		@Override
+		public void notify_child_begin (MarshalImpJsonStreamWriter w, String name, Context child) {
+			begin_element (w, name);
+			next = child;
+			return;
+		}
+
+		// notify_child_end - Notification that a child is ending.
+
+		@Override
+		public void notify_child_end () {
+			next = null;
+			return;
+		}
+
+		// close_map - Close a map context, return the previous context.
+
+		@Override
+		public Context close_map (MarshalImpJsonStreamWriter w) {
+			w.write_char ('}');
+			previous.notify_child_end ();
+			return previous;
+		}
+
+		// close_array - Close an array context, return the previous context.
+
+		@Override
+		public Context close_array (MarshalImpJsonStreamWriter w) {
+			throw new MarshalException ("Attempt to end array context when in map context");
+		}
+
+		// Constructor.
+
+		public ContextMap (MarshalImpJsonStreamWriter w, String name, Context previous) {
+			super (previous);
+			this.names = new HashSet<String>();
+			this.previous.notify_child_begin (w, name, this);
+			w.write_char ('{');
+		}
+	}
+
+	// Class to hold array context.
+
+	private static class ContextArray extends Context {
+
+		// The array size.
+
+		private int array_size;
+
+		// The current index.
+
+		private int array_index;
+
+		// begin_element - Check a name, and write any separator and key that precede the element.
+
+		@Override
+		public void begin_element (MarshalImpJsonStreamWriter w, String name) {
+
+			// Increment the index and check for overrun
+
+			if (name != null) {
+				throw new MarshalException ("Name specified for element in array context: name = " + name);
+			}
+			if (array_index == array_size) {
+				throw new MarshalException ("Exceeded declared array size in array context: declared size = " + array_size);
+			}
+
+			// Write separator
+
+			if (array_index > 0) {
+				w.write_char (',');
+			}
+			++array_index;
+			return;
+		}
+
+		// notify_child_begin - Notification that a child is beginning.
+
+		@Override
+		public void notify_child_begin (MarshalImpJsonStreamWriter w, String name, Context child) {
+			begin_element (w, name);
+			next = child;
+			return;
+		}
+
+		// notify_child_end - Notification that a child is ending.
+
+		@Override
+		public void notify_child_end () {
+			next = null;
+			return;
+		}
+
+		// close_map - Close a map context, return the previous context.
+
+		@Override
+		public Context close_map (MarshalImpJsonStreamWriter w) {
+			throw new MarshalException ("Attempt to end map context when in array context");
+		}
+
+		// close_array - Close an array context, return the previous context.
+
+		@Override
+		public Context close_array (MarshalImpJsonStreamWriter w) {
+			if (array_index != array_size) {
+				throw new MarshalException ("Array size mismatch in array context: declared size = " + array_size + ", actual size = " + array_index);
+			}
+			w.write_char (']');
+			previous.notify_child_end ();
+			return previous;
+		}
+
+		// Constructor, specifies array size.
+
+		public ContextArray (MarshalImpJsonStreamWriter w, String name, Context previous, int array_size) {
+			super (previous);
+			if (array_size < 0) {
+				throw new MarshalException ("Negative array size in array context: size = " + array_size);
+			}
+			this.array_size = array_size;
+			this.array_index = 0;
+			this.previous.notify_child_begin (w, name, this);
+			w.write_char ('[');
+		}
+	}
+
+	// Class to hold root context.
+
+	private static class ContextRoot extends Context {
+
+		// True if a child of the root has been created.
+
+		private boolean f_root_done;
+
+		// Return true if a complete child has been processed, false if nothing processed, exception if in progress.
+
+		public boolean get_root_status () {
+			if (next != null) {
+				throw new MarshalException ("Marshal is incomplete");
+			}
+			return f_root_done;
+		}
+
+		// begin_element - Check a name, and write any separator and key that precede the element.
+
+		@Override
+		public void begin_element (MarshalImpJsonStreamWriter w, String name) {
+
+			// Throw exception
+
+			if (name == null) {
+				throw new MarshalException ("Attempt to add element in root context: name = null");
+			}
+			throw new MarshalException ("Attempt to add element in root context: name = " + name);
+		}
+
+		// notify_child_begin - Notification that a child is beginning.
+
+		@Override
+		public void notify_child_begin (MarshalImpJsonStreamWriter w, String name, Context child) {
+			if (next != null) {
+				if (name == null) {
+					throw new MarshalException ("Attempt to begin second child context when in root context: name = null");
+				}
+				throw new MarshalException ("Attempt to begin second child context when in root context: name = " + name);
+			}
+			if (f_root_done) {
+				if (name == null) {
+					throw new MarshalException ("Attempt to begin child context when in already-used root context: name = null");
+				}
+				throw new MarshalException ("Attempt to begin child context when in already-used root context: name = " + name);
+			}
+			if (name != null) {
+				throw new MarshalException ("Attempt to add named child context when in root context: name = " + name);
+			}
+			next = child;
+			return;
+		}
+
+		// notify_child_end - Notification that a child is ending.
+
+		@Override
+		public void notify_child_end () {
+			if (next == null) {
+				throw new MarshalException ("Attempt to end non-existent child context in root context");
+			}
+			next = null;
+			f_root_done = true;
+			return;
+		}
+
+		// close_map - Close a map context, return the previous context.
+
+		@Override
+		public Context close_map (MarshalImpJsonStreamWriter w) {
+			throw new MarshalException ("Attempt to end map context when in root context");
+		}
+
+		// close_array - Close an array context, return the previous context.
+
+		@Override
+		public Context close_array (MarshalImpJsonStreamWriter w) {
+			throw new MarshalException ("Attempt to end array context when in root context");
+		}
+
+		// Constructor.
+
+		public ContextRoot () {
+			super (null);
+			f_root_done = false;
+		}
+	}
+
+	// Root and current context for writing.
+
+	private ContextRoot root_context_write;
+	private Context current_context_write;
+
+	//----- Implementation of MarshalWriter -----
+
+	/**
+	 * Begin a map context.
+	 */
+	@Override
+	public void marshalMapBegin (String name) {
+		current_context_write = new ContextMap (this, name, current_context_write);
+		return;
+	}
+
+	/**
+	 * End a map context.
+	 */
+	@Override
+	public void marshalMapEnd () {
+		current_context_write = current_context_write.close_map (this);
+		return;
+	}
+
+	/**
+	 * Begin an array context, specify the array size.
+	 */
+	@Override
+	public void marshalArrayBegin (String name, int array_size) {
+		current_context_write = new ContextArray (this, name, current_context_write, array_size);
+		return;
+	}
+
+	/**
+	 * End an array context.
+	 */
+	@Override
+	public void marshalArrayEnd () {
+		current_context_write = current_context_write.close_array (this);
+		return;
+	}
+
+	/**
+	 * Marshal a long.
+	 */
+	@Override
+	public void marshalLong (String name, long x) {
+		current_context_write.begin_element (this, name);
+		write_text (Long.toString (x));
+		return;
+	}
+
+	/**
+	 * Marshal a double.
+	 * As in json-simple, infinities and NaN are written as null.
+	 */
+	@Override
+	public void marshalDouble (String name, double x) {
+		current_context_write.begin_element (this, name);
+		if (Double.isInfinite (x) || Double.isNaN (x)) {
+			write_text ("null");
+		} else {
+			write_text (Double.toString (x));
+		}
+		return;
+	}
+
+	/**
+	 * Marshal a string.  (Null strings are not allowed.)
+	 */
+	@Override
+	public void marshalString (String name, String x) {
+		current_context_write.begin_element (this, name);
+		if (x == null) {
+			write_text ("null");
+		} else {
+			write_string_literal (x);
+		}
+		return;
+	}
+
+	/**
+	 * Marshal a boolean.
+	 */
+	@Override
+	public void marshalBoolean (String name, boolean x) {
+		current_context_write.begin_element (this, name);
+		write_text (x ? "true" : "false");
+		return;
+	}
+
+	/**
+	 * Marshal a float.
+	 * As in json-simple, infinities and NaN are written as null.
+	 */
+	@Override
+	public void marshalFloat (String name, float x) {
+		current_context_write.begin_element (this, name);
+		if (Float.isInfinite (x) || Float.isNaN (x)) {
+			write_text ("null");
+		} else {
+			write_text (Float.toString (x));
+		}
+		return;
+	}
+
+	/**
+	 * Marshal a JSON string.  (Null strings are not allowed.)
+	 * The string must contain a JSON object or array, or be an empty string.
+	 * For JSON storage, the string is merged into the JSON instead of being
+	 * embedded as string-valued data.  (An empty string becomes a JSON null.)
+	 * The unmarshaled string may differ from the marshaled string due to JSON parsing.
+	 * (Named element ordering, numeric formats, and spacing may be changed).
+	 */
+	@Override
+	public void marshalJsonString (String name, String x) {
+		Object json_container;
+
+		if (x.equals("")) {
+			json_container = null;
+		}
+		else {
+			try {
+				json_container = JSONOrderedObject.parseWithException (x);
+			}
+			catch (ParseException e) {
+				throw new MarshalException ("Parsing error while parsing JSON string: name = " + ((name == null) ? "null" : name), e);
+			}
+			catch (Exception e) {
+				throw new MarshalException ("Exception while parsing JSON string: name = " + ((name == null) ? "null" : name), e);
+			}
+			if (!( json_container instanceof JSONArray || json_container instanceof JSONOrderedObject )) {
+				throw new MarshalException ("JSON String does not contain a JSON object or JSON array: name = " + ((name == null) ? "null" : name));
+			}
+		}
+
+		current_context_write.begin_element (this, name);
+		try {
+			JSONValue.writeJSONString (json_container, out);
+		}
+		catch (IOException e) {
+			throw new MarshalException ("I/O error while writing JSON stream", e);
+		}
+		return;
+	}
+
+	//----- Extended JSON support -----
+
+	// Marshal a JSON null value.
+
+	@Override
+	public void marshalJsonNull (String name) {
+		current_context_write.begin_element (this, name);
+		write_text ("null");
+		return;
+	}
+
+	//----- Construction -----
+
+	/**
+	 * Create an object that writes to a string, which can be retrieved with get_json_string().
+	 */
+	public MarshalImpJsonStreamWriter () {
+		string_out = new StringWriter();
+		out = string_out;
+		root_context_write = new ContextRoot();
+		current_context_write = root_context_write;
+	}
+
+	/**
+	 * Create an object that writes to the given destination.
+	 * The caller is responsible for flushing and closing the destination.
+	 * Note: If nothing is marshaled, nothing is written to the destination.
+	 */
+	public MarshalImpJsonStreamWriter (Writer out) {
+		if (out == null) {
+			throw new IllegalArgumentException ("MarshalImpJsonStreamWriter: Null destination");
+		}
+		string_out = null;
+		this.out = out;
+		root_context_write = new ContextRoot();
+		current_context_write = root_context_write;
+	}
+
+	//----- Control -----
+
+	/**
+	 * Check write status, return true if write complete, false if nothing written, exception if in progress.
+	 */
+	public boolean check_write_complete () {
+		return root_context_write.get_root_status();
+	}
+
+	/**
+	 * Get the JSON text, as a String.
+	 * This is only available if the object was created to write to a string.
+	 * If nothing was written, the result is "null", the same as MarshalImpJsonWriter.
+	 */
+	public String get_json_string () {
+		if (string_out == null) {
+			throw new MarshalException ("JSON string is not available when writing to a stream");
+		}
+		if (!( root_context_write.get_root_status() )) {
+			return "null";
+		}
+		return string_out.toString();
+	}
+
+
+
+
+	//----- Testing -----
+
+
+
+
+	// Marshal test data: a map containing scalars of each type, arrays, nested maps, and JSON strings.
+
+	private static void marshal_test_data (MarshalWriter writer, double[] double_data, long[] long_data, String[] string_data) {
+		writer.marshalMapBegin (null);
+
+		writer.marshalBoolean ("bt", true);
+		writer.marshalBoolean ("bf", false);
+		writer.marshalInt ("i", -987654321);
+		writer.marshalFloat ("f", 2.71828f);
+		writer.marshalDouble ("nan", Double.NaN);
+		writer.marshalString ("escape", "Quote \" slash / backslash \\ tab \t newline \n control \u0001 dash \u2013 end");
+		writer.marshalJsonString ("merge", "{\"ten\":10, \"array\":[11, 12.5, \"thirteen\"], \"fourteen\":null}");
+		writer.marshalJsonString ("empty", "");
+		writer.marshalJsonNull ("n");
+
+		writer.marshalDoubleArray ("d", double_data);
+		writer.marshalLongArray ("l", long_data);
+
+		writer.marshalArrayBegin ("s", string_data.length);
+		for (int i = 0; i < string_data.length; ++i) {
+			writer.marshalMapBegin (null);
+			writer.marshalInt ("index", i);
+			writer.marshalString ("value", string_data[i]);
+			writer.marshalMapEnd ();
+		}
+		writer.marshalArrayEnd ();
+
+		writer.marshalMapBegin ("m");
+		writer.marshalMapEnd ();
+		writer.marshalArrayBegin ("a", 0);
+		writer.marshalArrayEnd ();
+
+		writer.marshalMapEnd ();
+		return;
+	}
+
+
+
+
+	public static void main(String[] args) {
+
+		// There needs to be at least one argument, which is the subcommand
+
+		if (args.length < 1) {
+			System.err.println ("MarshalImpJsonStreamWriter : Missing subcommand");
+			return;
+		}
+
+
+
+
+		// Subcommand : Test #1
+		// Command format:
+		//  test1  num_long  num_double  num_string
+		// Marshal random data with both MarshalImpJsonWriter and MarshalImpJsonStreamWriter,
+		// and check that the resulting JSON text is identical.
+		// Then unmarshal the text with MarshalImpJsonStreamReader and check the data.
+
+		if (args[0].equalsIgnoreCase ("test1")) {
+
+			// Three additional arguments
+
+			if (args.length != 4) {
+				System.err.println ("MarshalImpJsonStreamWriter : Invalid 'test1' subcommand");
+				return;
+			}
+			int num_long = Integer.parseInt(args[1]);
+			int num_double = Integer.parseInt(args[2]);
+			int num_string = Integer.parseInt(args[3]);
+
+			System.out.println (
+				"num_long = " + num_long + "\n" +
+				"num_double = " + num_double + "\n" +
+				"num_string = " + num_string
+			);
+
+			// Random number generator
+
+			UniformRealDistribution rangen = SimpleUtils.make_uniform_rangen();
+
+			// Generate random values
+
+			System.out.println ("Generating random data ...");
+
+			long[] long_data = new long[num_long];
+			for (int i = 0; i < num_long; ++i) {
+				long_data[i] = Math.round ((rangen.sample() - 0.5) * 1.0e15);
+			}
+
+			double[] double_data = new double[num_double];
+			for (int i = 0; i < num_double; ++i) {
+				switch (i % 5) {
+				case 0: double_data[i] = rangen.sample() * 1.0e12; break;
+				case 1: double_data[i] = rangen.sample() * -2.0e7; break;
+				case 2: double_data[i] = rangen.sample() * 3.0e0; break;
+				case 3: double_data[i] = rangen.sample() * 2.0e-3; break;
+				case 4: double_data[i] = rangen.sample() * 1.0e-12; break;
+				}
+			}
+
+			String[] string_data = new String[num_string];
+			for (int i = 0; i < num_string; ++i) {
+				string_data[i] = "String/" + Math.round (rangen.sample() * 1.0e12);
+			}
+
+			// Marshal with both writers
+
+			System.out.println ("Marshaling data ...");
+
+			MarshalImpJsonWriter tree_writer = new MarshalImpJsonWriter();
+			marshal_test_data (tree_writer, double_data, long_data, string_data);
+			tree_writer.check_write_complete();
+			String tree_string = tree_writer.get_json_string();
+			tree_writer = null;
+
+			MarshalImpJsonStreamWriter stream_writer = new MarshalImpJsonStreamWriter();
+			marshal_test_data (stream_writer, double_data, long_data, string_data);
+			stream_writer.check_write_complete();
+			String stream_string = stream_writer.get_json_string();
+			stream_writer = null;
+
+			if (num_long + num_double + num_string <= 20) {
+				System.out.println (stream_string);
+			}
+
+			if (stream_string.equals (tree_string)) {
+				System.out.println ("JSON text is identical, length = " + stream_string.length());
+			} else {
+				System.out.println ("JSON text MISMATCH, tree length = " + tree_string.length() + ", stream length = " + stream_string.length());
+				System.out.println (tree_string);
+				return;
+			}
+
+			// Unmarshal and check the data
+
+			System.out.println ("Unmarshaling data ...");
+
+			MarshalImpJsonStreamReader reader = new MarshalImpJsonStreamReader (stream_string);
+
+			int errors = 0;
+
+			reader.unmarshalMapBegin (null);
+
+			// Read some elements out of order
+
+			double[] x_double = reader.unmarshalDoubleArray ("d");
+			if (!( java.util.Arrays.equals (x_double, double_data) )) {
+				++errors;
+				System.out.println ("Mismatched double array");
+			}
+
+			if (!( reader.unmarshalString ("escape").equals ("Quote \" slash / backslash \\ tab \t newline \n control \u0001 dash \u2013 end") )) {
+				++errors;
+				System.out.println ("Mismatched escaped string");
+			}
+
+			if (!( reader.unmarshalBoolean ("bt") && !(reader.unmarshalBoolean ("bf")) )) {
+				++errors;
+				System.out.println ("Mismatched booleans");
+			}
+
+			if (!( reader.unmarshalInt ("i") == -987654321 && reader.unmarshalFloat ("f") == 2.71828f )) {
+				++errors;
+				System.out.println ("Mismatched int or float");
+			}
+
+			reader.unmarshalJsonNull ("nan");
+			reader.unmarshalJsonNull ("n");
+
+			String merge = reader.unmarshalJsonString ("merge");
+			String empty = reader.unmarshalJsonString ("empty");
+			System.out.println ("merge = " + merge);
+			if (!( empty.equals ("") )) {
+				++errors;
+				System.out.println ("Mismatched empty JSON string");
+			}
+
+			long[] x_long = reader.unmarshalLongArray ("l");
+			if (!( java.util.Arrays.equals (x_long, long_data) )) {
+				++errors;
+				System.out.println ("Mismatched long array");
+			}
+
+			int array_size = reader.unmarshalArrayBegin ("s");
+			if (array_size != num_string) {
+				++errors;
+				System.out.println ("Mismatched string array size: " + array_size);
+			}
+			for (int i = 0; i < array_size; ++i) {
+				reader.unmarshalMapBegin (null);
+				String x = reader.unmarshalString ("value");
+				int index = reader.unmarshalInt ("index");
+				reader.unmarshalMapEnd ();
+				if (!( index == i && x.equals (string_data[i]) )) {
+					++errors;
+					if (errors <= 10) {
+						System.out.println ("Mismatched string: i = " + i + ", d = " + string_data[i] + ", x = " + x);
+					}
+				}
+			}
+			reader.unmarshalArrayEnd ();
+
+			reader.unmarshalMapBegin ("m");
+			reader.unmarshalMapEnd ();
+			reader.unmarshalArrayBegin ("a");
+			reader.unmarshalArrayEnd ();
+
+			reader.unmarshalMapEnd ();
+
+			if (!( reader.check_read_complete() )) {
+				System.out.println ("Reader reports reading not complete");
+				return;
+			}
+
+			System.out.println ("Error count: " + errors);
+
+			return;
+		}
+
+
+
+
+		// Unrecognized subcommand.
+
+		System.err.println ("MarshalImpJsonStreamWriter : Unrecognized subcommand : " + args[0]);
+		return;
+
+	}
+
+}
@@ -281,7 +281,7 @@ public class MarshalUtils {
 
 	public static String to_json_string (Marshalable x) {
 
-		MarshalImpJsonWriter writer = new MarshalImpJsonWriter();
+		MarshalImpJsonStreamWriter writer = new MarshalImpJsonStreamWriter();
 		x.marshal (writer, null);
 		writer.check_write_complete ();
 
@@ -333,7 +333,7 @@ public class MarshalUtils {
 
 	public static void from_json_string (Marshalable x, String json_string) {
 
-		MarshalImpJsonReader reader = new MarshalImpJsonReader (json_string);
+		MarshalImpJsonStreamReader reader = new MarshalImpJsonStreamReader (json_string);
 		x.unmarshal (reader, null);
 		reader.check_read_complete ();
 
@@ -377,10 +377,9 @@ public class MarshalUtils {
 		try (
 			BufferedWriter file_writer = new BufferedWriter (new FileWriter (filename));
 		){
-			MarshalImpJsonWriter writer = new MarshalImpJsonWriter();
+			MarshalImpJsonStreamWriter writer = new MarshalImpJsonStreamWriter (file_writer);
 			x.marshal (writer, null);
 			writer.check_write_complete ();
-			writer.write_json_file (file_writer);
 		}
 		catch (IOException e) {
 			throw new MarshalException ("MarshalUtils: I/O error while writing JSON file: " + filename, e);
@@ -451,7 +450,7 @@ public class MarshalUtils {
 		try (
 			BufferedReader file_reader = new BufferedReader (new FileReader (filename));
 		){
-			MarshalImpJsonReader reader = new MarshalImpJsonReader (file_reader);
+			MarshalImpJsonStreamReader reader = new MarshalImpJsonStreamReader (file_reader);
 			x.unmarshal (reader, null);
 			reader.check_read_complete ();
 		}
@@ -257,6 +257,19 @@ public class SimpleThreadLoopHelper {
 		return used_memory;
 	}
 
+
+	// Update the maximum amount of memory used, including memory outside the heap.
+	// Parameters:
+	//  off_heap_bytes = Amount of off-heap memory in use, in bytes, which is added to the heap memory in use.
+	// Returns the current amount of memory used, including off_heap_bytes.
+	// Threading: This function is thread-safe.
+
+	public final long update_max_used_memory (long off_heap_bytes) {
+		long used_memory = SimpleUtils.get_used_memory_bytes() + off_heap_bytes;
+		long new_max_used_memory = max_used_memory.accumulateAndGet (used_memory, bimax);
+		return used_memory;
+	}
+
 //	public final long update_max_used_memory () {
 //		final long used_memory = SimpleUtils.get_used_memory_bytes();
 //		long new_max_used_memory = max_used_memory.updateAndGet (